@@ -0,0 +1,132 @@
+package sketchy.collab;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/** An editor's connection to the relay server. Local operations are stamped with the editor's Lamport clock
+ * and collected in a pending batch (newer operations on the same property of the same element replace older ones),
+ * which is sent once per frame through flush. Operations received from the relay are decoded on a background
+ * thread and put in a queue, from which they can be drained by the thread owning the editor's document
+ * (e.g. the JavaFX thread, once per pulse).
+ */
+public class CollabClient {
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+    private OperationCodec encoder;
+    private OperationCodec decoder;
+    private LamportClock clock;
+    private LinkedHashMap<Long, Operation> pending;
+    private ConcurrentLinkedQueue<Operation> incoming;
+    private int client;
+    private long bytesSent;
+    private volatile boolean running;
+    private volatile String lost;
+
+    /** Constructor connecting to a relay server on the loopback interface, and waiting for the editor's number. */
+    public CollabClient(int port) throws IOException {
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        this.socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+        this.encoder = new OperationCodec();
+        this.decoder = new OperationCodec();
+        this.clock = new LamportClock();
+        this.pending = new LinkedHashMap<>();
+        this.incoming = new ConcurrentLinkedQueue<>();
+
+        this.in.readInt();
+        if (this.in.readUnsignedByte() != RelayServer.HELLO) {
+            throw new IOException("Relay server didn't say hello");
+        }
+        this.client = this.in.readInt();
+        this.running = true;
+        Thread reader = new Thread(this::readOperations, "sketchy-collab-read-" + this.client);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /** Accessor method returning the editor's number given by the relay server. */
+    public int getClient() {
+        return this.client;
+    }
+
+    public LamportClock getClock() {
+        return this.clock;
+    }
+
+    /** Method adding a local operation to the pending batch. */
+    public synchronized void submit(Operation operation) {
+        Operation queued = this.pending.get(operation.getKey());
+        if (queued == null || operation.isNewerThan(queued.getClock(), queued.getClient())) {
+            this.pending.put(operation.getKey(), operation);
+        }
+    }
+
+    /** Method sending all pending operations as a single batch - meant to be called once per frame. */
+    public synchronized void flush() throws IOException {
+        if (!this.pending.isEmpty()) {
+            ArrayList<Operation> batch = new ArrayList<>(this.pending.values());
+            this.pending.clear();
+            int before = this.out.size();
+            RelayServer.writeBatch(this.out, this.encoder, batch);
+            this.bytesSent += this.out.size() - before;
+        }
+    }
+
+    /** Method moving all operations received so far into the list passed in as a parameter. */
+    public void drain(List<Operation> into) {
+        Operation operation;
+        while ((operation = this.incoming.poll()) != null) {
+            into.add(operation);
+        }
+    }
+
+    /** Accessor method returning the number of bytes sent to the relay server so far. */
+    public synchronized long getBytesSent() {
+        return this.bytesSent;
+    }
+
+    /** Accessor method returning why the connection to the relay server has been lost (null while it hasn't). */
+    public String getLost() {
+        return this.lost;
+    }
+
+    public void close() {
+        this.running = false;
+        try {
+            this.socket.close();
+        } catch (IOException e) {
+            // the connection is being closed anyway
+        }
+    }
+
+    /** Helper method run on the background thread - decodes batches and moves the clock past every operation. */
+    private void readOperations() {
+        try {
+            while (this.running) {
+                this.in.readInt();
+                if (this.in.readUnsignedByte() != RelayServer.BATCH) {
+                    throw new IOException("Unexpected message from the relay server");
+                }
+                for (Operation operation : this.decoder.decode(this.in)) {
+                    this.clock.observe(operation.getClock());
+                    this.incoming.add(operation);
+                }
+            }
+        } catch (IOException e) {
+            if (this.running) {
+                this.lost = "Lost connection to the relay server: " + e.getMessage();
+            }
+        }
+    }
+}
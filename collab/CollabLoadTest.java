@@ -0,0 +1,235 @@
+package sketchy.collab;
+
+import sketchy.shapes.ElementType;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Load test of the collaboration mode, run from the command line (no JavaFX needed):
+ *   java sketchy.collab.CollabLoadTest [clients] [seconds] [operationsPerFrame]
+ * It starts a relay server on a free loopback port and connects many simulated editors to it, each on its own
+ * thread. Every frame, each editor creates, moves, resizes, recolors or deletes random elements (its own and
+ * other editors' ones), applies the operations to its own replica, and flushes them as one batch - exactly as a
+ * CollabSession does. Each editor also stamps a "ping" element with the current time every frame (without
+ * applying it to any replica), so that the others can measure how long operations take to reach them.
+ * Once the editors stop editing, the test measures how long it takes until all replicas (and the relay's one)
+ * are identical, and reports operation throughput, propagation latency percentiles, bytes sent per operation
+ * and the convergence time.
+ */
+public class CollabLoadTest {
+    private static final long PING_COUNTER = 0xFFFFFFFFFFL;
+    private static final long CONVERGENCE_TIMEOUT_MILLIS = 30000;
+
+    private int clients;
+    private int seconds;
+    private int operationsPerFrame;
+    private AtomicLong operationsSent;
+    private AtomicLong operationsReceived;
+    private ConcurrentLinkedQueue<Long> latencies;
+
+    public CollabLoadTest(int clients, int seconds, int operationsPerFrame) {
+        this.clients = clients;
+        this.seconds = seconds;
+        this.operationsPerFrame = operationsPerFrame;
+        this.operationsSent = new AtomicLong();
+        this.operationsReceived = new AtomicLong();
+        this.latencies = new ConcurrentLinkedQueue<>();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = (args.length > 0) ? Integer.parseInt(args[0]) : 32;
+        int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+        int operationsPerFrame = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+        new CollabLoadTest(clients, seconds, operationsPerFrame).run();
+    }
+
+    /** Method running the whole test and printing its results. */
+    public void run() throws Exception {
+        RelayServer relay = new RelayServer();
+        relay.start(0);
+        ArrayList<SimulatedEditor> editors = new ArrayList<>();
+        for (int i = 0; i < this.clients; i++) {
+            editors.add(new SimulatedEditor(new CollabClient(relay.getPort()), i));
+        }
+        long endOfEditing = System.currentTimeMillis() + this.seconds * 1000L;
+        CountDownLatch stopped = new CountDownLatch(this.clients);
+        for (SimulatedEditor editor : editors) {
+            Thread thread = new Thread(() -> {
+                editor.run(endOfEditing);
+                stopped.countDown();
+            }, "simulated-editor-" + editor.client.getClient());
+            thread.setDaemon(true);
+            thread.start();
+        }
+        stopped.await();
+        long editingStopped = System.nanoTime();
+
+        long convergedAfter = -1;
+        long deadline = System.currentTimeMillis() + CONVERGENCE_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            for (SimulatedEditor editor : editors) {
+                editor.receive();
+            }
+            if (this.converged(editors)) {
+                convergedAfter = System.nanoTime() - editingStopped;
+                break;
+            }
+            Thread.sleep(RelayServer.FRAME_MILLIS);
+        }
+        this.report(editors, convergedAfter);
+        for (SimulatedEditor editor : editors) {
+            editor.client.close();
+        }
+        relay.stop();
+    }
+
+    /** Helper method checking whether all editors' replicas are identical. */
+    private boolean converged(ArrayList<SimulatedEditor> editors) {
+        long digest = editors.get(0).replica.digest();
+        for (SimulatedEditor editor : editors) {
+            if (editor.replica.digest() != digest) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Helper method printing the results of the test. */
+    private void report(ArrayList<SimulatedEditor> editors, long convergedAfter) {
+        long bytes = 0;
+        for (SimulatedEditor editor : editors) {
+            bytes += editor.client.getBytesSent();
+        }
+        long[] sorted = new long[this.latencies.size()];
+        int i = 0;
+        for (long latency : this.latencies) {
+            sorted[i++] = latency;
+        }
+        Arrays.sort(sorted);
+        System.out.println("editors:                 " + this.clients);
+        System.out.println("operations sent:         " + this.operationsSent.get()
+                + " (" + (this.operationsSent.get() / Math.max(1, this.seconds)) + "/s)");
+        System.out.println("operations received:     " + this.operationsReceived.get()
+                + " (" + (this.operationsReceived.get() / Math.max(1, this.seconds)) + "/s)");
+        System.out.println("bytes sent per operation: " + String.format("%.2f", bytes / (double) Math.max(1, this.operationsSent.get())));
+        System.out.println("latency p50/p90/p99/max: " + millis(percentile(sorted, 0.5)) + " / "
+                + millis(percentile(sorted, 0.9)) + " / " + millis(percentile(sorted, 0.99)) + " / "
+                + millis(percentile(sorted, 1.0)) + " ms");
+        System.out.println("elements in the document: " + editors.get(0).replica.size());
+        System.out.println((convergedAfter >= 0) ? "converged after:         " + millis(convergedAfter) + " ms"
+                : "replicas did NOT converge within " + CONVERGENCE_TIMEOUT_MILLIS + " ms");
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))];
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1e6);
+    }
+
+    /** A single simulated editor - a client connection with its own replica and its own random edits. */
+    private final class SimulatedEditor {
+        private CollabClient client;
+        private ReplicaState replica;
+        private Random random;
+        private ArrayList<Long> knownIds;
+        private long nextCounter;
+        private long pingId;
+
+        private SimulatedEditor(CollabClient client, int seed) {
+            this.client = client;
+            this.replica = new ReplicaState();
+            this.random = new Random(seed);
+            this.knownIds = new ArrayList<>();
+            this.nextCounter = 1;
+            this.pingId = ((long) client.getClient() << 40) | PING_COUNTER;
+        }
+
+        /** Method editing every frame until the end of editing, then flushing the last batch. */
+        private void run(long endOfEditing) {
+            try {
+                while (System.currentTimeMillis() < endOfEditing) {
+                    long frameStart = System.nanoTime();
+                    this.receive();
+                    for (int i = 0; i < CollabLoadTest.this.operationsPerFrame; i++) {
+                        this.edit();
+                    }
+                    this.client.submit(new Operation(this.pingId, Property.ANGLE, new double[] {System.nanoTime()},
+                            this.client.getClock().tick(), this.client.getClient()));
+                    this.client.flush();
+                    long sleep = RelayServer.FRAME_MILLIS - (System.nanoTime() - frameStart) / 1000000;
+                    if (sleep > 0) {
+                        Thread.sleep(sleep);
+                    }
+                }
+                this.client.flush();
+            } catch (IOException | InterruptedException e) {
+                System.err.println("Simulated editor failed: " + e);
+            }
+        }
+
+        /** Helper method making a single random edit - a new element, or a change of a known one. */
+        private void edit() {
+            if (this.knownIds.isEmpty() || this.random.nextInt(10) == 0) {
+                long id = ((long) this.client.getClient() << 40) | this.nextCounter++;
+                this.knownIds.add(id);
+                this.submit(id, Property.TYPE, new double[] {this.random.nextInt(2) == 0
+                        ? ElementType.RECTANGLE.ordinal() : ElementType.ELLIPSE.ordinal()});
+                this.submit(id, Property.ALIVE, new double[] {1});
+                this.submit(id, Property.CENTER, new double[] {this.random.nextDouble() * 800, this.random.nextDouble() * 600});
+                this.submit(id, Property.SIZE, new double[] {10 + this.random.nextDouble() * 50, 10 + this.random.nextDouble() * 50});
+                this.submit(id, Property.ANGLE, new double[] {0});
+                this.submit(id, Property.COLOR, new double[] {this.random.nextDouble(), this.random.nextDouble(), this.random.nextDouble()});
+                this.submit(id, Property.Z, new double[] {this.nextCounter});
+                this.submit(id, Property.POINTS, new double[0]);
+                return;
+            }
+            long id = this.knownIds.get(this.random.nextInt(this.knownIds.size()));
+            switch (this.random.nextInt(5)) {
+                case 0:
+                case 1:
+                    this.submit(id, Property.CENTER, new double[] {this.random.nextDouble() * 800, this.random.nextDouble() * 600});
+                    break;
+                case 2:
+                    this.submit(id, Property.SIZE, new double[] {10 + this.random.nextDouble() * 50, 10 + this.random.nextDouble() * 50});
+                    break;
+                case 3:
+                    this.submit(id, Property.COLOR, new double[] {this.random.nextDouble(), this.random.nextDouble(), this.random.nextDouble()});
+                    break;
+                default:
+                    this.submit(id, Property.ALIVE, new double[] {this.random.nextInt(4) == 0 ? 0 : 1});
+                    break;
+            }
+        }
+
+        private void submit(long id, Property property, double[] values) {
+            Operation operation = new Operation(id, property, values, this.client.getClock().tick(), this.client.getClient());
+            this.replica.apply(operation);
+            this.client.submit(operation);
+            CollabLoadTest.this.operationsSent.incrementAndGet();
+        }
+
+        /** Method applying all received operations, and measuring the latency of other editors' pings. */
+        private void receive() {
+            ArrayList<Operation> received = new ArrayList<>();
+            this.client.drain(received);
+            long now = System.nanoTime();
+            for (Operation operation : received) {
+                if ((operation.getElementId() & PING_COUNTER) == PING_COUNTER) {
+                    CollabLoadTest.this.latencies.add(now - (long) operation.getValues()[0]);
+                } else if (this.replica.apply(operation) && operation.getProperty() == Property.TYPE) {
+                    this.knownIds.add(operation.getElementId());
+                }
+            }
+            CollabLoadTest.this.operationsReceived.addAndGet(received.size());
+        }
+    }
+}
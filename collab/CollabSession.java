@@ -0,0 +1,142 @@
+package sketchy.collab;
+
+import javafx.animation.AnimationTimer;
+import sketchy.document.DocumentListener;
+import sketchy.document.DocumentModel;
+import sketchy.shapes.ElementIds;
+import sketchy.shapes.ShapeRecord;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+/** Collaboration mode of a single editor - it connects Sketchy's document model with the relay server.
+ * As a listener of the document model, the session turns every change of a record (made by any command,
+ * its undo or redo) into operations on the changed properties, applies them to its own replica and submits them
+ * to the relay. Once per pulse (through an AnimationTimer, on the JavaFX thread), it sends the pending batch,
+ * applies all operations received from other editors to the replica, and hands the resulting records of all
+ * changed elements over to Sketchy, which brings the pane up to date. While it does so, changes of the document
+ * model aren't broadcast again.
+ * The first editor to start collaborating on a given port also starts the relay server, and shares its
+ * current document; editors joining later receive the relay's document instead of their own.
+ */
+public class CollabSession implements DocumentListener {
+    private RemoteEditTarget target;
+    private DocumentModel document;
+    private CollabClient client;
+    private RelayServer relay;
+    private ReplicaState replica;
+    private AnimationTimer timer;
+    private boolean applyingRemote;
+
+    /** Interface implemented by the editor (Sketchy), to which records changed by other editors are handed
+     * over - record is null whenever the element has been deleted. The editor is also told whenever the session
+     * ends on its own (the relay connection has dropped), along with the reason.
+     */
+    public interface RemoteEditTarget {
+        void applyRemoteRecord(long id, ShapeRecord record);
+        void clearDocument();
+        void sessionEnded(String reason);
+    }
+
+    private CollabSession(RemoteEditTarget target, DocumentModel document, CollabClient client, RelayServer relay) {
+        this.target = target;
+        this.document = document;
+        this.client = client;
+        this.relay = relay;
+        this.replica = new ReplicaState();
+        ElementIds.setClient(client.getClient());
+    }
+
+    /** Method starting a collaboration session - joining the relay server on a given port if there is one,
+     * or starting a new one (and sharing the current document through it) if there isn't.
+     */
+    public static CollabSession start(RemoteEditTarget target, DocumentModel document, int port) throws IOException {
+        CollabSession session;
+        try {
+            session = new CollabSession(target, document, new CollabClient(port), null);
+            target.clearDocument();
+        } catch (ConnectException e) {
+            RelayServer relay = new RelayServer();
+            relay.start(port);
+            session = new CollabSession(target, document, new CollabClient(port), relay);
+            for (ShapeRecord record : document.snapshot()) {
+                session.recordChanged(null, record);
+            }
+        }
+        session.begin();
+        return session;
+    }
+
+    /** Helper method starting to listen to the document model, and to pulse once per frame. */
+    private void begin() {
+        this.document.addListener(this);
+        this.timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                CollabSession.this.pulse();
+            }
+        };
+        this.timer.start();
+    }
+
+    /** Method turning a change of the document model into operations, unless it's been caused by other editors. */
+    @Override
+    public void recordChanged(ShapeRecord old, ShapeRecord updated) {
+        if (this.applyingRemote) {
+            return;
+        }
+        for (Operation operation : Operation.diff(old, updated, this.client.getClock(), this.client.getClient())) {
+            this.replica.apply(operation);
+            this.client.submit(operation);
+        }
+    }
+
+    /** Method called once per pulse - sends the local batch, and applies all received operations at once. If the
+     * connection to the relay has dropped, the session stops and tells the editor why instead.
+     */
+    public void pulse() {
+        String lost = this.client.getLost();
+        if (lost == null) {
+            try {
+                this.client.flush();
+            } catch (IOException e) {
+                lost = "Couldn't send operations to the relay server: " + e.getMessage();
+            }
+        }
+        if (lost != null) {
+            this.stop();
+            this.target.sessionEnded(lost);
+            return;
+        }
+        ArrayList<Operation> received = new ArrayList<>();
+        this.client.drain(received);
+        if (received.isEmpty()) {
+            return;
+        }
+        LinkedHashSet<Long> changed = new LinkedHashSet<>();
+        for (Operation operation : received) {
+            if (this.replica.apply(operation)) {
+                changed.add(operation.getElementId());
+            }
+        }
+        this.applyingRemote = true;
+        try {
+            for (long id : changed) {
+                this.target.applyRemoteRecord(id, this.replica.toRecord(id));
+            }
+        } finally {
+            this.applyingRemote = false;
+        }
+    }
+
+    /** Method leaving the session (and stopping the relay server, if this editor has started it). */
+    public void stop() {
+        this.timer.stop();
+        this.document.removeListener(this);
+        this.client.close();
+        if (this.relay != null) {
+            this.relay.stop();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package sketchy.collab;
+
+/** Lamport clock of a single editor - a counter that's incremented for every local operation and moved
+ * forward past the time of every operation received from other editors. This way, an operation made after
+ * having seen another one always gets a greater time, so that "last writer wins" follows causality
+ * even though the editors' system clocks are never compared.
+ */
+public class LamportClock {
+    private long time;
+
+    /** Method returning the time for a new local operation. */
+    public synchronized long tick() {
+        this.time++;
+        return this.time;
+    }
+
+    /** Method moving the clock forward after having received an operation stamped with a given time. */
+    public synchronized void observe(long received) {
+        if (received > this.time) {
+            this.time = received;
+        }
+    }
+
+    public synchronized long getTime() {
+        return this.time;
+    }
+}
@@ -0,0 +1,114 @@
+package sketchy.collab;
+
+import sketchy.shapes.ShapeRecord;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** A single, serializable change of the document that can be sent to other editors - it sets one property
+ * of the element with a given (stable) ID to new values. Every operation is stamped with the Lamport time of
+ * the editor that made it and that editor's number, so that all editors order concurrent operations on the same
+ * property identically (the greater time wins, and the greater editor number breaks ties) and end up with
+ * the same document no matter in what order the operations arrive.
+ * Operations are created from the changes of the document model: whenever a command changes a record, diff
+ * compares the old record with the new one and returns operations for the properties that differ.
+ */
+public final class Operation implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long elementId;
+    private final Property property;
+    private final double[] values;
+    private final long clock;
+    private final int client;
+
+    public Operation(long elementId, Property property, double[] values, long clock, int client) {
+        this.elementId = elementId;
+        this.property = property;
+        this.values = values;
+        this.clock = clock;
+        this.client = client;
+    }
+
+    public long getElementId() {
+        return this.elementId;
+    }
+
+    public Property getProperty() {
+        return this.property;
+    }
+
+    /** Accessor method returning the new values of the property - the returned array mustn't be modified. */
+    public double[] getValues() {
+        return this.values;
+    }
+
+    public long getClock() {
+        return this.clock;
+    }
+
+    public int getClient() {
+        return this.client;
+    }
+
+    /** Method checking whether this operation should win over another one setting the same property. */
+    public boolean isNewerThan(long otherClock, int otherClient) {
+        return (this.clock > otherClock) || (this.clock == otherClock && this.client > otherClient);
+    }
+
+    /** Helper method returning the key under which operations on the same property of the same element are
+     * coalesced (only the newest of them has to be sent).
+     */
+    public long getKey() {
+        return key(this.elementId, this.property);
+    }
+
+    public static long key(long elementId, Property property) {
+        return elementId * Property.values().length + property.ordinal();
+    }
+
+    /** Method comparing two records of the same element and returning operations for all the properties that
+     * have changed, all stamped with the clock and editor number passed in as parameters. If the element has
+     * just been created (old record is null), all of its properties are included; if it's been deleted
+     * (new record is null), only ALIVE is set to 0.
+     */
+    public static ArrayList<Operation> diff(ShapeRecord old, ShapeRecord updated, LamportClock clock, int client) {
+        ArrayList<Operation> operations = new ArrayList<>();
+        if (updated == null) {
+            if (old != null) {
+                operations.add(new Operation(old.getId(), Property.ALIVE, new double[] {0}, clock.tick(), client));
+            }
+            return operations;
+        }
+        long id = updated.getId();
+        for (Property property : Property.values()) {
+            double[] values = values(updated, property);
+            if (old == null || !Arrays.equals(values(old, property), values)) {
+                operations.add(new Operation(id, property, values, clock.tick(), client));
+            }
+        }
+        return operations;
+    }
+
+    /** Helper method returning the values of a single property of a record. */
+    public static double[] values(ShapeRecord record, Property property) {
+        switch (property) {
+            case TYPE:
+                return new double[] {record.getType().ordinal()};
+            case ALIVE:
+                return new double[] {1};
+            case CENTER:
+                return new double[] {record.getCenterX(), record.getCenterY()};
+            case SIZE:
+                return new double[] {record.getWidth(), record.getHeight()};
+            case ANGLE:
+                return new double[] {record.getAngle()};
+            case COLOR:
+                return new double[] {record.getRed(), record.getGreen(), record.getBlue()};
+            case Z:
+                return new double[] {record.getZ()};
+            default:
+                return record.getPoints();
+        }
+    }
+}
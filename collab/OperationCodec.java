@@ -0,0 +1,164 @@
+package sketchy.collab;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** Compact, delta-compressed encoding of batches of operations sent over a single connection. One codec is
+ * kept on each end of a connection (an encoding one on the sending side and a decoding one on the receiving side),
+ * and both of them remember the last values sent for every property of every element - so that instead of
+ * writing whole doubles, only the bytes of each value that differ from the previous one are written (a moved
+ * shape usually shares the sign, exponent and upper mantissa bits with its previous location).
+ * Element IDs and clocks are written as variable-length differences from the previous operation in the batch,
+ * and the points of a line are written only from the first point that differs from the previously sent ones
+ * (a line that's being drawn only ever gets new points at its end).
+ * As the codecs on both ends update their memory identically, batches have to be decoded in the order they
+ * have been encoded, which is always the case over a single socket.
+ */
+public class OperationCodec {
+    private HashMap<Long, double[]> lastValues;
+
+    public OperationCodec() {
+        this.lastValues = new HashMap<>();
+    }
+
+    /** Method encoding a batch of operations into a byte array. */
+    public byte[] encode(List<Operation> operations) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeVarLong(out, operations.size());
+        long previousId = 0;
+        long previousClock = 0;
+        for (Operation operation : operations) {
+            out.writeByte(operation.getProperty().ordinal());
+            writeVarLong(out, zigZag(operation.getElementId() - previousId));
+            writeVarLong(out, zigZag(operation.getClock() - previousClock));
+            writeVarLong(out, operation.getClient());
+            previousId = operation.getElementId();
+            previousClock = operation.getClock();
+            double[] previous = this.lastValues.get(operation.getKey());
+            double[] values = operation.getValues();
+            if (operation.getProperty().getLength() < 0) {
+                int prefix = 0;
+                if (previous != null) {
+                    int limit = Math.min(previous.length, values.length);
+                    while (prefix < limit && previous[prefix] == values[prefix]) {
+                        prefix++;
+                    }
+                }
+                writeVarLong(out, prefix);
+                writeVarLong(out, values.length);
+                for (int i = prefix; i < values.length; i++) {
+                    writeXorDouble(out, (i >= 2) ? values[i - 2] : 0, values[i]);
+                }
+            } else {
+                for (int i = 0; i < values.length; i++) {
+                    writeXorDouble(out, (previous != null) ? previous[i] : 0, values[i]);
+                }
+            }
+            this.lastValues.put(operation.getKey(), values);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Method decoding a batch of operations encoded by the codec on the other end of the connection. */
+    public ArrayList<Operation> decode(DataInputStream in) throws IOException {
+        int count = (int) readVarLong(in);
+        ArrayList<Operation> operations = new ArrayList<>(count);
+        long previousId = 0;
+        long previousClock = 0;
+        for (int n = 0; n < count; n++) {
+            Property property = Property.values()[in.readUnsignedByte()];
+            long id = previousId + unZigZag(readVarLong(in));
+            long clock = previousClock + unZigZag(readVarLong(in));
+            int client = (int) readVarLong(in);
+            previousId = id;
+            previousClock = clock;
+            long key = Operation.key(id, property);
+            double[] previous = this.lastValues.get(key);
+            double[] values;
+            if (property.getLength() < 0) {
+                int prefix = (int) readVarLong(in);
+                values = new double[(int) readVarLong(in)];
+                if (prefix > 0) {
+                    System.arraycopy(previous, 0, values, 0, prefix);
+                }
+                for (int i = prefix; i < values.length; i++) {
+                    values[i] = readXorDouble(in, (i >= 2) ? values[i - 2] : 0);
+                }
+            } else {
+                values = new double[property.getLength()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = readXorDouble(in, (previous != null) ? previous[i] : 0);
+                }
+            }
+            this.lastValues.put(key, values);
+            operations.add(new Operation(id, property, values, clock, client));
+        }
+        return operations;
+    }
+
+    /** Helper method writing a double as the bytes in which it differs from a reference value - a single
+     * header byte stores how many of the XOR's leading and trailing bytes are zero, followed by the rest.
+     */
+    private static void writeXorDouble(DataOutputStream out, double reference, double value) throws IOException {
+        long xor = Double.doubleToRawLongBits(reference) ^ Double.doubleToRawLongBits(value);
+        if (xor == 0) {
+            out.writeByte(0);
+            return;
+        }
+        int leading = Long.numberOfLeadingZeros(xor) / 8;
+        int trailing = Long.numberOfTrailingZeros(xor) / 8;
+        out.writeByte(1 + leading * 8 + trailing);
+        for (int i = 7 - leading; i >= trailing; i--) {
+            out.writeByte((int) (xor >>> (i * 8)));
+        }
+    }
+
+    private static double readXorDouble(DataInputStream in, double reference) throws IOException {
+        int header = in.readUnsignedByte();
+        if (header == 0) {
+            return reference;
+        }
+        int leading = (header - 1) / 8;
+        int trailing = (header - 1) % 8;
+        long xor = 0;
+        for (int i = 7 - leading; i >= trailing; i--) {
+            xor |= ((long) in.readUnsignedByte()) << (i * 8);
+        }
+        return Double.longBitsToDouble(Double.doubleToRawLongBits(reference) ^ xor);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= ((long) (b & 0x7F)) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
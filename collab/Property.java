@@ -0,0 +1,29 @@
+package sketchy.collab;
+
+/** Enum of the properties of an element that can be changed independently by different editors. Every
+ * operation sets exactly one property of one element, and conflicts between concurrent edits are resolved per
+ * property (last writer wins) - this way, one editor moving a shape while another one recolors it keeps
+ * both changes. TYPE is only ever set when an element is created, and ALIVE marks whether it's been deleted.
+ * Each value also knows how many numbers it consists of (POINTS has a variable length).
+ */
+public enum Property {
+    TYPE(1),
+    ALIVE(1),
+    CENTER(2),
+    SIZE(2),
+    ANGLE(1),
+    COLOR(3),
+    Z(1),
+    POINTS(-1);
+
+    private int length;
+
+    Property(int length) {
+        this.length = length;
+    }
+
+    /** Accessor method returning the number of values of the property (or -1 if it varies). */
+    public int getLength() {
+        return this.length;
+    }
+}
@@ -0,0 +1,212 @@
+package sketchy.collab;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/** Small relay server that lets several editors work on the same sketch. It only listens on the loopback
+ * interface, gives each connecting editor its own number, and forwards every operation it receives to all
+ * the other editors. Operations aren't sent one by one - they're collected in a per-connection outbox (in which
+ * newer operations on the same property of the same element replace older ones) and sent once per frame as a
+ * single delta-compressed batch. The server also keeps its own replica of the document, so that editors
+ * joining a session that's already in progress receive the whole document right away.
+ * Every frame on the wire is a length-prefixed message, starting with its kind (HELLO or BATCH).
+ */
+public class RelayServer {
+    public static final int HELLO = 1;
+    public static final int BATCH = 2;
+    public static final long FRAME_MILLIS = 16;
+
+    private ServerSocket serverSocket;
+    private ArrayList<Connection> connections;
+    private ReplicaState state;
+    private ScheduledExecutorService flusher;
+    private int nextClient;
+    private volatile boolean running;
+
+    public RelayServer() {
+        this.connections = new ArrayList<>();
+        this.state = new ReplicaState();
+        this.nextClient = 1;
+    }
+
+    /** Method starting the server on a given port (0 picks any free one) - accepting connections and flushing
+     * the outboxes both happen on background threads.
+     */
+    public void start(int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.running = true;
+        Thread acceptor = new Thread(this::acceptConnections, "sketchy-relay-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        this.flusher = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread thread = new Thread(r, "sketchy-relay-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleAtFixedRate(this::flush, FRAME_MILLIS, FRAME_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    /** Method stopping the server and closing all connections. */
+    public void stop() {
+        this.running = false;
+        this.flusher.shutdownNow();
+        try {
+            this.serverSocket.close();
+        } catch (IOException e) {
+            // the server is being stopped anyway
+        }
+        synchronized (this) {
+            for (Connection connection : this.connections) {
+                connection.close();
+            }
+            this.connections.clear();
+        }
+    }
+
+    /** Helper method run on the accepting thread - every new editor gets its number and the whole current
+     * document (queued in its outbox), and a thread of its own reading its operations.
+     */
+    private void acceptConnections() {
+        while (this.running) {
+            try {
+                Socket socket = this.serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(socket);
+                synchronized (this) {
+                    connection.client = this.nextClient++;
+                    DataOutputStream hello = connection.out;
+                    hello.writeInt(5);
+                    hello.writeByte(HELLO);
+                    hello.writeInt(connection.client);
+                    hello.flush();
+                    for (Operation operation : this.state.toOperations()) {
+                        connection.queue(operation);
+                    }
+                    this.connections.add(connection);
+                }
+                Thread reader = new Thread(() -> this.readOperations(connection), "sketchy-relay-read-" + connection.client);
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (this.running) {
+                    System.err.println("Relay server couldn't accept a connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Helper method run on a connection's own thread - decodes incoming batches, applies them to the server's
+     * replica and queues them for all the other editors, until the editor disconnects.
+     */
+    private void readOperations(Connection connection) {
+        try {
+            while (this.running) {
+                connection.in.readInt();
+                int kind = connection.in.readUnsignedByte();
+                if (kind != BATCH) {
+                    throw new IOException("Unexpected message kind " + kind);
+                }
+                ArrayList<Operation> operations = connection.decoder.decode(connection.in);
+                synchronized (this) {
+                    for (Operation operation : operations) {
+                        this.state.apply(operation);
+                        for (Connection other : this.connections) {
+                            if (other != connection) {
+                                other.queue(operation);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // the editor has disconnected
+        }
+        synchronized (this) {
+            this.connections.remove(connection);
+        }
+        connection.close();
+    }
+
+    /** Helper method run once per frame - sends each connection's outbox as a single batch. The outboxes are
+     * only taken over while holding the lock, so that reading threads aren't blocked while batches are written.
+     */
+    private void flush() {
+        ArrayList<Connection> targets = new ArrayList<>();
+        ArrayList<ArrayList<Operation>> batches = new ArrayList<>();
+        synchronized (this) {
+            for (Connection connection : this.connections) {
+                if (!connection.outbox.isEmpty()) {
+                    targets.add(connection);
+                    batches.add(new ArrayList<>(connection.outbox.values()));
+                    connection.outbox.clear();
+                }
+            }
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            try {
+                writeBatch(targets.get(i).out, targets.get(i).encoder, batches.get(i));
+            } catch (IOException e) {
+                targets.get(i).close();
+            }
+        }
+    }
+
+    /** Helper method writing a batch of operations as one length-prefixed frame (shared with the editors' side). */
+    public static void writeBatch(DataOutputStream out, OperationCodec encoder, ArrayList<Operation> operations) throws IOException {
+        byte[] payload = encoder.encode(operations);
+        out.writeInt(payload.length + 1);
+        out.writeByte(BATCH);
+        out.write(payload);
+        out.flush();
+    }
+
+    private static final class Connection {
+        private Socket socket;
+        private DataInputStream in;
+        private DataOutputStream out;
+        private OperationCodec decoder;
+        private OperationCodec encoder;
+        private LinkedHashMap<Long, Operation> outbox;
+        private int client;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.decoder = new OperationCodec();
+            this.encoder = new OperationCodec();
+            this.outbox = new LinkedHashMap<>();
+        }
+
+        /** Method adding an operation to the outbox, unless a newer one on the same property is already there. */
+        private void queue(Operation operation) {
+            Operation queued = this.outbox.get(operation.getKey());
+            if (queued == null || operation.isNewerThan(queued.getClock(), queued.getClient())) {
+                this.outbox.put(operation.getKey(), operation);
+            }
+        }
+
+        private void close() {
+            try {
+                this.socket.close();
+            } catch (IOException e) {
+                // nothing left to do with a broken connection
+            }
+        }
+    }
+}
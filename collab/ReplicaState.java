@@ -0,0 +1,113 @@
+package sketchy.collab;
+
+import sketchy.shapes.ElementType;
+import sketchy.shapes.ShapeRecord;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/** State of the shared document as seen by a single editor (or by the relay server) - for every element and
+ * every property, the newest value received so far together with the stamp of the operation that set it.
+ * Applying an operation only changes the state if the operation is newer than the one that set the property
+ * last (last writer wins, per property), so applying the same set of operations in any order (or more than
+ * once) always leads to the same state - that's what makes all editors' documents converge.
+ */
+public class ReplicaState {
+    private static final int PROPERTIES = Property.values().length;
+
+    private HashMap<Long, ElementState> elements;
+
+    public ReplicaState() {
+        this.elements = new HashMap<>();
+    }
+
+    /** Method applying an operation - returns true if it has changed the state (it was newer than the last one). */
+    public boolean apply(Operation operation) {
+        ElementState state = this.elements.get(operation.getElementId());
+        if (state == null) {
+            state = new ElementState();
+            this.elements.put(operation.getElementId(), state);
+        }
+        int index = operation.getProperty().ordinal();
+        if (state.values[index] != null && !operation.isNewerThan(state.clocks[index], state.clients[index])) {
+            return false;
+        }
+        state.values[index] = operation.getValues();
+        state.clocks[index] = operation.getClock();
+        state.clients[index] = operation.getClient();
+        return true;
+    }
+
+    /** Method returning the record of an element as described by the state, or null if the element has been
+     * deleted (or not all of its properties have arrived yet).
+     */
+    public ShapeRecord toRecord(long id) {
+        ElementState state = this.elements.get(id);
+        if (state == null) {
+            return null;
+        }
+        for (double[] values : state.values) {
+            if (values == null) {
+                return null;
+            }
+        }
+        if (state.get(Property.ALIVE)[0] == 0) {
+            return null;
+        }
+        double[] center = state.get(Property.CENTER);
+        double[] size = state.get(Property.SIZE);
+        double[] color = state.get(Property.COLOR);
+        ElementType type = ElementType.values()[(int) state.get(Property.TYPE)[0]];
+        return new ShapeRecord(id, type, center[0], center[1], size[0], size[1], state.get(Property.ANGLE)[0],
+                color[0], color[1], color[2], state.get(Property.POINTS), state.get(Property.Z)[0]);
+    }
+
+    /** Method returning operations that recreate the whole state (with their original stamps) - sent by the
+     * relay server to editors joining a session that's already in progress.
+     */
+    public ArrayList<Operation> toOperations() {
+        ArrayList<Operation> operations = new ArrayList<>();
+        for (Map.Entry<Long, ElementState> entry : this.elements.entrySet()) {
+            ElementState state = entry.getValue();
+            for (int i = 0; i < PROPERTIES; i++) {
+                if (state.values[i] != null) {
+                    operations.add(new Operation(entry.getKey(), Property.values()[i], state.values[i],
+                            state.clocks[i], state.clients[i]));
+                }
+            }
+        }
+        return operations;
+    }
+
+    /** Method returning the number of elements the state knows of (including deleted ones). */
+    public int size() {
+        return this.elements.size();
+    }
+
+    /** Method returning a hash of the whole state (independent of the order of elements in the map), so that
+     * two states can be compared cheaply - equal states always have equal digests.
+     */
+    public long digest() {
+        long digest = 0;
+        for (Map.Entry<Long, ElementState> entry : this.elements.entrySet()) {
+            long h = entry.getKey() * 0x9E3779B97F4A7C15L;
+            ElementState state = entry.getValue();
+            for (int i = 0; i < PROPERTIES; i++) {
+                h = h * 31 + state.clocks[i];
+                h = h * 31 + state.clients[i];
+            }
+            digest += h ^ (h >>> 31);
+        }
+        return digest;
+    }
+
+    private static final class ElementState {
+        private final double[][] values = new double[PROPERTIES][];
+        private final long[] clocks = new long[PROPERTIES];
+        private final int[] clients = new int[PROPERTIES];
+
+        private double[] get(Property property) {
+            return this.values[property.ordinal()];
+        }
+    }
+}
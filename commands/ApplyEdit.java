@@ -0,0 +1,29 @@
+package sketchy.commands;
+import sketchy.shapes.Savable;
+import java.util.ArrayList;
+
+/** ApplyEdit class implements the BulkCommand interface and is instantiated whenever the diff of an edit run by
+ * the document actor has been applied to the elements - it carries all the elements the edit has changed, added
+ * or removed, so that Sketchy syncs them in one go and the whole edit becomes a single step of the history,
+ * however many elements it has touched.
+ */
+public class ApplyEdit implements BulkCommand {
+    private ArrayList<Savable> all;
+
+    /** Constructor taking in the changed, the inserted and the removed elements. */
+    public ApplyEdit(ArrayList<Savable> changed, ArrayList<Savable> inserted, ArrayList<Savable> removed) {
+        this.all = new ArrayList<>(changed);
+        this.all.addAll(inserted);
+        this.all.addAll(removed);
+    }
+
+    @Override
+    public Savable getElement() {
+        return null;
+    }
+
+    @Override
+    public ArrayList<Savable> getElements() {
+        return this.all;
+    }
+}
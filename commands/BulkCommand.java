@@ -0,0 +1,11 @@
+package sketchy.commands;
+import sketchy.shapes.Savable;
+import java.util.ArrayList;
+
+/** Interface implemented by commands acting on many elements at once (e.g. inserting a whole imported drawing),
+ * so that all of them become a single step of the history. Since such commands don't act on a single
+ * element, their getElement method returns null, and Sketchy syncs every element returned by getElements instead.
+ */
+public interface BulkCommand extends Command {
+    ArrayList<Savable> getElements();
+}
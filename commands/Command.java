@@ -1,13 +1,18 @@
 package sketchy.commands;
+import sketchy.shapes.Savable;
 
-/** This is the command interface implemented by all command classes that can call methods on Sketchy's shapes
- * (ellipses and rectangles). Although each command class is responsible for a different action
- * (lowering/raising shapes, etc.), they all share the capability to be redone or undone, and
- * should be therefore added to a stack of commands to preserve the order of being called - thus,
- * to allow for generic coding, they all implement the interface which f.e. allows sketchy to call
- * a universal method on the recently performed command without the need to specify its actual type.
+/** This is the command interface implemented by all command classes - each of them stands for a single action the
+ * user can take on Sketchy's elements (creating, moving, raising a shape, etc.), and an instance of it is created
+ * by Sketchy once the action has been performed. Sketchy then records it in the history, which only keeps the
+ * command's name as the label of a new step, and brings the records of the elements the command acts on up to date
+ * in the document model - it's the changes of these records that the history keeps for every step. Undoing and
+ * redoing a step is seeking another step of the history (see History.seek), which brings back the records from
+ * before or after those changes, so commands themselves are never undone or redone - all they have to tell is
+ * which elements they've acted on.
  * */
 public interface Command {
-    void undo() ;
-    void redo() ;
+    /** Method returning the element the command acts on - or null for commands acting on several elements at
+     * once, such as bulk commands (see BulkCommand) and grouping.
+     */
+    Savable getElement();
 }
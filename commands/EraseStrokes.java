@@ -0,0 +1,27 @@
+package sketchy.commands;
+import sketchy.shapes.Savable;
+import java.util.ArrayList;
+
+/** EraseStrokes class implements the BulkCommand interface and is instantiated whenever the user releases the
+ * mouse after erasing - a single stroke of the eraser can cut many lines into many pieces (and cut the pieces
+ * again), so rather than keeping track of every cut, the command carries the lines that have been erased and the
+ * pieces that are left of them (the erased lines themselves are never modified - they're only replaced by their
+ * pieces), which is all that has to be synced.
+ */
+public class EraseStrokes implements BulkCommand {
+    private ArrayList<Savable> touched;
+
+    public EraseStrokes(ArrayList<Savable> touched) {
+        this.touched = touched;
+    }
+
+    @Override
+    public Savable getElement() {
+        return null;
+    }
+
+    @Override
+    public ArrayList<Savable> getElements() {
+        return this.touched;
+    }
+}
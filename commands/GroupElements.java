@@ -0,0 +1,32 @@
+package sketchy.commands;
+import sketchy.shapes.ElementGroup;
+import sketchy.shapes.Savable;
+import java.util.ArrayList;
+
+/** GroupElements class implements the BulkCommand interface and is instantiated whenever the user groups
+ * elements - grouping moves all of the group's elements right under its topmost one (so that they can share
+ * a single node on the pane), so all of them have to be synced. Sketchy remembers the group along with the step
+ * the command has added to the history, and dissolves it whenever a seek leaves that step (bringing the very same
+ * group back whenever a seek enters it again).
+ */
+public class GroupElements implements BulkCommand {
+    private ElementGroup group;
+
+    public GroupElements(ElementGroup group) {
+        this.group = group;
+    }
+
+    @Override
+    public Savable getElement() {
+        return null;
+    }
+
+    @Override
+    public ArrayList<Savable> getElements() {
+        return this.group.getLeaves();
+    }
+
+    public ElementGroup getGroup() {
+        return this.group;
+    }
+}
@@ -0,0 +1,26 @@
+package sketchy.commands;
+import sketchy.shapes.Savable;
+import java.util.ArrayList;
+
+/** InsertElements class implements the BulkCommand interface and is instantiated whenever many elements are
+ * added to the sketchPane at once (e.g. when an SVG file is imported or a selection is pasted) - it carries all
+ * the inserted elements, so that they're synced with the document in one go and inserting them is a single step
+ * of the history.
+ */
+public class InsertElements implements BulkCommand {
+    private ArrayList<Savable> inserted;
+
+    public InsertElements(ArrayList<Savable> inserted) {
+        this.inserted = inserted;
+    }
+
+    @Override
+    public Savable getElement() {
+        return null;
+    }
+
+    @Override
+    public ArrayList<Savable> getElements() {
+        return this.inserted;
+    }
+}
@@ -0,0 +1,27 @@
+package sketchy.commands;
+import sketchy.shapes.Savable;
+import java.util.ArrayList;
+
+/** MoveLayer class implements the BulkCommand interface and is instantiated whenever a layer is moved above (or
+ * below) the next one. The elements of a layer always lie right above the ones of the layer below it, so moving
+ * a layer moves its whole block of elements past the block of the other layer - which changes the layering of
+ * all elements of both (and nothing else). The elements returned by getElements are the ones of the two layers,
+ * which is all that has to be synced.
+ */
+public class MoveLayer implements BulkCommand {
+    private ArrayList<Savable> moved;
+
+    public MoveLayer(ArrayList<Savable> moved) {
+        this.moved = moved;
+    }
+
+    @Override
+    public Savable getElement() {
+        return null;
+    }
+
+    @Override
+    public ArrayList<Savable> getElements() {
+        return this.moved;
+    }
+}
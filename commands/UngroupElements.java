@@ -0,0 +1,30 @@
+package sketchy.commands;
+import sketchy.shapes.ElementGroup;
+import sketchy.shapes.Savable;
+import java.util.ArrayList;
+
+/** UngroupElements class implements the BulkCommand interface and is instantiated whenever the user ungroups
+ * a group - the group's members become separate elements again (keeping their layers). Sketchy remembers the
+ * group along with the step, so that a seek leaving it brings the group back.
+ */
+public class UngroupElements implements BulkCommand {
+    private ElementGroup group;
+
+    public UngroupElements(ElementGroup group) {
+        this.group = group;
+    }
+
+    @Override
+    public Savable getElement() {
+        return null;
+    }
+
+    @Override
+    public ArrayList<Savable> getElements() {
+        return this.group.getLeaves();
+    }
+
+    public ElementGroup getGroup() {
+        return this.group;
+    }
+}
@@ -0,0 +1,456 @@
+package sketchy.diff;
+
+import sketchy.io.ParallelSketchLoader;
+import sketchy.shapes.ElementType;
+import sketchy.shapes.RecordBounds;
+import sketchy.shapes.ShapeRecord;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Diff of two revisions of a sketch. Saved files don't keep the elements' IDs, so elements are matched by their
+ * content instead, in stages - each stage only looks at the elements no earlier stage has matched:
+ *   1. elements that haven't changed at all (same type, geometry, position and color),
+ *   2. elements that have only been moved (same shape and color, anywhere on the canvas),
+ *   3. elements that have only been recolored (same shape and position),
+ *   4. elements that have been both moved and recolored (same shape),
+ *   5. elements that have been reshaped (resized, rotated or redrawn) - the element of the same type whose box
+ *      overlaps the most with the element's own box, found among the ones whose centers are near its center.
+ * The first four stages hash every element by the parts of its content the stage compares (coordinates are
+ * rounded a little, so that e.g. a line moved back and forth still matches itself) and look the other revision's
+ * elements up in the hash map, and the last one looks them up in a grid of cells - so each of them costs O(n).
+ * Finally, the matched elements whose order has changed are found - the longest run of matched elements that
+ * kept their order is found in O(n log n), and every matched element outside of it is reported as reordered.
+ * Matched elements of the same shape are paired in the order they're layered in, so identical copies of an
+ * element pair up with each other rather than all with the first of them.
+ *   java sketchy.diff.SketchDiff before.sketch after.sketch
+ * prints what has changed between two files (see SketchMerge for three-way merges).
+ */
+public class SketchDiff {
+    public static final int MOVED = 1;
+    public static final int RECOLORED = 2;
+    public static final int RESHAPED = 4;
+    public static final int REORDERED = 8;
+
+    private static final double PRECISION = 1024;
+    private static final double CELL_SIZE = 128;
+    private static final double MINIMUM_OVERLAP = 0.5;
+    private static final int MAXIMUM_CANDIDATES = 64;
+    private static final int LISTED_CHANGES = 20;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java sketchy.diff.SketchDiff <before.sketch> <after.sketch>");
+            return;
+        }
+        ParallelSketchLoader loader = new ParallelSketchLoader(Runtime.getRuntime().availableProcessors());
+        long start = System.nanoTime();
+        ArrayList<ShapeRecord> before = loader.load(Paths.get(args[0]));
+        ArrayList<ShapeRecord> after = loader.load(Paths.get(args[1]));
+        long loaded = System.nanoTime();
+        Result result = diff(before, after);
+        long diffed = System.nanoTime();
+        System.out.print(result.describe(LISTED_CHANGES));
+        System.out.println("Loaded " + before.size() + " and " + after.size() + " elements in " + (loaded - start) / 1000000
+                + " ms, diffed them in " + (diffed - loaded) / 1000000 + " ms");
+    }
+
+    /** Method diffing two revisions of a document, each given as its records in z-order. */
+    public static Result diff(List<ShapeRecord> before, List<ShapeRecord> after) {
+        Result result = new Result(before, after);
+        // stage 1: unchanged, stage 2: moved, stage 3: recolored, stage 4: moved and recolored
+        result.matchByKey(true, true);
+        result.matchByKey(false, true);
+        result.matchByKey(true, false);
+        result.matchByKey(false, false);
+        result.matchByOverlap();
+        result.classify();
+        return result;
+    }
+
+    /** Method checking whether two records have the same shape - type, size, angle and points (but not position). */
+    public static boolean sameShape(ShapeRecord a, ShapeRecord b) {
+        return shapeKey(a, 0) == shapeKey(b, 0) && shapeEquals(a, b);
+    }
+
+    public static boolean samePosition(ShapeRecord a, ShapeRecord b) {
+        return quantize(originX(a)) == quantize(originX(b)) && quantize(originY(a)) == quantize(originY(b));
+    }
+
+    public static boolean sameColor(ShapeRecord a, ShapeRecord b) {
+        return a.getRed() == b.getRed() && a.getGreen() == b.getGreen() && a.getBlue() == b.getBlue();
+    }
+
+    /** Helper method returning the x coordinate an element is placed at - the center of shapes and fills, and the
+     * first point of lines (whose points are then compared relative to it).
+     */
+    static double originX(ShapeRecord record) {
+        double[] points = record.getPoints();
+        return (record.getType() == ElementType.CURVED_LINE && points.length >= 2)
+                ? record.getCenterX() + points[0] : record.getCenterX();
+    }
+
+    static double originY(ShapeRecord record) {
+        double[] points = record.getPoints();
+        return (record.getType() == ElementType.CURVED_LINE && points.length >= 2)
+                ? record.getCenterY() + points[1] : record.getCenterY();
+    }
+
+    private static long quantize(double value) {
+        return Math.round(value * PRECISION);
+    }
+
+    private static long mix(long hash, long value) {
+        return (hash ^ value) * 0x9E3779B97F4A7C15L + (hash >>> 29);
+    }
+
+    /** Helper method hashing the shape of a record (mixed into a given seed). */
+    private static long shapeKey(ShapeRecord record, long seed) {
+        long hash = mix(seed, record.getType().ordinal());
+        hash = mix(hash, quantize(record.getWidth()));
+        hash = mix(hash, quantize(record.getHeight()));
+        hash = mix(hash, quantize(record.getAngle()));
+        double[] points = record.getPoints();
+        boolean line = record.getType() == ElementType.CURVED_LINE;
+        hash = mix(hash, points.length);
+        for (int i = 0; i < points.length; i++) {
+            hash = mix(hash, quantize(line ? points[i] - points[i % 2] : points[i]));
+        }
+        return hash;
+    }
+
+    private static boolean shapeEquals(ShapeRecord a, ShapeRecord b) {
+        if (a.getType() != b.getType() || quantize(a.getWidth()) != quantize(b.getWidth())
+                || quantize(a.getHeight()) != quantize(b.getHeight()) || quantize(a.getAngle()) != quantize(b.getAngle())) {
+            return false;
+        }
+        double[] p = a.getPoints();
+        double[] q = b.getPoints();
+        if (p.length != q.length) {
+            return false;
+        }
+        boolean line = a.getType() == ElementType.CURVED_LINE;
+        for (int i = 0; i < p.length; i++) {
+            if (line ? quantize(p[i] - p[i % 2]) != quantize(q[i] - q[i % 2]) : p[i] != q[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long key(ShapeRecord record, boolean position, boolean color) {
+        long hash = shapeKey(record, position ? 1 : 0);
+        if (position) {
+            hash = mix(mix(hash, quantize(originX(record))), quantize(originY(record)));
+        }
+        if (color) {
+            hash = mix(mix(mix(hash, Double.hashCode(record.getRed())), Double.hashCode(record.getGreen())),
+                    Double.hashCode(record.getBlue()));
+        }
+        return hash;
+    }
+
+    private static double overlap(double[] a, double[] b) {
+        double width = Math.min(a[2], b[2]) - Math.max(a[0], b[0]);
+        double height = Math.min(a[3], b[3]) - Math.max(a[1], b[1]);
+        if (width < 0 || height < 0) {
+            return 0;
+        }
+        double both = width * height;
+        double union = (a[2] - a[0]) * (a[3] - a[1]) + (b[2] - b[0]) * (b[3] - b[1]) - both;
+        // degenerate boxes (e.g. straight lines) overlap fully if they touch
+        return (union <= 0) ? 1 : both / union;
+    }
+
+    private static long cell(double x, double y) {
+        return ((long) Math.floor(x / CELL_SIZE) << 32) ^ ((long) Math.floor(y / CELL_SIZE) & 0xFFFFFFFFL);
+    }
+
+    /** The result of a diff - which element of one revision every element of the other one has been matched with
+     * (by index, -1 for added and removed elements), and how every matched element has changed.
+     */
+    public static final class Result {
+        private final List<ShapeRecord> before;
+        private final List<ShapeRecord> after;
+        private final int[] beforeToAfter;
+        private final int[] afterToBefore;
+        private final int[] changes;
+
+        private Result(List<ShapeRecord> before, List<ShapeRecord> after) {
+            this.before = before;
+            this.after = after;
+            this.beforeToAfter = new int[before.size()];
+            this.afterToBefore = new int[after.size()];
+            this.changes = new int[before.size()];
+            Arrays.fill(this.beforeToAfter, -1);
+            Arrays.fill(this.afterToBefore, -1);
+        }
+
+        /** Helper method matching the unmatched elements whose hashed content (shape, and the position and color if
+         * asked for) is equal - before elements with equal keys are queued in their order, and taken in it.
+         */
+        private void matchByKey(boolean position, boolean color) {
+            HashMap<Long, ArrayDeque<Integer>> unmatched = new HashMap<>();
+            for (int i = 0; i < this.before.size(); i++) {
+                if (this.beforeToAfter[i] < 0) {
+                    unmatched.computeIfAbsent(key(this.before.get(i), position, color), (Long k) -> new ArrayDeque<>()).add(i);
+                }
+            }
+            if (unmatched.isEmpty()) {
+                return;
+            }
+            for (int j = 0; j < this.after.size(); j++) {
+                if (this.afterToBefore[j] >= 0) {
+                    continue;
+                }
+                ShapeRecord record = this.after.get(j);
+                ArrayDeque<Integer> candidates = unmatched.get(key(record, position, color));
+                if (candidates == null) {
+                    continue;
+                }
+                for (Integer i : candidates) {
+                    ShapeRecord other = this.before.get(i);
+                    if (shapeEquals(other, record) && (!position || samePosition(other, record))
+                            && (!color || sameColor(other, record))) {
+                        candidates.remove(i);
+                        this.match(i, j);
+                        break;
+                    }
+                }
+            }
+        }
+
+        /** Helper method matching the remaining elements by the overlap of their boxes - the unmatched before
+         * elements are put into a grid by their centers, and every unmatched after element is matched with the one
+         * of the same type that overlaps it the most among those in its own cell and the ones around it.
+         */
+        private void matchByOverlap() {
+            HashMap<Long, ArrayList<Integer>> grid = new HashMap<>();
+            double[][] boxes = new double[this.before.size()][];
+            for (int i = 0; i < this.before.size(); i++) {
+                if (this.beforeToAfter[i] < 0) {
+                    double[] box = RecordBounds.of(this.before.get(i));
+                    boxes[i] = box;
+                    grid.computeIfAbsent(cell((box[0] + box[2]) / 2, (box[1] + box[3]) / 2), (Long k) -> new ArrayList<>()).add(i);
+                }
+            }
+            if (grid.isEmpty()) {
+                return;
+            }
+            for (int j = 0; j < this.after.size(); j++) {
+                if (this.afterToBefore[j] >= 0) {
+                    continue;
+                }
+                ShapeRecord record = this.after.get(j);
+                double[] box = RecordBounds.of(record);
+                double x = (box[0] + box[2]) / 2;
+                double y = (box[1] + box[3]) / 2;
+                int best = -1;
+                double bestOverlap = MINIMUM_OVERLAP;
+                int checked = 0;
+                for (int dx = -1; dx <= 1; dx++) {
+                    for (int dy = -1; dy <= 1; dy++) {
+                        ArrayList<Integer> candidates = grid.get(cell(x + dx * CELL_SIZE, y + dy * CELL_SIZE));
+                        if (candidates == null) {
+                            continue;
+                        }
+                        for (int c = 0; c < candidates.size() && checked < MAXIMUM_CANDIDATES; c++, checked++) {
+                            int i = candidates.get(c);
+                            if (this.beforeToAfter[i] >= 0 || this.before.get(i).getType() != record.getType()) {
+                                continue;
+                            }
+                            double overlap = overlap(boxes[i], box);
+                            if (overlap >= bestOverlap) {
+                                best = i;
+                                bestOverlap = overlap;
+                            }
+                        }
+                    }
+                }
+                if (best >= 0) {
+                    this.match(best, j);
+                }
+            }
+        }
+
+        private void match(int i, int j) {
+            this.beforeToAfter[i] = j;
+            this.afterToBefore[j] = i;
+        }
+
+        /** Helper method finding out how every matched element has changed - reordered elements are the ones
+         * outside the longest increasing run of after indexes (taken in the order of the before indexes).
+         */
+        private void classify() {
+            int[] order = new int[this.before.size()];
+            int[] tails = new int[this.before.size()];
+            int[] previous = new int[this.before.size()];
+            int matched = 0;
+            int length = 0;
+            for (int i = 0; i < this.before.size(); i++) {
+                int j = this.beforeToAfter[i];
+                if (j < 0) {
+                    continue;
+                }
+                ShapeRecord a = this.before.get(i);
+                ShapeRecord b = this.after.get(j);
+                int change = 0;
+                if (!sameShape(a, b)) {
+                    change |= RESHAPED;
+                }
+                if (!samePosition(a, b)) {
+                    change |= MOVED;
+                }
+                if (!sameColor(a, b)) {
+                    change |= RECOLORED;
+                }
+                this.changes[i] = change;
+                // patience sorting: tails[k] is the end of the best run of length k + 1 found so far
+                int low = 0;
+                int high = length;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (this.beforeToAfter[order[tails[middle]]] < j) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                order[matched] = i;
+                previous[matched] = (low > 0) ? tails[low - 1] : -1;
+                tails[low] = matched;
+                if (low == length) {
+                    length++;
+                }
+                matched++;
+            }
+            boolean[] kept = new boolean[matched];
+            for (int k = (length > 0) ? tails[length - 1] : -1; k >= 0; k = previous[k]) {
+                kept[k] = true;
+            }
+            for (int k = 0; k < matched; k++) {
+                if (!kept[k]) {
+                    this.changes[order[k]] |= REORDERED;
+                }
+            }
+        }
+
+        /** Accessor method returning the index of the after element a before element has been matched with (or -1
+         * if it's been removed).
+         */
+        public int afterOf(int beforeIndex) {
+            return this.beforeToAfter[beforeIndex];
+        }
+
+        /** Accessor method returning the index of the before element an after element has been matched with (or -1
+         * if it's been added).
+         */
+        public int beforeOf(int afterIndex) {
+            return this.afterToBefore[afterIndex];
+        }
+
+        /** Accessor method returning how a before element has changed (a combination of MOVED, RECOLORED, RESHAPED
+         * and REORDERED, or 0 if it hasn't changed or has been removed).
+         */
+        public int changesOf(int beforeIndex) {
+            return this.changes[beforeIndex];
+        }
+
+        public List<ShapeRecord> getBefore() {
+            return this.before;
+        }
+
+        public List<ShapeRecord> getAfter() {
+            return this.after;
+        }
+
+        /** Accessor method counting the elements that have a given change (0 counts the unchanged ones). */
+        public int count(int change) {
+            int count = 0;
+            for (int i = 0; i < this.changes.length; i++) {
+                if (this.beforeToAfter[i] >= 0 && ((change == 0) ? this.changes[i] == 0 : (this.changes[i] & change) != 0)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        public int countAdded() {
+            int count = 0;
+            for (int i : this.afterToBefore) {
+                if (i < 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        public int countRemoved() {
+            int count = 0;
+            for (int j : this.beforeToAfter) {
+                if (j < 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /** Method describing the diff - the number of elements per kind of change, followed by up to a given
+         * number of the changes themselves (elements are named by their type and their index in their revision).
+         */
+        public String describe(int listed) {
+            StringBuilder text = new StringBuilder();
+            text.append("Unchanged: ").append(this.count(0)).append('\n');
+            text.append("Added: ").append(this.countAdded()).append('\n');
+            text.append("Removed: ").append(this.countRemoved()).append('\n');
+            text.append("Moved: ").append(this.count(MOVED)).append('\n');
+            text.append("Recolored: ").append(this.count(RECOLORED)).append('\n');
+            text.append("Reshaped: ").append(this.count(RESHAPED)).append('\n');
+            text.append("Reordered: ").append(this.count(REORDERED)).append('\n');
+            int shown = 0;
+            for (int i = 0; i < this.before.size() && shown < listed; i++) {
+                int j = this.beforeToAfter[i];
+                if (j < 0) {
+                    text.append("  - ").append(this.name(this.before, i)).append(" removed\n");
+                    shown++;
+                } else if (this.changes[i] != 0) {
+                    text.append("  * ").append(this.name(this.before, i)).append(" -> ").append(this.name(this.after, j))
+                            .append(describeChange(this.changes[i], this.before.get(i), this.after.get(j))).append('\n');
+                    shown++;
+                }
+            }
+            for (int j = 0; j < this.after.size() && shown < listed; j++) {
+                if (this.afterToBefore[j] < 0) {
+                    text.append("  + ").append(this.name(this.after, j)).append(" added\n");
+                    shown++;
+                }
+            }
+            return text.toString();
+        }
+
+        private String name(List<ShapeRecord> records, int index) {
+            return records.get(index).getType().getTag() + " #" + index;
+        }
+
+        private static String describeChange(int change, ShapeRecord a, ShapeRecord b) {
+            StringBuilder text = new StringBuilder();
+            if ((change & MOVED) != 0) {
+                text.append(String.format(" moved by (%.1f, %.1f)", originX(b) - originX(a), originY(b) - originY(a)));
+            }
+            if ((change & RECOLORED) != 0) {
+                text.append(" recolored");
+            }
+            if ((change & RESHAPED) != 0) {
+                text.append(" reshaped");
+            }
+            if ((change & REORDERED) != 0) {
+                text.append(" reordered");
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package sketchy.diff;
+
+import sketchy.io.ParallelSketchLoader;
+import sketchy.io.SketchFileWriter;
+import sketchy.shapes.ShapeRecord;
+import sketchy.shapes.Symbol;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** Three-way merge of two revisions of a sketch edited independently from a common base. Both revisions are
+ * diffed against the base (see SketchDiff), and every element of the base is then merged property by property -
+ * its geometry (type, position, size, angle and points) and its color are each taken from whichever revision has
+ * changed them, so that e.g. one editor moving an element and the other one recoloring it merge cleanly. Only when
+ * both revisions change the same property of an element differently, or one of them removes an element the other
+ * one has changed, is it a conflict - ours wins a conflicting property, and a changed element is kept rather than
+ * removed (so that no edit is ever lost silently). Elements added by either revision are all kept.
+ * The merged elements follow the order of our revision (or of theirs, if only they have reordered elements), and
+ * the elements that only the other revision has are put right above the element they lie above in it.
+ *   java sketchy.diff.SketchMerge base.sketch ours.sketch theirs.sketch merged.sketch
+ */
+public class SketchMerge {
+    private final ArrayList<ShapeRecord> merged = new ArrayList<>();
+    private int conflicts;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: java sketchy.diff.SketchMerge <base.sketch> <ours.sketch> <theirs.sketch> <merged.sketch>");
+            return;
+        }
+        ParallelSketchLoader loader = new ParallelSketchLoader(Runtime.getRuntime().availableProcessors());
+        long start = System.nanoTime();
+        SketchMerge merge = merge(loader.load(Paths.get(args[0])), loader.load(Paths.get(args[1])), loader.load(Paths.get(args[2])));
+        try (SketchFileWriter writer = new SketchFileWriter(new FileWriter(args[3], StandardCharsets.UTF_8))) {
+            Symbol.writeUsed(merge.getMerged(), writer);
+            for (ShapeRecord record : merge.getMerged()) {
+                writer.write(record);
+            }
+        }
+        System.out.println("Merged " + merge.getMerged().size() + " elements with " + merge.getConflicts()
+                + " conflicts in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /** Method merging two revisions (ours and theirs) of a base document, all given as their records in z-order. */
+    public static SketchMerge merge(List<ShapeRecord> base, List<ShapeRecord> ours, List<ShapeRecord> theirs) {
+        SketchDiff.Result oursDiff = SketchDiff.diff(base, ours);
+        SketchDiff.Result theirsDiff = SketchDiff.diff(base, theirs);
+        boolean theirOrder = oursDiff.count(SketchDiff.REORDERED) == 0 && theirsDiff.count(SketchDiff.REORDERED) > 0;
+        SketchMerge merge = new SketchMerge();
+        if (theirOrder) {
+            merge.build(base, theirsDiff, oursDiff, false);
+        } else {
+            merge.build(base, oursDiff, theirsDiff, true);
+        }
+        return merge;
+    }
+
+    public ArrayList<ShapeRecord> getMerged() {
+        return this.merged;
+    }
+
+    public int getConflicts() {
+        return this.conflicts;
+    }
+
+    /** Helper method laying the merged elements out in the order of one revision (the leading one) - every element
+     * of it is merged with its counterparts, and the elements only the other revision has (elements it's added, or
+     * changed while the leading revision removed them) follow the nearest element below them that's been laid out.
+     */
+    private void build(List<ShapeRecord> base, SketchDiff.Result leading, SketchDiff.Result other, boolean leadingIsOurs) {
+        List<ShapeRecord> leadingRecords = leading.getAfter();
+        List<ShapeRecord> otherRecords = other.getAfter();
+        // the elements of the other revision only it has, grouped by the base element they follow (-1 for the bottom)
+        HashMap<Integer, ArrayList<ShapeRecord>> following = new HashMap<>();
+        int anchor = -1;
+        for (int j = 0; j < otherRecords.size(); j++) {
+            int i = other.beforeOf(j);
+            if (i >= 0 && leading.afterOf(i) >= 0) {
+                anchor = i;
+            } else if (i < 0 || edited(other, i)) {
+                if (i >= 0) {
+                    this.conflicts++;
+                }
+                following.computeIfAbsent(anchor, (Integer k) -> new ArrayList<>()).add(otherRecords.get(j));
+            }
+        }
+        this.addAll(following.get(-1));
+        for (int j = 0; j < leadingRecords.size(); j++) {
+            int i = leading.beforeOf(j);
+            ShapeRecord record = leadingRecords.get(j);
+            if (i < 0) {
+                this.merged.add(record);
+                continue;
+            }
+            int k = other.afterOf(i);
+            if (k >= 0) {
+                ShapeRecord otherRecord = otherRecords.get(k);
+                this.merged.add(leadingIsOurs ? this.mergeElement(base.get(i), record, otherRecord)
+                        : this.mergeElement(base.get(i), otherRecord, record));
+            } else if (edited(leading, i)) {
+                // removed by the other revision, but changed by this one
+                this.conflicts++;
+                this.merged.add(record);
+            }
+            this.addAll(following.get(i));
+        }
+    }
+
+    private void addAll(ArrayList<ShapeRecord> records) {
+        if (records != null) {
+            this.merged.addAll(records);
+        }
+    }
+
+    /** Helper method merging the geometry and the color of an element changed by both revisions. */
+    private ShapeRecord mergeElement(ShapeRecord base, ShapeRecord ours, ShapeRecord theirs) {
+        boolean oursMoved = !sameGeometry(base, ours);
+        boolean theirsMoved = !sameGeometry(base, theirs);
+        boolean oursRecolored = !SketchDiff.sameColor(base, ours);
+        boolean theirsRecolored = !SketchDiff.sameColor(base, theirs);
+        if (oursMoved && theirsMoved && !sameGeometry(ours, theirs)) {
+            this.conflicts++;
+        }
+        if (oursRecolored && theirsRecolored && !SketchDiff.sameColor(ours, theirs)) {
+            this.conflicts++;
+        }
+        ShapeRecord geometry = (!oursMoved && theirsMoved) ? theirs : ours;
+        ShapeRecord color = (!oursRecolored && theirsRecolored) ? theirs : ours;
+        return new ShapeRecord(ours.getId(), geometry.getType(), geometry.getCenterX(), geometry.getCenterY(),
+                geometry.getWidth(), geometry.getHeight(), geometry.getAngle(), color.getRed(), color.getGreen(),
+                color.getBlue(), geometry.getPoints(), ours.getZ());
+    }
+
+    /** Helper method checking whether a revision has changed a base element (other than by reordering it). */
+    private static boolean edited(SketchDiff.Result diff, int baseIndex) {
+        return (diff.changesOf(baseIndex) & ~SketchDiff.REORDERED) != 0;
+    }
+
+    private static boolean sameGeometry(ShapeRecord a, ShapeRecord b) {
+        return SketchDiff.sameShape(a, b) && SketchDiff.samePosition(a, b);
+    }
+}
@@ -0,0 +1,197 @@
+package sketchy.document;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/** Uniform grid over the elements of a GeometryArena, for finding the ones in a region (e.g. on the screen) without
+ * going through all of them. Every element is listed in each cell its bounding box touches, and the lists of all
+ * cells are kept one after another in a single buffer of native memory (with another one holding where each cell's
+ * list starts), both allocated by the arena (so they're mapped along with it, if it's mapped), and the grid adds
+ * nothing to the heap but its few fields - elements big enough to touch more than
+ * MAX_CELLS cells are listed once, apart from the cells, and checked on every query. The cells are sized so that
+ * there are about ELEMENTS_PER_CELL elements per cell.
+ * A grid describes the arena as it was when the grid was built - elements that have been removed since are left out
+ * of queries, but moved ones are only found where they were, so a changed arena needs a new grid.
+ */
+public class ArenaGrid {
+    private static final int MAX_CELLS = 64;
+    private static final int MAX_SIDE = 1 << 12;
+    private static final int ELEMENTS_PER_CELL = 4;
+
+    private GeometryArena arena;
+    private double[] bounds;
+    private double originX;
+    private double originY;
+    private double cellSize;
+    private int columns;
+    private int rows;
+    private IntBuffer starts;
+    private IntBuffer entries;
+    private int[] large;
+
+    /** Constructor building the grid in two passes over the arena's bounds (after one finding their extent) - one
+     * counting the elements of every cell, and one writing them into their cells' lists.
+     */
+    public ArenaGrid(GeometryArena arena) {
+        this.arena = arena;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        int count = 0;
+        for (int slot = 0; slot < arena.size(); slot++) {
+            if (!arena.isRemoved(slot)) {
+                minX = Math.min(minX, arena.getMinX(slot));
+                minY = Math.min(minY, arena.getMinY(slot));
+                maxX = Math.max(maxX, arena.getMaxX(slot));
+                maxY = Math.max(maxY, arena.getMaxY(slot));
+                count++;
+            }
+        }
+        if (count == 0) {
+            minX = 0;
+            minY = 0;
+            maxX = 1;
+            maxY = 1;
+        }
+        this.bounds = new double[] {minX, minY, maxX, maxY};
+        this.originX = minX;
+        this.originY = minY;
+        double width = Math.max(1, maxX - minX);
+        double height = Math.max(1, maxY - minY);
+        this.cellSize = Math.max(Math.sqrt(width * height * ELEMENTS_PER_CELL / Math.max(1, count)),
+                Math.max(width, height) / MAX_SIDE);
+        this.columns = (int) Math.min(MAX_SIDE, Math.floor(width / this.cellSize) + 1);
+        this.rows = (int) Math.min(MAX_SIDE, Math.floor(height / this.cellSize) + 1);
+
+        int cells = this.columns * this.rows;
+        this.starts = arena.allocate((cells + 1) * Integer.BYTES).asIntBuffer();
+        int largeCount = 0;
+        long total = 0;
+        for (int slot = 0; slot < arena.size(); slot++) {
+            int[] span = this.span(slot);
+            if (span == null) {
+                continue;
+            }
+            if (isLarge(span)) {
+                largeCount++;
+                continue;
+            }
+            for (int row = span[1]; row <= span[3]; row++) {
+                for (int column = span[0]; column <= span[2]; column++) {
+                    int cell = row * this.columns + column;
+                    this.starts.put(cell, this.starts.get(cell) + 1);
+                }
+            }
+            total += (long) (span[2] - span[0] + 1) * (span[3] - span[1] + 1);
+        }
+        if (total > Integer.MAX_VALUE / Integer.BYTES) {
+            throw new IllegalStateException("Too many elements for a grid: " + total + " entries");
+        }
+        // every cell's count becomes the end of its list, and its lists are then filled from the end, going down
+        // through the slots - which leaves every count at the start of its list, and the lists in the slots' order
+        for (int cell = 1; cell < cells; cell++) {
+            this.starts.put(cell, this.starts.get(cell) + this.starts.get(cell - 1));
+        }
+        this.starts.put(cells, (int) total);
+        this.entries = arena.allocate((int) Math.max(1, total) * Integer.BYTES).asIntBuffer();
+        this.large = new int[largeCount];
+        for (int slot = arena.size() - 1; slot >= 0; slot--) {
+            int[] span = this.span(slot);
+            if (span == null) {
+                continue;
+            }
+            if (isLarge(span)) {
+                this.large[--largeCount] = slot;
+                continue;
+            }
+            for (int row = span[1]; row <= span[3]; row++) {
+                for (int column = span[0]; column <= span[2]; column++) {
+                    int cell = row * this.columns + column;
+                    this.starts.put(cell, this.starts.get(cell) - 1);
+                    this.entries.put(this.starts.get(cell), slot);
+                }
+            }
+        }
+    }
+
+    /** Method returning the slots of the elements whose bounding boxes intersect a region, in the order of their
+     * slots (bottom to top) - or null if there are more than a given limit of them (e.g. when a view is zoomed out
+     * too far to show every element on its own).
+     */
+    public int[] query(double minX, double minY, double maxX, double maxY, int limit) {
+        int firstColumn = this.clamp((int) Math.floor((minX - this.originX) / this.cellSize), this.columns);
+        int firstRow = this.clamp((int) Math.floor((minY - this.originY) / this.cellSize), this.rows);
+        int lastColumn = this.clamp((int) Math.floor((maxX - this.originX) / this.cellSize), this.columns);
+        int lastRow = this.clamp((int) Math.floor((maxY - this.originY) / this.cellSize), this.rows);
+        int[] found = new int[Math.min(64, limit + 1)];
+        int count = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * this.columns + column;
+                for (int entry = this.starts.get(cell); entry < this.starts.get(cell + 1); entry++) {
+                    int slot = this.entries.get(entry);
+                    // an element touching several cells is only taken in the first of them the region covers
+                    if (column != Math.max(firstColumn, this.cellOf(this.arena.getMinX(slot), this.originX, this.columns))
+                            || row != Math.max(firstRow, this.cellOf(this.arena.getMinY(slot), this.originY, this.rows))
+                            || !this.arena.intersects(slot, minX, minY, maxX, maxY)) {
+                        continue;
+                    }
+                    if (count == limit) {
+                        return null;
+                    }
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, Math.min(2 * count, limit + 1));
+                    }
+                    found[count++] = slot;
+                }
+            }
+        }
+        for (int slot : this.large) {
+            if (this.arena.intersects(slot, minX, minY, maxX, maxY)) {
+                if (count == limit) {
+                    return null;
+                }
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, Math.min(2 * count, limit + 1));
+                }
+                found[count++] = slot;
+            }
+        }
+        int[] slots = Arrays.copyOf(found, count);
+        Arrays.sort(slots);
+        return slots;
+    }
+
+    /** Accessor method returning the box of all elements of the arena (when the grid was built), as {minX, minY,
+     * maxX, maxY}.
+     */
+    public double[] getBounds() {
+        return this.bounds.clone();
+    }
+
+    /** Helper method returning the cells a slot's element touches, as {first column, first row, last column, last
+     * row} - or null if it's been removed.
+     */
+    private int[] span(int slot) {
+        if (this.arena.isRemoved(slot)) {
+            return null;
+        }
+        return new int[] {this.cellOf(this.arena.getMinX(slot), this.originX, this.columns),
+                this.cellOf(this.arena.getMinY(slot), this.originY, this.rows),
+                this.cellOf(this.arena.getMaxX(slot), this.originX, this.columns),
+                this.cellOf(this.arena.getMaxY(slot), this.originY, this.rows)};
+    }
+
+    private int cellOf(double coordinate, double origin, int cells) {
+        return this.clamp((int) Math.floor((coordinate - origin) / this.cellSize), cells);
+    }
+
+    private int clamp(int cell, int cells) {
+        return Math.max(0, Math.min(cells - 1, cell));
+    }
+
+    private static boolean isLarge(int[] span) {
+        return (long) (span[2] - span[0] + 1) * (span[3] - span[1] + 1) > MAX_CELLS;
+    }
+}
@@ -0,0 +1,100 @@
+package sketchy.document;
+
+import sketchy.shapes.ElementType;
+import sketchy.shapes.RecordBounds;
+import sketchy.shapes.ShapeRecord;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/** Secondary indexes of the document's elements by their attributes - their color, their type and their size
+ * bucket (sizes grow by a factor of two from one bucket to the next, the size of an element being the larger side
+ * of its bounding box). Each index maps a key to the set of IDs of the elements having it. The indexes listen to the
+ * document model, so they follow every change in O(1) - creating, deleting, recoloring or resizing an element, and
+ * undoing or redoing any of those (which seeks the history, and restores the records from before or after them) -
+ * and looking elements up by an attribute costs as much as the number of elements found, not of all elements.
+ */
+public class AttributeIndex implements DocumentListener {
+    private HashMap<Integer, HashSet<Long>> byColor = new HashMap<>();
+    private HashMap<ElementType, HashSet<Long>> byType = new HashMap<>();
+    private HashMap<Integer, HashSet<Long>> bySize = new HashMap<>();
+
+    /** Records whose indexed attributes haven't changed (e.g. ones that have only been moved) are skipped. */
+    @Override
+    public void recordChanged(ShapeRecord old, ShapeRecord updated) {
+        int oldColor = (old != null) ? colorKey(old) : -1;
+        int oldSize = (old != null) ? sizeBucket(old) : -1;
+        int newColor = (updated != null) ? colorKey(updated) : -1;
+        int newSize = (updated != null) ? sizeBucket(updated) : -1;
+        if (old != null && updated != null && oldColor == newColor && oldSize == newSize && old.getType() == updated.getType()) {
+            return;
+        }
+        if (old != null) {
+            remove(this.byColor, oldColor, old.getId());
+            remove(this.byType, old.getType(), old.getId());
+            remove(this.bySize, oldSize, old.getId());
+        }
+        if (updated != null) {
+            this.byColor.computeIfAbsent(newColor, (Integer k) -> new HashSet<>()).add(updated.getId());
+            this.byType.computeIfAbsent(updated.getType(), (ElementType k) -> new HashSet<>()).add(updated.getId());
+            this.bySize.computeIfAbsent(newSize, (Integer k) -> new HashSet<>()).add(updated.getId());
+        }
+    }
+
+    /** Method returning the IDs of all elements of the same color as a record (colors are compared as 8-bit RGB). */
+    public ArrayList<Long> withColorOf(ShapeRecord record) {
+        return copy(this.byColor.get(colorKey(record)));
+    }
+
+    public ArrayList<Long> ofType(ElementType type) {
+        return copy(this.byType.get(type));
+    }
+
+    /** Method returning the IDs of all elements in the same size bucket as a record (within a factor of two of it). */
+    public ArrayList<Long> withSizeOf(ShapeRecord record) {
+        return copy(this.bySize.get(sizeBucket(record)));
+    }
+
+    /** Method returning the IDs of all elements whose size buckets overlap a range of sizes - the buckets at both
+     * ends of the range may hold elements a bit outside of it, so callers needing exact sizes check those.
+     */
+    public ArrayList<Long> withSizeBetween(double min, double max) {
+        ArrayList<Long> ids = new ArrayList<>();
+        for (int bucket = bucketOf(min); bucket <= bucketOf(max); bucket++) {
+            HashSet<Long> found = this.bySize.get(bucket);
+            if (found != null) {
+                ids.addAll(found);
+            }
+        }
+        return ids;
+    }
+
+    private static int colorKey(ShapeRecord record) {
+        return ((int) Math.round(record.getRed() * 255) << 16) | ((int) Math.round(record.getGreen() * 255) << 8)
+                | (int) Math.round(record.getBlue() * 255);
+    }
+
+    private static int sizeBucket(ShapeRecord record) {
+        double[] bounds = RecordBounds.of(record);
+        return bucketOf(Math.max(bounds[2] - bounds[0], bounds[3] - bounds[1]));
+    }
+
+    /** Helper method returning the bucket of a size - everything under a pixel falls into bucket 0. */
+    private static int bucketOf(double size) {
+        return (size < 1) ? 0 : 1 + Math.getExponent(size);
+    }
+
+    private static <K> void remove(HashMap<K, HashSet<Long>> index, K key, long id) {
+        HashSet<Long> ids = index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static ArrayList<Long> copy(HashSet<Long> ids) {
+        return (ids == null) ? new ArrayList<>() : new ArrayList<>(ids);
+    }
+}
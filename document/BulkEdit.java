@@ -0,0 +1,108 @@
+package sketchy.document;
+
+import sketchy.shapes.ElementType;
+import sketchy.shapes.RecordBounds;
+import sketchy.shapes.ShapeRecord;
+import sketchy.shapes.Symbol;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/** Document-wide edit of every element matching a predicate (e.g. recoloring every element of one color, scaling
+ * the whole drawing or deleting tiny strokes), run by the document actor like any other edit (see DocumentEdit).
+ * The predicate and the change only ever see records - plain geometry, with no JavaFX node behind it - so both are
+ * evaluated over all elements at once, by a parallel stream over the records of the snapshot (copied into an array
+ * first, as the snapshot's tree can only be walked in order, which wouldn't split well). A null change removes the
+ * matching elements. The resulting diff is applied to the scene in a single batch, as a single step of the history.
+ */
+public class BulkEdit implements DocumentEdit {
+    private String name;
+    private Predicate<ShapeRecord> predicate;
+    private UnaryOperator<ShapeRecord> change;
+
+    public BulkEdit(String name, Predicate<ShapeRecord> predicate, UnaryOperator<ShapeRecord> change) {
+        this.name = name;
+        this.predicate = predicate;
+        this.change = change;
+    }
+
+    /** Method returning an edit recoloring every matching element (instances override their symbols' colors). */
+    public static BulkEdit recolor(Predicate<ShapeRecord> predicate, double red, double green, double blue) {
+        return new BulkEdit("Recolor", predicate, (ShapeRecord record) -> {
+            Symbol symbol = (record.getType() == ElementType.INSTANCE) ? Symbol.of(record) : null;
+            return new ShapeRecord(record.getId(), record.getType(), record.getCenterX(), record.getCenterY(),
+                    record.getWidth(), record.getHeight(), record.getAngle(), red, green, blue,
+                    (symbol != null) ? symbol.reference(true) : record.getPoints(), record.getZ());
+        });
+    }
+
+    /** Method returning an edit scaling every matching element by a factor, around a given point - an element's
+     * position and size are both scaled, so that the drawing keeps its proportions.
+     */
+    public static BulkEdit scale(Predicate<ShapeRecord> predicate, double factor, double originX, double originY) {
+        return new BulkEdit("Scale", predicate, (ShapeRecord record) -> {
+            if (record.getType() == ElementType.CURVED_LINE) {
+                // a line's points are drawn at its offset, so they're scaled as they're drawn, and the offset dropped
+                double[] points = record.getPoints();
+                double[] scaled = new double[points.length];
+                for (int i = 0; i + 1 < points.length; i += 2) {
+                    scaled[i] = originX + (points[i] + record.getCenterX() - originX) * factor;
+                    scaled[i + 1] = originY + (points[i + 1] + record.getCenterY() - originY) * factor;
+                }
+                return new ShapeRecord(record.getId(), record.getType(), 0, 0, record.getWidth(), record.getHeight(),
+                        record.getAngle(), record.getRed(), record.getGreen(), record.getBlue(), scaled, record.getZ());
+            }
+            return new ShapeRecord(record.getId(), record.getType(), originX + (record.getCenterX() - originX) * factor,
+                    originY + (record.getCenterY() - originY) * factor, record.getWidth() * Math.abs(factor),
+                    record.getHeight() * Math.abs(factor), record.getAngle(), record.getRed(), record.getGreen(),
+                    record.getBlue(), record.getPoints(), record.getZ());
+        });
+    }
+
+    /** Method returning an edit removing every matching element. */
+    public static BulkEdit delete(Predicate<ShapeRecord> predicate) {
+        return new BulkEdit("Delete", predicate, null);
+    }
+
+    /** Method returning a predicate matching elements of exactly the given color. */
+    public static Predicate<ShapeRecord> ofColor(double red, double green, double blue) {
+        return (ShapeRecord record) -> record.getRed() == red && record.getGreen() == green && record.getBlue() == blue;
+    }
+
+    public static Predicate<ShapeRecord> ofType(ElementType type) {
+        return (ShapeRecord record) -> record.getType() == type;
+    }
+
+    /** Method returning a predicate matching elements whose bounding box is smaller than a given size both ways. */
+    public static Predicate<ShapeRecord> smallerThan(double size) {
+        return (ShapeRecord record) -> {
+            double[] bounds = RecordBounds.of(record);
+            return bounds[2] - bounds[0] < size && bounds[3] - bounds[1] < size;
+        };
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public void apply(DocumentSnapshot snapshot, ArrayList<ShapeRecord> updated, ArrayList<Long> removed) {
+        ShapeRecord[] records = new ShapeRecord[snapshot.size()];
+        int count = 0;
+        for (ShapeRecord record : snapshot) {
+            records[count++] = record;
+        }
+        if (this.change == null) {
+            removed.addAll(Arrays.stream(records, 0, count).parallel().filter(this.predicate)
+                    .map(ShapeRecord::getId).collect(Collectors.toList()));
+        } else {
+            List<ShapeRecord> changed = Arrays.stream(records, 0, count).parallel().filter(this.predicate)
+                    .map(this.change).collect(Collectors.toList());
+            updated.addAll(changed);
+        }
+    }
+}
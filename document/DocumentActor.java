@@ -0,0 +1,174 @@
+package sketchy.document;
+
+import sketchy.shapes.ShapeRecord;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/** Single-writer actor running heavy edits of the document (see DocumentEdit) on a thread of its own, so that the
+ * JavaFX thread never waits for them. Everything reaches the actor as a message in its inbox - a lock-free queue
+ * the actor's thread drains one message at a time, parking whenever it's empty - and the actor is the only one
+ * ever writing its state, so none of it needs a lock:
+ *  - an edit is run against the actor's current state, and the diff it produces (see DocumentDiff) is published
+ *    to the outbox (another lock-free queue), and applied to the actor's state right away, so that the next edit
+ *    already sees it;
+ *  - a sync carries a snapshot of the live document, taken by the JavaFX thread after it has applied every diff up
+ *    to a given sequence number - the actor's state becomes that snapshot, with the diffs the JavaFX thread hasn't
+ *    applied yet put back on top of it.
+ * The JavaFX thread drains the outbox once per pulse, applying all diffs published since the previous pulse in one
+ * go, and then syncs the actor (only if the document has changed since the last sync). An edit that fails publishes
+ * nothing but a message saying why, which the JavaFX thread takes on the same pulse, to show it to the user. The state of the actor is
+ * also published as an immutable snapshot, which any thread can render or export.
+ */
+public class DocumentActor {
+    private final ConcurrentLinkedQueue<Object> inbox;
+    private final ConcurrentLinkedQueue<DocumentDiff> outbox;
+    private final ConcurrentLinkedQueue<String> failures;
+    private final Thread thread;
+    private volatile boolean running;
+    private volatile DocumentSnapshot published;
+    // owned by the actor's thread
+    private DocumentSnapshot state;
+    private ArrayList<DocumentDiff> unapplied;
+    private long nextSequence;
+    // owned by the JavaFX thread
+    private DocumentSnapshot lastSynced;
+    private long lastApplied;
+
+    /** Constructor taking in the initial state of the document, and starting the actor's (daemon) thread. */
+    public DocumentActor(DocumentSnapshot initial) {
+        this.inbox = new ConcurrentLinkedQueue<>();
+        this.outbox = new ConcurrentLinkedQueue<>();
+        this.failures = new ConcurrentLinkedQueue<>();
+        this.state = initial;
+        this.published = initial;
+        this.lastSynced = initial;
+        this.unapplied = new ArrayList<>();
+        this.nextSequence = 1;
+        this.running = true;
+        this.thread = new Thread(this::run, "sketchy-document");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /** Method queueing an edit - it's run after every message queued before it. */
+    public void submit(DocumentEdit edit) {
+        this.post(edit);
+    }
+
+    /** Method telling the actor about the live document, after all diffs up to a given sequence number have been
+     * applied to it (called by the JavaFX thread after every pulse - nothing is queued if nothing has changed).
+     */
+    public void sync(DocumentSnapshot snapshot, long applied) {
+        if (snapshot.getById() == this.lastSynced.getById() && applied == this.lastApplied) {
+            return;
+        }
+        this.lastSynced = snapshot;
+        this.lastApplied = applied;
+        this.post(new Sync(snapshot, applied));
+    }
+
+    /** Method taking every diff published since the last call (in the order they've been published). */
+    public ArrayList<DocumentDiff> drain() {
+        ArrayList<DocumentDiff> diffs = new ArrayList<>();
+        for (DocumentDiff diff = this.outbox.poll(); diff != null; diff = this.outbox.poll()) {
+            diffs.add(diff);
+        }
+        return diffs;
+    }
+
+    /** Method taking the messages of every edit that has failed since the last call. */
+    public ArrayList<String> drainFailures() {
+        ArrayList<String> messages = new ArrayList<>();
+        for (String message = this.failures.poll(); message != null; message = this.failures.poll()) {
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    /** Method returning the latest state of the document as the actor sees it (including diffs not applied yet). */
+    public DocumentSnapshot getSnapshot() {
+        return this.published;
+    }
+
+    /** Method stopping the actor's thread (messages still in the inbox are dropped). */
+    public void shutdown() {
+        this.running = false;
+        LockSupport.unpark(this.thread);
+    }
+
+    private void post(Object message) {
+        this.inbox.offer(message);
+        LockSupport.unpark(this.thread);
+    }
+
+    /** The actor's loop - a message is only ever handled by this thread, one at a time. */
+    private void run() {
+        while (this.running) {
+            Object message = this.inbox.poll();
+            if (message == null) {
+                LockSupport.park(this);
+            } else if (message instanceof Sync) {
+                this.handleSync((Sync) message);
+            } else {
+                this.handleEdit((DocumentEdit) message);
+            }
+        }
+    }
+
+    private void handleSync(Sync sync) {
+        this.unapplied.removeIf((DocumentDiff diff) -> diff.getSequence() <= sync.applied);
+        DocumentSnapshot state = sync.snapshot;
+        for (DocumentDiff diff : this.unapplied) {
+            state = diff.applyTo(state);
+        }
+        this.state = state;
+        this.published = state;
+    }
+
+    /** Helper method running an edit - updated records keep the z values of the records they replace (an edit
+     * can't reorder elements), added ones are stacked on top of the document, in the order they're returned, and
+     * removals of elements that aren't in the document are ignored.
+     */
+    private void handleEdit(DocumentEdit edit) {
+        ArrayList<ShapeRecord> records = new ArrayList<>();
+        ArrayList<Long> removed = new ArrayList<>();
+        try {
+            edit.apply(this.state, records, removed);
+        } catch (RuntimeException e) {
+            this.failures.offer("Couldn't run " + edit.getName() + ": " + ((e.getMessage() != null) ? e.getMessage() : e));
+            return;
+        }
+        removed.removeIf((Long id) -> this.state.get(id) == null);
+        if (records.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        ShapeRecord[] base = new ShapeRecord[records.size() + removed.size()];
+        ShapeRecord[] updated = new ShapeRecord[base.length];
+        double top = this.state.getByZ().maxZ();
+        for (int i = 0; i < records.size(); i++) {
+            ShapeRecord record = records.get(i);
+            base[i] = this.state.get(record.getId());
+            updated[i] = record.withZ((base[i] != null) ? base[i].getZ() : ++top);
+        }
+        for (int i = 0; i < removed.size(); i++) {
+            base[records.size() + i] = this.state.get(removed.get(i));
+        }
+        DocumentDiff diff = new DocumentDiff(edit.getName(), this.nextSequence++, base, updated);
+        this.state = diff.applyTo(this.state);
+        this.published = this.state;
+        this.unapplied.add(diff);
+        this.outbox.offer(diff);
+    }
+
+    /** Message carrying a snapshot of the live document (see sync). */
+    private static final class Sync {
+        private final DocumentSnapshot snapshot;
+        private final long applied;
+
+        private Sync(DocumentSnapshot snapshot, long applied) {
+            this.snapshot = snapshot;
+            this.applied = applied;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package sketchy.document;
+
+import sketchy.shapes.ShapeRecord;
+
+/** Immutable result of an edit run by the document actor - the records the edit has been based on (null for the
+ * elements it adds) and the records it has produced (null for the elements it removes), for every element it has
+ * touched, along with the sequence number the actor has given it. A diff is published by the actor, and applied to
+ * the elements by the JavaFX thread on its next pulse - an element changed by the user while the edit was running keeps the user's change (its
+ * record isn't the one the edit has been based on anymore), so the edit never overwrites anything it hasn't seen.
+ */
+public final class DocumentDiff {
+    private final String name;
+    private final long sequence;
+    private final ShapeRecord[] base;
+    private final ShapeRecord[] updated;
+
+    DocumentDiff(String name, long sequence, ShapeRecord[] base, ShapeRecord[] updated) {
+        this.name = name;
+        this.sequence = sequence;
+        this.base = base;
+        this.updated = updated;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    public int size() {
+        return this.updated.length;
+    }
+
+    public long getId(int i) {
+        return (this.updated[i] != null) ? this.updated[i].getId() : this.base[i].getId();
+    }
+
+    /** Accessor method returning the record an element had when the edit read it (null if the edit adds it). */
+    public ShapeRecord getBase(int i) {
+        return this.base[i];
+    }
+
+    /** Accessor method returning the record the edit has produced for an element (null if the edit removes it). */
+    public ShapeRecord getUpdated(int i) {
+        return this.updated[i];
+    }
+
+    /** Method checking whether an element's current record is still the one the edit has been based on - all of
+     * their values (but the z value, which the document model may renumber at any time) have to be the same.
+     */
+    public boolean isCurrent(int i, ShapeRecord current) {
+        ShapeRecord base = this.base[i];
+        if (base == null || current == null) {
+            return base == current;
+        }
+        return base.hasSameShape(current);
+    }
+
+    /** Helper method returning a snapshot with the edit's records in it (used by the actor, for the edits it has
+     * published but the JavaFX thread hasn't applied yet).
+     */
+    DocumentSnapshot applyTo(DocumentSnapshot snapshot) {
+        DocumentSnapshot result = snapshot;
+        for (int i = 0; i < this.updated.length; i++) {
+            result = result.with(this.getId(i), this.updated[i]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,20 @@
+package sketchy.document;
+
+import sketchy.shapes.ShapeRecord;
+import java.util.ArrayList;
+
+/** Interface of edits run by the document actor (see DocumentActor) rather than on the JavaFX thread - an edit
+ * reads an immutable snapshot of the document, and adds the new records of the elements it changes to a list
+ * (along with the records of the elements it adds, which are told apart by their IDs not being in the snapshot),
+ * and the IDs of the elements it removes to another one. Since it only gets a snapshot, an edit can take as long
+ * as it needs without ever blocking the user, and must not touch any JavaFX node or any of Sketchy's lists.
+ * An edit fails by throwing a RuntimeException - nothing it has produced is applied, and its message is shown.
+ */
+public interface DocumentEdit {
+    /** Method returning the name the edit is shown under (e.g. in the status line, when it fails or leaves some
+     * elements alone).
+     */
+    String getName();
+
+    void apply(DocumentSnapshot snapshot, ArrayList<ShapeRecord> updated, ArrayList<Long> removed);
+}
@@ -0,0 +1,12 @@
+package sketchy.document;
+
+import sketchy.shapes.ShapeRecord;
+
+/** Interface implemented by everything that has to follow the changes of the document model (such as a
+ * collaboration session broadcasting them to other editors). Whenever a record is added, replaced or removed,
+ * the model calls recordChanged with the old record (null if the element has just been added)
+ * and the new one (null if the element has just been removed).
+ */
+public interface DocumentListener {
+    void recordChanged(ShapeRecord old, ShapeRecord updated);
+}
@@ -0,0 +1,304 @@
+package sketchy.document;
+
+import sketchy.shapes.Savable;
+import sketchy.shapes.ShapeRecord;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/** Persistent model of the document - the immutable ShapeRecords of all elements currently visible on the
+ * sketchy pane, stored in two structurally shared data structures (a hash trie from IDs to records, and
+ * a treap of records sorted by their layering). The model is kept up to date by the top-level Sketchy class,
+ * which syncs the element affected by each command whenever it's performed (undoing or redoing it restores a
+ * snapshot of the model taken by the history instead).
+ * Each sync replaces a single record in O(log n), so that taking a snapshot of the document
+ * (for saving, exporting or history checkpoints) costs O(1) instead of copying all the elements.
+ * Layering is stored as a z value in every record - when an element is created, raised or lowered, it gets a
+ * z value between those of its new neighbours in the elements arraylist, so that no other record has to change.
+ * Only when there's no room left between two neighbouring values, the z values around them are renumbered.
+ * Every change of a record is reported to the model's listeners.
+ */
+public class DocumentModel {
+    private PersistentIdMap<ShapeRecord> byId;
+    private ZOrderTree byZ;
+    private ArrayList<DocumentListener> listeners;
+
+    public DocumentModel() {
+        this.byId = PersistentIdMap.empty();
+        this.byZ = ZOrderTree.empty();
+        this.listeners = new ArrayList<>();
+    }
+
+    public void addListener(DocumentListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(DocumentListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /** Method returning the current record of the element with a given ID (or null if it isn't on the pane). */
+    public ShapeRecord get(long id) {
+        return this.byId.get(id);
+    }
+
+    /** Method returning the number of records placed below a given one (whether it's in the model or not) - which
+     * is where the element stands (or would stand) among the others, as long as the elements arraylist is in sync.
+     */
+    public int rank(ShapeRecord record) {
+        return this.byZ.rank(record);
+    }
+
+    /** Method bringing the record of an element up to date with its current state - if the element isn't
+     * in the elements arraylist anymore (it has been deleted, or its creation has been undone), its record is
+     * removed. Otherwise, a new record is stored, keeping the old z value as long as it still lies between
+     * the z values of the element's neighbours in the arraylist. The elements arraylist is passed in as a parameter
+     * (rather than stored) so that the model stays independent of the lists Sketchy keeps.
+     * The element is looked for in the arraylist where the z-order tree says it is (see indexOf), so syncing an
+     * element that keeps its place (e.g. on every drag of the mouse) costs O(log n).
+     */
+    public void sync(Savable element, ArrayList<Savable> elements) {
+        if (element == null) {
+            return;
+        }
+        ShapeRecord old = this.byId.get(element.getId());
+        int index = this.indexOf(element, old, elements);
+        if (index < 0) {
+            this.remove(element.getId());
+            return;
+        }
+        ShapeRecord below = (index > 0) ? this.byId.get(elements.get(index - 1).getId()) : null;
+        ShapeRecord above = (index < elements.size() - 1) ? this.byId.get(elements.get(index + 1).getId()) : null;
+        if ((index > 0 && below == null) || (index < elements.size() - 1 && above == null)) {
+            this.rebuild(elements);
+            return;
+        }
+        double z;
+        if (old != null && (below == null || below.getZ() < old.getZ()) && (above == null || old.getZ() < above.getZ())) {
+            z = old.getZ();
+        } else if (below == null && above == null) {
+            z = 0;
+        } else if (below == null) {
+            z = above.getZ() - 1;
+        } else if (above == null) {
+            z = below.getZ() + 1;
+        } else {
+            z = (below.getZ() + above.getZ()) / 2;
+            if (z <= below.getZ() || z >= above.getZ()) {
+                this.rebuild(elements);
+                return;
+            }
+        }
+        this.apply(element.toRecord().withZ(z));
+    }
+
+    /** Method bringing the records of many elements up to date at once (e.g. the ones a bulk command has changed) -
+     * records of elements that aren't in the elements arraylist anymore are removed, and the others get new ones.
+     * Every run of changed elements lying next to each other in the arraylist keeps its old z values as long as
+     * they still lie in order between the ones of the run's neighbours, and is spread evenly between them otherwise
+     * (or stacked right above the topmost record, or below the bottom one). Only if there's no room left between the
+     * neighbours, the run is widened to take in some of them (twice as many every time), so that no more z values
+     * are renumbered than needed. Listeners are only told about records that have actually changed - finding the
+     * changed elements takes a single pass through the arraylist, but nothing is done for the other elements.
+     */
+    public void syncAll(Collection<? extends Savable> changed, ArrayList<Savable> elements) {
+        HashSet<Savable> pending = new HashSet<>(changed);
+        pending.remove(null);
+        ArrayList<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < elements.size() && !pending.isEmpty(); i++) {
+            if (pending.remove(elements.get(i))) {
+                positions.add(i);
+            }
+        }
+        for (Savable element : pending) {
+            this.remove(element.getId());
+        }
+        HashSet<Integer> changedAt = new HashSet<>(positions);
+        HashMap<Integer, Double> assigned = new HashMap<>();
+        int next = 0;
+        while (next < positions.size()) {
+            int first = positions.get(next++);
+            int last = first;
+            while (next < positions.size() && positions.get(next) == last + 1) {
+                last = positions.get(next++);
+            }
+            if (!this.placeRun(first, last, elements, assigned)) {
+                // a neighbour without a record means the model is out of sync with the arraylist
+                this.rebuild(elements);
+                return;
+            }
+        }
+        for (Map.Entry<Integer, Double> entry : assigned.entrySet()) {
+            Savable element = elements.get(entry.getKey());
+            ShapeRecord old = this.byId.get(element.getId());
+            ShapeRecord record = (old == null || changedAt.contains(entry.getKey()))
+                    ? element.toRecord().withZ(entry.getValue()) : old.withZ(entry.getValue());
+            if (old == null || old.getZ() != record.getZ() || !old.hasSameShape(record)) {
+                this.apply(record);
+            }
+        }
+    }
+
+    /** Helper method giving z values to a run of changed elements (between two positions of the arraylist) - see
+     * syncAll. Returns false if one of the neighbours it needs has no record.
+     */
+    private boolean placeRun(int first, int last, ArrayList<Savable> elements, HashMap<Integer, Double> assigned) {
+        Double below = (first > 0) ? this.zAt(first - 1, elements, assigned) : Double.valueOf(Double.NEGATIVE_INFINITY);
+        Double above = (last < elements.size() - 1) ? this.zAt(last + 1, elements, assigned)
+                : Double.valueOf(Double.POSITIVE_INFINITY);
+        if (below == null || above == null) {
+            return false;
+        }
+        double[] kept = new double[last - first + 1];
+        double previous = below;
+        for (int i = first; i <= last && previous < above; i++) {
+            ShapeRecord old = this.byId.get(elements.get(i).getId());
+            previous = (old != null && old.getZ() > previous) ? old.getZ() : Double.POSITIVE_INFINITY;
+            kept[i - first] = previous;
+        }
+        if (previous < above) {
+            for (int i = first; i <= last; i++) {
+                assigned.put(i, kept[i - first]);
+            }
+            return true;
+        }
+        int low = first;
+        int high = last;
+        int widen = 1;
+        while (true) {
+            Double lowZ = (low > 0) ? this.zAt(low - 1, elements, assigned) : null;
+            Double highZ = (high < elements.size() - 1) ? this.zAt(high + 1, elements, assigned) : null;
+            if ((low > 0 && lowZ == null) || (high < elements.size() - 1 && highZ == null)) {
+                return false;
+            }
+            int count = high - low + 1;
+            double from;
+            double step = 1;
+            if (lowZ == null) {
+                from = (highZ == null) ? -1 : highZ - (count + 1);
+            } else {
+                from = lowZ;
+                if (highZ != null) {
+                    step = (highZ - lowZ) / (count + 1);
+                }
+            }
+            double[] values = new double[count];
+            boolean fits = true;
+            for (int i = 0; i < count && fits; i++) {
+                values[i] = from + (i + 1) * step;
+                fits = values[i] > ((i > 0) ? values[i - 1] : (lowZ != null) ? lowZ : Double.NEGATIVE_INFINITY)
+                        && (highZ == null || values[i] < highZ);
+            }
+            if (fits) {
+                for (int i = 0; i < count; i++) {
+                    assigned.put(low + i, values[i]);
+                }
+                return true;
+            }
+            low = Math.max(0, low - widen);
+            high = Math.min(elements.size() - 1, high + widen);
+            widen *= 2;
+        }
+    }
+
+    /** Helper method returning the z value the element at a position of the arraylist has (or is about to get), or
+     * null if it has no record.
+     */
+    private Double zAt(int index, ArrayList<Savable> elements, HashMap<Integer, Double> assigned) {
+        Double z = assigned.get(index);
+        if (z != null) {
+            return z;
+        }
+        ShapeRecord record = this.byId.get(elements.get(index).getId());
+        return (record != null) ? Double.valueOf(record.getZ()) : null;
+    }
+
+    /** Helper method finding an element in the elements arraylist - at the rank of its old record in the z-order
+     * tree, or right above or below it (if it's just been raised or lowered), or at the top if it's new. Only if it
+     * isn't at any of them (e.g. it's been removed, or the arraylist has been reordered), the arraylist is searched.
+     */
+    private int indexOf(Savable element, ShapeRecord old, ArrayList<Savable> elements) {
+        int expected = (old != null) ? this.byZ.rank(old) : elements.size() - 1;
+        for (int index = expected - 1; index <= expected + 1; index++) {
+            if (index >= 0 && index < elements.size() && elements.get(index) == element) {
+                return index;
+            }
+        }
+        return elements.indexOf(element);
+    }
+
+    /** Method storing a record exactly as it is passed in (with its own z value) in place of the element's old
+     * one - used whenever records come from somewhere else than the elements themselves (e.g. from other editors).
+     */
+    public void apply(ShapeRecord record) {
+        ShapeRecord old = this.byId.get(record.getId());
+        if (old != null) {
+            this.byZ = this.byZ.remove(old);
+        }
+        this.byId = this.byId.put(record.getId(), record);
+        this.byZ = this.byZ.insert(record);
+        this.notifyListeners(old, record);
+    }
+
+    /** Method removing the record of the element with a given ID (if there's one). */
+    public void remove(long id) {
+        ShapeRecord old = this.byId.get(id);
+        if (old != null) {
+            this.byId = this.byId.remove(id);
+            this.byZ = this.byZ.remove(old);
+            this.notifyListeners(old, null);
+        }
+    }
+
+    /** Method rebuilding the whole model from the elements arraylist (with z values simply being the elements'
+     * indexes) - called after loading a file, and whenever the z values have to be renumbered.
+     */
+    public void rebuild(ArrayList<Savable> elements) {
+        PersistentIdMap<ShapeRecord> oldById = this.byId;
+        ZOrderTree oldByZ = this.byZ;
+        this.byId = PersistentIdMap.empty();
+        this.byZ = ZOrderTree.empty();
+        for (int i = 0; i < elements.size(); i++) {
+            ShapeRecord record = elements.get(i).toRecord().withZ(i);
+            this.byId = this.byId.put(record.getId(), record);
+            this.byZ = this.byZ.insert(record);
+        }
+        if (!this.listeners.isEmpty()) {
+            for (ShapeRecord old : oldByZ) {
+                if (this.byId.get(old.getId()) == null) {
+                    this.notifyListeners(old, null);
+                }
+            }
+            for (ShapeRecord record : this.byZ) {
+                this.notifyListeners(oldById.get(record.getId()), record);
+            }
+        }
+    }
+
+    /** Method bringing the whole model to the state of a snapshot (e.g. one reconstructed from the history) -
+     * both structures are simply replaced, and listeners are told about every record that differs between the
+     * old state and the new one (found by diffing the two, so it costs as much as the number of differences).
+     */
+    public void restore(DocumentSnapshot snapshot) {
+        PersistentIdMap<ShapeRecord> oldById = this.byId;
+        this.byId = snapshot.getById();
+        this.byZ = snapshot.getByZ();
+        if (!this.listeners.isEmpty()) {
+            oldById.diff(this.byId, (long id, ShapeRecord old, ShapeRecord updated) -> this.notifyListeners(old, updated));
+        }
+    }
+
+    /** Helper method reporting a change of a record to all listeners. */
+    private void notifyListeners(ShapeRecord old, ShapeRecord updated) {
+        for (DocumentListener listener : this.listeners) {
+            listener.recordChanged(old, updated);
+        }
+    }
+
+    /** Method returning a snapshot of the current state of the document - O(1), as nothing is copied. */
+    public DocumentSnapshot snapshot() {
+        return new DocumentSnapshot(this.byId, this.byZ);
+    }
+}
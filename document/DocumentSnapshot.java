@@ -0,0 +1,71 @@
+package sketchy.document;
+
+import sketchy.shapes.ShapeRecord;
+import java.util.Iterator;
+
+/** Immutable, consistent view of the whole document at one point in time. Taking a snapshot only wraps
+ * the current versions of the document model's two persistent structures (the map from IDs to records and
+ * the tree of records sorted by their layering), so it costs O(1) and shares all of its memory with the
+ * live document - only the nodes that are changed afterwards get copied, by the live document, not by the snapshot.
+ * Snapshots can be used for saving, exporting or as history checkpoints, and can be safely read from
+ * any thread, while the user keeps on drawing.
+ */
+public final class DocumentSnapshot implements Iterable<ShapeRecord> {
+    private final PersistentIdMap<ShapeRecord> byId;
+    private final ZOrderTree byZ;
+
+    public DocumentSnapshot(PersistentIdMap<ShapeRecord> byId, ZOrderTree byZ) {
+        this.byId = byId;
+        this.byZ = byZ;
+    }
+
+    /** Method returning the record of the element with a given ID, or null if it wasn't on the pane at the time. */
+    public ShapeRecord get(long id) {
+        return this.byId.get(id);
+    }
+
+    /** Method returning the number of elements in the document. */
+    public int size() {
+        return this.byId.size();
+    }
+
+    /** Method returning a new snapshot in which the element with a given ID has the record passed in (or is
+     * missing, if the record is null) - this snapshot stays untouched, and the two share all but O(log n) nodes.
+     */
+    public DocumentSnapshot with(long id, ShapeRecord record) {
+        ShapeRecord old = this.byId.get(id);
+        PersistentIdMap<ShapeRecord> newById = this.byId;
+        ZOrderTree newByZ = this.byZ;
+        if (old != null) {
+            newById = newById.remove(id);
+            newByZ = newByZ.remove(old);
+        }
+        if (record != null) {
+            newById = newById.put(id, record);
+            newByZ = newByZ.insert(record);
+        }
+        return new DocumentSnapshot(newById, newByZ);
+    }
+
+    /** Method reporting every element whose record differs between this snapshot and another one (null standing
+     * for an element missing from a snapshot) - it costs time proportional to the number of differences,
+     * as long as the two snapshots come from the same document.
+     */
+    public void diff(DocumentSnapshot other, PersistentIdMap.ChangeVisitor<ShapeRecord> visitor) {
+        this.byId.diff(other.byId, visitor);
+    }
+
+    PersistentIdMap<ShapeRecord> getById() {
+        return this.byId;
+    }
+
+    ZOrderTree getByZ() {
+        return this.byZ;
+    }
+
+    /** Method returning an iterator going through the records from the bottom layer to the top one. */
+    @Override
+    public Iterator<ShapeRecord> iterator() {
+        return this.byZ.iterator();
+    }
+}
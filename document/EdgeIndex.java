@@ -0,0 +1,124 @@
+package sketchy.document;
+
+import sketchy.shapes.RecordBounds;
+import sketchy.shapes.ShapeRecord;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Index of the edges and centers of all elements of the document, used for snapping - for each axis, a sorted
+ * map holds every left (top) edge, center and right (bottom) edge of the elements' axis-aligned bounding boxes,
+ * along with the number of elements having an edge at that coordinate. The index listens to the document model,
+ * so it's updated incrementally (in O(log n)) whenever a record changes - however the change has been made
+ * (a command, a seek through the history, another editor) - and the nearest edge to any coordinate is found in
+ * O(log n) as well, which keeps snapping cheap no matter how many elements there are.
+ * While an element is being dragged, its own edges (still at the position they had when the drag started) can
+ * be excluded, so that it doesn't snap to itself.
+ */
+public class EdgeIndex implements DocumentListener {
+    private TreeMap<Double, Integer> xs = new TreeMap<>();
+    private TreeMap<Double, Integer> ys = new TreeMap<>();
+    private HashMap<Long, double[]> bounds = new HashMap<>();
+    private HashMap<Double, Integer> excludedXs = new HashMap<>();
+    private HashMap<Double, Integer> excludedYs = new HashMap<>();
+
+    /** Records whose geometry hasn't changed (e.g. ones that have only been raised or lowered) are skipped. */
+    @Override
+    public void recordChanged(ShapeRecord old, ShapeRecord updated) {
+        if (old != null && updated != null && sameGeometry(old, updated)) {
+            return;
+        }
+        if (old != null) {
+            double[] box = this.bounds.remove(old.getId());
+            if (box != null) {
+                this.update(box, -1);
+            }
+        }
+        if (updated != null) {
+            double[] box = RecordBounds.of(updated);
+            this.bounds.put(updated.getId(), box);
+            this.update(box, 1);
+        }
+    }
+
+    /** Method returning the bounding box ({minX, minY, maxX, maxY}) of an element, as the index knows it. */
+    public double[] boundsOf(long id) {
+        return this.bounds.get(id);
+    }
+
+    /** Method setting the elements whose edges should be ignored by the following lookups (none if the list is empty). */
+    public void exclude(ArrayList<Long> ids) {
+        this.excludedXs.clear();
+        this.excludedYs.clear();
+        for (long id : ids) {
+            double[] box = this.bounds.get(id);
+            if (box != null) {
+                add(this.excludedXs, box[0], 1);
+                add(this.excludedXs, (box[0] + box[2]) / 2, 1);
+                add(this.excludedXs, box[2], 1);
+                add(this.excludedYs, box[1], 1);
+                add(this.excludedYs, (box[1] + box[3]) / 2, 1);
+                add(this.excludedYs, box[3], 1);
+            }
+        }
+    }
+
+    /** Method returning the vertical edge (or center) closest to a given x, if it's at most a given distance away
+     * (NaN otherwise).
+     */
+    public double nearestX(double x, double distance) {
+        return nearest(this.xs, this.excludedXs, x, distance);
+    }
+
+    public double nearestY(double y, double distance) {
+        return nearest(this.ys, this.excludedYs, y, distance);
+    }
+
+    public int size() {
+        return this.bounds.size();
+    }
+
+    private void update(double[] box, int change) {
+        add(this.xs, box[0], change);
+        add(this.xs, (box[0] + box[2]) / 2, change);
+        add(this.xs, box[2], change);
+        add(this.ys, box[1], change);
+        add(this.ys, (box[1] + box[3]) / 2, change);
+        add(this.ys, box[3], change);
+    }
+
+    private static void add(Map<Double, Integer> counts, double value, int change) {
+        counts.merge(value, change, (Integer a, Integer b) -> (a + b == 0) ? null : a + b);
+    }
+
+    /** Helper method looking for the closest coordinate on both sides of a value - coordinates that only excluded
+     * elements have are stepped over (there are at most six of them, so this stays O(log n)).
+     */
+    private static double nearest(TreeMap<Double, Integer> counts, HashMap<Double, Integer> excluded, double value, double distance) {
+        Map.Entry<Double, Integer> below = counts.floorEntry(value);
+        while (below != null && value - below.getKey() <= distance && below.getValue() <= excluded.getOrDefault(below.getKey(), 0)) {
+            below = counts.lowerEntry(below.getKey());
+        }
+        Map.Entry<Double, Integer> above = counts.ceilingEntry(value);
+        while (above != null && above.getKey() - value <= distance && above.getValue() <= excluded.getOrDefault(above.getKey(), 0)) {
+            above = counts.higherEntry(above.getKey());
+        }
+        double best = Double.NaN;
+        double bestDistance = distance;
+        if (below != null && value - below.getKey() <= bestDistance) {
+            best = below.getKey();
+            bestDistance = value - best;
+        }
+        if (above != null && above.getKey() - value < bestDistance) {
+            best = above.getKey();
+        }
+        return best;
+    }
+
+    private static boolean sameGeometry(ShapeRecord a, ShapeRecord b) {
+        return a.getType() == b.getType() && a.getCenterX() == b.getCenterX() && a.getCenterY() == b.getCenterY()
+                && a.getWidth() == b.getWidth() && a.getHeight() == b.getHeight() && a.getAngle() == b.getAngle()
+                && a.getPoints() == b.getPoints();
+    }
+}
@@ -0,0 +1,325 @@
+package sketchy.document;
+
+import sketchy.shapes.ElementType;
+import sketchy.shapes.RecordBounds;
+import sketchy.shapes.ShapeRecord;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/** Storage of elements outside of the Java heap, for documents too big to be held as records (or nodes) - every
+ * attribute of the elements is kept in a column of its own (structure of arrays: all IDs together, all types, all
+ * centers, all colors...), and the points of all lines and fills in one more column, each element knowing where
+ * its points start and how many there are. Columns are made of fixed-size chunks of native memory, which are either
+ * direct buffers, or regions of a memory-mapped file (so the operating system pages them in and out as needed, and
+ * they don't count against the limit on direct memory, which is as big as the heap by default).
+ * Elements are referred to by their slots (in the order they were added, which is their z-order) - a record is only
+ * made when one is asked for, and it can be dropped right away, so the garbage collector only ever sees short-lived
+ * objects no matter how big the document is. Every element's bounding box is kept as well (in floats, rounded
+ * outwards), so that finding the elements in a region never needs their records (see ArenaGrid). Colors are kept as
+ * 8-bit RGB (which is what the color picker gives).
+ * An arena is only ever changed by one thread at a time, though any number of threads can read it in between.
+ */
+public class GeometryArena implements Closeable {
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK = 1 << CHUNK_SHIFT;
+    private static final int MASK = CHUNK - 1;
+    private static final byte REMOVED = -1;
+    private static final ElementType[] TYPES = ElementType.values();
+
+    private FileChannel channel;
+    private Path file;
+    private long mapped;
+    private int size;
+    private long pointCount;
+    private Column ids;
+    private Column types;
+    private Column centerX;
+    private Column centerY;
+    private Column width;
+    private Column height;
+    private Column angle;
+    private Column color;
+    private Column z;
+    private Column pointStart;
+    private Column pointLength;
+    private Column minX;
+    private Column minY;
+    private Column maxX;
+    private Column maxY;
+    private Column points;
+
+    private GeometryArena(Path file) throws IOException {
+        if (file != null) {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        this.ids = new Column(Long.BYTES);
+        this.types = new Column(Byte.BYTES);
+        this.centerX = new Column(Double.BYTES);
+        this.centerY = new Column(Double.BYTES);
+        this.width = new Column(Double.BYTES);
+        this.height = new Column(Double.BYTES);
+        this.angle = new Column(Double.BYTES);
+        this.color = new Column(Integer.BYTES);
+        this.z = new Column(Double.BYTES);
+        this.pointStart = new Column(Long.BYTES);
+        this.pointLength = new Column(Integer.BYTES);
+        this.minX = new Column(Float.BYTES);
+        this.minY = new Column(Float.BYTES);
+        this.maxX = new Column(Float.BYTES);
+        this.maxY = new Column(Float.BYTES);
+        this.points = new Column(Double.BYTES);
+    }
+
+    /** Factory method returning an arena kept in direct buffers. */
+    public static GeometryArena direct() {
+        try {
+            return new GeometryArena(null);
+        } catch (IOException e) {
+            // nothing is opened without a file
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Factory method returning an arena kept in a memory-mapped file (created, or emptied if it exists) - the file
+     * is deleted once the arena is closed.
+     */
+    public static GeometryArena mapped(Path file) throws IOException {
+        return new GeometryArena(file);
+    }
+
+    /** Method adding an element on top of all the others, returning its slot. */
+    public int add(ShapeRecord record) {
+        if (this.size == Integer.MAX_VALUE) {
+            throw new IllegalStateException("The arena is full");
+        }
+        int slot = this.size++;
+        this.ids.putLong(slot, record.getId());
+        this.write(slot, record, true);
+        return slot;
+    }
+
+    /** Method bringing the element in a slot to the state described by a record - its points are written over the
+     * old ones if there are as many of them, and added to the end of the points otherwise (the old ones are then
+     * never used again).
+     */
+    public void set(int slot, ShapeRecord record) {
+        this.check(slot);
+        double[] points = (record.getPoints() != null) ? record.getPoints() : new double[0];
+        this.write(slot, record, points.length != this.pointLength.getInt(slot));
+    }
+
+    /** Method removing the element in a slot - the slot stays empty (slots are never reused, so the others keep
+     * their order).
+     */
+    public void remove(int slot) {
+        this.check(slot);
+        this.types.putByte(slot, REMOVED);
+    }
+
+    public boolean isRemoved(int slot) {
+        this.check(slot);
+        return this.types.getByte(slot) == REMOVED;
+    }
+
+    /** Method returning the record of the element in a slot (a new one every time), or null if it's been removed. */
+    public ShapeRecord get(int slot) {
+        this.check(slot);
+        byte type = this.types.getByte(slot);
+        if (type == REMOVED) {
+            return null;
+        }
+        double[] points = new double[this.pointLength.getInt(slot)];
+        long start = this.pointStart.getLong(slot);
+        for (int i = 0; i < points.length; i++) {
+            points[i] = this.points.getDouble(start + i);
+        }
+        int rgb = this.color.getInt(slot);
+        return new ShapeRecord(this.ids.getLong(slot), TYPES[type], this.centerX.getDouble(slot),
+                this.centerY.getDouble(slot), this.width.getDouble(slot), this.height.getDouble(slot),
+                this.angle.getDouble(slot), ((rgb >> 16) & 0xFF) / 255.0, ((rgb >> 8) & 0xFF) / 255.0,
+                (rgb & 0xFF) / 255.0, points, this.z.getDouble(slot));
+    }
+
+    /** Method returning whether the bounding box of the element in a slot intersects a region (false for removed
+     * elements) - only the bounds' columns are read.
+     */
+    public boolean intersects(int slot, double minX, double minY, double maxX, double maxY) {
+        return this.types.getByte(slot) != REMOVED && this.minX.getFloat(slot) <= maxX && this.maxX.getFloat(slot) >= minX
+                && this.minY.getFloat(slot) <= maxY && this.maxY.getFloat(slot) >= minY;
+    }
+
+    public float getMinX(int slot) {
+        return this.minX.getFloat(slot);
+    }
+
+    public float getMinY(int slot) {
+        return this.minY.getFloat(slot);
+    }
+
+    public float getMaxX(int slot) {
+        return this.maxX.getFloat(slot);
+    }
+
+    public float getMaxY(int slot) {
+        return this.maxY.getFloat(slot);
+    }
+
+    /** Accessor method returning the color of the element in a slot, as 8-bit RGB. */
+    public int getColor(int slot) {
+        return this.color.getInt(slot);
+    }
+
+    /** Accessor method returning the number of slots (including the ones of removed elements). */
+    public int size() {
+        return this.size;
+    }
+
+    /** Accessor method returning the amount of native memory (or of the mapped file) the arena takes up. */
+    public long getBytes() {
+        long bytes = 0;
+        for (Column column : new Column[] {this.ids, this.types, this.centerX, this.centerY, this.width, this.height,
+                this.angle, this.color, this.z, this.pointStart, this.pointLength, this.minX, this.minY, this.maxX,
+                this.maxY, this.points}) {
+            bytes += (long) column.chunks.size() * CHUNK * column.width;
+        }
+        return bytes;
+    }
+
+    /** Method closing the arena - the memory of direct buffers is released once they're collected, and so are the
+     * mappings of a file (which is deleted right away, as far as the operating system allows it).
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.channel != null) {
+            this.channel.close();
+            Files.deleteIfExists(this.file);
+        }
+    }
+
+    /** Helper method writing everything but the ID of an element into its slot, and its points either over its old
+     * ones or to the end of the points.
+     */
+    private void write(int slot, ShapeRecord record, boolean appendPoints) {
+        double[] points = (record.getPoints() != null) ? record.getPoints() : new double[0];
+        this.types.putByte(slot, (byte) record.getType().ordinal());
+        this.centerX.putDouble(slot, record.getCenterX());
+        this.centerY.putDouble(slot, record.getCenterY());
+        this.width.putDouble(slot, record.getWidth());
+        this.height.putDouble(slot, record.getHeight());
+        this.angle.putDouble(slot, record.getAngle());
+        this.color.putInt(slot, ((int) Math.round(record.getRed() * 255) << 16)
+                | ((int) Math.round(record.getGreen() * 255) << 8) | (int) Math.round(record.getBlue() * 255));
+        this.z.putDouble(slot, record.getZ());
+        long start = appendPoints ? this.pointCount : this.pointStart.getLong(slot);
+        for (int i = 0; i < points.length; i++) {
+            this.points.putDouble(start + i, points[i]);
+        }
+        if (appendPoints) {
+            this.pointCount += points.length;
+        }
+        this.pointStart.putLong(slot, start);
+        this.pointLength.putInt(slot, points.length);
+        double[] bounds = RecordBounds.of(record);
+        this.minX.putFloat(slot, Math.nextDown((float) bounds[0]));
+        this.minY.putFloat(slot, Math.nextDown((float) bounds[1]));
+        this.maxX.putFloat(slot, Math.nextUp((float) bounds[2]));
+        this.maxY.putFloat(slot, Math.nextUp((float) bounds[3]));
+    }
+
+    private void check(int slot) {
+        if (slot < 0 || slot >= this.size) {
+            throw new IndexOutOfBoundsException("No slot " + slot + " in an arena of " + this.size);
+        }
+    }
+
+    /** Method allocating a block of native memory - a direct buffer, or the next region of the mapped file (used for
+     * the arena's own chunks, and for indexes over it, which then live and go away along with it).
+     */
+    ByteBuffer allocate(int bytes) {
+        if (this.channel == null) {
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+        try {
+            ByteBuffer chunk = this.channel.map(FileChannel.MapMode.READ_WRITE, this.mapped, bytes);
+            this.mapped += bytes;
+            return chunk.order(ByteOrder.nativeOrder());
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't map the arena's file", e);
+        }
+    }
+
+    /** Column of values of a single width, kept in chunks of CHUNK values each (allocated as they're needed). The
+     * chunks are read and written through absolute accessors only, so the buffers' positions are never touched.
+     */
+    private class Column {
+        private int width;
+        private ArrayList<ByteBuffer> chunks;
+
+        private Column(int width) {
+            this.width = width;
+            this.chunks = new ArrayList<>();
+        }
+
+        /** Helper method returning the chunk holding a value, allocating every chunk up to it if needed. */
+        private ByteBuffer chunk(long index) {
+            int chunk = (int) (index >>> CHUNK_SHIFT);
+            while (this.chunks.size() <= chunk) {
+                this.chunks.add(GeometryArena.this.allocate(CHUNK * this.width));
+            }
+            return this.chunks.get(chunk);
+        }
+
+        private int offset(long index) {
+            return (int) (index & MASK) * this.width;
+        }
+
+        private byte getByte(long index) {
+            return this.chunks.get((int) (index >>> CHUNK_SHIFT)).get(this.offset(index));
+        }
+
+        private int getInt(long index) {
+            return this.chunks.get((int) (index >>> CHUNK_SHIFT)).getInt(this.offset(index));
+        }
+
+        private long getLong(long index) {
+            return this.chunks.get((int) (index >>> CHUNK_SHIFT)).getLong(this.offset(index));
+        }
+
+        private float getFloat(long index) {
+            return this.chunks.get((int) (index >>> CHUNK_SHIFT)).getFloat(this.offset(index));
+        }
+
+        private double getDouble(long index) {
+            return this.chunks.get((int) (index >>> CHUNK_SHIFT)).getDouble(this.offset(index));
+        }
+
+        private void putByte(long index, byte value) {
+            this.chunk(index).put(this.offset(index), value);
+        }
+
+        private void putInt(long index, int value) {
+            this.chunk(index).putInt(this.offset(index), value);
+        }
+
+        private void putLong(long index, long value) {
+            this.chunk(index).putLong(this.offset(index), value);
+        }
+
+        private void putFloat(long index, float value) {
+            this.chunk(index).putFloat(this.offset(index), value);
+        }
+
+        private void putDouble(long index, double value) {
+            this.chunk(index).putDouble(this.offset(index), value);
+        }
+    }
+}
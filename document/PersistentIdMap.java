@@ -0,0 +1,293 @@
+package sketchy.document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** Persistent (immutable) map from element IDs to values, implemented as a hash array mapped trie (HAMT).
+ * Every put or remove returns a new map and leaves the old one untouched, but the two share all of
+ * the trie's nodes except the ones on the path to the changed entry (at most seven of them) - this way, an
+ * old version of the map can be kept around (for example in a snapshot of the document) for the cost of a
+ * single reference, and updating the live version costs O(log32 n) instead of copying the whole map.
+ * Each node stores a 32-bit bitmap of the slots that are in use, and a compact array of either entries or
+ * child nodes, so that empty slots don't take up any memory. Keys with identical hashes end up in a
+ * collision node at the bottom of the trie.
+ */
+public final class PersistentIdMap<V> {
+    private static final int BITS = 5;
+    private static final int MASK = 31;
+    private static final PersistentIdMap<?> EMPTY = new PersistentIdMap<>(null, 0);
+
+    private final Object root;
+    private final int size;
+
+    private PersistentIdMap(Object root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /** Method returning the empty map (shared, as it can never change). */
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentIdMap<V> empty() {
+        return (PersistentIdMap<V>) EMPTY;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /** Method returning the value stored under a given key, or null if there's none. */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int hash = hash(key);
+        Object node = this.root;
+        int shift = 0;
+        while (node != null) {
+            if (node instanceof Entry) {
+                Entry entry = (Entry) node;
+                return (entry.key == key) ? (V) entry.value : null;
+            }
+            if (node instanceof Collision) {
+                for (Entry entry : ((Collision) node).entries) {
+                    if (entry.key == key) {
+                        return (V) entry.value;
+                    }
+                }
+                return null;
+            }
+            BitmapNode bitmapNode = (BitmapNode) node;
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmapNode.bitmap & bit) == 0) {
+                return null;
+            }
+            node = bitmapNode.slots[Integer.bitCount(bitmapNode.bitmap & (bit - 1))];
+            shift += BITS;
+        }
+        return null;
+    }
+
+    /** Method returning a new map in which the key is associated with the value passed in as a parameter. */
+    public PersistentIdMap<V> put(long key, V value) {
+        boolean[] added = new boolean[1];
+        Object newRoot = put(this.root, 0, hash(key), new Entry(key, value), added);
+        return new PersistentIdMap<>(newRoot, added[0] ? this.size + 1 : this.size);
+    }
+
+    /** Method returning a new map without the key passed in as a parameter (or this map, if there was no such key). */
+    public PersistentIdMap<V> remove(long key) {
+        if (this.get(key) == null) {
+            return this;
+        }
+        Object newRoot = remove(this.root, 0, hash(key), key);
+        return new PersistentIdMap<>(newRoot, this.size - 1);
+    }
+
+    /** Method reporting every key whose value differs between this map and another one (with null standing
+     * for a missing value) - values are compared by identity. Since two versions of a map share every subtree
+     * that hasn't changed between them, such subtrees are skipped as soon as they're found to be the same
+     * object, so comparing two versions costs time proportional to the number of differences, not to their size.
+     */
+    public void diff(PersistentIdMap<V> other, ChangeVisitor<V> visitor) {
+        diff(this.root, other.root, 0, visitor);
+    }
+
+    /** Interface of whatever diff reports the differences to. */
+    public interface ChangeVisitor<V> {
+        void changed(long key, V oldValue, V newValue);
+    }
+
+    /** Recursive helper method for diff - descends into both tries in parallel as long as both sides are bitmap
+     * nodes, and compares the entries of the two subtrees directly as soon as their shapes differ.
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> void diff(Object first, Object second, int shift, ChangeVisitor<V> visitor) {
+        if (first == second) {
+            return;
+        }
+        if (first instanceof BitmapNode && second instanceof BitmapNode) {
+            BitmapNode firstNode = (BitmapNode) first;
+            BitmapNode secondNode = (BitmapNode) second;
+            int bits = firstNode.bitmap | secondNode.bitmap;
+            while (bits != 0) {
+                int bit = bits & -bits;
+                bits &= bits - 1;
+                Object firstChild = ((firstNode.bitmap & bit) == 0) ? null
+                        : firstNode.slots[Integer.bitCount(firstNode.bitmap & (bit - 1))];
+                Object secondChild = ((secondNode.bitmap & bit) == 0) ? null
+                        : secondNode.slots[Integer.bitCount(secondNode.bitmap & (bit - 1))];
+                diff(firstChild, secondChild, shift + BITS, visitor);
+            }
+            return;
+        }
+        HashMap<Long, Object> firstEntries = new HashMap<>();
+        collect(first, firstEntries);
+        HashMap<Long, Object> secondEntries = new HashMap<>();
+        collect(second, secondEntries);
+        for (Map.Entry<Long, Object> entry : firstEntries.entrySet()) {
+            Object updated = secondEntries.get(entry.getKey());
+            if (updated != entry.getValue()) {
+                visitor.changed(entry.getKey(), (V) entry.getValue(), (V) updated);
+            }
+        }
+        for (Map.Entry<Long, Object> entry : secondEntries.entrySet()) {
+            if (!firstEntries.containsKey(entry.getKey())) {
+                visitor.changed(entry.getKey(), null, (V) entry.getValue());
+            }
+        }
+    }
+
+    /** Helper method gathering all entries of a subtree. */
+    private static void collect(Object node, HashMap<Long, Object> entries) {
+        if (node instanceof Entry) {
+            entries.put(((Entry) node).key, ((Entry) node).value);
+        } else if (node instanceof Collision) {
+            for (Entry entry : ((Collision) node).entries) {
+                entries.put(entry.key, entry.value);
+            }
+        } else if (node instanceof BitmapNode) {
+            for (Object child : ((BitmapNode) node).slots) {
+                collect(child, entries);
+            }
+        }
+    }
+
+    /** Recursive helper method for put - copies only the nodes on the path from the root to the entry. */
+    private static Object put(Object node, int shift, int hash, Entry entry, boolean[] added) {
+        if (node == null) {
+            added[0] = true;
+            return entry;
+        }
+        if (node instanceof Entry) {
+            Entry existing = (Entry) node;
+            if (existing.key == entry.key) {
+                return entry;
+            }
+            added[0] = true;
+            int existingHash = hash(existing.key);
+            if (existingHash == hash) {
+                return new Collision(new Entry[] {existing, entry});
+            }
+            return pair(existing, existingHash, entry, hash, shift);
+        }
+        if (node instanceof Collision) {
+            Entry[] entries = ((Collision) node).entries;
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i].key == entry.key) {
+                    Entry[] copy = entries.clone();
+                    copy[i] = entry;
+                    return new Collision(copy);
+                }
+            }
+            Entry[] copy = new Entry[entries.length + 1];
+            System.arraycopy(entries, 0, copy, 0, entries.length);
+            copy[entries.length] = entry;
+            added[0] = true;
+            return new Collision(copy);
+        }
+        BitmapNode bitmapNode = (BitmapNode) node;
+        int bit = 1 << ((hash >>> shift) & MASK);
+        int index = Integer.bitCount(bitmapNode.bitmap & (bit - 1));
+        if ((bitmapNode.bitmap & bit) == 0) {
+            Object[] slots = new Object[bitmapNode.slots.length + 1];
+            System.arraycopy(bitmapNode.slots, 0, slots, 0, index);
+            slots[index] = entry;
+            System.arraycopy(bitmapNode.slots, index, slots, index + 1, bitmapNode.slots.length - index);
+            added[0] = true;
+            return new BitmapNode(bitmapNode.bitmap | bit, slots);
+        }
+        Object[] slots = bitmapNode.slots.clone();
+        slots[index] = put(slots[index], shift + BITS, hash, entry, added);
+        return new BitmapNode(bitmapNode.bitmap, slots);
+    }
+
+    /** Helper method creating the smallest subtree holding two entries with different hashes. */
+    private static Object pair(Entry first, int firstHash, Entry second, int secondHash, int shift) {
+        int firstIndex = (firstHash >>> shift) & MASK;
+        int secondIndex = (secondHash >>> shift) & MASK;
+        if (firstIndex == secondIndex) {
+            Object child = pair(first, firstHash, second, secondHash, shift + BITS);
+            return new BitmapNode(1 << firstIndex, new Object[] {child});
+        }
+        Object[] slots = (firstIndex < secondIndex) ? new Object[] {first, second} : new Object[] {second, first};
+        return new BitmapNode((1 << firstIndex) | (1 << secondIndex), slots);
+    }
+
+    /** Recursive helper method for remove - returns null whenever a node ends up empty, so that it's
+     * dropped from its parent, and pulls single entries (but never collision nodes) up, so that the trie
+     * doesn't keep long chains of nodes holding just one child.
+     */
+    private static Object remove(Object node, int shift, int hash, long key) {
+        if (node instanceof Entry) {
+            return null;
+        }
+        if (node instanceof Collision) {
+            Entry[] entries = ((Collision) node).entries;
+            if (entries.length == 2) {
+                return (entries[0].key == key) ? entries[1] : entries[0];
+            }
+            Entry[] copy = new Entry[entries.length - 1];
+            int j = 0;
+            for (Entry entry : entries) {
+                if (entry.key != key) {
+                    copy[j++] = entry;
+                }
+            }
+            return new Collision(copy);
+        }
+        BitmapNode bitmapNode = (BitmapNode) node;
+        int bit = 1 << ((hash >>> shift) & MASK);
+        int index = Integer.bitCount(bitmapNode.bitmap & (bit - 1));
+        Object child = remove(bitmapNode.slots[index], shift + BITS, hash, key);
+        if (child == null) {
+            if (bitmapNode.slots.length == 1) {
+                return null;
+            }
+            Object[] slots = new Object[bitmapNode.slots.length - 1];
+            System.arraycopy(bitmapNode.slots, 0, slots, 0, index);
+            System.arraycopy(bitmapNode.slots, index + 1, slots, index, slots.length - index);
+            if (slots.length == 1 && slots[0] instanceof Entry) {
+                return slots[0];
+            }
+            return new BitmapNode(bitmapNode.bitmap & ~bit, slots);
+        }
+        if (bitmapNode.slots.length == 1 && child instanceof Entry) {
+            return child;
+        }
+        Object[] slots = bitmapNode.slots.clone();
+        slots[index] = child;
+        return new BitmapNode(bitmapNode.bitmap, slots);
+    }
+
+    /** Helper method spreading the bits of an ID, so that consecutive IDs don't all end up in the same branch. */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static final class Entry {
+        private final long key;
+        private final Object value;
+
+        private Entry(long key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class BitmapNode {
+        private final int bitmap;
+        private final Object[] slots;
+
+        private BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    private static final class Collision {
+        private final Entry[] entries;
+
+        private Collision(Entry[] entries) {
+            this.entries = entries;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package sketchy.document;
+
+import sketchy.shapes.ShapeRecord;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** Persistent (immutable) tree of ShapeRecords sorted by their z values - the order in which elements are
+ * layered on the sketchy pane, from the bottom to the top. Records with equal z values (which can only
+ * happen when elements are created concurrently by different collaborators) are ordered by their IDs.
+ * It's a treap (a binary search tree on z values that is also a heap on pseudo-random priorities derived
+ * from the elements' IDs), so it stays balanced
+ * with high probability without any rebalancing bookkeeping. Inserting or removing a record copies only
+ * the O(log n) nodes on the path to it, so all older versions of the tree stay valid and share the rest
+ * of their nodes with the new one. Iterating through the tree in z-order only needs a stack as deep as
+ * the tree itself, so the records can be streamed (for example to a file) without copying them.
+ * Every node knows the size of its subtree, so the position of a record in the z-order is found in O(log n) too.
+ */
+public final class ZOrderTree implements Iterable<ShapeRecord> {
+    private static final ZOrderTree EMPTY = new ZOrderTree(null);
+
+    private final Node root;
+
+    private ZOrderTree(Node root) {
+        this.root = root;
+    }
+
+    public static ZOrderTree empty() {
+        return EMPTY;
+    }
+
+    /** Method returning a new tree containing the record passed in as a parameter. */
+    public ZOrderTree insert(ShapeRecord record) {
+        return new ZOrderTree(insert(this.root, new Node(record, priority(record.getId()), null, null)));
+    }
+
+    /** Method returning a new tree without the record passed in as a parameter (found by its z value and ID). */
+    public ZOrderTree remove(ShapeRecord record) {
+        return new ZOrderTree(remove(this.root, record));
+    }
+
+    /** Method returning the number of records placed below a given one (whether it's in the tree or not) - which is
+     * its index in the z-order if it is, and the index it would be inserted at if it isn't.
+     */
+    public int rank(ShapeRecord record) {
+        int rank = 0;
+        Node node = this.root;
+        while (node != null) {
+            if (compare(node.record, record) < 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return rank;
+    }
+
+    public int size() {
+        return size(this.root);
+    }
+
+    /** Method returning the z value of the topmost record (or 0 if the tree is empty). */
+    public double maxZ() {
+        Node node = this.root;
+        if (node == null) {
+            return 0;
+        }
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node.record.getZ();
+    }
+
+    /** Recursive helper method for insert - if the new node's priority is greater than the one of the subtree's
+     * root, the subtree is split around the new z value and both of its halves become the new node's children.
+     */
+    private static Node insert(Node node, Node newNode) {
+        if (node == null) {
+            return newNode;
+        }
+        if (newNode.priority > node.priority) {
+            Node[] halves = split(node, newNode.record);
+            return new Node(newNode.record, newNode.priority, halves[0], halves[1]);
+        }
+        if (compare(newNode.record, node.record) < 0) {
+            return new Node(node.record, node.priority, insert(node.left, newNode), node.right);
+        }
+        return new Node(node.record, node.priority, node.left, insert(node.right, newNode));
+    }
+
+    /** Recursive helper method for remove - once the node is found, its two subtrees are merged in its place. */
+    private static Node remove(Node node, ShapeRecord record) {
+        if (node == null) {
+            return null;
+        }
+        int comparison = compare(record, node.record);
+        if (comparison == 0) {
+            return merge(node.left, node.right);
+        }
+        if (comparison < 0) {
+            return new Node(node.record, node.priority, remove(node.left, record), node.right);
+        }
+        return new Node(node.record, node.priority, node.left, remove(node.right, record));
+    }
+
+    /** Helper method splitting a subtree into the nodes placed below and not below a given record. */
+    private static Node[] split(Node node, ShapeRecord record) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (compare(node.record, record) < 0) {
+            Node[] halves = split(node.right, record);
+            halves[0] = new Node(node.record, node.priority, node.left, halves[0]);
+            return halves;
+        }
+        Node[] halves = split(node.left, record);
+        halves[1] = new Node(node.record, node.priority, halves[1], node.right);
+        return halves;
+    }
+
+    /** Helper method merging two subtrees, all z values of the first one being smaller than those of the second one. */
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            return new Node(left.record, left.priority, left.left, merge(left.right, right));
+        }
+        return new Node(right.record, right.priority, merge(left, right.left), right.right);
+    }
+
+    private static int size(Node node) {
+        return (node == null) ? 0 : node.size;
+    }
+
+    /** Helper method comparing the layering of two records - by their z values first, and by their IDs second. */
+    public static int compare(ShapeRecord first, ShapeRecord second) {
+        int comparison = Double.compare(first.getZ(), second.getZ());
+        return (comparison != 0) ? comparison : Long.compare(first.getId(), second.getId());
+    }
+
+    /** Helper method deriving a node's priority from the element's ID, so that the shape of the tree doesn't
+     * depend on the order in which the records have been inserted.
+     */
+    private static int priority(long id) {
+        long h = (id + 0x632BE59BD9B4E019L) * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 29)) * 0xBF58476D1CE4E5B9L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** Method returning an iterator going through the records from the bottom layer to the top one. */
+    @Override
+    public Iterator<ShapeRecord> iterator() {
+        return new InOrderIterator(this.root);
+    }
+
+    private static final class Node {
+        private final ShapeRecord record;
+        private final int priority;
+        private final Node left;
+        private final Node right;
+        private final int size;
+
+        private Node(ShapeRecord record, int priority, Node left, Node right) {
+            this.record = record;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + size(left) + size(right);
+        }
+    }
+
+    private static final class InOrderIterator implements Iterator<ShapeRecord> {
+        private ArrayDeque<Node> stack;
+
+        private InOrderIterator(Node root) {
+            this.stack = new ArrayDeque<>();
+            this.pushLeftSpine(root);
+        }
+
+        private void pushLeftSpine(Node node) {
+            while (node != null) {
+                this.stack.push(node);
+                node = node.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !this.stack.isEmpty();
+        }
+
+        @Override
+        public ShapeRecord next() {
+            if (this.stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node node = this.stack.pop();
+            this.pushLeftSpine(node.right);
+            return node.record;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package sketchy.history;
+
+import sketchy.commands.Command;
+import sketchy.document.DocumentListener;
+import sketchy.document.DocumentModel;
+import sketchy.document.DocumentSnapshot;
+import sketchy.shapes.ShapeRecord;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Branching history of all commands performed on a document, replacing the undo and redo stacks. The history
+ * listens to the document model, and stores every change of a record (both the record from before the change,
+ * and the one from after it) in its off-heap store, as part of the step of the command that caused it. Undoing
+ * a step means putting back the records from before its changes, and redoing it putting back the ones from
+ * after them - so the commands themselves don't have to be kept, and the history can bring the document to any
+ * step in any branch: it walks up from the current step to the step the two have in common, and then down to
+ * the target, gathering the final record of every element changed along the way - only those are then put into
+ * a new snapshot of the document, so seeking costs as much as reading the changes, but never a copy of the document.
+ * Changes made while the history is suspended (e.g. while a step is being undone, redone or sought, whose
+ * effects are already known) aren't recorded.
+ */
+public class History implements DocumentListener {
+    private DocumentModel document;
+    private HistoryStore store;
+    private HistoryNode root;
+    private HistoryNode current;
+    private int suspended;
+    private int stepCount;
+
+    public History(DocumentModel document, HistoryStore store) {
+        this.document = document;
+        this.store = store;
+        this.document.addListener(this);
+        this.reset();
+    }
+
+    /** Method forgetting all steps - the current state of the document becomes the new initial state. */
+    public void reset() {
+        this.store.clear();
+        this.root = new HistoryNode("Start", null);
+        this.current = this.root;
+        this.stepCount = 1;
+    }
+
+    /** Method forgetting all but a given number of the steps leading to the current one - the step that many
+     * steps before the current one becomes the first step (its changes become a part of the initial state), and
+     * every step before it, along with all branches off them, is dropped. Returns the number of steps dropped.
+     * The changes of the remaining steps are then copied into a new store, and the old one is released - so the
+     * changes of dropped steps (and of the new first step, which are now a part of the initial state) no longer
+     * take up any room in memory or on disk.
+     */
+    public int trim(int keep) {
+        HistoryNode first = this.current;
+        for (int i = 0; i < keep && first.getParent() != null; i++) {
+            first = first.getParent();
+        }
+        if (first == this.root) {
+            return 0;
+        }
+        first.detach();
+        this.root = first;
+        int before = this.stepCount;
+        this.stepCount = 0;
+        ArrayList<HistoryNode> pending = new ArrayList<>();
+        pending.add(this.root);
+        while (!pending.isEmpty()) {
+            HistoryNode node = pending.remove(pending.size() - 1);
+            this.stepCount++;
+            pending.addAll(node.getChildren());
+        }
+        this.compact();
+        return before - this.stepCount;
+    }
+
+    /** Helper method moving the changes of every step but the first one into a new store of the same capacity
+     * (parents before their children, so each step's changes stay together), and releasing the old store.
+     */
+    private void compact() {
+        HistoryStore compacted = new HistoryStore((int) this.store.getCapacity());
+        HashMap<Long, double[]> shared = new HashMap<>();
+        this.root.setEntries(-1, 0);
+        ArrayList<HistoryNode> pending = new ArrayList<>(this.root.getChildren());
+        while (!pending.isEmpty()) {
+            HistoryNode node = pending.remove(pending.size() - 1);
+            long[] entries = node.entries(this.store);
+            node.setEntries(this.store.copyTo(compacted, entries, shared), entries.length);
+            pending.addAll(node.getChildren());
+        }
+        this.store.close();
+        this.store = compacted;
+    }
+
+    /** Method checking whether a step is still a part of the history (it hasn't been trimmed off). */
+    public boolean contains(HistoryNode step) {
+        HistoryNode node = step;
+        while (node.getParent() != null) {
+            node = node.getParent();
+        }
+        return node == this.root;
+    }
+
+    /** Method recording a newly performed command as a step following the current one (only its name is kept,
+     * the changes it makes are recorded as the document reports them). Any steps that had been undone stay in
+     * the history, as another branch of it.
+     */
+    public void push(Command command) {
+        HistoryNode node = new HistoryNode(command.getClass().getSimpleName(), this.current);
+        this.current.addChild(node);
+        this.current.setRedoChild(node);
+        this.current = node;
+        this.stepCount++;
+    }
+
+    /** Method moving to any step of the history, and returning the state of the document at it - the caller has
+     * to bring the document (and its elements) to that state. Redo will then follow the path leading to the step.
+     */
+    public DocumentSnapshot seek(HistoryNode target) {
+        HashMap<Long, ShapeRecord> changes = new HashMap<>();
+        ArrayList<HistoryNode> exited = new ArrayList<>();
+        ArrayList<HistoryNode> entered = new ArrayList<>();
+        this.path(target, exited, entered);
+        for (HistoryNode node : exited) {
+            this.undo(node, changes);
+        }
+        for (HistoryNode node : entered) {
+            this.redo(node, changes);
+            node.getParent().setRedoChild(node);
+        }
+        this.current = target;
+        DocumentSnapshot state = this.document.snapshot();
+        for (Map.Entry<Long, ShapeRecord> change : changes.entrySet()) {
+            state = state.with(change.getKey(), change.getValue());
+        }
+        return state;
+    }
+
+    /** Method listing the steps between the current step and another one - the steps that have to be undone to get
+     * to the step both of them have in common (the current step first), and the ones that then have to be redone
+     * to get to the target (the target last). Costs as much as the number of steps along the way.
+     */
+    public void path(HistoryNode target, ArrayList<HistoryNode> exited, ArrayList<HistoryNode> entered) {
+        HistoryNode up = this.current;
+        HistoryNode down = target;
+        int firstEntered = entered.size();
+        while (up.getDepth() > down.getDepth()) {
+            exited.add(up);
+            up = up.getParent();
+        }
+        while (down.getDepth() > up.getDepth()) {
+            entered.add(down);
+            down = down.getParent();
+        }
+        while (up != down) {
+            exited.add(up);
+            up = up.getParent();
+            entered.add(down);
+            down = down.getParent();
+        }
+        Collections.reverse(entered.subList(firstEntered, entered.size()));
+    }
+
+    /** Helper method putting back the records from before all changes of a step (the last change first). */
+    private void undo(HistoryNode node, HashMap<Long, ShapeRecord> changes) {
+        for (long position = node.getLastEntry(); position >= 0; ) {
+            HistoryStore.Entry entry = this.store.read(position);
+            changes.put(entry.getId(), entry.getBefore());
+            position = entry.getPrevious();
+        }
+    }
+
+    /** Helper method putting back the records from after all changes of a step (the first change first). */
+    private void redo(HistoryNode node, HashMap<Long, ShapeRecord> changes) {
+        for (long position : node.entries(this.store)) {
+            HistoryStore.Entry entry = this.store.read(position);
+            changes.put(entry.getId(), entry.getAfter());
+        }
+    }
+
+    /** Method returning the steps of the current line of history - from the initial state, through the current
+     * step, down to the last step redo leads to - so that the timeline can show them as a single track.
+     */
+    public ArrayList<HistoryNode> line() {
+        ArrayList<HistoryNode> line = new ArrayList<>();
+        for (HistoryNode node = this.current; node != null; node = node.getParent()) {
+            line.add(node);
+        }
+        Collections.reverse(line);
+        for (HistoryNode node = this.current.getRedoChild(); node != null; node = node.getRedoChild()) {
+            line.add(node);
+        }
+        return line;
+    }
+
+    /** Method recording a change of the document in the current step (unless the history is suspended). Changes
+     * that aren't the local user's own (such as edits made by other editors) are made with the history suspended,
+     * so undoing, redoing or seeking only ever replays the user's own changes.
+     */
+    @Override
+    public void recordChanged(ShapeRecord old, ShapeRecord updated) {
+        if (this.suspended > 0) {
+            return;
+        }
+        long id = (updated != null) ? updated.getId() : old.getId();
+        this.current.addEntry(this.store.append(this.current.getLastEntry(), id, old, updated));
+    }
+
+    /** Method stopping the history from recording changes, until resume is called (calls can be nested). */
+    public void suspend() {
+        this.suspended++;
+    }
+
+    public void resume() {
+        this.suspended--;
+    }
+
+    public HistoryNode getRoot() {
+        return this.root;
+    }
+
+    public HistoryNode getCurrent() {
+        return this.current;
+    }
+
+    /** Accessor method returning the number of steps in all branches of the history (the initial state included). */
+    public int getStepCount() {
+        return this.stepCount;
+    }
+
+    public HistoryStore getStore() {
+        return this.store;
+    }
+}
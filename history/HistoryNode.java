@@ -0,0 +1,106 @@
+package sketchy.history;
+
+import java.util.ArrayList;
+
+/** A single step of the history. The step itself only keeps its place in the tree of steps, the name of the
+ * command that led to it, and where the changes that command made to the document are in the history's
+ * off-heap store (the position of the last of them, each pointing back to the one before) - the command itself,
+ * and the records it changed, aren't kept on the heap at all.
+ * Steps form a tree - undoing a few commands and performing a new one starts a new branch, rather than
+ * throwing the undone commands away.
+ */
+public class HistoryNode {
+    private static final ArrayList<HistoryNode> NO_CHILDREN = new ArrayList<>(0);
+
+    private String label;
+    private HistoryNode parent;
+    private ArrayList<HistoryNode> children;
+    private HistoryNode redoChild;
+    private int depth;
+    private long lastEntry;
+    private int entryCount;
+
+    HistoryNode(String label, HistoryNode parent) {
+        this.label = label;
+        this.parent = parent;
+        this.children = NO_CHILDREN;
+        this.depth = (parent == null) ? 0 : parent.depth + 1;
+        this.lastEntry = -1;
+    }
+
+    /** Helper method remembering the position of a newly stored change of this step. */
+    void addEntry(long position) {
+        this.lastEntry = position;
+        this.entryCount++;
+    }
+
+    /** Helper method returning the positions of all changes of this step, in the order in which they were made. */
+    long[] entries(HistoryStore store) {
+        long[] entries = new long[this.entryCount];
+        long position = this.lastEntry;
+        for (int i = this.entryCount - 1; i >= 0; i--) {
+            entries[i] = position;
+            position = store.previousOf(position);
+        }
+        return entries;
+    }
+
+    /** Helper method replacing the positions of the step's changes (e.g. once they've been moved to another store). */
+    void setEntries(long lastEntry, int entryCount) {
+        this.lastEntry = lastEntry;
+        this.entryCount = entryCount;
+    }
+
+    long getLastEntry() {
+        return this.lastEntry;
+    }
+
+    /** Helper method cutting the step off its parent, making it the first step of the history. */
+    void detach() {
+        this.parent = null;
+    }
+
+    void setRedoChild(HistoryNode redoChild) {
+        this.redoChild = redoChild;
+    }
+
+    void addChild(HistoryNode child) {
+        if (this.children == NO_CHILDREN) {
+            this.children = new ArrayList<>(1);
+        }
+        this.children.add(child);
+    }
+
+    public HistoryNode getParent() {
+        return this.parent;
+    }
+
+    /** Accessor method returning all steps branching off this one (in the order in which they were made) - the
+     * returned list mustn't be modified.
+     */
+    public ArrayList<HistoryNode> getChildren() {
+        return this.children;
+    }
+
+    /** Accessor method returning the child step redo leads to (the one most recently visited). */
+    public HistoryNode getRedoChild() {
+        return this.redoChild;
+    }
+
+    /** Accessor method returning the number of commands between the initial state and this step (the history's
+     * first steps can be trimmed, so only differences between depths matter).
+     */
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /** Accessor method returning the number of elements the step's command has changed. */
+    public int getEntryCount() {
+        return this.entryCount;
+    }
+
+    /** Method returning a short description of the step (the name of its command). */
+    public String getLabel() {
+        return this.label;
+    }
+}
@@ -0,0 +1,364 @@
+package sketchy.history;
+
+import sketchy.shapes.ElementType;
+import sketchy.shapes.ShapeRecord;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/** Off-heap log of every change the history has recorded - so that a history of millions of steps neither keeps
+ * the commands (with their points, shapes and lists) nor the records they changed alive on the heap.
+ * Every change is encoded as a fixed-layout entry of primitives, keyed by the stable ID of the element:
+ *
+ *   int length | long previous | long id | before record | after record
+ *
+ * where previous is the position of the entry recorded before it in the same step (or -1), so that a step only
+ * has to remember the position of its last entry, and a record is a type byte (0 if the element didn't exist)
+ * followed, for existing elements, by the center, width, height, angle, color and z value as doubles, and the
+ * number of points along with the points themselves (for lines). Since records never modify their arrays of
+ * points, and many records share one (copies of a line, or a line before and after being recolored), an array
+ * of points that has already been written is written again only as a reference - a negative count followed by
+ * the position at which its points are.
+ * Entries are appended to a ring buffer allocated outside of the heap, at ever-growing logical positions. Once
+ * the ring is full, its oldest part is spilled into a temporary file (at the same positions), and entries that
+ * have been spilled are paged back in from the file, a page at a time, whenever they're needed again.
+ */
+public class HistoryStore {
+    private static final int PAGE_SIZE = 1 << 16;
+    private static final int HEADER_SIZE = 4 + 8 + 8;
+    private static final int RECORD_SIZE = 1 + 9 * 8 + 4;
+    private static final int SHARED_POINTS_MINIMUM = 16;
+
+    private ByteBuffer ring;
+    private long ringStart;
+    private long end;
+    private FileChannel spill;
+    private Path spillFile;
+    private ByteBuffer page;
+    private long pageStart;
+    private byte[] scratch;
+    private byte[] pointScratch;
+    private Map<double[], Long> written;
+
+    public HistoryStore(int capacity) {
+        this.ring = ByteBuffer.allocateDirect(Math.max(capacity, PAGE_SIZE));
+        this.page = ByteBuffer.allocateDirect(PAGE_SIZE);
+        this.pageStart = -1;
+        this.scratch = new byte[256];
+        this.pointScratch = new byte[256];
+        this.written = new WeakHashMap<>();
+    }
+
+    /** Method appending a change of an element (from one record to another, either of which can be null) to the
+     * log, after the entry at a given position (-1 for a step's first entry) - returns the new entry's position.
+     */
+    public long append(long previous, long id, ShapeRecord before, ShapeRecord after) {
+        // the entry is encoded first (its length is only known then), so the scratch array fits it without references
+        ByteBuffer entry = ByteBuffer.wrap(this.scratch(HEADER_SIZE + size(before) + size(after)));
+        long position = this.end;
+        entry.putInt(0).putLong(previous).putLong(id);
+        this.encode(entry, before, position);
+        this.encode(entry, after, position);
+        int length = entry.position();
+        entry.putInt(0, length);
+        if (length > this.ring.capacity()) {
+            throw new IllegalArgumentException("A single change of " + length + " bytes doesn't fit into the history");
+        }
+        if (this.end + length - this.ringStart > this.ring.capacity()) {
+            this.spill(this.end + length - this.ring.capacity());
+        }
+        this.copyIntoRing(position, this.scratch, length);
+        this.end += length;
+        return position;
+    }
+
+    /** Method decoding the entry at a given position, paging it back in from the spill file if needed. */
+    public Entry read(long position) {
+        return this.read(position, null);
+    }
+
+    /** Method copying the entries at given positions (the changes of a step, in the order in which they were made)
+     * to the end of another store, chained one after another just like they were, and returning the position of
+     * the last of them in the other store (-1 if there are none). Arrays of points shared by several entries of this
+     * store are decoded into a single array (found in a map passed to every call, keyed by their positions here),
+     * so they stay shared in the other store too.
+     */
+    public long copyTo(HistoryStore target, long[] positions, Map<Long, double[]> shared) {
+        long last = -1;
+        for (long position : positions) {
+            Entry entry = this.read(position, shared);
+            last = target.append(last, entry.getId(), entry.getBefore(), entry.getAfter());
+        }
+        return last;
+    }
+
+    /** Helper method decoding an entry - arrays of points already decoded are taken from a map, if one is given. */
+    private Entry read(long position, Map<Long, double[]> shared) {
+        this.copyOut(position, this.scratch, 4);
+        int length = ByteBuffer.wrap(this.scratch).getInt();
+        byte[] bytes = this.scratch(length);
+        this.copyOut(position, bytes, length);
+        ByteBuffer entry = ByteBuffer.wrap(bytes);
+        entry.getInt();
+        long previous = entry.getLong();
+        long id = entry.getLong();
+        ShapeRecord before = this.decode(entry, id, position, shared);
+        ShapeRecord after = this.decode(entry, id, position, shared);
+        return new Entry(previous, id, before, after);
+    }
+
+    /** Method returning the position of the entry recorded before the one at a given position in the same step
+     * (or -1) - only the entry's header is read.
+     */
+    public long previousOf(long position) {
+        this.copyOut(position, this.scratch, 12);
+        return ByteBuffer.wrap(this.scratch).getLong(4);
+    }
+
+    /** Method forgetting every entry (the spill file is truncated, but kept for later use). */
+    public void clear() {
+        this.ringStart = 0;
+        this.end = 0;
+        this.pageStart = -1;
+        this.written.clear();
+        if (this.spill != null) {
+            try {
+                this.spill.truncate(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /** Method releasing the store - its spill file is closed and deleted (and its ring is freed once it's collected),
+     * so it mustn't be used anymore.
+     */
+    public void close() {
+        if (this.spill != null) {
+            try {
+                this.spill.close();
+                Files.deleteIfExists(this.spillFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.spill = null;
+        }
+    }
+
+    /** Accessor method returning the number of bytes in the log, both in memory and on disk. */
+    public long getSize() {
+        return this.end;
+    }
+
+    /** Accessor method returning the number of bytes of the log that are in the ring (not spilled to disk). */
+    public long getRingSize() {
+        return this.end - this.ringStart;
+    }
+
+    /** Accessor method returning the number of bytes the ring takes outside of the heap. */
+    public long getCapacity() {
+        return this.ring.capacity();
+    }
+
+    /** Accessor method returning the number of bytes of the log that have been spilled to disk. */
+    public long getSpilledSize() {
+        return this.ringStart;
+    }
+
+    /** Helper method writing everything before a given position out to the spill file (created on first use). */
+    private void spill(long upTo) {
+        // spilling at least a quarter of the ring at a time keeps the writes large
+        upTo = Math.min(this.end, Math.max(upTo, this.ringStart + this.ring.capacity() / 4));
+        try {
+            if (this.spill == null) {
+                this.spillFile = Files.createTempFile("sketchy-history", ".log");
+                this.spillFile.toFile().deleteOnExit();
+                this.spill = FileChannel.open(this.spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            while (this.ringStart < upTo) {
+                int offset = (int) (this.ringStart % this.ring.capacity());
+                int count = (int) Math.min(upTo - this.ringStart, this.ring.capacity() - offset);
+                ByteBuffer slice = this.ring.duplicate();
+                slice.limit(offset + count).position(offset);
+                while (slice.hasRemaining()) {
+                    this.spill.write(slice, this.ringStart + (count - slice.remaining()));
+                }
+                this.ringStart += count;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Helper method copying bytes into the ring at a logical position (wrapping around its end if needed). */
+    private void copyIntoRing(long position, byte[] bytes, int length) {
+        int done = 0;
+        while (done < length) {
+            int offset = (int) ((position + done) % this.ring.capacity());
+            int count = Math.min(length - done, this.ring.capacity() - offset);
+            this.ring.put(offset, bytes, done, count);
+            done += count;
+        }
+    }
+
+    /** Helper method copying bytes out of the log - from the ring if they're still in memory, or from the page of
+     * the spill file they're in (which is read in first, unless it's the page read most recently).
+     */
+    private void copyOut(long position, byte[] bytes, int length) {
+        int done = 0;
+        while (done < length) {
+            long at = position + done;
+            int count;
+            if (at >= this.ringStart) {
+                int offset = (int) (at % this.ring.capacity());
+                count = Math.min(length - done, this.ring.capacity() - offset);
+                this.ring.get(offset, bytes, done, count);
+            } else {
+                long wanted = at - at % PAGE_SIZE;
+                if (wanted != this.pageStart || at - wanted >= this.page.limit()) {
+                    this.readPage(wanted);
+                }
+                int offset = (int) (at - this.pageStart);
+                count = (int) Math.min(Math.min(length - done, this.page.limit() - offset), this.ringStart - at);
+                this.page.get(offset, bytes, done, count);
+            }
+            done += count;
+        }
+    }
+
+    private void readPage(long start) {
+        try {
+            this.page.clear();
+            this.page.limit((int) Math.min(PAGE_SIZE, this.ringStart - start));
+            while (this.page.hasRemaining()) {
+                if (this.spill.read(this.page, start + this.page.position()) < 0) {
+                    break;
+                }
+            }
+            this.page.flip();
+            this.pageStart = start;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] scratch(int length) {
+        if (this.scratch.length < length) {
+            this.scratch = new byte[Math.max(length, 2 * this.scratch.length)];
+        }
+        return this.scratch;
+    }
+
+    private static int size(ShapeRecord record) {
+        return (record == null) ? 1 : RECORD_SIZE + 8 * record.getPoints().length;
+    }
+
+    /** Helper method encoding a record into an entry that's going to be written at a given position. */
+    private void encode(ByteBuffer entry, ShapeRecord record, long entryPosition) {
+        if (record == null) {
+            entry.put((byte) 0);
+            return;
+        }
+        entry.put((byte) (record.getType().ordinal() + 1));
+        entry.putDouble(record.getCenterX()).putDouble(record.getCenterY());
+        entry.putDouble(record.getWidth()).putDouble(record.getHeight()).putDouble(record.getAngle());
+        entry.putDouble(record.getRed()).putDouble(record.getGreen()).putDouble(record.getBlue());
+        entry.putDouble(record.getZ());
+        double[] points = record.getPoints();
+        Long shared = (points.length >= SHARED_POINTS_MINIMUM) ? this.written.get(points) : null;
+        if (shared != null) {
+            entry.putInt(-points.length).putLong(shared);
+            return;
+        }
+        entry.putInt(points.length);
+        if (points.length >= SHARED_POINTS_MINIMUM) {
+            this.written.put(points, entryPosition + entry.position());
+        }
+        for (double point : points) {
+            entry.putDouble(point);
+        }
+    }
+
+    /** Helper method decoding a record of the entry at a given position - points written as a reference are read
+     * from wherever they are in the log (or taken from the map of already decoded arrays, if there's one).
+     */
+    private ShapeRecord decode(ByteBuffer entry, long id, long entryPosition, Map<Long, double[]> shared) {
+        int type = entry.get();
+        if (type == 0) {
+            return null;
+        }
+        double centerX = entry.getDouble();
+        double centerY = entry.getDouble();
+        double width = entry.getDouble();
+        double height = entry.getDouble();
+        double angle = entry.getDouble();
+        double red = entry.getDouble();
+        double green = entry.getDouble();
+        double blue = entry.getDouble();
+        double z = entry.getDouble();
+        int count = entry.getInt();
+        long at = (count < 0) ? entry.getLong() : entryPosition + entry.position();
+        double[] points = (shared != null) ? shared.get(at) : null;
+        if (points != null) {
+            if (count > 0) {
+                entry.position(entry.position() + 8 * count);
+            }
+            return new ShapeRecord(id, ElementType.values()[type - 1], centerX, centerY, width, height, angle,
+                    red, green, blue, points, z);
+        }
+        points = new double[Math.abs(count)];
+        if (shared != null && points.length >= SHARED_POINTS_MINIMUM) {
+            shared.put(at, points);
+        }
+        if (count < 0) {
+            if (this.pointScratch.length < 8 * points.length) {
+                this.pointScratch = new byte[8 * points.length];
+            }
+            this.copyOut(at, this.pointScratch, 8 * points.length);
+            ByteBuffer.wrap(this.pointScratch, 0, 8 * points.length).asDoubleBuffer().get(points);
+        } else {
+            for (int i = 0; i < points.length; i++) {
+                points[i] = entry.getDouble();
+            }
+        }
+        return new ShapeRecord(id, ElementType.values()[type - 1], centerX, centerY, width, height, angle,
+                red, green, blue, points, z);
+    }
+
+    /** A decoded entry - the change of a single element, and the position of the step's previous entry. */
+    public static final class Entry {
+        private final long previous;
+        private final long id;
+        private final ShapeRecord before;
+        private final ShapeRecord after;
+
+        private Entry(long previous, long id, ShapeRecord before, ShapeRecord after) {
+            this.previous = previous;
+            this.id = id;
+            this.before = before;
+            this.after = after;
+        }
+
+        public long getPrevious() {
+            return this.previous;
+        }
+
+        public long getId() {
+            return this.id;
+        }
+
+        public ShapeRecord getBefore() {
+            return this.before;
+        }
+
+        public ShapeRecord getAfter() {
+            return this.after;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package sketchy.io;
+
+import sketchy.shapes.ShapeRecord;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** Benchmark of loading large sketch files, run from the command line (no JavaFX needed):
+ *   java sketchy.io.LoadBenchmark file.sketch [maxThreads]
+ * It parses the file with the sequential SketchFileReader, and then with the ParallelSketchLoader on 1, 2, 4...
+ * up to maxThreads threads (all cores by default), reporting the best of three runs for each, and checking that
+ * every run produces the same records in the same order.
+ */
+public class LoadBenchmark {
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java sketchy.io.LoadBenchmark <file.sketch> [maxThreads]");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        int maxThreads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        ArrayList<ShapeRecord> expected = null;
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            ArrayList<ShapeRecord> records = new ArrayList<>();
+            try (SketchFileReader reader = new SketchFileReader(new FileReader(file.toFile(), StandardCharsets.UTF_8))) {
+                ShapeRecord record;
+                while ((record = reader.next()) != null) {
+                    records.add(record);
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+            expected = records;
+        }
+        System.out.println("sequential reader:   " + best / 1000000 + " ms (" + expected.size() + " records)");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ParallelSketchLoader loader = new ParallelSketchLoader(threads);
+            best = Long.MAX_VALUE;
+            boolean identical = true;
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                ArrayList<ShapeRecord> records = loader.load(file);
+                best = Math.min(best, System.nanoTime() - start);
+                identical &= sameGeometry(expected, records);
+            }
+            System.out.println("parallel, " + threads + " thread(s): " + best / 1000000 + " ms"
+                    + (identical ? "" : " (RECORDS DIFFER FROM THE SEQUENTIAL READER)"));
+            if (threads < maxThreads && threads * 2 > maxThreads) {
+                threads = maxThreads / 2;
+            }
+        }
+    }
+
+    /** Helper method checking that two lists hold the same elements in the same order (ignoring IDs and z values). */
+    private static boolean sameGeometry(ArrayList<ShapeRecord> expected, ArrayList<ShapeRecord> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            ShapeRecord a = expected.get(i);
+            ShapeRecord b = actual.get(i);
+            if (a.getType() != b.getType() || a.getCenterX() != b.getCenterX() || a.getCenterY() != b.getCenterY()
+                    || a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight() || a.getAngle() != b.getAngle()
+                    || a.getRed() != b.getRed() || a.getGreen() != b.getGreen() || a.getBlue() != b.getBlue()
+                    || !Arrays.equals(a.getPoints(), b.getPoints())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
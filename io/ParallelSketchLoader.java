@@ -0,0 +1,302 @@
+package sketchy.io;
+
+import sketchy.shapes.ElementIds;
+import sketchy.shapes.ElementType;
+import sketchy.shapes.ShapeRecord;
+import sketchy.shapes.Symbol;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Loader of large sketch files, parsing them on several cores at once. The file is mapped into memory and
+ * split into a few chunks per thread at arbitrary byte offsets - every chunk then finds its first record by
+ * resyncing on the element type names (no token describing an element's parameters can ever be a type name,
+ * and neither can any token of the file's header), and parses all records that start within it, even if
+ * the last one runs into the next chunk. Chunks are parsed into plain ShapeRecords on a pool of worker threads,
+ * and finally concatenated in the order of the chunks, which keeps the records in the file's (z-)order -
+ * each record's z value is simply the offset at which it starts in the file.
+ * Symbols (see Symbol) are a single token each, so they're found the same way, and added to the library by
+ * whichever chunk they start in - instances only refer to them by ID, so it doesn't matter which comes first.
+ * Files too big to be mapped at once (over 2 GB) are read sequentially instead.
+ */
+public class ParallelSketchLoader {
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int ID_BLOCK = 4096;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private int threads;
+
+    public ParallelSketchLoader(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /** Method returning all records of a file, in the order in which they're saved (bottom layer first). */
+    public ArrayList<ShapeRecord> load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return loadSequentially(file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int chunks = (int) Math.max(1, Math.min(this.threads * CHUNKS_PER_THREAD, size / (1 << 16)));
+            ExecutorService workers = Executors.newFixedThreadPool(this.threads, (Runnable r) -> {
+                Thread thread = new Thread(r, "sketchy-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                ArrayList<Future<ArrayList<ShapeRecord>>> parsed = new ArrayList<>();
+                for (int i = 0; i < chunks; i++) {
+                    int start = (int) (size * i / chunks);
+                    int end = (int) (size * (i + 1) / chunks);
+                    parsed.add(workers.submit(() -> new ChunkParser(buffer, (int) size).parse(start, end)));
+                }
+                ArrayList<ArrayList<ShapeRecord>> results = new ArrayList<>();
+                int total = 0;
+                for (Future<ArrayList<ShapeRecord>> future : parsed) {
+                    results.add(future.get());
+                    total += results.get(results.size() - 1).size();
+                }
+                ArrayList<ShapeRecord> records = new ArrayList<>(total);
+                for (ArrayList<ShapeRecord> result : results) {
+                    records.addAll(result);
+                }
+                return records;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Loading was interrupted", e);
+            } catch (ExecutionException e) {
+                throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+            } finally {
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    /** Helper method reading a file record by record on the calling thread. */
+    private static ArrayList<ShapeRecord> loadSequentially(Path file) throws IOException {
+        ArrayList<ShapeRecord> records = new ArrayList<>();
+        try (SketchFileReader reader = new SketchFileReader(new FileReader(file.toFile(), StandardCharsets.UTF_8))) {
+            ShapeRecord record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /** Parser of a single chunk - it reads the mapped file through absolute gets only, so any number of parsers
+     * can share one buffer. Tokens are never turned into strings, except for numbers that can't be parsed exactly
+     * by the fast path below.
+     */
+    private static final class ChunkParser {
+        private static final byte[][] TAGS = tags();
+        private static final byte[] SYMBOL_TAG = Symbol.TAG.getBytes(StandardCharsets.US_ASCII);
+
+        private MappedByteBuffer buffer;
+        private int size;
+        private int position;
+        private int tokenStart;
+        private int tokenLength;
+        private long nextId;
+        private int idsLeft;
+        private byte[] scratch;
+
+        private ChunkParser(MappedByteBuffer buffer, int size) {
+            this.buffer = buffer;
+            this.size = size;
+            this.scratch = new byte[64];
+        }
+
+        /** Method parsing all records whose type name starts within [start, end). */
+        private ArrayList<ShapeRecord> parse(int start, int end) throws IOException {
+            ArrayList<ShapeRecord> records = new ArrayList<>();
+            this.position = start;
+            // a chunk starting in the middle of a token leaves that token to the previous chunk
+            if (start > 0 && !isWhitespace(this.buffer.get(start - 1))) {
+                while (this.position < this.size && !isWhitespace(this.buffer.get(this.position))) {
+                    this.position++;
+                }
+            }
+            while (this.nextToken() && this.tokenStart < end) {
+                ElementType type = this.tokenType();
+                if (type != null) {
+                    records.add(this.readRecord(type, this.tokenStart));
+                } else if (this.tokenIs(SYMBOL_TAG) && this.nextToken()) {
+                    byte[] token = new byte[this.tokenLength];
+                    this.buffer.get(this.tokenStart, token);
+                    Symbol.decode(new String(token, StandardCharsets.US_ASCII));
+                }
+            }
+            return records;
+        }
+
+        /** Helper method reading the parameters following an element type name (in the order of the save methods). */
+        private ShapeRecord readRecord(ElementType type, int offset) throws IOException {
+            long id = this.nextId();
+            if (type == ElementType.CURVED_LINE) {
+                double red = this.nextDouble();
+                double green = this.nextDouble();
+                double blue = this.nextDouble();
+                double[] points = new double[(int) this.nextDouble()];
+                for (int i = 0; i < points.length; i++) {
+                    points[i] = this.nextDouble();
+                }
+                return new ShapeRecord(id, type, 0, 0, 0, 0, 0, red, green, blue, points, offset);
+            }
+            double x = this.nextDouble();
+            double y = this.nextDouble();
+            double width = this.nextDouble();
+            double height = this.nextDouble();
+            double angle = this.nextDouble();
+            double red = this.nextDouble();
+            double green = this.nextDouble();
+            double blue = this.nextDouble();
+            double[] mask = null;
+            if (type == ElementType.RECTANGLE) {
+                x += width;
+                y += height;
+            } else if (type == ElementType.FILL || type == ElementType.INSTANCE) {
+                mask = new double[(int) this.nextDouble()];
+                for (int i = 0; i < mask.length; i++) {
+                    mask[i] = this.nextDouble();
+                }
+            }
+            return new ShapeRecord(id, type, x, y, width, height, angle, red, green, blue, mask, offset);
+        }
+
+        private long nextId() {
+            if (this.idsLeft == 0) {
+                this.nextId = ElementIds.reserve(ID_BLOCK);
+                this.idsLeft = ID_BLOCK;
+            }
+            this.idsLeft--;
+            return this.nextId++;
+        }
+
+        /** Helper method moving to the next token - returns false at the end of the file. */
+        private boolean nextToken() {
+            while (this.position < this.size && isWhitespace(this.buffer.get(this.position))) {
+                this.position++;
+            }
+            if (this.position >= this.size) {
+                return false;
+            }
+            this.tokenStart = this.position;
+            while (this.position < this.size && !isWhitespace(this.buffer.get(this.position))) {
+                this.position++;
+            }
+            this.tokenLength = this.position - this.tokenStart;
+            return true;
+        }
+
+        private boolean tokenIs(byte[] tag) {
+            if (tag.length != this.tokenLength) {
+                return false;
+            }
+            for (int i = 0; i < tag.length; i++) {
+                if (this.buffer.get(this.tokenStart + i) != tag[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Helper method returning the element type the current token names (or null if it isn't a type name). */
+        private ElementType tokenType() {
+            for (int t = 0; t < TAGS.length; t++) {
+                byte[] tag = TAGS[t];
+                if (tag.length == this.tokenLength) {
+                    int i = 0;
+                    while (i < tag.length && this.buffer.get(this.tokenStart + i) == tag[i]) {
+                        i++;
+                    }
+                    if (i == tag.length) {
+                        return ElementType.values()[t];
+                    }
+                }
+            }
+            return null;
+        }
+
+        /** Helper method parsing the next token as a number. Plain decimals with up to 15 significant digits
+         * (which covers mouse coordinates and anything typed in) are parsed directly - the digits form an exact
+         * integer and the power of ten is exact, so a single division rounds correctly. Anything else (more digits,
+         * exponents) goes through Double.parseDouble.
+         */
+        private double nextDouble() throws IOException {
+            if (!this.nextToken()) {
+                throw new IOException("Unexpected end of the sketch file");
+            }
+            int i = this.tokenStart;
+            int end = this.tokenStart + this.tokenLength;
+            boolean negative = false;
+            if (this.buffer.get(i) == '-') {
+                negative = true;
+                i++;
+            }
+            long digits = 0;
+            int significant = 0;
+            int fraction = -1;
+            for (; i < end; i++) {
+                byte b = this.buffer.get(i);
+                if (b >= '0' && b <= '9') {
+                    if (significant > 0 || b != '0') {
+                        significant++;
+                    }
+                    digits = digits * 10 + (b - '0');
+                    if (fraction >= 0) {
+                        fraction++;
+                    }
+                } else if (b == '.' && fraction < 0) {
+                    fraction = 0;
+                } else {
+                    break;
+                }
+            }
+            if (i == end && significant <= 15 && fraction < POWERS_OF_TEN.length && end > this.tokenStart + (negative ? 1 : 0)) {
+                double value = (fraction > 0) ? digits / POWERS_OF_TEN[fraction] : digits;
+                return negative ? -value : value;
+            }
+            return this.slowDouble();
+        }
+
+        private double slowDouble() throws IOException {
+            if (this.scratch.length < this.tokenLength) {
+                this.scratch = new byte[this.tokenLength];
+            }
+            for (int i = 0; i < this.tokenLength; i++) {
+                this.scratch[i] = this.buffer.get(this.tokenStart + i);
+            }
+            String token = new String(this.scratch, 0, this.tokenLength, StandardCharsets.ISO_8859_1);
+            try {
+                return Double.parseDouble(token);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed number \"" + token + "\" at offset " + this.tokenStart, e);
+            }
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+        }
+
+        private static byte[][] tags() {
+            ElementType[] types = ElementType.values();
+            byte[][] tags = new byte[types.length][];
+            for (int i = 0; i < types.length; i++) {
+                tags[i] = types[i].getTag().getBytes(StandardCharsets.US_ASCII);
+            }
+            return tags;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package sketchy.io;
+
+import sketchy.shapes.ElementIds;
+import sketchy.shapes.ElementType;
+import sketchy.shapes.ShapeRecord;
+import sketchy.shapes.Symbol;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/** Streaming reader of sketch files (the files written by Sketchy's save method) - it reads the file token by
+ * token (tokens being separated by any whitespace) and returns one ShapeRecord at a time, so that even files
+ * with millions of elements can be read (e.g. converted) without ever holding more than a single record.
+ * Whenever a token that doesn't start a known element is found, it's skipped - reading continues at the next
+ * element type name, which can never appear among the numbers describing an element. Symbols (see Symbol) are
+ * added to the library as they're read, so they're known by the time the instances placing them are returned.
+ * Every record gets a new ID, and z values simply follow the order of the elements in the file.
+ */
+public class SketchFileReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private Reader reader;
+    private char[] buffer;
+    private int position;
+    private int limit;
+    private StringBuilder token;
+    private long count;
+
+    public SketchFileReader(Reader reader) {
+        this.reader = reader;
+        this.buffer = new char[BUFFER_SIZE];
+        this.token = new StringBuilder();
+    }
+
+    /** Method returning the next record of the file, or null once the end of the file has been reached. */
+    public ShapeRecord next() throws IOException {
+        String tag;
+        while ((tag = this.nextToken()) != null) {
+            ElementType type = typeOf(tag);
+            if (type != null) {
+                return this.readRecord(type);
+            } else if (tag.equals(Symbol.TAG)) {
+                Symbol.decode(this.nextToken());
+            }
+        }
+        return null;
+    }
+
+    /** Helper method reading the parameters following an element type name (in the order of the save methods). */
+    private ShapeRecord readRecord(ElementType type) throws IOException {
+        long id = ElementIds.next();
+        double z = this.count++;
+        if (type == ElementType.CURVED_LINE) {
+            double red = this.nextDouble();
+            double green = this.nextDouble();
+            double blue = this.nextDouble();
+            double[] points = new double[Integer.parseInt(this.nextToken())];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = this.nextDouble();
+            }
+            return new ShapeRecord(id, type, 0, 0, 0, 0, 0, red, green, blue, points, z);
+        }
+        double x = this.nextDouble();
+        double y = this.nextDouble();
+        double width = this.nextDouble();
+        double height = this.nextDouble();
+        double angle = this.nextDouble();
+        double red = this.nextDouble();
+        double green = this.nextDouble();
+        double blue = this.nextDouble();
+        double[] mask = null;
+        if (type == ElementType.RECTANGLE) {
+            x += width;
+            y += height;
+        } else if (type == ElementType.FILL || type == ElementType.INSTANCE) {
+            mask = new double[Integer.parseInt(this.nextToken())];
+            for (int i = 0; i < mask.length; i++) {
+                mask[i] = this.nextDouble();
+            }
+        }
+        return new ShapeRecord(id, type, x, y, width, height, angle, red, green, blue, mask, z);
+    }
+
+    /** Helper method returning the element type saved under a given name (or null if it's not a type name). */
+    public static ElementType typeOf(String tag) {
+        for (ElementType type : ElementType.values()) {
+            if (type.getTag().equals(tag)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private double nextDouble() throws IOException {
+        String next = this.nextToken();
+        if (next == null) {
+            throw new IOException("Unexpected end of the sketch file");
+        }
+        return Double.parseDouble(next);
+    }
+
+    /** Helper method returning the next whitespace-separated token (or null at the end of the file). */
+    private String nextToken() throws IOException {
+        this.token.setLength(0);
+        while (true) {
+            if (this.position == this.limit) {
+                this.limit = this.reader.read(this.buffer, 0, this.buffer.length);
+                this.position = 0;
+                if (this.limit <= 0) {
+                    this.limit = 0;
+                    return (this.token.length() > 0) ? this.token.toString() : null;
+                }
+            }
+            char c = this.buffer[this.position++];
+            if (Character.isWhitespace(c)) {
+                if (this.token.length() > 0) {
+                    return this.token.toString();
+                }
+            } else {
+                this.token.append(c);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+}
@@ -0,0 +1,57 @@
+package sketchy.io;
+
+import sketchy.shapes.ShapeRecord;
+import sketchy.shapes.TokenWriter;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/** Plain writer of sketch files, used wherever records have to be written without going through CS15FileIO's
+ * file chooser (e.g. when converting files from the command line). Just like CS15FileIO, it writes every
+ * token on a line of its own, so that the files it produces can be opened through Sketchy's load method.
+ * Records are written one at a time through a buffered writer, so writing a file never needs more memory
+ * than the record that's currently being written.
+ */
+public class SketchFileWriter implements TokenWriter, Closeable {
+    private BufferedWriter writer;
+
+    public SketchFileWriter(Writer writer) {
+        this.writer = new BufferedWriter(writer, 1 << 16);
+    }
+
+    /** Method writing a single record (in exactly the same format as its save method). */
+    public void write(ShapeRecord record) {
+        record.write(this);
+    }
+
+    @Override
+    public void writeString(String s) {
+        this.writeToken(s);
+    }
+
+    @Override
+    public void writeDouble(double d) {
+        this.writeToken(Double.toString(d));
+    }
+
+    @Override
+    public void writeInt(int i) {
+        this.writeToken(Integer.toString(i));
+    }
+
+    private void writeToken(String token) {
+        try {
+            this.writer.write(token);
+            this.writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.writer.close();
+    }
+}
@@ -0,0 +1,181 @@
+package sketchy.io;
+
+import sketchy.shapes.ElementIds;
+import sketchy.shapes.ElementType;
+import sketchy.shapes.ShapeRecord;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/** Generator of synthetic sketches, for finding out how the app scales - run from the command line (no JavaFX
+ * needed), it writes a sketch file any size:
+ *   java sketchy.io.SketchGenerator out.sketch rectangles ellipses strokes [meanPoints] [FIXED|UNIFORM|EXPONENTIAL] [density] [seed]
+ * Rectangles and ellipses get random sizes around the mean size (a fifth of them rotated), and strokes are random
+ * walks whose numbers of points follow the chosen distribution around the mean (exponential by default, as real
+ * drawings have many short strokes and a few long ones). Elements are spread over a square canvas sized so that
+ * every point of it is covered by as many elements as the overlap density says, on average - so documents of any
+ * size look alike up close, and only differ in how far they go. All types are mixed in a random order, colors are
+ * taken from a small palette (so that there are many elements of each color), and the same seed always gives the
+ * same document.
+ */
+public class SketchGenerator {
+    public enum Distribution { FIXED, UNIFORM, EXPONENTIAL }
+
+    private static final double STEP = 2;
+    private static final double[][] PALETTE = {
+            {0, 0, 0}, {1, 0, 0}, {0, 0.5, 0}, {0, 0, 1}, {1, 0.65, 0}, {0.5, 0, 0.5},
+            {0, 0.5, 0.5}, {0.55, 0.27, 0.07}, {1, 0.75, 0.8}, {0.5, 0.5, 0.5}, {1, 1, 0}, {0.12, 0.56, 1}};
+
+    private int rectangles;
+    private int ellipses;
+    private int strokes;
+    private int meanPoints;
+    private Distribution distribution;
+    private double meanSize;
+    private double density;
+    private long seed;
+
+    public SketchGenerator(int rectangles, int ellipses, int strokes) {
+        this.rectangles = rectangles;
+        this.ellipses = ellipses;
+        this.strokes = strokes;
+        this.meanPoints = 32;
+        this.distribution = Distribution.EXPONENTIAL;
+        this.meanSize = 24;
+        this.density = 2;
+        this.seed = 42;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("Usage: java sketchy.io.SketchGenerator <out.sketch> <rectangles> <ellipses> <strokes>"
+                    + " [meanPoints] [FIXED|UNIFORM|EXPONENTIAL] [density] [seed]");
+            return;
+        }
+        SketchGenerator generator = new SketchGenerator(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+        if (args.length > 4) {
+            generator.setPoints(Integer.parseInt(args[4]), (args.length > 5) ? Distribution.valueOf(args[5]) : Distribution.EXPONENTIAL);
+        }
+        if (args.length > 6) {
+            generator.setDensity(Double.parseDouble(args[6]));
+        }
+        if (args.length > 7) {
+            generator.setSeed(Long.parseLong(args[7]));
+        }
+        long start = System.nanoTime();
+        try (SketchFileWriter writer = new SketchFileWriter(new FileWriter(args[0], StandardCharsets.UTF_8))) {
+            generator.generate(writer::write);
+        }
+        System.out.println("Generated " + generator.getCount() + " elements on a " + Math.round(generator.getSide())
+                + " px canvas in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /** Method setting the mean number of points of a stroke, and how the numbers are distributed around it. */
+    public void setPoints(int meanPoints, Distribution distribution) {
+        this.meanPoints = Math.max(2, meanPoints);
+        this.distribution = distribution;
+    }
+
+    /** Method setting the mean size (width and height, in pixels) of rectangles and ellipses, and of strokes' extents. */
+    public void setMeanSize(double meanSize) {
+        this.meanSize = meanSize;
+    }
+
+    /** Method setting how many elements cover a point of the canvas, on average. */
+    public void setDensity(double density) {
+        this.density = density;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getCount() {
+        return this.rectangles + this.ellipses + this.strokes;
+    }
+
+    /** Accessor method returning the side of the (square) canvas the elements are spread over. */
+    public double getSide() {
+        return Math.max(this.meanSize, Math.sqrt(this.getCount() * this.meanSize * this.meanSize / this.density));
+    }
+
+    public ArrayList<ShapeRecord> generate() {
+        ArrayList<ShapeRecord> records = new ArrayList<>(this.getCount());
+        this.generate(records::add);
+        return records;
+    }
+
+    /** Method handing the records of the document out one by one, bottom to top (so a document of any size can be
+     * written without ever being held in memory).
+     */
+    public void generate(Consumer<ShapeRecord> out) {
+        Random random = new Random(this.seed);
+        double side = this.getSide();
+        long id = ElementIds.reserve(this.getCount());
+        int rectanglesLeft = this.rectangles;
+        int ellipsesLeft = this.ellipses;
+        int strokesLeft = this.strokes;
+        for (int z = 0; z < this.getCount(); z++) {
+            // every type is picked in proportion to how many of its elements are still left, which mixes them evenly
+            int pick = random.nextInt(rectanglesLeft + ellipsesLeft + strokesLeft);
+            double[] color = PALETTE[random.nextInt(PALETTE.length)];
+            if (pick < strokesLeft) {
+                strokesLeft--;
+                out.accept(new ShapeRecord(id++, ElementType.CURVED_LINE, 0, 0, 0, 0, 0, color[0], color[1], color[2],
+                        this.stroke(random, side), z));
+                continue;
+            }
+            ElementType type = (pick < strokesLeft + rectanglesLeft) ? ElementType.RECTANGLE : ElementType.ELLIPSE;
+            if (type == ElementType.RECTANGLE) {
+                rectanglesLeft--;
+            } else {
+                ellipsesLeft--;
+            }
+            double width = this.meanSize * (0.25 + 0.5 * random.nextDouble());
+            double height = this.meanSize * (0.25 + 0.5 * random.nextDouble());
+            double angle = (random.nextInt(5) == 0) ? random.nextDouble() * 360 : 0;
+            out.accept(new ShapeRecord(id++, type, random.nextDouble() * side, random.nextDouble() * side, width, height,
+                    angle, color[0], color[1], color[2], new double[0], z));
+        }
+    }
+
+    /** Helper method drawing a random walk - the heading turns a little at every step, so strokes look hand-drawn,
+     * and they're kept on the canvas by turning back whenever they'd leave it.
+     */
+    private double[] stroke(Random random, double side) {
+        int count = this.pointCount(random);
+        double[] points = new double[2 * count];
+        double x = random.nextDouble() * side;
+        double y = random.nextDouble() * side;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < count; i++) {
+            points[2 * i] = x;
+            points[2 * i + 1] = y;
+            heading += (random.nextDouble() - 0.5) * 0.6;
+            double nextX = x + STEP * Math.cos(heading);
+            double nextY = y + STEP * Math.sin(heading);
+            if (nextX < 0 || nextY < 0 || nextX > side || nextY > side) {
+                heading += Math.PI;
+                nextX = x + STEP * Math.cos(heading);
+                nextY = y + STEP * Math.sin(heading);
+            }
+            x = nextX;
+            y = nextY;
+        }
+        return points;
+    }
+
+    private int pointCount(Random random) {
+        switch (this.distribution) {
+            case FIXED:
+                return this.meanPoints;
+            case UNIFORM:
+                return 2 + random.nextInt(2 * this.meanPoints - 3);
+            default:
+                return 2 + (int) (-Math.log(1 - random.nextDouble()) * (this.meanPoints - 2));
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package sketchy.io;
+
+import sketchy.raster.TileRasterizer;
+import sketchy.shapes.ElementType;
+import sketchy.shapes.RecordBounds;
+import sketchy.shapes.ShapeRecord;
+import sketchy.shapes.TokenWriter;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/** Header written at the very beginning of every saved sketch - it summarizes the document (how many elements
+ * of each type it has, and the bounds of the whole drawing) and holds a small thumbnail of it, so that a
+ * preview of a file can be shown after reading just its first few tokens, rather than loading the whole file.
+ * The header starts with the TAG token, followed by FIELD_COUNT tokens: the format version, the numbers of
+ * rectangles, ellipses and curved lines, the bounds (minX, minY, maxX, maxY), the thumbnail's width and height,
+ * and finally its pixels as a single Base64 token (three bytes - red, green, blue - per pixel). Since none of
+ * these tokens is an element type name, readers that don't know about the header simply skip it.
+ */
+public class SketchHeader {
+    public static final String TAG = "SketchyHeader";
+    public static final int FIELD_COUNT = 11;
+    public static final int THUMBNAIL_WIDTH = 128;
+    public static final int THUMBNAIL_HEIGHT = 96;
+    private static final int VERSION = 1;
+
+    private int rectangles;
+    private int ellipses;
+    private int lines;
+    private double[] bounds;
+    private int thumbnailWidth;
+    private int thumbnailHeight;
+    private int[] thumbnail;
+
+    private SketchHeader(int rectangles, int ellipses, int lines, double[] bounds,
+                         int thumbnailWidth, int thumbnailHeight, int[] thumbnail) {
+        this.rectangles = rectangles;
+        this.ellipses = ellipses;
+        this.lines = lines;
+        this.bounds = bounds;
+        this.thumbnailWidth = thumbnailWidth;
+        this.thumbnailHeight = thumbnailHeight;
+        this.thumbnail = thumbnail;
+    }
+
+    /** Method creating the header of a document from its records (passed in z-order) - the records are gone
+     * through twice: once to count them and find the bounds, and once to draw the thumbnail of the drawing
+     * (from the top-left corner of the canvas to the bottom-right corner of the drawing).
+     */
+    public static SketchHeader of(Iterable<ShapeRecord> records) {
+        int[] counts = new int[ElementType.values().length];
+        double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (ShapeRecord record : records) {
+            counts[record.getType().ordinal()]++;
+            double[] recordBounds = RecordBounds.of(record);
+            bounds[0] = Math.min(bounds[0], recordBounds[0]);
+            bounds[1] = Math.min(bounds[1], recordBounds[1]);
+            bounds[2] = Math.max(bounds[2], recordBounds[2]);
+            bounds[3] = Math.max(bounds[3], recordBounds[3]);
+        }
+        if (bounds[0] > bounds[2]) {
+            bounds = new double[4];
+        }
+        double width = Math.max(1, bounds[2]);
+        double height = Math.max(1, bounds[3]);
+        double scale = Math.min(THUMBNAIL_WIDTH / width, THUMBNAIL_HEIGHT / height);
+        int thumbnailWidth = Math.max(1, (int) Math.ceil(width * scale));
+        int thumbnailHeight = Math.max(1, (int) Math.ceil(height * scale));
+        int[] thumbnail = new int[thumbnailWidth * thumbnailHeight];
+        Arrays.fill(thumbnail, 0xFFFFFFFF);
+        TileRasterizer rasterizer = new TileRasterizer(scale);
+        for (ShapeRecord record : records) {
+            rasterizer.draw(record, thumbnail, thumbnailWidth, 0, 0, 0, thumbnailWidth, thumbnailHeight);
+        }
+        return new SketchHeader(counts[ElementType.RECTANGLE.ordinal()], counts[ElementType.ELLIPSE.ordinal()],
+                counts[ElementType.CURVED_LINE.ordinal()], bounds, thumbnailWidth, thumbnailHeight, thumbnail);
+    }
+
+    /** Method writing the header (it has to be written before any of the records). */
+    public void write(TokenWriter io) {
+        io.writeString(TAG);
+        io.writeInt(VERSION);
+        io.writeInt(this.rectangles);
+        io.writeInt(this.ellipses);
+        io.writeInt(this.lines);
+        for (double bound : this.bounds) {
+            io.writeDouble(bound);
+        }
+        io.writeInt(this.thumbnailWidth);
+        io.writeInt(this.thumbnailHeight);
+        ByteBuffer bytes = ByteBuffer.allocate(3 * this.thumbnail.length);
+        for (int pixel : this.thumbnail) {
+            bytes.put((byte) (pixel >> 16)).put((byte) (pixel >> 8)).put((byte) pixel);
+        }
+        io.writeString(Base64.getEncoder().encodeToString(bytes.array()));
+    }
+
+    /** Method reading the header of a file - only the header's tokens are read, no matter how big the file is.
+     * Returns null if the file doesn't start with a header (e.g. it was saved before headers were introduced).
+     */
+    public static SketchHeader read(String fileName) throws IOException {
+        try (Reader reader = new BufferedReader(new FileReader(fileName, StandardCharsets.UTF_8), 1 << 12)) {
+            if (!TAG.equals(nextToken(reader)) || !String.valueOf(VERSION).equals(nextToken(reader))) {
+                return null;
+            }
+            int rectangles = Integer.parseInt(nextToken(reader));
+            int ellipses = Integer.parseInt(nextToken(reader));
+            int lines = Integer.parseInt(nextToken(reader));
+            double[] bounds = new double[4];
+            for (int i = 0; i < bounds.length; i++) {
+                bounds[i] = Double.parseDouble(nextToken(reader));
+            }
+            int thumbnailWidth = Integer.parseInt(nextToken(reader));
+            int thumbnailHeight = Integer.parseInt(nextToken(reader));
+            byte[] bytes = Base64.getDecoder().decode(nextToken(reader));
+            int[] thumbnail = new int[thumbnailWidth * thumbnailHeight];
+            for (int i = 0; i < thumbnail.length && 3 * i + 2 < bytes.length; i++) {
+                thumbnail[i] = 0xFF000000 | ((bytes[3 * i] & 0xFF) << 16) | ((bytes[3 * i + 1] & 0xFF) << 8) | (bytes[3 * i + 2] & 0xFF);
+            }
+            return new SketchHeader(rectangles, ellipses, lines, bounds, thumbnailWidth, thumbnailHeight, thumbnail);
+        } catch (NullPointerException | IllegalArgumentException e) {
+            throw new IOException("Malformed header in " + fileName, e);
+        }
+    }
+
+    /** Helper method returning the next whitespace-separated token of a file (or null at its end). */
+    private static String nextToken(Reader reader) throws IOException {
+        StringBuilder token = new StringBuilder();
+        int c;
+        while ((c = reader.read()) >= 0) {
+            if (!Character.isWhitespace(c)) {
+                token.append((char) c);
+            } else if (token.length() > 0) {
+                break;
+            }
+        }
+        return (token.length() > 0) ? token.toString() : null;
+    }
+
+    public int getRectangles() {
+        return this.rectangles;
+    }
+
+    public int getEllipses() {
+        return this.ellipses;
+    }
+
+    public int getLines() {
+        return this.lines;
+    }
+
+    /** Accessor method returning the bounds of the drawing as {minX, minY, maxX, maxY} - the array mustn't be modified. */
+    public double[] getBounds() {
+        return this.bounds;
+    }
+
+    public int getThumbnailWidth() {
+        return this.thumbnailWidth;
+    }
+
+    public int getThumbnailHeight() {
+        return this.thumbnailHeight;
+    }
+
+    /** Accessor method returning the thumbnail's pixels (as 0xAARRGGBB ints, row by row) - the array mustn't be modified. */
+    public int[] getThumbnail() {
+        return this.thumbnail;
+    }
+}
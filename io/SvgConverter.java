@@ -0,0 +1,67 @@
+package sketchy.io;
+
+import sketchy.shapes.RecordBounds;
+import sketchy.shapes.ShapeRecord;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import javax.xml.stream.XMLStreamException;
+
+/** Command-line converter between sketch files and SVG images (no JavaFX needed):
+ *   java sketchy.io.SvgConverter input.svg output.sketch
+ *   java sketchy.io.SvgConverter input.sketch output.svg
+ * Both directions stream records straight from the reader to the writer, so converting a document with
+ * millions of elements needs no more memory than converting one with a single element. When exporting to SVG,
+ * the sketch file is read twice - once to find the size of the image, and once to write the elements.
+ */
+public class SvgConverter {
+
+    public static void main(String[] args) throws IOException, XMLStreamException {
+        if (args.length != 2) {
+            System.err.println("Usage: java sketchy.io.SvgConverter <input.svg|input.sketch> <output>");
+            return;
+        }
+        long start = System.nanoTime();
+        long count = args[0].toLowerCase().endsWith(".svg") ? svgToSketch(args[0], args[1]) : sketchToSvg(args[0], args[1]);
+        System.out.println("Converted " + count + " elements in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /** Method converting an SVG image into a sketch file - returns the number of elements written. */
+    public static long svgToSketch(String input, String output) throws IOException, XMLStreamException {
+        try (InputStream in = new FileInputStream(input);
+             SketchFileWriter writer = new SketchFileWriter(new FileWriter(output, StandardCharsets.UTF_8))) {
+            return new SvgImporter().read(in, writer::write);
+        }
+    }
+
+    /** Method converting a sketch file into an SVG image - returns the number of elements written. */
+    public static long sketchToSvg(String input, String output) throws IOException {
+        double width = 0;
+        double height = 0;
+        try (SketchFileReader reader = new SketchFileReader(new FileReader(input, StandardCharsets.UTF_8))) {
+            ShapeRecord record;
+            while ((record = reader.next()) != null) {
+                double[] bounds = RecordBounds.of(record);
+                width = Math.max(width, bounds[2]);
+                height = Math.max(height, bounds[3]);
+            }
+        }
+        long count = 0;
+        try (SketchFileReader reader = new SketchFileReader(new FileReader(input, StandardCharsets.UTF_8));
+             FileWriter out = new FileWriter(output, StandardCharsets.UTF_8)) {
+            SvgExporter exporter = new SvgExporter(out);
+            exporter.writeHeader(width, height);
+            ShapeRecord record;
+            while ((record = reader.next()) != null) {
+                exporter.write(record);
+                count++;
+            }
+            exporter.writeFooter();
+            exporter.flush();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,172 @@
+package sketchy.io;
+
+import sketchy.shapes.RecordBounds;
+import sketchy.shapes.ShapeRecord;
+import sketchy.shapes.Symbol;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/** Exporter writing records as an SVG image, so that sketches can be opened in other tools. The SVG is written
+ * straight to a buffered writer, element by element, in the order the records are passed in (bottom layer first,
+ * which is also the order in which SVG paints) - no DOM is ever built, so exporting needs only as much memory as
+ * the record that's currently being written, no matter how many elements the sketch has.
+ * Rectangles and ellipses become rect and ellipse elements rotated around their centers (JavaFX and SVG both
+ * rotate clockwise for positive angles), and curved lines become polylines stroked with their color.
+ */
+public class SvgExporter {
+    private BufferedWriter writer;
+
+    public SvgExporter(Writer writer) {
+        this.writer = new BufferedWriter(writer, 1 << 16);
+    }
+
+    /** Method exporting a whole document - the records are iterated twice: once to find the size of the image
+     * (so that no element is cut off), and once to write them.
+     */
+    public void export(Iterable<ShapeRecord> records, double minWidth, double minHeight) throws IOException {
+        double width = minWidth;
+        double height = minHeight;
+        for (ShapeRecord record : records) {
+            double[] bounds = RecordBounds.of(record);
+            width = Math.max(width, bounds[2]);
+            height = Math.max(height, bounds[3]);
+        }
+        this.writeHeader(width, height);
+        for (ShapeRecord record : records) {
+            this.write(record);
+        }
+        this.writeFooter();
+        this.flush();
+    }
+
+    public void writeHeader(double width, double height) throws IOException {
+        this.writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        this.writer.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+        this.writeNumber(Math.ceil(width));
+        this.writer.write("\" height=\"");
+        this.writeNumber(Math.ceil(height));
+        this.writer.write("\">\n");
+    }
+
+    public void writeFooter() throws IOException {
+        this.writer.write("</svg>\n");
+    }
+
+    public void flush() throws IOException {
+        this.writer.flush();
+    }
+
+    /** Method writing a single element. */
+    public void write(ShapeRecord record) throws IOException {
+        switch (record.getType()) {
+            case RECTANGLE:
+                this.writer.write("<rect x=\"");
+                this.writeNumber(record.getCenterX() - record.getWidth());
+                this.writer.write("\" y=\"");
+                this.writeNumber(record.getCenterY() - record.getHeight());
+                this.writer.write("\" width=\"");
+                this.writeNumber(2 * record.getWidth());
+                this.writer.write("\" height=\"");
+                this.writeNumber(2 * record.getHeight());
+                this.writeFillAndRotation(record);
+                break;
+            case ELLIPSE:
+                this.writer.write("<ellipse cx=\"");
+                this.writeNumber(record.getCenterX());
+                this.writer.write("\" cy=\"");
+                this.writeNumber(record.getCenterY());
+                this.writer.write("\" rx=\"");
+                this.writeNumber(record.getWidth());
+                this.writer.write("\" ry=\"");
+                this.writeNumber(record.getHeight());
+                this.writeFillAndRotation(record);
+                break;
+            case CURVED_LINE:
+                this.writer.write("<polyline fill=\"none\" stroke=\"");
+                this.writeColor(record);
+                this.writer.write("\" points=\"");
+                double[] points = record.getPoints();
+                for (int i = 0; i + 1 < points.length; i += 2) {
+                    if (i > 0) {
+                        this.writer.write(' ');
+                    }
+                    this.writeNumber(points[i] + record.getCenterX());
+                    this.writer.write(',');
+                    this.writeNumber(points[i + 1] + record.getCenterY());
+                }
+                this.writer.write("\"/>\n");
+                break;
+            case FILL:
+                // every run of the mask becomes a rectangle of one path, rotated along with the fill's box
+                this.writer.write("<path d=\"");
+                double[] mask = record.getPoints();
+                if (mask.length >= 2) {
+                    double cellWidth = 2 * record.getWidth() / mask[0];
+                    double cellHeight = 2 * record.getHeight() / mask[1];
+                    double left = record.getCenterX() - record.getWidth();
+                    double top = record.getCenterY() - record.getHeight();
+                    for (int i = 2; i + 2 < mask.length; i += 3) {
+                        this.writer.write('M');
+                        this.writeNumber(left + mask[i + 1] * cellWidth);
+                        this.writer.write(' ');
+                        this.writeNumber(top + mask[i] * cellHeight);
+                        this.writer.write('h');
+                        this.writeNumber((mask[i + 2] - mask[i + 1]) * cellWidth);
+                        this.writer.write('v');
+                        this.writeNumber(cellHeight);
+                        this.writer.write('h');
+                        this.writeNumber(-(mask[i + 2] - mask[i + 1]) * cellWidth);
+                        this.writer.write('z');
+                    }
+                }
+                this.writeFillAndRotation(record);
+                break;
+            case INSTANCE:
+                // SVG's own symbols can't recolor elements that have colors of their own, so instances are written out
+                Symbol symbol = Symbol.of(record);
+                if (symbol != null) {
+                    for (ShapeRecord member : symbol.place(record)) {
+                        this.write(member);
+                    }
+                }
+                break;
+        }
+    }
+
+    private void writeFillAndRotation(ShapeRecord record) throws IOException {
+        this.writer.write("\" fill=\"");
+        this.writeColor(record);
+        this.writer.write('"');
+        if (record.getAngle() != 0) {
+            this.writer.write(" transform=\"rotate(");
+            this.writeNumber(record.getAngle());
+            this.writer.write(' ');
+            this.writeNumber(record.getCenterX());
+            this.writer.write(' ');
+            this.writeNumber(record.getCenterY());
+            this.writer.write(")\"");
+        }
+        this.writer.write("/>\n");
+    }
+
+    private void writeColor(ShapeRecord record) throws IOException {
+        int rgb = (channel(record.getRed()) << 16) | (channel(record.getGreen()) << 8) | channel(record.getBlue());
+        this.writer.write('#');
+        String hex = Integer.toHexString(rgb | 0x1000000);
+        this.writer.write(hex, 1, 6);
+    }
+
+    private static int channel(double value) {
+        return (int) Math.round(Math.max(0, Math.min(1, value)) * 255);
+    }
+
+    /** Helper method writing a number without a fractional part whenever it's a whole number. */
+    private void writeNumber(double value) throws IOException {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            this.writer.write(Long.toString((long) value));
+        } else {
+            this.writer.write(Double.toString(value));
+        }
+    }
+}
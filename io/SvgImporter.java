@@ -0,0 +1,312 @@
+package sketchy.io;
+
+import sketchy.shapes.ElementIds;
+import sketchy.shapes.ElementType;
+import sketchy.shapes.ShapeRecord;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/** Importer reading SVG images into records - the file is read with a streaming (StAX) parser, and every
+ * element that Sketchy can represent is handed to a consumer as soon as it has been read, so importing never
+ * builds a DOM and never holds more than the element that's currently being read (plus the transforms of the
+ * groups it's nested in).
+ * Rectangles, ellipses and circles become rectangles and ellipses (a rotation in their transform becomes their
+ * angle), while polylines, polygons and lines become curved lines. Everything else (paths, text, images...)
+ * is skipped. Records are created in document order - which is also SVG's painting order - so their z values
+ * simply increase, and every record gets a new ID.
+ */
+public class SvgImporter {
+    private static final double[] IDENTITY = {1, 0, 0, 1, 0, 0};
+
+    private XMLInputFactory factory;
+    private long count;
+
+    public SvgImporter() {
+        this.factory = XMLInputFactory.newInstance();
+        this.factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        this.factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /** Method reading the whole image, passing every record to the consumer - returns the number of records read. */
+    public long read(InputStream in, Consumer<ShapeRecord> consumer) throws XMLStreamException {
+        XMLStreamReader reader = this.factory.createXMLStreamReader(in);
+        ArrayDeque<double[]> transforms = new ArrayDeque<>();
+        transforms.push(IDENTITY);
+        long first = this.count;
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    double[] transform = multiply(transforms.peek(), parseTransform(reader.getAttributeValue(null, "transform")));
+                    transforms.push(transform);
+                    ShapeRecord record = this.readElement(reader, transform);
+                    if (record != null) {
+                        consumer.accept(record);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    transforms.pop();
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return this.count - first;
+    }
+
+    /** Helper method turning the element the reader is at into a record (or returning null if it can't be drawn). */
+    private ShapeRecord readElement(XMLStreamReader reader, double[] transform) {
+        switch (reader.getLocalName()) {
+            case "rect":
+                double width = number(reader, "width");
+                double height = number(reader, "height");
+                return this.shape(reader, ElementType.RECTANGLE, number(reader, "x") + width / 2,
+                        number(reader, "y") + height / 2, width / 2, height / 2, transform, "fill");
+            case "ellipse":
+                return this.shape(reader, ElementType.ELLIPSE, number(reader, "cx"), number(reader, "cy"),
+                        number(reader, "rx"), number(reader, "ry"), transform, "fill");
+            case "circle":
+                double radius = number(reader, "r");
+                return this.shape(reader, ElementType.ELLIPSE, number(reader, "cx"), number(reader, "cy"),
+                        radius, radius, transform, "fill");
+            case "line":
+                return this.line(reader, new double[] {number(reader, "x1"), number(reader, "y1"),
+                        number(reader, "x2"), number(reader, "y2")}, transform);
+            case "polyline":
+            case "polygon":
+                double[] points = parseNumbers(reader.getAttributeValue(null, "points"));
+                if (reader.getLocalName().equals("polygon") && points.length >= 2) {
+                    double[] closed = new double[(points.length & ~1) + 2];
+                    System.arraycopy(points, 0, closed, 0, closed.length - 2);
+                    closed[closed.length - 2] = points[0];
+                    closed[closed.length - 1] = points[1];
+                    points = closed;
+                }
+                return this.line(reader, points, transform);
+            default:
+                return null;
+        }
+    }
+
+    /** Helper method creating the record of a rectangle or an ellipse - the transform moves its center, scales
+     * its size and adds its rotation to the shape's angle (skewing transforms can't be represented, so they're ignored).
+     */
+    private ShapeRecord shape(XMLStreamReader reader, ElementType type, double centerX, double centerY,
+                              double width, double height, double[] transform, String paint) {
+        double[] color = parseColor(attribute(reader, paint));
+        if (color == null || width <= 0 || height <= 0) {
+            return null;
+        }
+        double x = transform[0] * centerX + transform[2] * centerY + transform[4];
+        double y = transform[1] * centerX + transform[3] * centerY + transform[5];
+        double scaleX = Math.hypot(transform[0], transform[1]);
+        double scaleY = Math.hypot(transform[2], transform[3]);
+        double angle = Math.toDegrees(Math.atan2(transform[1], transform[0]));
+        return new ShapeRecord(ElementIds.next(), type, x, y, width * scaleX, height * scaleY, angle,
+                color[0], color[1], color[2], null, this.count++);
+    }
+
+    /** Helper method creating the record of a curved line - its points are simply transformed one by one. */
+    private ShapeRecord line(XMLStreamReader reader, double[] points, double[] transform) {
+        double[] color = parseColor(attribute(reader, "stroke"));
+        if (color == null) {
+            color = parseColor(attribute(reader, "fill"));
+        }
+        int length = points.length & ~1;
+        if (color == null || length < 2) {
+            return null;
+        }
+        double[] transformed = new double[length];
+        for (int i = 0; i < length; i += 2) {
+            transformed[i] = transform[0] * points[i] + transform[2] * points[i + 1] + transform[4];
+            transformed[i + 1] = transform[1] * points[i] + transform[3] * points[i + 1] + transform[5];
+        }
+        return new ShapeRecord(ElementIds.next(), ElementType.CURVED_LINE, 0, 0, 0, 0, 0,
+                color[0], color[1], color[2], transformed, this.count++);
+    }
+
+    /** Helper method returning a presentation attribute, looking into the style attribute first (as it takes precedence). */
+    private static String attribute(XMLStreamReader reader, String name) {
+        String style = reader.getAttributeValue(null, "style");
+        if (style != null) {
+            for (String declaration : style.split(";")) {
+                int colon = declaration.indexOf(':');
+                if (colon > 0 && declaration.substring(0, colon).trim().equals(name)) {
+                    return declaration.substring(colon + 1).trim();
+                }
+            }
+        }
+        return reader.getAttributeValue(null, name);
+    }
+
+    private static double number(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        if (value == null) {
+            return 0;
+        }
+        value = value.trim();
+        if (value.endsWith("px")) {
+            value = value.substring(0, value.length() - 2);
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** Helper method returning the red, green and blue components (0 to 1) of an SVG color, or null if nothing is painted.
+     * Hexadecimal colors, rgb() colors and the most basic color names are understood - anything else becomes black.
+     */
+    public static double[] parseColor(String value) {
+        if (value == null) {
+            return new double[] {0, 0, 0};
+        }
+        value = value.trim().toLowerCase();
+        if (value.equals("none") || value.equals("transparent")) {
+            return null;
+        }
+        if (value.startsWith("#")) {
+            String hex = value.substring(1);
+            if (hex.length() == 3) {
+                hex = "" + hex.charAt(0) + hex.charAt(0) + hex.charAt(1) + hex.charAt(1) + hex.charAt(2) + hex.charAt(2);
+            }
+            try {
+                int rgb = Integer.parseInt(hex.substring(0, 6), 16);
+                return new double[] {((rgb >> 16) & 0xFF) / 255.0, ((rgb >> 8) & 0xFF) / 255.0, (rgb & 0xFF) / 255.0};
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                return new double[] {0, 0, 0};
+            }
+        }
+        if (value.startsWith("rgb(")) {
+            String[] parts = value.substring(4, value.length() - 1).split(",");
+            double[] color = new double[3];
+            try {
+                for (int i = 0; i < 3 && i < parts.length; i++) {
+                    String part = parts[i].trim();
+                    double channel = part.endsWith("%") ? Double.parseDouble(part.substring(0, part.length() - 1)) / 100
+                            : Double.parseDouble(part) / 255;
+                    color[i] = Math.max(0, Math.min(1, channel));
+                }
+            } catch (NumberFormatException e) {
+                return new double[] {0, 0, 0};
+            }
+            return color;
+        }
+        switch (value) {
+            case "white":
+                return new double[] {1, 1, 1};
+            case "red":
+                return new double[] {1, 0, 0};
+            case "green":
+                return new double[] {0, 128 / 255.0, 0};
+            case "lime":
+                return new double[] {0, 1, 0};
+            case "blue":
+                return new double[] {0, 0, 1};
+            case "yellow":
+                return new double[] {1, 1, 0};
+            case "gray":
+            case "grey":
+                return new double[] {128 / 255.0, 128 / 255.0, 128 / 255.0};
+            default:
+                return new double[] {0, 0, 0};
+        }
+    }
+
+    /** Helper method parsing a transform attribute (a list of matrix, translate, scale and rotate functions)
+     * into a single affine matrix {a, b, c, d, e, f}, mapping (x, y) to (ax + cy + e, bx + dy + f).
+     */
+    public static double[] parseTransform(String value) {
+        double[] transform = IDENTITY;
+        if (value == null) {
+            return transform;
+        }
+        int start = 0;
+        int open;
+        while ((open = value.indexOf('(', start)) >= 0) {
+            int close = value.indexOf(')', open);
+            if (close < 0) {
+                break;
+            }
+            String name = value.substring(start, open).replace(",", " ").trim();
+            double[] arguments = parseNumbers(value.substring(open + 1, close));
+            double[] function = IDENTITY;
+            switch (name) {
+                case "matrix":
+                    if (arguments.length == 6) {
+                        function = arguments;
+                    }
+                    break;
+                case "translate":
+                    if (arguments.length > 0) {
+                        function = new double[] {1, 0, 0, 1, arguments[0], (arguments.length > 1) ? arguments[1] : 0};
+                    }
+                    break;
+                case "scale":
+                    if (arguments.length > 0) {
+                        function = new double[] {arguments[0], 0, 0, (arguments.length > 1) ? arguments[1] : arguments[0], 0, 0};
+                    }
+                    break;
+                case "rotate":
+                    if (arguments.length > 0) {
+                        double radians = Math.toRadians(arguments[0]);
+                        double cosine = Math.cos(radians);
+                        double sine = Math.sin(radians);
+                        double cx = (arguments.length > 2) ? arguments[1] : 0;
+                        double cy = (arguments.length > 2) ? arguments[2] : 0;
+                        function = new double[] {cosine, sine, -sine, cosine,
+                                cx - cosine * cx + sine * cy, cy - sine * cx - cosine * cy};
+                    }
+                    break;
+            }
+            transform = multiply(transform, function);
+            start = close + 1;
+        }
+        return transform;
+    }
+
+    /** Helper method returning the matrix applying the second transform first, and then the first one. */
+    private static double[] multiply(double[] first, double[] second) {
+        if (second == IDENTITY) {
+            return first;
+        }
+        if (first == IDENTITY) {
+            return second;
+        }
+        return new double[] {
+                first[0] * second[0] + first[2] * second[1],
+                first[1] * second[0] + first[3] * second[1],
+                first[0] * second[2] + first[2] * second[3],
+                first[1] * second[2] + first[3] * second[3],
+                first[0] * second[4] + first[2] * second[5] + first[4],
+                first[1] * second[4] + first[3] * second[5] + first[5]};
+    }
+
+    /** Helper method parsing a list of numbers separated by whitespace and/or commas. */
+    private static double[] parseNumbers(String value) {
+        if (value == null) {
+            return new double[0];
+        }
+        ArrayList<String> tokens = new ArrayList<>();
+        for (String token : value.trim().split("[\\s,]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        double[] numbers = new double[tokens.size()];
+        try {
+            for (int i = 0; i < numbers.length; i++) {
+                numbers[i] = Double.parseDouble(tokens.get(i));
+            }
+        } catch (NumberFormatException e) {
+            return new double[0];
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,262 @@
+package sketchy.main;
+
+import javafx.application.Platform;
+import javafx.geometry.Point2D;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.Pane;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.transform.Scale;
+import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
+import sketchy.document.ArenaGrid;
+import sketchy.document.GeometryArena;
+import sketchy.io.SketchFileReader;
+import sketchy.shapes.ShapeRecord;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/** Window showing a sketch too big to be edited - the file is streamed into a GeometryArena kept in a memory-mapped
+ * file (so no record of it is ever held for longer than it takes to copy it there), and an ArenaGrid is built over
+ * it. Only the elements within the window get JavaFX nodes, taken from a NodePool and put back as soon as the
+ * elements leave the window - so the heap holds a few thousand nodes at most, however big the sketch is.
+ * The view is dragged around with the mouse, and zoomed with the mouse wheel (around the mouse). Once more than
+ * MAX_VISIBLE_NODES elements would be in the window, it switches to an overview instead - an image with every
+ * element's bounding box filled with its color, drawn from the arena's columns alone, off the JavaFX thread.
+ * Closing the window releases the arena (and deletes its file).
+ */
+public class ArenaView {
+    private static final double ZOOM_STEP = 1.1;
+
+    private Stage stage;
+    private Pane viewport;
+    private Pane content;
+    private ImageView overview;
+    private Label status;
+    private Scale scale;
+    private Rectangle clip;
+    private GeometryArena arena;
+    private ArenaGrid grid;
+    private NodePool pool;
+    private HashMap<Integer, Node> shown;
+    private double viewX;
+    private double viewY;
+    private double zoom;
+    private Point2D dragStart;
+    private volatile int views;
+
+    public ArenaView() {
+        this.pool = new NodePool();
+        this.shown = new HashMap<>();
+        this.zoom = 1;
+        this.scale = new Scale(1, 1, 0, 0);
+        this.content = new Pane();
+        this.content.getTransforms().add(this.scale);
+        this.overview = new ImageView();
+        this.overview.setMouseTransparent(true);
+        this.clip = new Rectangle();
+        this.viewport = new Pane(this.overview, this.content);
+        this.viewport.setClip(this.clip);
+        this.viewport.setOnMousePressed((MouseEvent e) -> this.dragStart = new Point2D(e.getX(), e.getY()));
+        this.viewport.setOnMouseDragged((MouseEvent e) -> this.drag(e));
+        this.viewport.setOnScroll((ScrollEvent e) -> this.zoom(e));
+        this.status = new Label();
+        BorderPane root = new BorderPane();
+        root.setCenter(this.viewport);
+        root.setBottom(this.status);
+        this.stage = new Stage();
+        this.stage.setScene(new Scene(root, Constants.SCENE_WIDTH, Constants.SCENE_HEIGHT));
+        this.stage.setOnHidden((WindowEvent e) -> this.close());
+    }
+
+    /** Method showing the window, and loading a sketch file into it on a background thread. */
+    public void open(String fileName) {
+        this.stage.setTitle(fileName);
+        this.status.setText("Loading " + fileName + "...");
+        this.stage.show();
+        Thread loader = new Thread(() -> {
+            GeometryArena arena;
+            try {
+                arena = GeometryArena.mapped(Files.createTempFile("sketchy-arena", ".bin"));
+            } catch (IOException e) {
+                Platform.runLater(() -> this.status.setText("Couldn't create the sketch's memory: " + e.getMessage()));
+                return;
+            }
+            long start = System.nanoTime();
+            try (SketchFileReader reader = new SketchFileReader(new FileReader(fileName, StandardCharsets.UTF_8))) {
+                for (ShapeRecord record = reader.next(); record != null; record = reader.next()) {
+                    arena.add(record);
+                }
+            } catch (IOException | RuntimeException e) {
+                Platform.runLater(() -> this.status.setText("Couldn't load the sketch: " + e.getMessage()));
+                try {
+                    arena.close();
+                } catch (IOException closing) {
+                    // the temporary file is left for the operating system to clean up
+                }
+                return;
+            }
+            ArenaGrid grid = new ArenaGrid(arena);
+            long millis = (System.nanoTime() - start) / 1000000;
+            Platform.runLater(() -> this.show(arena, grid, millis));
+        }, "sketchy-arena-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /** Helper method called once a sketch is loaded - the view starts at the sketch's top left corner, and the
+     * window's title tells how big the sketch is and how long it took to load. If the window has been closed in the
+     * meantime, the arena is simply released.
+     */
+    private void show(GeometryArena arena, ArenaGrid grid, long millis) {
+        this.arena = arena;
+        this.grid = grid;
+        if (!this.stage.isShowing()) {
+            this.close();
+            return;
+        }
+        double[] bounds = grid.getBounds();
+        this.viewX = bounds[0];
+        this.viewY = bounds[1];
+        this.stage.setTitle(this.stage.getTitle() + " - " + arena.size() + " elements, "
+                + arena.getBytes() / (1024 * 1024) + " MB off the heap, loaded in " + millis + " ms");
+        this.refresh();
+    }
+
+    private void drag(MouseEvent e) {
+        if (this.dragStart == null) {
+            return;
+        }
+        this.viewX -= (e.getX() - this.dragStart.getX()) / this.zoom;
+        this.viewY -= (e.getY() - this.dragStart.getY()) / this.zoom;
+        this.dragStart = new Point2D(e.getX(), e.getY());
+        this.refresh();
+    }
+
+    /** Helper method zooming the view around the mouse - the point under it stays where it is. */
+    private void zoom(ScrollEvent e) {
+        double factor = (e.getDeltaY() > 0) ? ZOOM_STEP : 1 / ZOOM_STEP;
+        double x = this.viewX + e.getX() / this.zoom;
+        double y = this.viewY + e.getY() / this.zoom;
+        this.zoom *= factor;
+        this.viewX = x - e.getX() / this.zoom;
+        this.viewY = y - e.getY() / this.zoom;
+        this.refresh();
+    }
+
+    /** Helper method bringing the window up to date with the view - the elements within it are found through the
+     * grid, the ones that have just come into view get nodes from the pool, the ones that have left it give theirs
+     * back, and the pane gets its children replaced at once (in the elements' z-order). If there are too many
+     * elements to show, all nodes are given back, and the overview is drawn instead.
+     */
+    private void refresh() {
+        if (this.arena == null) {
+            return;
+        }
+        double width = (this.viewport.getWidth() > 0) ? this.viewport.getWidth() : Constants.SCENE_WIDTH;
+        double height = (this.viewport.getHeight() > 0) ? this.viewport.getHeight() : Constants.SCENE_HEIGHT;
+        this.clip.setWidth(width);
+        this.clip.setHeight(height);
+        this.scale.setX(this.zoom);
+        this.scale.setY(this.zoom);
+        this.content.setTranslateX(-this.viewX * this.zoom);
+        this.content.setTranslateY(-this.viewY * this.zoom);
+        double maxX = this.viewX + width / this.zoom;
+        double maxY = this.viewY + height / this.zoom;
+        int[] slots = this.grid.query(this.viewX, this.viewY, maxX, maxY, Constants.MAX_VISIBLE_NODES);
+        HashMap<Integer, Node> visible = new HashMap<>();
+        ArrayList<Node> nodes = new ArrayList<>();
+        if (slots != null) {
+            for (int slot : slots) {
+                Node node = this.shown.remove(slot);
+                if (node == null) {
+                    node = this.pool.acquire(this.arena.get(slot));
+                }
+                visible.put(slot, node);
+                nodes.add(node);
+            }
+        }
+        for (Node node : this.shown.values()) {
+            this.pool.release(node);
+        }
+        this.shown = visible;
+        this.content.getChildren().setAll(nodes);
+        this.views++;
+        if (slots == null) {
+            this.drawOverview(this.viewX, this.viewY, maxX, maxY, (int) Math.ceil(width), (int) Math.ceil(height));
+        } else {
+            this.overview.setImage(null);
+            this.status.setText(String.format("%d elements, %d in view (%d nodes created), zoom %.0f%%",
+                    this.arena.size(), slots.length, this.pool.getCreated(), this.zoom * 100));
+        }
+    }
+
+    /** Helper method drawing the overview of a region of the sketch on a background thread - it's given up as soon as
+     * the view changes (e.g. on the next drag event), and only shown if the view hasn't changed in the meantime.
+     */
+    private void drawOverview(double minX, double minY, double maxX, double maxY, int width, int height) {
+        int view = this.views;
+        GeometryArena arena = this.arena;
+        this.status.setText(String.format("%d elements, too many in view to show them one by one - zoom %.0f%%",
+                arena.size(), this.zoom * 100));
+        Thread painter = new Thread(() -> {
+            int[] pixels = new int[width * height];
+            double scaleX = width / (maxX - minX);
+            double scaleY = height / (maxY - minY);
+            for (int slot = 0; slot < arena.size(); slot++) {
+                if ((slot & 0xFFFF) == 0 && view != this.views) {
+                    // the view has changed since, so the overview would never be shown
+                    return;
+                }
+                if (!arena.intersects(slot, minX, minY, maxX, maxY)) {
+                    continue;
+                }
+                int color = 0xFF000000 | arena.getColor(slot);
+                int left = (int) Math.max(0, (arena.getMinX(slot) - minX) * scaleX);
+                int top = (int) Math.max(0, (arena.getMinY(slot) - minY) * scaleY);
+                int right = (int) Math.min(width - 1, (arena.getMaxX(slot) - minX) * scaleX);
+                int bottom = (int) Math.min(height - 1, (arena.getMaxY(slot) - minY) * scaleY);
+                for (int y = top; y <= bottom; y++) {
+                    for (int x = left; x <= right; x++) {
+                        pixels[y * width + x] = color;
+                    }
+                }
+            }
+            WritableImage image = new WritableImage(width, height);
+            image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+            Platform.runLater(() -> {
+                if (view == this.views && this.arena == arena) {
+                    this.overview.setImage(image);
+                }
+            });
+        }, "sketchy-arena-overview");
+        painter.setDaemon(true);
+        painter.start();
+    }
+
+    /** Helper method releasing the arena once the window is closed - its nodes are dropped along with the window. */
+    private void close() {
+        this.shown.clear();
+        if (this.arena == null) {
+            return;
+        }
+        try {
+            this.arena.close();
+        } catch (IOException e) {
+            System.err.println("Couldn't release the sketch's memory: " + e.getMessage());
+        }
+        this.arena = null;
+        this.grid = null;
+    }
+}
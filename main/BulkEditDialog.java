@@ -0,0 +1,121 @@
+package sketchy.main;
+
+import javafx.event.ActionEvent;
+import javafx.geometry.Insets;
+import javafx.geometry.Point2D;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.ColorPicker;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+import sketchy.document.BulkEdit;
+import sketchy.shapes.ElementType;
+import sketchy.shapes.ShapeRecord;
+import java.util.function.Predicate;
+
+/** Window for document-wide edits (see BulkEdit) - the user chooses which elements to edit (all of them, the ones
+ * of a color, of a type, or the ones smaller than a size) and what to do with them (recolor, scale or delete them),
+ * and the edit is handed to Sketchy, which runs it off the JavaFX thread and applies it as a single step.
+ */
+public class BulkEditDialog {
+    private static final String ALL = "All elements";
+    private static final String OF_COLOR = "Elements of the color";
+    private static final String SMALLER_THAN = "Elements smaller than (px)";
+    private static final String RECOLOR = "Recolor to";
+    private static final String SCALE = "Scale by (%)";
+    private static final String DELETE = "Delete";
+
+    private Stage stage;
+    private Sketchy sketchy;
+    private ComboBox<String> selection;
+    private ColorPicker matchColor;
+    private ComboBox<String> action;
+    private ColorPicker newColor;
+    private TextField value;
+    private Label status;
+
+    public BulkEditDialog(Sketchy sketchy) {
+        this.sketchy = sketchy;
+        this.selection = new ComboBox<>();
+        this.selection.getItems().addAll(ALL, OF_COLOR, SMALLER_THAN);
+        for (ElementType type : ElementType.values()) {
+            this.selection.getItems().add(type.getTag() + " elements");
+        }
+        this.selection.setValue(ALL);
+        this.matchColor = new ColorPicker(Color.BLACK);
+        this.action = new ComboBox<>();
+        this.action.getItems().addAll(RECOLOR, SCALE, DELETE);
+        this.action.setValue(RECOLOR);
+        this.newColor = new ColorPicker(Color.BLACK);
+        this.value = new TextField("50");
+        this.value.setPrefColumnCount(6);
+        this.status = new Label();
+        Button apply = new Button("Apply");
+        apply.setOnAction((ActionEvent e) -> this.apply());
+        HBox selectRow = new HBox(10, new Label("Select:"), this.selection, this.matchColor);
+        HBox actionRow = new HBox(10, new Label("Action:"), this.action, this.newColor);
+        HBox valueRow = new HBox(10, new Label("Size or percentage:"), this.value, apply);
+        VBox root = new VBox(10, selectRow, actionRow, valueRow, this.status);
+        root.setPadding(new Insets(10));
+        this.stage = new Stage();
+        this.stage.setTitle("Bulk Edit");
+        this.stage.setScene(new Scene(root, Constants.SCENE_WIDTH / 2, 170));
+    }
+
+    /** Method showing the dialog, with both of its colors set to the one currently chosen in the control panel. */
+    public void show(Color color) {
+        this.matchColor.setValue(color);
+        this.newColor.setValue(color);
+        this.status.setText("");
+        this.stage.show();
+    }
+
+    /** Helper method building the edit chosen in the dialog, and handing it to Sketchy. */
+    private void apply() {
+        double number;
+        try {
+            number = Double.parseDouble(this.value.getText().trim());
+        } catch (NumberFormatException e) {
+            this.status.setText("Not a number: " + this.value.getText());
+            return;
+        }
+        Predicate<ShapeRecord> predicate = this.predicate(number);
+        BulkEdit edit;
+        switch (this.action.getValue()) {
+            case SCALE:
+                Point2D center = this.sketchy.getDrawingCenter();
+                edit = BulkEdit.scale(predicate, number / 100, center.getX(), center.getY());
+                break;
+            case DELETE:
+                edit = BulkEdit.delete(predicate);
+                break;
+            default:
+                Color color = this.newColor.getValue();
+                edit = BulkEdit.recolor(predicate, color.getRed(), color.getGreen(), color.getBlue());
+                break;
+        }
+        this.sketchy.bulkEdit(edit);
+        this.status.setText(edit.getName() + " submitted - it's applied as soon as it's done");
+    }
+
+    private Predicate<ShapeRecord> predicate(double size) {
+        String chosen = this.selection.getValue();
+        if (OF_COLOR.equals(chosen)) {
+            Color color = this.matchColor.getValue();
+            return BulkEdit.ofColor(color.getRed(), color.getGreen(), color.getBlue());
+        } else if (SMALLER_THAN.equals(chosen)) {
+            return BulkEdit.smallerThan(size);
+        }
+        for (ElementType type : ElementType.values()) {
+            if ((type.getTag() + " elements").equals(chosen)) {
+                return BulkEdit.ofType(type);
+            }
+        }
+        return (ShapeRecord record) -> true;
+    }
+}
@@ -4,5 +4,22 @@ public class Constants {
 
     public static final int SCENE_WIDTH = 800;
     public static final int SCENE_HEIGHT = 600;
+    public static final int COLLAB_PORT = 47815;
+    public static final int BULK_SYNC_LIMIT = 64;
+    public static final double EXPORT_DPI = 300;
+    public static final double SCREEN_DPI = 96;
+    public static final long PARALLEL_LOAD_THRESHOLD = 1 << 22;
+    public static final int HISTORY_BUFFER_SIZE = 1 << 22;
+    public static final double PASTE_OFFSET = 20;
+    public static final double ERASER_RADIUS = 8;
+    public static final double FILL_SCALE = 1;
+    public static final int FILL_TOLERANCE = 32;
+    public static final double GRID_SIZE = 20;
+    public static final double SNAP_DISTANCE = 6;
+    public static final long MEMORY_SOFT_LIMIT = 1L << 30;
+    public static final double HEAP_LIMIT_RATIO = 0.8;
+    public static final int HISTORY_TRIM_KEEP = 200;
+    public static final double PEN_PREDICTION_MS = 16;
+    public static final int MAX_VISIBLE_NODES = 20000;
     public static final String LEFT_PANE_COLOR = "-fx-background-image: url(https://img.freepik.com/premium-photo/white-crumpled-paper-sheet-background-design_213524-61.jpg?w=740)";
 }
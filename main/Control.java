@@ -1,9 +1,14 @@
 package sketchy.main;
 
+import javafx.event.ActionEvent;
 import javafx.scene.control.*;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 
 /**
  * This is a class responsible for Sketchy's actual GUI - instantiating buttons and
@@ -20,19 +25,35 @@ public class Control {
     private Pane sketchPane;
     private ColorPicker picker;
     private Options option;
+    private TraceRecorder recorder;
+    private ComboBox<Layer> layerChooser;
+    private CheckBox layerVisible;
+    private CheckBox layerLocked;
+    private Label memoryStats;
+    private Label status;
 
     /** In the constructor, the association and handling of MouseEvents in relation to the main sketchPane
      * ("canvas") is set up. Methods responsible for establishing Sketchy's response to user's input
      * are called in here rather than from the PaneOrganizer class, as knowledge of the enum's and
-     * picker's current value is required.
+     * picker's current value is required. While the input is being recorded, every event is written to the
+     * trace before Sketchy handles it.
      */
     public Control (PaneOrganizer paneOrganizer, Sketchy sketchy, Pane sketchPane){
         this.paneOrganizer = paneOrganizer;
         this.sketchy = sketchy;
         this.sketchPane = sketchPane;
-        this.sketchPane.setOnMousePressed((MouseEvent e) -> this.sketchy.onMousePressed(e, this.option, this.picker.getValue()));
-        this.sketchPane.setOnMouseDragged((MouseEvent e) -> this.sketchy.onMouseDragged(e, this.option));
-        this.sketchPane.setOnMouseReleased((MouseEvent e) -> this.sketchy.onMouseReleased(this.option));
+        this.sketchPane.setOnMousePressed((MouseEvent e) -> {
+            this.record(TraceRecorder.PRESSED, e);
+            this.sketchy.onMousePressed(e, this.option, this.picker.getValue());
+        });
+        this.sketchPane.setOnMouseDragged((MouseEvent e) -> {
+            this.record(TraceRecorder.DRAGGED, e);
+            this.sketchy.onMouseDragged(e, this.option);
+        });
+        this.sketchPane.setOnMouseReleased((MouseEvent e) -> {
+            this.record(TraceRecorder.RELEASED, e);
+            this.sketchy.onMouseReleased(this.option);
+        });
     }
 
     /**
@@ -49,6 +70,8 @@ public class Control {
         this.createRadioButton(pane, "Draw with Pen", Options.DRAW_WITH_PEN);
         this.createRadioButton(pane, "Draw Rectangle", Options.DRAW_RECTANGLE);
         this.createRadioButton(pane, "Draw Ellipse", Options.DRAW_ELLIPSE);
+        this.createRadioButton(pane, "Erase", Options.ERASE);
+        this.createRadioButton(pane, "Bucket Fill", Options.FILL);
     }
 
     /**
@@ -69,12 +92,117 @@ public class Control {
     public void createShapeActions(Pane pane) {
         Button fill = this.createButton(pane, "Fill");
         fill.setOnMouseClicked((MouseEvent e) -> this.sketchy.changeColor(this.picker.getValue()));
+        Button recolor = this.createButton(pane, "Recolor Layer");
+        recolor.setOnMouseClicked((MouseEvent e) -> this.sketchy.recolorLayer(this.picker.getValue()));
+        Button bulkEdit = this.createButton(pane, "Bulk Edit");
+        bulkEdit.setOnMouseClicked((MouseEvent e) -> this.sketchy.showBulkEdit(this.picker.getValue()));
         Button delete = this.createButton(pane, "Delete");
         delete.setOnMouseClicked((MouseEvent e) -> this.sketchy.delete());
         Button raise = this.createButton(pane, "Raise");
         raise.setOnMouseClicked((MouseEvent e) -> this.sketchy.raise());
         Button lower = this.createButton(pane, "Lower");
         lower.setOnMouseClicked((MouseEvent e) -> this.sketchy.lower());
+        Button group = this.createButton(pane, "Group");
+        group.setOnMouseClicked((MouseEvent e) -> this.sketchy.group());
+        Button ungroup = this.createButton(pane, "Ungroup");
+        ungroup.setOnMouseClicked((MouseEvent e) -> this.sketchy.ungroup());
+        Button copy = this.createButton(pane, "Copy");
+        copy.setOnMouseClicked((MouseEvent e) -> this.sketchy.copy());
+        Button paste = this.createButton(pane, "Paste");
+        paste.setOnMouseClicked((MouseEvent e) -> this.sketchy.paste());
+        TextField copies = new TextField("1");
+        copies.setPrefColumnCount(4);
+        Button duplicate = this.createButton(pane, "Duplicate");
+        pane.getChildren().add(copies);
+        duplicate.setOnMouseClicked((MouseEvent e) -> this.sketchy.duplicate(this.parseCopies(copies.getText())));
+        Button sameColor = this.createButton(pane, "Select Same Color");
+        sameColor.setOnMouseClicked((MouseEvent e) -> this.sketchy.selectSameColor());
+        Button sameType = this.createButton(pane, "Select Same Type");
+        sameType.setOnMouseClicked((MouseEvent e) -> this.sketchy.selectSameType());
+        Button sameSize = this.createButton(pane, "Select Same Size");
+        sameSize.setOnMouseClicked((MouseEvent e) -> this.sketchy.selectSameSize());
+        Button makeSymbol = this.createButton(pane, "Make Symbol");
+        makeSymbol.setOnMouseClicked((MouseEvent e) -> this.sketchy.makeSymbol());
+        Button stamp = this.createButton(pane, "Stamp");
+        stamp.setOnMouseClicked((MouseEvent e) -> this.sketchy.stamp(this.parseCopies(copies.getText())));
+        CheckBox grid = new CheckBox("Snap to Grid");
+        CheckBox guides = new CheckBox("Smart Guides");
+        guides.setSelected(true);
+        pane.getChildren().addAll(grid, guides);
+        grid.setOnAction((ActionEvent e) -> this.sketchy.setSnapToGrid(grid.isSelected()));
+        guides.setOnAction((ActionEvent e) -> this.sketchy.setSmartGuides(guides.isSelected()));
+    }
+
+    /**
+     * Method below creates the layers pane's elements - a chooser of the active layer (listing the top layer
+     * first), check boxes showing (and changing) whether the active layer is visible or locked, and buttons adding
+     * a layer or moving the active one up or down. The chooser is refreshed whenever the layers change.
+     */
+    public void createLayersPane(Pane pane) {
+        this.layerChooser = new ComboBox<>();
+        this.layerVisible = new CheckBox("Visible");
+        this.layerLocked = new CheckBox("Locked");
+        pane.getChildren().addAll(this.layerChooser, this.layerVisible, this.layerLocked);
+        this.layerChooser.setOnAction((ActionEvent e) -> {
+            Layer layer = this.layerChooser.getValue();
+            if (layer != null && layer != this.sketchy.getActiveLayer()) {
+                this.sketchy.setActiveLayer(layer);
+                this.refreshLayers();
+            }
+        });
+        this.layerVisible.setOnAction((ActionEvent e) ->
+                this.sketchy.setLayerVisible(this.sketchy.getActiveLayer(), this.layerVisible.isSelected()));
+        this.layerLocked.setOnAction((ActionEvent e) ->
+                this.sketchy.setLayerLocked(this.sketchy.getActiveLayer(), this.layerLocked.isSelected()));
+        Button add = this.createButton(pane, "Add Layer");
+        add.setOnMouseClicked((MouseEvent e) -> {
+            this.sketchy.addLayer();
+            this.refreshLayers();
+        });
+        Button up = this.createButton(pane, "Layer Up");
+        up.setOnMouseClicked((MouseEvent e) -> this.sketchy.moveLayer(true));
+        Button down = this.createButton(pane, "Layer Down");
+        down.setOnMouseClicked((MouseEvent e) -> this.sketchy.moveLayer(false));
+        this.sketchy.setOnLayersChanged(this::refreshLayers);
+        this.refreshLayers();
+    }
+
+    /** Helper method bringing the layer chooser and the check boxes up to date with Sketchy's layers. */
+    private void refreshLayers() {
+        if (this.layerChooser == null) {
+            return;
+        }
+        ArrayList<Layer> layers = new ArrayList<>(this.sketchy.getLayers());
+        Collections.reverse(layers);
+        Layer active = this.sketchy.getActiveLayer();
+        this.layerChooser.getItems().setAll(layers);
+        this.layerChooser.setValue(active);
+        this.layerVisible.setSelected(active.isVisible());
+        this.layerLocked.setSelected(active.isLocked());
+    }
+
+    /**
+     * Method below creates the memory pane's elements - the figures of the memory accounting (refreshed after every
+     * change, and shown in red once the document is over its soft limits), a check box letting the history be
+     * trimmed automatically whenever that happens, and a button trimming it right away.
+     */
+    public void createMemoryPane(Pane pane) {
+        this.memoryStats = new Label();
+        CheckBox autoTrim = new CheckBox("Trim Automatically");
+        autoTrim.setSelected(this.sketchy.getMemory().isAutoTrim());
+        pane.getChildren().addAll(this.memoryStats, autoTrim);
+        autoTrim.setOnAction((ActionEvent e) -> this.sketchy.getMemory().setAutoTrim(autoTrim.isSelected()));
+        Button trim = this.createButton(pane, "Trim History");
+        trim.setOnMouseClicked((MouseEvent e) -> this.sketchy.trimHistory());
+        this.sketchy.setOnMemoryChanged(this::refreshMemory);
+        this.refreshMemory();
+    }
+
+    private void refreshMemory() {
+        boolean over = this.sketchy.getMemory().isOverLimit();
+        this.memoryStats.setText(this.sketchy.getMemory().getStats().describe()
+                + (over ? "\nOver the memory limit - consider trimming the history" : ""));
+        this.memoryStats.setStyle(over ? "-fx-text-fill: red" : "");
     }
 
     public void createOperationsPane(Pane pane) {
@@ -82,10 +210,30 @@ public class Control {
         undo.setOnMouseClicked((MouseEvent e) -> this.sketchy.undo());
         Button redo = this.createButton(pane, "Redo");
         redo.setOnMouseClicked((MouseEvent e) -> this.sketchy.redo());
+        Button history = this.createButton(pane, "History");
+        history.setOnMouseClicked((MouseEvent e) -> this.sketchy.showHistory());
         Button save = this.createButton(pane, "Save");
         save.setOnMouseClicked((MouseEvent e) -> this.sketchy.save());
         Button load = this.createButton(pane, "Load");
         load.setOnMouseClicked((MouseEvent e) -> this.sketchy.load());
+        Button previews = this.createButton(pane, "Previews");
+        previews.setOnMouseClicked((MouseEvent e) -> this.sketchy.browsePreviews());
+        Button openLarge = this.createButton(pane, "Open Large");
+        openLarge.setOnMouseClicked((MouseEvent e) -> this.sketchy.openLarge());
+        Button exportSvg = this.createButton(pane, "Export SVG");
+        exportSvg.setOnMouseClicked((MouseEvent e) -> this.sketchy.exportSvg());
+        Button importSvg = this.createButton(pane, "Import SVG");
+        importSvg.setOnMouseClicked((MouseEvent e) -> this.sketchy.importSvg());
+        Button exportPng = this.createButton(pane, "Export PNG");
+        exportPng.setOnMouseClicked((MouseEvent e) -> this.sketchy.exportPng());
+        Button collaborate = this.createButton(pane, "Collaborate");
+        collaborate.setOnMouseClicked((MouseEvent e) -> this.sketchy.collaborate());
+        Button record = this.createButton(pane, "Record Input");
+        record.setOnMouseClicked((MouseEvent e) -> this.toggleRecording(record));
+        // messages for the user (e.g. about edits that couldn't be applied in full) are shown under the buttons
+        this.status = new Label();
+        pane.getChildren().add(this.status);
+        this.sketchy.setOnStatus(this.status::setText);
     }
 
     /**
@@ -112,4 +260,48 @@ public class Control {
         pane.getChildren().add(button);
         return button;
     }
+
+    /** Method starting to record the mouse events of the sketchPane into a new trace file (in the working
+     * directory), or stopping the recording if it's already going on - the trace can then be replayed headlessly
+     * through TraceReplay. The status label shows where the trace is written to.
+     */
+    private void toggleRecording(Button button) {
+        try {
+            if (this.recorder == null) {
+                this.recorder = new TraceRecorder(Paths.get("sketchy-" + System.currentTimeMillis() + ".trace"));
+                button.setText("Stop Recording");
+                this.status.setText("Recording the input to " + this.recorder.getFile().toAbsolutePath());
+            } else {
+                this.recorder.close();
+                this.status.setText("Recorded " + this.recorder.getEvents() + " events to "
+                        + this.recorder.getFile().toAbsolutePath());
+                this.recorder = null;
+                button.setText("Record Input");
+            }
+        } catch (IOException e) {
+            this.status.setText("Couldn't record the input: " + e.getMessage());
+            this.recorder = null;
+            button.setText("Record Input");
+        }
+    }
+
+    private void record(int kind, MouseEvent e) {
+        if (this.recorder != null) {
+            try {
+                this.recorder.record(kind, e, this.option, this.picker.getValue());
+            } catch (IOException ex) {
+                this.status.setText("Couldn't record the input: " + ex.getMessage());
+                this.recorder = null;
+            }
+        }
+    }
+
+    /** Helper method reading the number of copies typed in next to the "Duplicate" button (one if it isn't a number). */
+    private int parseCopies(String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
 }
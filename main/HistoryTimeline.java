@@ -0,0 +1,101 @@
+package sketchy.main;
+
+import javafx.event.ActionEvent;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.Slider;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import sketchy.history.History;
+import sketchy.history.HistoryNode;
+import java.util.ArrayList;
+
+/** Window showing the history of the document as a timeline - a slider going through all steps of the current
+ * line of history (from the initial state to the last step redo leads to), which jumps straight to the chosen
+ * step as it's dragged, and a list of all branches starting at the current step, so that commands undone before
+ * others were performed can be brought back. The timeline is refreshed by Sketchy whenever the history changes.
+ */
+public class HistoryTimeline {
+    private Stage stage;
+    private Sketchy sketchy;
+    private History history;
+    private Slider slider;
+    private Label stepLabel;
+    private ComboBox<String> branches;
+    private ArrayList<HistoryNode> line;
+    private boolean refreshing;
+
+    public HistoryTimeline(Sketchy sketchy, History history) {
+        this.sketchy = sketchy;
+        this.history = history;
+        this.line = new ArrayList<>();
+        this.slider = new Slider(0, 0, 0);
+        this.slider.setBlockIncrement(1);
+        this.slider.setSnapToTicks(true);
+        this.slider.valueProperty().addListener((observable, oldValue, newValue) -> this.onSliderMoved(newValue.doubleValue()));
+        this.stepLabel = new Label();
+        this.branches = new ComboBox<>();
+        this.branches.setOnAction((ActionEvent e) -> this.onBranchChosen());
+        HBox branchRow = new HBox(10, new Label("Branches:"), this.branches);
+        VBox root = new VBox(10, this.slider, this.stepLabel, branchRow);
+        root.setPadding(new Insets(10));
+        this.stage = new Stage();
+        this.stage.setTitle("History");
+        this.stage.setScene(new Scene(root, Constants.SCENE_WIDTH, 120));
+    }
+
+    public void show() {
+        this.refresh();
+        this.stage.show();
+    }
+
+    public boolean isShowing() {
+        return this.stage.isShowing();
+    }
+
+    /** Method bringing the timeline up to date with the history (called whenever a step is made or undone). */
+    public void refresh() {
+        this.refreshing = true;
+        this.line = this.history.line();
+        HistoryNode current = this.history.getCurrent();
+        this.slider.setMax(Math.max(0, this.line.size() - 1));
+        this.slider.setMajorTickUnit(Math.max(1, this.line.size() / 10));
+        // the first steps may have been trimmed, so steps are counted from the history's first one
+        int step = current.getDepth() - this.history.getRoot().getDepth();
+        this.slider.setValue(step);
+        this.stepLabel.setText("Step " + step + " of " + (this.line.size() - 1) + " - " + current.getLabel());
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<HistoryNode> children = current.getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            names.add((i + 1) + ": " + children.get(i).getLabel() + (children.get(i) == current.getRedoChild() ? " (redo)" : ""));
+        }
+        this.branches.getItems().setAll(names);
+        this.refreshing = false;
+    }
+
+    /** Helper method jumping to the step the slider points at (steps are whole numbers, so the value is rounded). */
+    private void onSliderMoved(double value) {
+        if (this.refreshing) {
+            return;
+        }
+        int step = (int) Math.round(value);
+        if (step >= 0 && step < this.line.size() && this.line.get(step) != this.history.getCurrent()) {
+            this.sketchy.seek(this.line.get(step));
+        }
+    }
+
+    /** Helper method switching to another branch - the first step of the chosen branch becomes the current one. */
+    private void onBranchChosen() {
+        if (this.refreshing || this.branches.getValue() == null) {
+            return;
+        }
+        int index = this.branches.getItems().indexOf(this.branches.getValue());
+        ArrayList<HistoryNode> children = this.history.getCurrent().getChildren();
+        if (index >= 0 && index < children.size()) {
+            this.sketchy.seek(children.get(index));
+        }
+    }
+}
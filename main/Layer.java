@@ -0,0 +1,70 @@
+package sketchy.main;
+
+import javafx.scene.CacheHint;
+import javafx.scene.layout.Pane;
+
+/** A layer of the drawing - every layer has a pane of its own (all of them stacked on the sketchPane, in the order
+ * of the layers), and every element is drawn on the pane of the layer it's been created on. A layer can be hidden
+ * (its pane isn't shown, and its elements can't be selected, erased or filled over) or locked (it's shown, but
+ * its elements can't be changed), and only the active layer - the one new elements are added to - is rendered
+ * live. Every other layer is cached as a bitmap, so that no matter how many elements they have, they cost a single
+ * image while the active one is being edited (the cache is only rendered again when something changes on them,
+ * e.g. upon an undo). Nothing ever scales or rotates a layer, so the cache is kept at full quality.
+ * Layers are a part of the view rather than of the document - the document only sees the resulting order of
+ * the elements (all elements of a layer lie right above the ones of the layer below it).
+ */
+public class Layer {
+    private String name;
+    private Pane pane;
+    private boolean visible;
+    private boolean locked;
+
+    public Layer(String name) {
+        this.name = name;
+        this.pane = new Pane();
+        this.visible = true;
+        this.setActive(false);
+    }
+
+    /** Method switching the pane between being rendered live (if the layer is active) and being cached. */
+    public void setActive(boolean active) {
+        this.pane.setCache(!active);
+        this.pane.setCacheHint(active ? CacheHint.DEFAULT : CacheHint.QUALITY);
+    }
+
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+        this.pane.setVisible(visible);
+    }
+
+    public boolean isVisible() {
+        return this.visible;
+    }
+
+    public void setLocked(boolean locked) {
+        this.locked = locked;
+    }
+
+    public boolean isLocked() {
+        return this.locked;
+    }
+
+    /** Accessor method checking whether the layer's elements can be changed (it's shown and not locked). */
+    public boolean isEditable() {
+        return this.visible && !this.locked;
+    }
+
+    public Pane getPane() {
+        return this.pane;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /** The layer is shown by its name in the layer chooser. */
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
@@ -0,0 +1,93 @@
+package sketchy.main;
+
+import javafx.scene.Node;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Ellipse;
+import javafx.scene.shape.Polyline;
+import javafx.scene.shape.Rectangle;
+import sketchy.shapes.ElementType;
+import sketchy.shapes.ShapeRecord;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/** Pool of the JavaFX nodes showing the elements of an ArenaView - a node is taken from the pool whenever an element
+ * comes into view, given the element's geometry and color, and put back once the element leaves the view, so that
+ * panning around a huge document reuses the same few thousand nodes instead of creating (and collecting) new ones.
+ * Rectangles and ellipses are shown just like in the editor, and lines as polylines at their offset - fills and
+ * instances are shown as translucent boxes of their color (their masks and symbols are only drawn by the editor).
+ */
+public class NodePool {
+    private static final double BOX_OPACITY = 0.4;
+
+    private ArrayDeque<Rectangle> rectangles;
+    private ArrayDeque<Ellipse> ellipses;
+    private ArrayDeque<Polyline> lines;
+    private int created;
+
+    public NodePool() {
+        this.rectangles = new ArrayDeque<>();
+        this.ellipses = new ArrayDeque<>();
+        this.lines = new ArrayDeque<>();
+    }
+
+    /** Method returning a node showing a record - a pooled one if there's one of its kind, and a new one otherwise. */
+    public Node acquire(ShapeRecord record) {
+        Color color = new Color(record.getRed(), record.getGreen(), record.getBlue(), 1);
+        if (record.getType() == ElementType.CURVED_LINE) {
+            Polyline line = this.lines.isEmpty() ? this.create(new Polyline()) : this.lines.pop();
+            double[] points = record.getPoints();
+            ArrayList<Double> boxed = new ArrayList<>(points.length);
+            for (double point : points) {
+                boxed.add(point);
+            }
+            line.getPoints().setAll(boxed);
+            line.setTranslateX(record.getCenterX());
+            line.setTranslateY(record.getCenterY());
+            line.setStroke(color);
+            return line;
+        }
+        if (record.getType() == ElementType.ELLIPSE) {
+            Ellipse ellipse = this.ellipses.isEmpty() ? this.create(new Ellipse()) : this.ellipses.pop();
+            ellipse.setCenterX(record.getCenterX());
+            ellipse.setCenterY(record.getCenterY());
+            ellipse.setRadiusX(record.getWidth());
+            ellipse.setRadiusY(record.getHeight());
+            ellipse.setRotate(record.getAngle());
+            ellipse.setFill(color);
+            return ellipse;
+        }
+        Rectangle rectangle = this.rectangles.isEmpty() ? this.create(new Rectangle()) : this.rectangles.pop();
+        rectangle.setX(record.getCenterX() - record.getWidth());
+        rectangle.setY(record.getCenterY() - record.getHeight());
+        rectangle.setWidth(2 * record.getWidth());
+        rectangle.setHeight(2 * record.getHeight());
+        rectangle.setRotate(record.getAngle());
+        rectangle.setFill(color);
+        rectangle.setOpacity((record.getType() == ElementType.RECTANGLE) ? 1 : BOX_OPACITY);
+        return rectangle;
+    }
+
+    /** Method putting a node that no longer shows anything back into the pool (it's up to the caller to take it off
+     * its pane).
+     */
+    public void release(Node node) {
+        if (node instanceof Polyline) {
+            this.lines.push((Polyline) node);
+        } else if (node instanceof Ellipse) {
+            this.ellipses.push((Ellipse) node);
+        } else {
+            this.rectangles.push((Rectangle) node);
+        }
+    }
+
+    /** Accessor method returning how many nodes the pool has ever created. */
+    public int getCreated() {
+        return this.created;
+    }
+
+    private <T extends Node> T create(T node) {
+        this.created++;
+        node.setMouseTransparent(true);
+        return node;
+    }
+}
@@ -16,4 +16,6 @@ public enum Options {
     DRAW_WITH_PEN,
     DRAW_RECTANGLE,
     DRAW_ELLIPSE,
+    ERASE,
+    FILL,
 }
@@ -35,6 +35,7 @@ public class PaneOrganizer {
 
         Sketchy sketchy = new Sketchy(sketchPane, stage);
         this.control = new Control(this, sketchy, sketchPane);
+        sketchy.getMemory().register();
 
         this.root.setCenter(sketchPane);
         this.createLeftPane();
@@ -56,7 +57,7 @@ public class PaneOrganizer {
         leftPane.setPadding(new Insets(0,30,0,30));
 
         leftPane.getChildren().addAll(this.createDrawingOptionsPane(), this.createColorPane(),
-                this.createShapeActionsPane(), this.createOperationsPane());
+                this.createShapeActionsPane(), this.createLayersPane(), this.createOperationsPane(), this.createMemoryPane());
 
         leftPane.setFocusTraversable(true);
         this.root.setLeft(leftPane);
@@ -105,6 +106,19 @@ public class PaneOrganizer {
         return shapeActionsPane;
     }
 
+    /**
+     * Helper method below creates a pane containing the layers' controls (choosing the active layer, hiding,
+     * locking, adding and reordering layers) - as previously, the control class instantiates them.
+     */
+    public VBox createLayersPane() {
+        VBox layersPane = new VBox();
+        this.createLabel(layersPane, "Layers");
+        layersPane.setAlignment(Pos.CENTER);
+        this.control.createLayersPane(layersPane);
+
+        return layersPane;
+    }
+
     /**
      * Helper method below creates a pane containing buttons responsible for redoing, undoing the recently performed
      * action(s), or saving and loading. It calls an appropriate method of the control class to actually
@@ -119,6 +133,19 @@ public class PaneOrganizer {
         return operationsPane;
     }
 
+    /**
+     * Helper method below creates a pane showing how much memory the drawing and its history take (along with
+     * controls trimming the history) - the control class instantiates them.
+     */
+    public VBox createMemoryPane() {
+        VBox memoryPane = new VBox();
+        this.createLabel(memoryPane, "Memory");
+        memoryPane.setAlignment(Pos.CENTER);
+        this.control.createMemoryPane(memoryPane);
+
+        return memoryPane;
+    }
+
     /**
      * Method below creates a label of a specified string and adds
      * it to a pane, values both of which are passed in as parameters.
@@ -0,0 +1,142 @@
+package sketchy.main;
+
+/** Short-horizon predictor of where the pen is going, used to draw a provisional tail ahead of the last point of a
+ * line being drawn - a point is only added to the line once its drag event has been handled, so the line always
+ * trails the pen by at least the time from the event to the next pulse (and the pulse to the screen), and the tail
+ * covers that distance by guessing it.
+ * Each axis is tracked by a Kalman filter with a constant-velocity model (the pen's position and velocity, with the
+ * velocity allowed to drift a little between samples), which smooths out the jitter of the mouse's positions, so
+ * the guessed velocity doesn't jump around from one event to the next. The prediction extrapolates the filtered
+ * velocity from the last real sample, a frame or so into the future - it's only made once a few samples have come
+ * in, is cut short at a maximum distance, and stops altogether once no sample has come in for a while (the pen has
+ * most likely stopped), so a wrong guess is small and lasts a frame at most, until the next real sample replaces it.
+ */
+public class PenPredictor {
+    private static final int MIN_SAMPLES = 3;
+    private static final double MAX_GAP = 50;
+    private static final double MAX_LEAD = 40;
+    private static final double MAX_DISTANCE = 30;
+    private static final double ACCELERATION_NOISE = 0.002;
+    private static final double MEASUREMENT_NOISE = 1;
+
+    private Axis x;
+    private Axis y;
+    private int samples;
+    private double lastX;
+    private double lastY;
+    private long lastTime;
+
+    public PenPredictor() {
+        this.x = new Axis();
+        this.y = new Axis();
+    }
+
+    /** Method starting a new stroke at a point (the pen going down), at a given time (from System.nanoTime()). */
+    public void start(double x, double y, long time) {
+        this.x.reset(x);
+        this.y.reset(y);
+        this.samples = 1;
+        this.lastX = x;
+        this.lastY = y;
+        this.lastTime = time;
+    }
+
+    /** Method feeding the filters with a real sample of the pen's position - a sample coming in after a long gap
+     * restarts the stroke's velocity from scratch, as the pen has most likely stopped in between.
+     */
+    public void add(double x, double y, long time) {
+        double dt = (time - this.lastTime) / 1e6;
+        if (this.samples == 0 || dt > MAX_GAP) {
+            this.start(x, y, time);
+            return;
+        }
+        if (dt <= 0) {
+            // events sharing a timestamp (e.g. coalesced ones) only move the last point
+            this.lastX = x;
+            this.lastY = y;
+            return;
+        }
+        this.x.update(x, dt);
+        this.y.update(y, dt);
+        this.samples++;
+        this.lastX = x;
+        this.lastY = y;
+        this.lastTime = time;
+    }
+
+    /** Method returning where the pen is predicted to be a given number of milliseconds after a given time (both of
+     * them after the last sample), as {x, y} - or null if there's nothing to predict (too few samples, the pen has
+     * stopped, or it's barely moving).
+     */
+    public double[] predict(long time, double horizon) {
+        double lead = (time - this.lastTime) / 1e6 + horizon;
+        if (this.samples < MIN_SAMPLES || lead <= 0 || lead - horizon > MAX_GAP) {
+            return null;
+        }
+        lead = Math.min(lead, MAX_LEAD);
+        double dx = this.x.getVelocity() * lead;
+        double dy = this.y.getVelocity() * lead;
+        double distance = Math.hypot(dx, dy);
+        if (distance < 1) {
+            return null;
+        }
+        double scale = Math.min(1, MAX_DISTANCE / distance);
+        return new double[] {this.lastX + dx * scale, this.lastY + dy * scale};
+    }
+
+    public double getLastX() {
+        return this.lastX;
+    }
+
+    public double getLastY() {
+        return this.lastY;
+    }
+
+    /** Method forgetting the stroke (the pen going up) - nothing is predicted until the next one starts. */
+    public void stop() {
+        this.samples = 0;
+    }
+
+    /** Kalman filter of one axis - its state is the position and velocity (in pixels per millisecond), along with
+     * their covariance (p00, p01 = p10, p11).
+     */
+    private static class Axis {
+        private double position;
+        private double velocity;
+        private double p00;
+        private double p01;
+        private double p11;
+
+        private void reset(double position) {
+            this.position = position;
+            this.velocity = 0;
+            this.p00 = MEASUREMENT_NOISE;
+            this.p01 = 0;
+            this.p11 = 1;
+        }
+
+        /** Method moving the state forward by dt milliseconds, and correcting it with a measured position. */
+        private void update(double measured, double dt) {
+            // prediction - the position moves by the velocity, and the velocity may have drifted (white acceleration)
+            this.position += this.velocity * dt;
+            double q = ACCELERATION_NOISE;
+            double p00 = this.p00 + dt * (2 * this.p01 + dt * this.p11) + q * dt * dt * dt * dt / 4;
+            double p01 = this.p01 + dt * this.p11 + q * dt * dt * dt / 2;
+            double p11 = this.p11 + q * dt * dt;
+            // correction with the measured position
+            double innovation = measured - this.position;
+            double s = p00 + MEASUREMENT_NOISE;
+            double k0 = p00 / s;
+            double k1 = p01 / s;
+            this.position += k0 * innovation;
+            this.velocity += k1 * innovation;
+            this.p00 = (1 - k0) * p00;
+            this.p01 = (1 - k0) * p01;
+            this.p11 = p11 - k1 * p01;
+        }
+
+        private double getVelocity() {
+            return this.velocity;
+        }
+    }
+}
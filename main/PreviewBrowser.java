@@ -0,0 +1,88 @@
+package sketchy.main;
+
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.FlowPane;
+import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.Stage;
+import sketchy.io.SketchHeader;
+import java.io.File;
+import java.io.IOException;
+
+/** Window showing previews of all sketches in a folder - every file gets its thumbnail and a short summary
+ * (the numbers of rectangles, ellipses and lines), both read from the file's header, so that a preview costs
+ * reading a few kilobytes rather than loading the whole sketch. Headers are read on a background thread, and
+ * every preview is added to the window as soon as it's ready. Clicking on a preview loads that sketch.
+ */
+public class PreviewBrowser {
+    private Stage stage;
+    private Sketchy sketchy;
+    private FlowPane previews;
+
+    public PreviewBrowser(Sketchy sketchy) {
+        this.sketchy = sketchy;
+        this.previews = new FlowPane(10, 10);
+        this.previews.setPadding(new Insets(10));
+        this.previews.setPrefWrapLength(4 * (SketchHeader.THUMBNAIL_WIDTH + 10));
+        ScrollPane scrollPane = new ScrollPane(this.previews);
+        scrollPane.setFitToWidth(true);
+        this.stage = new Stage();
+        this.stage.setScene(new Scene(scrollPane, 4 * (SketchHeader.THUMBNAIL_WIDTH + 10) + 30, Constants.SCENE_HEIGHT));
+    }
+
+    /** Method asking the user for a folder, and showing the previews of all files in it. */
+    public void show(Stage owner) {
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Choose a folder with sketches");
+        File folder = chooser.showDialog(owner);
+        if (folder == null) {
+            return;
+        }
+        File[] files = folder.listFiles(File::isFile);
+        if (files == null) {
+            return;
+        }
+        this.stage.setTitle(folder.getName());
+        this.stage.show();
+        Thread reader = new Thread(() -> {
+            for (File file : files) {
+                try {
+                    SketchHeader header = SketchHeader.read(file.getPath());
+                    Platform.runLater(() -> this.addPreview(file, header));
+                } catch (IOException e) {
+                    // files that aren't sketches simply aren't previewed
+                }
+            }
+        }, "sketchy-previews");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /** Helper method adding a single preview to the window (called on the JavaFX thread). Files saved before
+     * headers were introduced are still listed, just without a thumbnail.
+     */
+    private void addPreview(File file, SketchHeader header) {
+        VBox preview = new VBox(4);
+        if (header != null) {
+            WritableImage image = new WritableImage(header.getThumbnailWidth(), header.getThumbnailHeight());
+            image.getPixelWriter().setPixels(0, 0, header.getThumbnailWidth(), header.getThumbnailHeight(),
+                    PixelFormat.getIntArgbInstance(), header.getThumbnail(), 0, header.getThumbnailWidth());
+            preview.getChildren().add(new ImageView(image));
+            preview.getChildren().add(new Label(header.getRectangles() + " rectangles, " + header.getEllipses()
+                    + " ellipses, " + header.getLines() + " lines"));
+        } else {
+            preview.getChildren().add(new Label("(no preview)"));
+        }
+        preview.getChildren().add(new Label(file.getName()));
+        preview.setOnMouseClicked((MouseEvent e) -> this.sketchy.loadFile(file.getPath()));
+        this.previews.getChildren().add(preview);
+    }
+}
@@ -0,0 +1,291 @@
+package sketchy.main;
+
+import sketchy.commands.Command;
+import sketchy.document.AttributeIndex;
+import sketchy.document.DocumentModel;
+import sketchy.document.DocumentSnapshot;
+import sketchy.document.EdgeIndex;
+import sketchy.history.History;
+import sketchy.history.HistoryNode;
+import sketchy.history.HistoryStore;
+import sketchy.io.ParallelSketchLoader;
+import sketchy.io.SketchFileWriter;
+import sketchy.io.SketchGenerator;
+import sketchy.memory.MemoryAccounting;
+import sketchy.raster.TileRasterizer;
+import sketchy.shapes.RecordBounds;
+import sketchy.shapes.Savable;
+import sketchy.shapes.ShapeRecord;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/** End-to-end scalability benchmark, run from the command line (no JavaFX needed):
+ *   java sketchy.main.ScalabilityBenchmark [maxElements] [out.csv]
+ * For documents of 1k, 10k, 100k... up to maxElements elements (10M by default), made by the SketchGenerator
+ * (40% rectangles, 20% ellipses and 40% strokes), it measures everything a session goes through, the way Sketchy
+ * does it, just without the scene graph:
+ *  - save and load - writing the document to a sketch file, and reading it back with the parallel loader;
+ *  - open - building the document model from the records, with every listener Sketchy attaches (the history,
+ *    the edge and attribute indexes and the memory accounting);
+ *  - select - finding the topmost element under a point (scanning the elements top down, just like Sketchy's
+ *    select does), and picking every element of its color through the attribute index;
+ *  - drag - one drag of an element: a frame's worth of snapping lookups for each of DRAG_FRAMES frames, and the
+ *    new record committed as a step of the history;
+ *  - undo storm - UNDO_STORM_STEPS single-element steps, all undone one by one and then redone one by one;
+ *  - render pulse - drawing every element into a screen-sized buffer with the software rasterizer (a stand-in
+ *    for the cost of a frame, which grows with the number of elements just like the scene graph's does).
+ * Times are medians of a few runs (in milliseconds), and the results go into a CSV file with one row per size, so
+ * that the scaling curves can be plotted. The console also gets the growth exponent of every measurement between
+ * each size and the previous one - 1 means linear, anything well above it is super-linear. A size that runs out
+ * of memory gets a row saying so, and ends the benchmark (that's where the app breaks).
+ */
+public class ScalabilityBenchmark {
+    private static final int RUNS = 5;
+    private static final int SELECT_POINTS = 20;
+    private static final int DRAG_FRAMES = 60;
+    private static final int UNDO_STORM_STEPS = 1000;
+    private static final int SCREEN_WIDTH = 1280;
+    private static final int SCREEN_HEIGHT = 800;
+    private static final String[] COLUMNS = {"elements", "generate_ms", "save_ms", "file_mb", "load_ms", "open_ms",
+            "select_ms", "select_similar_ms", "drag_ms", "undo_storm_ms", "render_pulse_ms", "heap_mb"};
+
+    public static void main(String[] args) throws IOException {
+        long maxElements = (args.length > 0) ? Long.parseLong(args[0]) : 10000000;
+        String output = (args.length > 1) ? args[1] : "scalability.csv";
+        ArrayList<double[]> rows = new ArrayList<>();
+        try (PrintWriter csv = new PrintWriter(new FileWriter(output, StandardCharsets.UTF_8))) {
+            csv.println(String.join(",", COLUMNS));
+            for (int elements = 1000; elements <= maxElements; elements *= 10) {
+                double[] row;
+                try {
+                    row = measure(elements);
+                } catch (OutOfMemoryError e) {
+                    csv.println(elements + ",OOM");
+                    System.out.println(elements + " elements: out of memory");
+                    break;
+                }
+                rows.add(row);
+                StringBuilder line = new StringBuilder();
+                for (int i = 0; i < row.length; i++) {
+                    line.append((i == 0) ? "" : ",").append((i == 0) ? Long.toString((long) row[i]) : String.format("%.3f", row[i]));
+                }
+                csv.println(line);
+                csv.flush();
+                System.out.println(describe(row, (rows.size() > 1) ? rows.get(rows.size() - 2) : null));
+                if (elements > Integer.MAX_VALUE / 10) {
+                    break;
+                }
+            }
+        }
+        System.out.println("Scaling curves written to " + output);
+    }
+
+    /** Helper method measuring every stage for a document of a given size - returns a row of the CSV. */
+    private static double[] measure(int elements) throws IOException {
+        double[] row = new double[COLUMNS.length];
+        row[0] = elements;
+        SketchGenerator generator = new SketchGenerator(elements * 2 / 5, elements / 5, elements - elements * 2 / 5 - elements / 5);
+        generator.setPoints(16, SketchGenerator.Distribution.EXPONENTIAL);
+        long start = System.nanoTime();
+        ArrayList<ShapeRecord> records = generator.generate();
+        row[1] = millis(start);
+
+        Path file = Files.createTempFile("sketchy-bench", ".sketch");
+        try {
+            row[2] = median(() -> {
+                try (SketchFileWriter writer = new SketchFileWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+                    for (ShapeRecord record : records) {
+                        writer.write(record);
+                    }
+                }
+            }, runsFor(elements));
+            row[3] = Files.size(file) / (1024.0 * 1024);
+            ParallelSketchLoader loader = new ParallelSketchLoader(Runtime.getRuntime().availableProcessors());
+            row[4] = median(() -> loader.load(file), runsFor(elements));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        // the model Sketchy builds, with all of its listeners
+        start = System.nanoTime();
+        DocumentModel document = new DocumentModel();
+        History history = new History(document, new HistoryStore(Constants.HISTORY_BUFFER_SIZE));
+        EdgeIndex edges = new EdgeIndex();
+        AttributeIndex attributes = new AttributeIndex();
+        MemoryAccounting memory = new MemoryAccounting(history, Constants.MEMORY_SOFT_LIMIT, Constants.HEAP_LIMIT_RATIO);
+        document.addListener(edges);
+        document.addListener(attributes);
+        document.addListener(memory);
+        history.suspend();
+        for (ShapeRecord record : records) {
+            document.apply(record);
+        }
+        history.resume();
+        history.reset();
+        row[5] = millis(start);
+
+        double side = generator.getSide();
+        Random random = new Random(1);
+        ShapeRecord[] hits = new ShapeRecord[1];
+        row[6] = median(() -> {
+            for (int i = 0; i < SELECT_POINTS; i++) {
+                hits[0] = topmostAt(document.snapshot(), random.nextDouble() * side, random.nextDouble() * side);
+            }
+        }, runsFor(elements)) / SELECT_POINTS;
+        ShapeRecord target = records.get(records.size() / 2);
+        row[7] = median(() -> attributes.withColorOf(target), RUNS);
+
+        row[8] = median(() -> drag(document, history, edges, target.getId(), random), RUNS);
+        row[9] = median(() -> undoStorm(document, history, random, side), 1);
+
+        int[] pixels = new int[SCREEN_WIDTH * SCREEN_HEIGHT];
+        TileRasterizer rasterizer = new TileRasterizer(1);
+        row[10] = median(() -> {
+            Arrays.fill(pixels, 0);
+            for (ShapeRecord record : document.snapshot()) {
+                rasterizer.draw(record, pixels, SCREEN_WIDTH, 0, 0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
+            }
+        }, runsFor(elements));
+
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        row[11] = (runtime.totalMemory() - runtime.freeMemory()) / (1024.0 * 1024);
+        // keeps everything measured alive until the heap has been measured
+        if (hits[0] == document.get(-1) && records.isEmpty()) {
+            System.out.println(history.getStepCount());
+        }
+        return row;
+    }
+
+    /** Helper method finding the topmost element whose bounding box contains a point, going through all of them. */
+    private static ShapeRecord topmostAt(DocumentSnapshot snapshot, double x, double y) {
+        ShapeRecord hit = null;
+        for (ShapeRecord record : snapshot) {
+            double[] bounds = RecordBounds.of(record);
+            if (x >= bounds[0] && x <= bounds[2] && y >= bounds[1] && y <= bounds[3]) {
+                hit = record;
+            }
+        }
+        return hit;
+    }
+
+    /** Helper method dragging an element - its own edges are excluded from snapping, every frame snaps both of its
+     * edges and its center on both axes, and the final record is committed as a step (and undone right away, so
+     * that every run drags the same document).
+     */
+    private static void drag(DocumentModel document, History history, EdgeIndex edges, long id, Random random) {
+        ShapeRecord record = document.get(id);
+        ArrayList<Long> dragged = new ArrayList<>();
+        dragged.add(id);
+        edges.exclude(dragged);
+        double dx = 0;
+        double dy = 0;
+        for (int frame = 0; frame < DRAG_FRAMES; frame++) {
+            dx += random.nextDouble() * 4 - 2;
+            dy += random.nextDouble() * 4 - 2;
+            double[] bounds = RecordBounds.of(record);
+            for (int edge = 0; edge < 3; edge++) {
+                edges.nearestX(bounds[0] + dx + edge * (bounds[2] - bounds[0]) / 2, Constants.SNAP_DISTANCE);
+                edges.nearestY(bounds[1] + dy + edge * (bounds[3] - bounds[1]) / 2, Constants.SNAP_DISTANCE);
+            }
+        }
+        edges.exclude(new ArrayList<>());
+        HistoryNode before = history.getCurrent();
+        history.push(new Step());
+        document.apply(new ShapeRecord(id, record.getType(), record.getCenterX() + dx, record.getCenterY() + dy,
+                record.getWidth(), record.getHeight(), record.getAngle(), record.getRed(), record.getGreen(),
+                record.getBlue(), record.getPoints(), record.getZ()));
+        seek(document, history, before);
+    }
+
+    /** Helper method making UNDO_STORM_STEPS steps (each moving a random element), then undoing all of them one by
+     * one, and redoing all of them one by one - the way Sketchy undoes and redoes, by seeking the history.
+     */
+    private static void undoStorm(DocumentModel document, History history, Random random, double side) {
+        DocumentSnapshot snapshot = document.snapshot();
+        ShapeRecord[] targets = new ShapeRecord[Math.min(UNDO_STORM_STEPS, snapshot.size())];
+        int count = 0;
+        for (ShapeRecord record : snapshot) {
+            if (count == targets.length) {
+                break;
+            }
+            targets[count++] = record;
+        }
+        HistoryNode first = history.getCurrent();
+        for (int step = 0; step < UNDO_STORM_STEPS; step++) {
+            ShapeRecord record = document.get(targets[step % targets.length].getId());
+            history.push(new Step());
+            document.apply(new ShapeRecord(record.getId(), record.getType(), record.getCenterX() + 1, record.getCenterY(),
+                    record.getWidth(), record.getHeight(), record.getAngle(), record.getRed(), record.getGreen(),
+                    record.getBlue(), record.getPoints(), record.getZ()));
+        }
+        while (history.getCurrent() != first) {
+            seek(document, history, history.getCurrent().getParent());
+        }
+        for (HistoryNode next = history.getCurrent().getRedoChild(); next != null; next = history.getCurrent().getRedoChild()) {
+            seek(document, history, next);
+        }
+        seek(document, history, first);
+    }
+
+    /** Helper method seeking the history, and bringing the document to the step's state (as Sketchy's seek does). */
+    private static void seek(DocumentModel document, History history, HistoryNode target) {
+        history.suspend();
+        DocumentSnapshot state = history.seek(target);
+        document.restore(state);
+        history.resume();
+    }
+
+    /** Helper method returning the median time of a few runs of a task (fewer for the largest documents). */
+    private static double median(Task task, int runs) throws IOException {
+        double[] times = new double[runs];
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            task.run();
+            times[run] = millis(start);
+        }
+        Arrays.sort(times);
+        return times[runs / 2];
+    }
+
+    private static int runsFor(int elements) {
+        return (elements >= 1000000) ? 1 : RUNS;
+    }
+
+    private static double millis(long start) {
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    /** Helper method describing a row, along with the growth exponent of every measurement since the previous row. */
+    private static String describe(double[] row, double[] previous) {
+        StringBuilder description = new StringBuilder((long) row[0] + " elements:");
+        for (int i = 1; i < row.length; i++) {
+            description.append(String.format(" %s=%.2f", COLUMNS[i], row[i]));
+            if (previous != null && previous[i] > 0 && row[i] > 0) {
+                double exponent = Math.log(row[i] / previous[i]) / Math.log(row[0] / previous[0]);
+                description.append(String.format(" (n^%.2f%s)", exponent, (exponent > 1.2) ? "!" : ""));
+            }
+        }
+        return description.toString();
+    }
+
+    /** Interface of the measured tasks (they may do I/O). */
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    /** Command standing for a step of the benchmark's history - the history only needs something to label it by. */
+    private static class Step implements Command {
+        @Override
+        public Savable getElement() {
+            return null;
+        }
+    }
+}
@@ -1,14 +1,57 @@
 package sketchy.main;
 import cs15.fnl.sketchySupport.CS15FileIO;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import javafx.scene.layout.Pane;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Stack;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import javafx.scene.Node;
 import javafx.scene.input.MouseEvent;
 import javafx.geometry.Point2D;
 import javafx.stage.Stage;
+import sketchy.collab.CollabSession;
 import sketchy.commands.*;
+import sketchy.document.AttributeIndex;
+import sketchy.document.BulkEdit;
+import sketchy.document.DocumentActor;
+import sketchy.document.DocumentDiff;
+import sketchy.document.DocumentEdit;
+import sketchy.document.DocumentModel;
+import sketchy.document.DocumentSnapshot;
+import sketchy.document.EdgeIndex;
+import sketchy.document.ZOrderTree;
+import sketchy.history.History;
+import sketchy.history.HistoryNode;
+import sketchy.history.HistoryStore;
+import sketchy.io.ParallelSketchLoader;
+import sketchy.io.SketchHeader;
+import sketchy.io.SvgExporter;
+import sketchy.io.SvgImporter;
+import sketchy.memory.MemoryAccounting;
+import sketchy.raster.FloodFill;
+import sketchy.raster.RasterExporter;
 import sketchy.shapes.*;
 import javafx.scene.paint.Color;
+import javafx.scene.shape.Line;
+import javax.xml.stream.XMLStreamException;
 import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
 import static java.lang.Math.*;
@@ -21,11 +64,30 @@ import static java.lang.Math.*;
  * In the constructor, instance variables are initialized (in particular mouse's location that's
  * updated continously, "starting point" necessary for handling the change in location
  * of shapes, as well as initial parameters of shapes before any action is performed on them, so
- * that any interaction with the canvas can be later undone - or redone - by the user),
+ * that it can be told whether an interaction with the canvas has actually changed anything),
  * and association is set up with the main sketchPane - all methods are explained in-detail below :)
+ * Next to the mutable arraylists of shapes and elements, Sketchy keeps a persistent document model of
+ * immutable records, that's synced whenever a command is performed (and restored from the history whenever the
+ * user undoes or redoes one) - this way, a
+ * consistent snapshot of the whole document can be taken in O(1) (e.g. for saving).
+ * Sketchy also keeps track of all elements it has ever created by their stable IDs, so that changes
+ * made by other editors in collaboration mode can be applied to the right elements.
+ * Commands are kept in a branching history (rather than in undo and redo stacks), which records what every
+ * command changed in the document, so that the user can also jump straight to any step of it.
+ * Elements can be grouped - groups live next to the document (which only knows the records of their members), and
+ * whenever the structure of the scene changes, Sketchy lays it out again from the elements arraylist: elements
+ * that belong to a group end up in their group's node, and every group in the node of the group it's nested in.
+ * The drawing is split into layers (see Layer), the pane of each of them stacked on the sketchPane - the elements
+ * of a layer always lie right above the ones of the layer below it, both in the arraylists and in the document, so
+ * that the document's layering is exactly the one that's shown. New elements are added on top of the active layer.
+ * While shapes are moved or resized, they can snap to a grid, and to the edges and centers of all other elements
+ * (smart guides) - those are kept in sorted indexes that listen to the document (see EdgeIndex), so that finding
+ * the nearest one on every drag event doesn't depend on how many elements there are.
+ * The memory the document and its history keep alive is accounted for as they change (see MemoryAccounting) - once
+ * it goes over its soft limits, the user is warned, and the history can be trimmed before the heap runs out.
  */
 
-public class Sketchy {
+public class Sketchy implements CollabSession.RemoteEditTarget {
     private Stage stage;
     private Pane sketchPane;
     private Point2D mouseLocation;
@@ -40,16 +102,112 @@ public class Sketchy {
     private double firstAngle;
     private double firstWidth;
     private double firstHeight;
-    private Stack<Command> undoStack;
-    private Stack<Command> redoStack;
+    private DocumentModel document;
+    private History history;
+    private HistoryTimeline timeline;
+    private ArrayList<ElementGroup> groups;
+    private HashMap<HistoryNode, ElementGroup> groupedAt;
+    private HashMap<HistoryNode, ElementGroup> ungroupedAt;
+    private HashMap<Long, ElementGroup> groupOf;
+    private ArrayList<Savable> picked;
+    private ArrayList<ShapeRecord> clipboard;
+    private int pasteCount;
+    private Symbol symbol;
+    private Point2D symbolOrigin;
+    private int stampCount;
+    private LinkedHashSet<Savable> erased;
+    private HashSet<Savable> erasedPieces;
+    private FloodFill floodFill;
+    private ExecutorService filler;
+    private ArrayList<Layer> layers;
+    private Layer activeLayer;
+    private HashMap<Long, Layer> layerOf;
+    private HashMap<HistoryNode, Layer[]> layersSwappedAt;
+    private Runnable onLayersChanged;
+    private boolean ignoringMouse;
+    private EdgeIndex edges;
+    private AttributeIndex attributes;
+    private boolean snapToGrid;
+    private boolean smartGuides;
+    private double[] dragBounds;
+    private Line guideX;
+    private Line guideY;
+    private MemoryAccounting memory;
+    private Runnable onMemoryChanged;
+    private Consumer<String> onStatus;
+    private HashMap<Long, Savable> elementsById;
+    private CollabSession collabSession;
+    private DocumentActor actor;
+    private AnimationTimer pulse;
+    private long appliedEdits;
+    private BulkEditDialog bulkEditDialog;
+    private PenPredictor penPredictor;
+    private Line penTail;
 
     public Sketchy(Pane pane, Stage stage) {
         this.stage = stage;
         this.sketchPane = pane;
         this.shapes = new ArrayList<>();
         this.elements = new ArrayList<>();
-        this.undoStack = new Stack<>();
-        this.redoStack = new Stack<>();
+        this.document = new DocumentModel();
+        this.history = new History(this.document, new HistoryStore(Constants.HISTORY_BUFFER_SIZE));
+        this.memory = new MemoryAccounting(this.history, Constants.MEMORY_SOFT_LIMIT, Constants.HEAP_LIMIT_RATIO);
+        this.memory.setTrimmer(() -> Platform.runLater(this::trimHistory));
+        this.document.addListener(this.memory);
+        this.groups = new ArrayList<>();
+        this.groupedAt = new HashMap<>();
+        this.ungroupedAt = new HashMap<>();
+        this.groupOf = new HashMap<>();
+        this.picked = new ArrayList<>();
+        this.clipboard = new ArrayList<>();
+        this.erased = new LinkedHashSet<>();
+        this.erasedPieces = new HashSet<>();
+        this.floodFill = new FloodFill(Constants.FILL_SCALE, Constants.FILL_TOLERANCE);
+        this.filler = Executors.newSingleThreadExecutor((Runnable r) -> {
+            Thread thread = new Thread(r, "sketchy-fill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.layers = new ArrayList<>();
+        this.layerOf = new HashMap<>();
+        this.layersSwappedAt = new HashMap<>();
+        this.edges = new EdgeIndex();
+        this.document.addListener(this.edges);
+        this.attributes = new AttributeIndex();
+        this.document.addListener(this.attributes);
+        this.smartGuides = true;
+        this.guideX = this.createGuide();
+        this.guideY = this.createGuide();
+        this.penPredictor = new PenPredictor();
+        this.penTail = new Line();
+        this.penTail.setMouseTransparent(true);
+        this.penTail.setVisible(false);
+        this.resetLayers();
+        this.elementsById = new HashMap<>();
+        this.actor = new DocumentActor(this.document.snapshot());
+        this.pulse = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                Sketchy.this.applyEdits();
+                Sketchy.this.showPenTail(now);
+            }
+        };
+        this.pulse.start();
+    }
+
+    /** Method releasing everything Sketchy runs besides the JavaFX thread - the pulse, the document actor's thread,
+     * the fill thread, the collaboration session (if any) and the history's spill file - called once a Sketchy is
+     * no longer used (e.g. by TraceReplay, after every run), as none of them would ever stop on their own.
+     */
+    public void shutdown() {
+        this.pulse.stop();
+        this.actor.shutdown();
+        this.filler.shutdownNow();
+        if (this.collabSession != null) {
+            this.collabSession.stop();
+            this.collabSession = null;
+        }
+        this.history.getStore().close();
     }
 
     /** Method below utilizing a switch statement is called upon mouse press and calls appropriate
@@ -62,7 +220,7 @@ public class Sketchy {
      * and later calculates the startingPoint that's a base for shape translation (to which
      * the new location of a mouse is later compared). After that, it reassigns
      * all instance variables to the current values of the selected shape, so that they can
-     * be later passed in into the constructors of classes implementing the Command interface.
+     * be later compared to its final ones (to tell whether it's been moved, rotated or resized at all).
      * If the Draw with Pen option is selected, it creates a new instance of a
      * CurvedLine class, as well as an instance of the
      * DrawLine class implementing the command interface, after which it calls the
@@ -70,14 +228,20 @@ public class Sketchy {
      * If either Draw Ellipse or Draw Rectangle options are selected, it firstly deselects
      * any shapes that have been previously selected, creates an instance of a chosen shape
      * (size of which is initially set to 0,0), selects them (both logically and graphically)
-     * and performs an action by pushing it onto the undoStack and clearing the redoStack.
+     * and performs an action by recording it in the history.
      */
     public void onMousePressed(MouseEvent e, Options option, Color color) {
         Point2D point = new Point2D(e.getX(), e.getY());
         this.mouseLocation = new Point2D(e.getX(), e.getY());
-        if (option != null) {
+        // nothing can be drawn (or erased) on a hidden or locked layer, until the mouse is released
+        this.ignoringMouse = option != null && option != Options.SELECT_SHAPE && !this.activeLayer.isEditable();
+        if (option != null && !this.ignoringMouse) {
             switch (option) {
                 case SELECT_SHAPE:
+                    if (e.isAltDown()) {
+                        this.pick(point);
+                        break;
+                    }
                     this.select(point);
                     if (this.isSelected != null) {
                         this.translateStartingPoint = new Point2D(this.isSelected.getCenter().getX() - point.getX(),
@@ -86,29 +250,48 @@ public class Sketchy {
                         this.firstAngle = this.isSelected.getAngle();
                         this.firstWidth = this.isSelected.getWidth();
                         this.firstHeight = this.isSelected.getHeight();
+                        this.startSnapping(this.isSelected);
                     }
                     break;
                 case DRAW_WITH_PEN:
                     this.deselect();
-                    this.line = new CurvedLine(point, this.sketchPane, color, this.elements);
-                    Command drawLine = new DrawLine(this.line, this.sketchPane, this.elements);
+                    this.line = new CurvedLine(point, this.activeLayer.getPane(), color, this.shapes, this.elements);
+                    this.placeInLayer(this.line, this.activeLayer);
+                    this.penPredictor.start(point.getX(), point.getY(), System.nanoTime());
+                    this.penTail.setStroke(color);
+                    Command drawLine = new DrawLine(this.line);
                     this.performAction(drawLine);
                     break;
+                case ERASE:
+                    this.deselect();
+                    this.clearPicked();
+                    this.erased.clear();
+                    this.erasedPieces.clear();
+                    this.erase(point, point);
+                    break;
+                case FILL:
+                    this.deselect();
+                    this.fill(point, color);
+                    break;
                 case DRAW_RECTANGLE:
                     this.deselect();
-                    this.sketchyRectangle = new SketchyRectangle(this.sketchPane, point, color, this.shapes, this.elements);
+                    this.sketchyRectangle = new SketchyRectangle(this.activeLayer.getPane(), point, color, this.shapes, this.elements);
+                    this.placeInLayer(this.sketchyRectangle, this.activeLayer);
                     this.sketchyRectangle.select();
                     this.isSelected = this.sketchyRectangle;
-                    Command createRectangle = new CreateShape(this.sketchyRectangle, this.sketchPane, this.shapes, this.elements);
+                    Command createRectangle = new CreateShape(this.sketchyRectangle);
                     this.performAction(createRectangle);
+                    this.startSnapping(this.sketchyRectangle);
                     break;
                 case DRAW_ELLIPSE:
                     this.deselect();
-                    this.sketchyEllipse = new SketchyEllipse(this.sketchPane, point, color, this.shapes, this.elements);
+                    this.sketchyEllipse = new SketchyEllipse(this.activeLayer.getPane(), point, color, this.shapes, this.elements);
+                    this.placeInLayer(this.sketchyEllipse, this.activeLayer);
                     this.sketchyEllipse.select();
                     this.isSelected = this.sketchyEllipse;
-                    Command createEllipse = new CreateShape(this.sketchyEllipse, this.sketchPane, this.shapes, this.elements);
+                    Command createEllipse = new CreateShape(this.sketchyEllipse);
                     this.performAction(createEllipse);
+                    this.startSnapping(this.sketchyEllipse);
                     break;
             }
         }
@@ -129,7 +312,7 @@ public class Sketchy {
      */
     public void onMouseDragged(MouseEvent e, Options option) {
         Point2D point = new Point2D(e.getX(), e.getY());
-        if (option != null) {
+        if (option != null && !this.ignoringMouse) {
             switch (option) {
                 case SELECT_SHAPE:
                     if (this.isSelected != null) {
@@ -146,6 +329,11 @@ public class Sketchy {
                     break;
                 case DRAW_WITH_PEN:
                     this.line.addPoint(point);
+                    this.penPredictor.add(point.getX(), point.getY(), System.nanoTime());
+                    this.showPenTail(System.nanoTime());
+                    break;
+                case ERASE:
+                    this.erase(this.mouseLocation, point);
                     break;
                 case DRAW_RECTANGLE:
                     this.resize(this.sketchyRectangle, point);
@@ -162,31 +350,56 @@ public class Sketchy {
      * methods depending on whether the "select shape" radio button has been chosen
      * by the user. It checks whether the shape's new location, angle, or size are the same as the initial ones,
      * and if not, instantiates an instance of either the Translate, Rotate, or Resize classes
-     * respectively, passing in the initial values (from before the change - the instance variables are reassigned
-     * upon mouse press) as parameters (in case there was no change, no
-     * command should be pushed to the undo stack).
+     * respectively (the initial values are reassigned upon mouse press - in case there was no change, no
+     * command should be pushed to the history). Since lines and newly created shapes keep changing
+     * after their commands have been performed (upon mouse drag), their records in the document model
+     * are brought up to date once the mouse is released.
      */
     public void onMouseReleased(Options option) {
+        this.stopSnapping();
+        this.penPredictor.stop();
+        this.penTail.setVisible(false);
+        if (this.ignoringMouse) {
+            this.ignoringMouse = false;
+            return;
+        }
         if (option != null) {
-            if (option == Options.SELECT_SHAPE) {
+            if (option == Options.DRAW_WITH_PEN) {
+                // a line's points are only synced now
+                this.document.sync(this.line, this.elements);
+            } else if (option == Options.ERASE) {
+                if (!this.erased.isEmpty()) {
+                    this.performAction(new EraseStrokes(new ArrayList<>(this.erased)));
+                }
+            } else if (option == Options.DRAW_RECTANGLE) {
+                this.document.sync(this.sketchyRectangle, this.elements);
+            } else if (option == Options.DRAW_ELLIPSE) {
+                this.document.sync(this.sketchyEllipse, this.elements);
+            } else if (option == Options.SELECT_SHAPE) {
                     if (this.isSelected != null) {
-                        if (!(this.firstLocation.equals(this.isSelected.getCenter()))) {
-                            Command translate = new Translate(this.firstLocation, this.isSelected);
+                        boolean moved = !(this.firstLocation.equals(this.isSelected.getCenter()));
+                        boolean rotated = this.firstAngle != this.isSelected.getAngle();
+                        boolean resized = (this.firstHeight != this.isSelected.getHeight())
+                                && (this.firstWidth != this.isSelected.getWidth());
+                        // a group's (or a line's) transforms are all baked into its records by the first command performed
+                        // on it, so it gets a single step, no matter how many of the three it went through
+                        boolean single = this.isSelected instanceof ElementGroup || this.isSelected instanceof CurvedLine;
+                        if (moved) {
+                            Command translate = new Translate(this.isSelected);
                             this.performAction(translate);
                         }
-                        if (this.firstAngle != this.isSelected.getAngle()) {
-                            Command rotate = new Rotate(this.firstAngle, this.isSelected);
+                        if (rotated && !(single && moved)) {
+                            Command rotate = new Rotate(this.isSelected);
                             this.performAction(rotate);
                         }
-                        if ((this.firstHeight != this.isSelected.getHeight())
-                                && (this.firstWidth != this.isSelected.getWidth())) {
-                            Command resize = new Resize(this.firstWidth, this.firstHeight, this.firstLocation,
-                                    this.isSelected);
+                        if (resized && !(single && (moved || rotated))) {
+                            Command resize = new Resize(this.isSelected);
                             this.performAction(resize);
                         }
                     }
             }
         }
+        this.checkMemory();
     }
 
     /** Method below is responsible for selecting a shape that's being clicked on by the user depending
@@ -201,7 +414,7 @@ public class Sketchy {
     public void select(Point2D point) {
         this.deselect();
         for (int i = shapes.size() - 1; i >= 0; i--) {
-            if (this.shapes.get(i).contains(this.rotatePoint(point, this.shapes.get(i).getCenter(), this.shapes.get(i).getAngle()))) {
+            if (this.isEditable(this.shapes.get(i)) && this.shapes.get(i).contains(this.rotatePoint(point, this.shapes.get(i).getCenter(), this.shapes.get(i).getAngle()))) {
                 this.shapes.get(i).select();
                 this.isSelected = this.shapes.get(i);
                 break;
@@ -222,18 +435,27 @@ public class Sketchy {
 
     /** Method handling the deletion of a currently selected shape that's called whenever the user interacts with
      * the delete button. It instantiates an instance of the Delete class implementing the Command
-     * interface so that the action can be undone, as well as performs the action (pushes it to
-     * the undoStack and clears the redoStack). It later removes that shape by calling its remove
+     * interface, naming the step it adds to the history, as well as performs the action (pushes it to
+     * the history). It later removes that shape by calling its remove
      * method that deletes it from the main pane's list of children, and removes it both from
-     * the arraylist of shapes and of elements.
+     * the arraylist of shapes and of elements. The action is performed only after the removal, so that
+     * the shape's record is removed from the document model as well.
      * */
     public void delete() {
-        if (this.isSelected != null) {
-            Command delete = new Delete(this.isSelected, this.sketchPane, this.shapes, this.elements);
+        if (this.isSelected instanceof ElementGroup) {
+            ElementGroup group = (ElementGroup) this.isSelected;
+            Command delete = new Delete(group);
+            group.remove();
+            this.shapes.remove(group);
+            HashSet<Savable> leaves = new HashSet<>(group.getLeaves());
+            this.elements.removeIf(leaves::contains);
             this.performAction(delete);
+        } else if (this.isSelected != null) {
+            Command delete = new Delete(this.isSelected);
             this.isSelected.remove();
             this.shapes.remove(this.isSelected);
             this.elements.remove(this.isSelected);
+            this.performAction(delete);
         }
     }
 
@@ -243,17 +465,20 @@ public class Sketchy {
      * covered by any other element of sketchy canvas), and if yes, raises it in the list of Pane's
      * elements and the elements arraylist by one (as they include both shapes and lines),
      * and calculates the index to which it should be moved in the arraylist of shapes by calling
-     * the getRaiseIndex method. Finally, it instantiates an instance of the Raise class implementing
-     * the Command interface passing these newly calculated values as parameters, so that the action
-     * can be later undone (or redone).
+     * the getRaiseIndex method. Finally, it performs an instance of the Raise class implementing
+     * the Command interface, so that the new position is synced and stored in the history.
      */
     public void raise() {
-        if (this.isSelected != null) {
+        if (this.isSelected != null && !this.groupOf.isEmpty()) {
+            if (this.moveBlock(this.isSelected, true)) {
+                this.performAction(new Raise(this.isSelected));
+            }
+        } else if (this.isSelected != null) {
             int paneIndex = this.isSelected.getIndex();
             int elementsArrayIndex = this.elements.indexOf(this.isSelected);
-            int shapesArrayIndex = this.shapes.indexOf(this.isSelected);
-            if (paneIndex == (this.sketchPane.getChildren().size() - 1)) {
-            } else if (paneIndex < (this.sketchPane.getChildren().size() - 1)) {
+            Pane layerPane = this.layerOf(this.isSelected).getPane();
+            if (paneIndex == (layerPane.getChildren().size() - 1)) {
+            } else if (paneIndex < (layerPane.getChildren().size() - 1)) {
                 this.isSelected.remove();
                 this.isSelected.addToPane(paneIndex + 1);
                 int newShapesIndex = this.getRaiseIndex();
@@ -261,7 +486,7 @@ public class Sketchy {
                 this.shapes.add(newShapesIndex, this.isSelected);
                 this.elements.remove(this.isSelected);
                 this.elements.add(elementsArrayIndex + 1, this.isSelected);
-                Command raise = new Raise(paneIndex, shapesArrayIndex, elementsArrayIndex, this.shapes, this.elements, this.sketchPane, this.isSelected);
+                Command raise = new Raise(this.isSelected);
                 this.performAction(raise);
             }
         }
@@ -273,15 +498,17 @@ public class Sketchy {
      * (if the shape at the bottom of the pane, or above other elements), and if yes, lowers it in the list of Pane's
      * elements and the elements arraylist by one (as they include both shapes and lines),
      * and calculates the index to which it should be moved in the arraylist of shapes by calling
-     * the getLowerIndex method. Finally, it instantiates an instance of the Lower class implementing
-     * the Command interface passing these newly calculated values as parameters, so that the action
-     * can be later undone (or redone).
+     * the getLowerIndex method. Finally, it performs an instance of the Lower class implementing
+     * the Command interface, so that the new position is synced and stored in the history.
      */
     public void lower() {
-        if (this.isSelected != null) {
+        if (this.isSelected != null && !this.groupOf.isEmpty()) {
+            if (this.moveBlock(this.isSelected, false)) {
+                this.performAction(new Lower(this.isSelected));
+            }
+        } else if (this.isSelected != null) {
             int paneIndex = this.isSelected.getIndex();
             int elementsArrayIndex = this.elements.indexOf(this.isSelected);
-            int shapesArrayIndex = this.shapes.indexOf(this.isSelected);
             if (paneIndex == 0) {
             } else if (paneIndex > 0) {
                 this.isSelected.remove();
@@ -291,12 +518,40 @@ public class Sketchy {
                 this.shapes.add(newShapesIndex, this.isSelected);
                 this.elements.remove(this.isSelected);
                 this.elements.add(elementsArrayIndex - 1, this.isSelected);
-                Command lower = new Lower(paneIndex, shapesArrayIndex, elementsArrayIndex, this.shapes, this.elements, this.sketchPane, this.isSelected);
+                Command lower = new Lower(this.isSelected);
                 this.performAction(lower);
             }
         }
     }
 
+    /** Helper method raising or lowering an element or a group while there are groups on the pane - since a
+     * group's elements all lie right under its topmost one, the whole block of elements is moved above (or below)
+     * the block of the element or group right above (or below) it, and the scene is laid out again. Returns
+     * false if there's nothing to move past (within the same layer).
+     */
+    private boolean moveBlock(Savable item, boolean up) {
+        ArrayList<Savable> block = this.leavesOf(item);
+        if (block.isEmpty()) {
+            return false;
+        }
+        int first = this.elements.indexOf(block.get(0));
+        int last = this.elements.indexOf(block.get(block.size() - 1));
+        int neighbourIndex = up ? last + 1 : first - 1;
+        if (neighbourIndex < 0 || neighbourIndex >= this.elements.size()) {
+            return false;
+        }
+        if (this.layerOf(this.elements.get(neighbourIndex)) != this.layerOf(item)) {
+            return false;
+        }
+        ArrayList<Savable> neighbour = this.leavesOf(this.topLevelOf(this.elements.get(neighbourIndex)));
+        HashSet<Savable> moving = new HashSet<>(block);
+        this.elements.removeIf(moving::contains);
+        int index = up ? this.elements.indexOf(neighbour.get(neighbour.size() - 1)) + 1 : this.elements.indexOf(neighbour.get(0));
+        this.elements.addAll(index, block);
+        this.rebuildScene();
+        return true;
+    }
+
     /** Method below returns the index of the shapes ArrayList to which a particular shape
      * that's selected should be moved upon raising, while taking into consideration their layering
      * among both other shapes, and lines. If index of a shape in the arraylist of shapes upon raising
@@ -349,6 +604,13 @@ public class Sketchy {
         if (this.isSelected != null) {
             Point2D newCenter = new Point2D(this.translateStartingPoint.getX() + point.getX(),
                                               this.translateStartingPoint.getY() + point.getY());
+            if (this.dragBounds != null) {
+                // the box the selection had upon press, moved along with it
+                double dx = newCenter.getX() - this.firstLocation.getX();
+                double dy = newCenter.getY() - this.firstLocation.getY();
+                newCenter = new Point2D(newCenter.getX() + this.snap(this.dragBounds[0] + dx, this.dragBounds[2] + dx, true),
+                        newCenter.getY() + this.snap(this.dragBounds[1] + dy, this.dragBounds[3] + dy, false));
+            }
             this.isSelected.setCenter(newCenter);
         }
     }
@@ -405,6 +667,11 @@ public class Sketchy {
      * the screen).
      */
     public void resize(SketchyShape shape, Point2D currPoint) {
+        // the dragged corner only ends up on a guide if the shape isn't rotated
+        if (this.dragBounds != null && shape.getAngle() % 360 == 0) {
+            currPoint = new Point2D(currPoint.getX() + this.snap(currPoint.getX(), currPoint.getX(), true),
+                    currPoint.getY() + this.snap(currPoint.getY(), currPoint.getY(), false));
+        }
         Point2D initialCenter = shape.getCenter();
         Point2D rotatedCurrPoint = this.rotatePoint(currPoint, initialCenter, shape.getAngle());
 
@@ -421,69 +688,1243 @@ public class Sketchy {
 
     /** Method responsible for changing the color of a shape, called whenever user interacts with the
      * "fill" button - it firstly checks whether a shape has been selected, and if yes, instantiates an
-     * instance of the ChangeColor command class (so that the shape's initial color can be stored
-     * and later recreated whenever undo method is called), passing in the new color chosen
-     * through the color picker into its parameter. Since it's called from the command class upon a button
+     * instance of the ChangeColor command class (so that the shape's new color is synced and stored
+     * in the history) after filling the shape with the new color chosen through the color picker. Since it's called from the command class upon a button
      * click, it firstly takes in that new color as parameter too. */
     public void changeColor(Color color) {
         if (this.isSelected != null) {
-            Command command = new ChangeColor(this.isSelected, color);
-            this.performAction(command);
+            Command command = new ChangeColor(this.isSelected);
             this.isSelected.setColor(color);
+            this.performAction(command);
         }
     }
 
     /** Helper method for performing an action that can be handled by a class implementing the command
      * interface - to limit the number of lines of code, it takes in the command that has been instantiated,
-     * pushes it to the undoStack, and clears the redo one.
+     * and records it in the history as a new step following the current one (commands that had been undone
+     * aren't thrown away, they stay in the history as another branch). The record of the element the command
+     * acts on is also synced with the document model, which lets the history record that change.
      */
     public void performAction(Command command) {
-        this.undoStack.push(command);
-        this.redoStack.clear();
+        this.history.push(command);
+        this.syncCommand(command);
+        this.refreshTimeline();
+        this.checkMemory();
     }
 
-    /** Helper method for undoing an action - firstly, it checks whether the undoStack isn't empty,
-     * and later pops a command that has been recently performed while calling its undo method
-     * (polymorphism! can be performed on all classes implementing the Command interface).
-     * It later pushes that command to the redoStack so that it can be redone.
+    /** Helper method for undoing an action - the history only keeps the records the recently performed command
+     * has changed (not the command itself), so undoing it means seeking the step before it, which puts back the
+     * records from before the command's changes.
      */
     public void undo() {
-        if (!this.undoStack.empty()) {
-            Command command = this.undoStack.pop();
-            command.undo();
-            this.redoStack.push(command);
+        HistoryNode previous = this.history.getCurrent().getParent();
+        if (previous != null) {
+            this.seek(previous);
         }
     }
 
-    /** Helper method for redoing an action - firstly, it checks whether the redoStack isn't empty,
-     * and later pops a command that has been recently undone while calling its redo method.
-     * It later pushes that command to the undoStack so that it can be undone.
+    /** Helper method for redoing an action - seeks the step following the current one (along the branch
+     * most recently visited), which puts back the records from after the recently undone command's changes.
      */
     public void redo() {
-        if (!this.redoStack.empty()) {
-            Command command = this.redoStack.pop();
-            command.redo();
-            this.undoStack.push(command);
+        HistoryNode next = this.history.getCurrent().getRedoChild();
+        if (next != null) {
+            this.seek(next);
+        }
+    }
+
+    /** Method jumping to any step of the history (in any of its branches) - the history reconstructs the state of
+     * the document at that step from the changes recorded along the way, and only the elements whose records differ between
+     * the current state and that one are brought up to date (the ones that don't exist anymore are recreated with
+     * their old IDs, so that the commands around them keep working). The elements are then reordered by their
+     * z values, and the pane's children are replaced in a single batch, rather than one by one - only if any
+     * element has been added, removed or moved to another layer.
+     */
+    public void seek(HistoryNode target) {
+        if (target == this.history.getCurrent()) {
+            return;
+        }
+        this.deselect();
+        this.clearPicked();
+        this.history.suspend();
+        ArrayList<HistoryNode> exited = new ArrayList<>();
+        ArrayList<HistoryNode> entered = new ArrayList<>();
+        this.history.path(target, exited, entered);
+        DocumentSnapshot state = this.history.seek(target);
+        boolean[] reordered = {false};
+        this.snapshot().diff(state, (long id, ShapeRecord old, ShapeRecord updated) -> {
+            if (old == null || updated == null || old.getZ() != updated.getZ()) {
+                reordered[0] = true;
+            }
+            if (updated != null) {
+                Savable element = this.elementsById.get(id);
+                if (element == null) {
+                    element = ElementFactory.create(updated, this.layerOf(id).getPane(), this.shapes, this.elements);
+                    this.elementsById.put(id, element);
+                } else {
+                    element.applyRecord(updated);
+                }
+            }
+        });
+        this.document.restore(state);
+        if (reordered[0]) {
+            this.elements.clear();
+            for (ShapeRecord record : state) {
+                this.elements.add(this.elementsById.get(record.getId()));
+            }
+        }
+        boolean regrouped = this.updateGroups(exited, entered);
+        if (this.swapLayers(exited) | this.swapLayers(entered)) {
+            this.showLayers();
+        }
+        if (reordered[0] || regrouped || !this.groupOf.isEmpty()) {
+            this.rebuildScene();
+        }
+        this.history.resume();
+        this.refreshTimeline();
+        this.checkMemory();
+    }
+
+    /** Helper method bringing groups into existence (or out of it) after a seek - the groups formed by the steps
+     * that have been undone are dissolved, and the ones ungrouped by them come back (and the other way around for
+     * the steps that have been redone). Returns whether any group has changed.
+     */
+    private boolean updateGroups(ArrayList<HistoryNode> exited, ArrayList<HistoryNode> entered) {
+        boolean changed = false;
+        for (HistoryNode step : exited) {
+            changed |= this.setGroupActive(this.groupedAt.get(step), false);
+            changed |= this.setGroupActive(this.ungroupedAt.get(step), true);
+        }
+        for (HistoryNode step : entered) {
+            changed |= this.setGroupActive(this.groupedAt.get(step), true);
+            changed |= this.setGroupActive(this.ungroupedAt.get(step), false);
+        }
+        return changed;
+    }
+
+    private boolean setGroupActive(ElementGroup group, boolean active) {
+        if (group == null || group.isActive() == active) {
+            return false;
+        }
+        group.setActive(active);
+        return true;
+    }
+
+    /** Method called whenever the user clicks on the "History" button - opens the timeline of the history. */
+    public void showHistory() {
+        if (this.timeline == null) {
+            this.timeline = new HistoryTimeline(this, this.history);
+        }
+        this.timeline.show();
+    }
+
+    /** Method trimming the history whenever memory runs short - first, Sketchy lets go of the elements that have left
+     * the document (undoing their removal recreates them from their records, just like a seek recreates elements
+     * that have never been kept), and then all but the last HISTORY_TRIM_KEEP steps leading to the current one are
+     * dropped, along with the groups and layer swaps only those steps knew about. The user is told how much has
+     * been let go of.
+     */
+    public void trimHistory() {
+        int dropped = this.history.trim(Constants.HISTORY_TRIM_KEEP);
+        if (dropped > 0) {
+            this.groupedAt.keySet().removeIf((HistoryNode step) -> !this.history.contains(step));
+            this.ungroupedAt.keySet().removeIf((HistoryNode step) -> !this.history.contains(step));
+            this.layersSwappedAt.keySet().removeIf((HistoryNode step) -> !this.history.contains(step));
+            HashSet<ElementGroup> known = new HashSet<>(this.groupedAt.values());
+            known.addAll(this.ungroupedAt.values());
+            this.groups.removeIf((ElementGroup group) -> !group.isActive() && !known.contains(group));
+        }
+        int released = this.releaseDetached();
+        this.showStatus("Trimmed " + dropped + " steps of the history, and released " + released + " elements");
+        this.refreshTimeline();
+        this.memory.check();
+        if (this.onMemoryChanged != null) {
+            this.onMemoryChanged.run();
+        }
+    }
+
+    public MemoryAccounting getMemory() {
+        return this.memory;
+    }
+
+    /** Method setting what should happen whenever the memory figures change - used by Control's stats panel. */
+    public void setOnMemoryChanged(Runnable onMemoryChanged) {
+        this.onMemoryChanged = onMemoryChanged;
+    }
+
+    /** Method setting where messages for the user (e.g. about edits that couldn't be applied in full) are shown -
+     * used by Control's status label.
+     */
+    public void setOnStatus(Consumer<String> onStatus) {
+        this.onStatus = onStatus;
+    }
+
+    private void showStatus(String message) {
+        if (this.onStatus != null) {
+            this.onStatus.accept(message);
+        }
+    }
+
+    /** Helper method publishing the memory figures after a change - if the document has just gone over one of its
+     * soft limits, the user is warned, and the history is trimmed right away if the accounting is set to.
+     */
+    private void checkMemory() {
+        if (this.memory.check()) {
+            this.showStatus("Sketchy is running short of memory (estimated "
+                    + this.memory.getStats().getEstimatedBytes() / (1 << 20) + " MB) - consider trimming the history");
+            if (this.memory.isAutoTrim()) {
+                this.trimHistory();
+                return;
+            }
+        }
+        if (this.onMemoryChanged != null) {
+            this.onMemoryChanged.run();
+        }
+    }
+
+    /** Helper method letting go of every kept element that isn't in the document anymore (and isn't a member of any
+     * group that could come back) - returns how many of them there were.
+     */
+    private int releaseDetached() {
+        HashSet<Long> grouped = new HashSet<>();
+        for (ElementGroup group : this.groups) {
+            for (Savable leaf : group.getLeaves()) {
+                grouped.add(leaf.getId());
+            }
+        }
+        int released = 0;
+        for (Iterator<Savable> iterator = this.elementsById.values().iterator(); iterator.hasNext(); ) {
+            long id = iterator.next().getId();
+            if (this.document.get(id) == null && !grouped.contains(id)) {
+                iterator.remove();
+                this.memory.released(id);
+                released++;
+            }
+        }
+        return released;
+    }
+
+    /** Helper method bringing the timeline up to date with the history (if it's open). */
+    private void refreshTimeline() {
+        if (this.timeline != null && this.timeline.isShowing()) {
+            this.timeline.refresh();
+        }
+    }
+
+    /** Helper method bringing the records of all elements a command acts on up to date (and registering the
+     * elements by their IDs). Bulk commands can act on thousands of elements - syncing them one by one could
+     * keep renumbering the z values, so once there are more than BULK_SYNC_LIMIT of them, they're all synced in a
+     * single pass instead (see DocumentModel.syncAll), which only touches the records that have changed.
+     */
+    private void syncCommand(Command command) {
+        if (command instanceof BulkCommand) {
+            this.syncElements(((BulkCommand) command).getElements());
+        } else if (command.getElement() instanceof ElementGroup) {
+            ElementGroup group = (ElementGroup) command.getElement();
+            group.bake();
+            this.syncElements(group.getLeaves());
+        } else if (command.getElement() != null) {
+            this.elementsById.put(command.getElement().getId(), command.getElement());
+            this.document.sync(command.getElement(), this.elements);
+        }
+    }
+
+    /** Method filling the region around a point with a color (called on a press with the Bucket Fill option). The
+     * document is rasterized and flood-filled on a background thread (see FloodFill), from a snapshot taken right
+     * away - so the fill shows the drawing as it was upon the click - and the resulting fill is placed on top of the
+     * drawing as a new element on the JavaFX thread, through a command, so that it can be undone. The fill goes to
+     * the layer that was active upon the click (it's dropped if that layer is gone by then, e.g. after a load), and
+     * fills are computed one at a time, in the order of the clicks, on a single background thread.
+     */
+    public void fill(Point2D point, Color color) {
+        Layer layer = this.activeLayer;
+        ArrayList<ShapeRecord> records = new ArrayList<>();
+        for (ShapeRecord record : this.snapshot()) {
+            if (this.layerOf(record.getId()).isVisible()) {
+                records.add(record);
+            }
+        }
+        double width = (this.sketchPane.getWidth() > 0) ? this.sketchPane.getWidth() : Constants.SCENE_WIDTH;
+        double height = (this.sketchPane.getHeight() > 0) ? this.sketchPane.getHeight() : Constants.SCENE_HEIGHT;
+        this.filler.execute(() -> {
+            ShapeRecord fill = this.floodFill.fill(records, width, height, point.getX(), point.getY(),
+                    color.getRed(), color.getGreen(), color.getBlue());
+            if (fill != null) {
+                Platform.runLater(() -> {
+                    if (!this.layers.contains(layer)) {
+                        return;
+                    }
+                    Pane layerPane = layer.getPane();
+                    Savable element = ElementFactory.create(fill, layerPane, this.shapes, this.elements);
+                    this.placeInLayer(element, layer);
+                    this.performAction(new CreateShape((SketchyShape) element));
+                });
+            }
+        });
+    }
+
+    /** Method erasing everything within the eraser's radius along the way from one point to another (in steps of
+     * the radius, so that a quick stroke doesn't skip anything). Lines are cut right away, so the user sees what's
+     * left of them, but all cuts of a single stroke of the eraser become a single command once the mouse is
+     * released - pieces of lines cut again during the same stroke simply disappear. Only lines of the active layer
+     * are erased, and not the ones that belong to groups.
+     */
+    private void erase(Point2D from, Point2D to) {
+        double distance = from.distance(to);
+        int steps = Math.max(1, (int) Math.ceil(distance / Constants.ERASER_RADIUS));
+        for (int step = 1; step <= steps; step++) {
+            double t = (double) step / steps;
+            Point2D at = new Point2D(from.getX() + t * (to.getX() - from.getX()), from.getY() + t * (to.getY() - from.getY()));
+            // going from the top down keeps the indexes below the current one valid while lines are replaced
+            for (int i = this.elements.size() - 1; i >= 0; i--) {
+                Savable element = this.elements.get(i);
+                if (!(element instanceof CurvedLine) || this.groupOf.containsKey(element.getId())
+                        || this.layerOf(element) != this.activeLayer) {
+                    continue;
+                }
+                ArrayList<double[]> runs = ((CurvedLine) element).cut(at, Constants.ERASER_RADIUS);
+                if (runs == null) {
+                    continue;
+                }
+                if (this.erasedPieces.remove(element)) {
+                    this.erased.remove(element);
+                } else {
+                    this.erased.add(element);
+                }
+                for (CurvedLine piece : ((CurvedLine) element).split(runs)) {
+                    this.layerOf.put(piece.getId(), this.activeLayer);
+                    this.erased.add(piece);
+                    this.erasedPieces.add(piece);
+                }
+            }
+        }
+    }
+
+    /** Helper method syncing many elements at once - see syncCommand. */
+    private void syncElements(ArrayList<Savable> changed) {
+        for (Savable element : changed) {
+            this.elementsById.put(element.getId(), element);
+        }
+        if (changed.size() > Constants.BULK_SYNC_LIMIT) {
+            this.document.syncAll(changed, this.elements);
+        } else {
+            for (Savable element : changed) {
+                this.document.sync(element, this.elements);
+            }
+        }
+    }
+
+    /** Method adding the element (or group) under a point to the ones picked for grouping, or taking it out of
+     * them if it has already been picked - called whenever the user clicks on the pane with alt pressed. Elements
+     * and groups are looked for from the top down, just like when selecting.
+     */
+    public void pick(Point2D point) {
+        Savable hit = null;
+        for (int i = this.shapes.size() - 1; i >= 0 && hit == null; i--) {
+            SketchyShape shape = this.shapes.get(i);
+            if (this.isEditable(shape) && shape.contains(this.rotatePoint(point, shape.getCenter(), shape.getAngle()))) {
+                hit = shape;
+            }
+        }
+        if (hit == null) {
+            return;
+        }
+        if (this.picked.remove(hit)) {
+            if (hit instanceof SketchyShape && hit != this.isSelected) {
+                ((SketchyShape) hit).deselect();
+            }
+        } else {
+            this.picked.add(hit);
+            if (hit instanceof SketchyShape) {
+                ((SketchyShape) hit).select();
+            }
+        }
+    }
+
+    /** Methods picking every element similar to the selected one - of the same color, of the same type, or of about
+     * the same size (see AttributeIndex) - called whenever the user clicks on one of the "Select Similar" buttons.
+     * The elements are looked up in the secondary indexes, so this costs as much as the number of elements found.
+     */
+    public void selectSameColor() {
+        ShapeRecord record = this.selectedRecord();
+        if (record != null) {
+            this.pickAll(this.attributes.withColorOf(record));
+        }
+    }
+
+    public void selectSameType() {
+        ShapeRecord record = this.selectedRecord();
+        if (record != null) {
+            this.pickAll(this.attributes.ofType(record.getType()));
+        }
+    }
+
+    public void selectSameSize() {
+        ShapeRecord record = this.selectedRecord();
+        if (record != null) {
+            this.pickAll(this.attributes.withSizeOf(record));
+        }
+    }
+
+    /** Helper method returning the record of the selected element (or of the first picked one, if none is selected
+     * - groups don't count, as they have no attributes of their own).
+     */
+    private ShapeRecord selectedRecord() {
+        for (Savable item : this.selectedItems()) {
+            if (!(item instanceof ElementGroup) && this.document.get(item.getId()) != null) {
+                return this.document.get(item.getId());
+            }
+        }
+        return null;
+    }
+
+    /** Helper method picking the elements with the given IDs (or the outermost groups they belong to) - only the
+     * ones the user can edit, and each group only once.
+     */
+    private void pickAll(ArrayList<Long> ids) {
+        this.clearPicked();
+        HashSet<Savable> seen = new HashSet<>();
+        if (this.isSelected != null) {
+            seen.add(this.isSelected);
+        }
+        for (long id : ids) {
+            Savable element = this.elementsById.get(id);
+            if (element == null || !this.isEditable(element)) {
+                continue;
+            }
+            Savable item = this.topLevelOf(element);
+            if (seen.add(item)) {
+                this.picked.add(item);
+                if (item instanceof SketchyShape) {
+                    ((SketchyShape) item).select();
+                }
+            }
+        }
+    }
+
+    /** Method grouping the picked elements (along with the selected one), called whenever the user clicks on the
+     * "Group" button. The elements of the new group are moved right under its topmost one (keeping their order),
+     * so that they can all be shown in the group's node, and the grouping is performed as a single command.
+     * Picked groups become nested in the new one.
+     */
+    public void group() {
+        LinkedHashSet<Savable> items = this.selectedItems();
+        this.clearPicked();
+        this.deselect();
+        if (items.size() < 2) {
+            return;
+        }
+        Layer layer = this.layerOf(items.iterator().next());
+        for (Savable item : items) {
+            if (this.layerOf(item) != layer) {
+                // a group is shown in a single layer's pane, so elements of different layers can't be grouped
+                return;
+            }
+        }
+        ArrayList<Savable> leaves = new ArrayList<>();
+        LinkedHashSet<Savable> ordered = new LinkedHashSet<>();
+        int top = 0;
+        for (int i = 0; i < this.elements.size(); i++) {
+            Savable item = this.topLevelOf(this.elements.get(i));
+            if (items.contains(item)) {
+                leaves.add(this.elements.get(i));
+                ordered.add(item);
+                top = i;
+            }
+        }
+        HashSet<Savable> moving = new HashSet<>(leaves);
+        this.elements.removeIf(moving::contains);
+        this.elements.addAll(top + 1 - leaves.size(), leaves);
+        ElementGroup group = new ElementGroup(layer.getPane(), new ArrayList<>(ordered));
+        this.groups.add(group);
+        this.rebuildScene();
+        this.performAction(new GroupElements(group));
+        this.groupedAt.put(this.history.getCurrent(), group);
+        group.select();
+        this.isSelected = group;
+    }
+
+    /** Method ungrouping the selected group, called whenever the user clicks on the "Ungroup" button - its members
+     * become separate elements (or groups) again, keeping their layers.
+     */
+    public void ungroup() {
+        if (this.isSelected instanceof ElementGroup) {
+            ElementGroup group = (ElementGroup) this.isSelected;
+            this.deselect();
+            this.clearPicked();
+            group.bake();
+            group.setActive(false);
+            this.rebuildScene();
+            this.performAction(new UngroupElements(group));
+            this.ungroupedAt.put(this.history.getCurrent(), group);
+        }
+    }
+
+    /** Method copying the picked elements (along with the selected one) to the clipboard, called whenever the user
+     * clicks on the "Copy" button. The clipboard holds the elements' records (in their layering order), which
+     * never change, so the copied elements can be pasted even after they've been changed or deleted.
+     */
+    public void copy() {
+        LinkedHashSet<Savable> items = this.selectedItems();
+        if (items.isEmpty()) {
+            return;
+        }
+        this.clipboard.clear();
+        for (Savable element : this.elements) {
+            if (items.contains(this.topLevelOf(element))) {
+                this.clipboard.add(element.toRecord());
+            }
+        }
+        this.pasteCount = 0;
+    }
+
+    /** Method pasting the elements in the clipboard on top of all the other ones, called whenever the user clicks
+     * on the "Paste" button - every paste is placed a bit further from the copied elements than the previous one.
+     */
+    public void paste() {
+        if (!this.clipboard.isEmpty()) {
+            this.pasteCount++;
+            this.insertCopies(1, this.pasteCount);
+        }
+    }
+
+    /** Method duplicating the picked elements (along with the selected one) a given number of times, called
+     * whenever the user clicks on the "Duplicate" button - the copies are laid out in a diagonal array, each of
+     * them a bit further from the original elements than the previous one.
+     */
+    public void duplicate(int copies) {
+        this.copy();
+        if (!this.clipboard.isEmpty() && copies > 0) {
+            this.insertCopies(copies, 1);
+            this.pasteCount = copies;
+        }
+    }
+
+    /** Helper method creating copies of the elements in the clipboard, the first of them shifted by a given number
+     * of paste offsets, and each of the next ones by one more. All copies are inserted through a single command
+     * (so they're synced with the document in one go, and can be undone at once). The copies are created from
+     * the clipboard's records, so copies of a line all share the line's array of points.
+     */
+    private void insertCopies(int copies, int firstStep) {
+        this.deselect();
+        this.clearPicked();
+        ArrayList<Savable> inserted = new ArrayList<>(copies * this.clipboard.size());
+        long id = ElementIds.reserve(copies * this.clipboard.size());
+        for (int copy = 0; copy < copies; copy++) {
+            double offset = (firstStep + copy) * Constants.PASTE_OFFSET;
+            for (ShapeRecord record : this.clipboard) {
+                ShapeRecord shifted = new ShapeRecord(id++, record.getType(), record.getCenterX() + offset,
+                        record.getCenterY() + offset, record.getWidth(), record.getHeight(), record.getAngle(),
+                        record.getRed(), record.getGreen(), record.getBlue(), record.getPoints(), record.getZ());
+                inserted.add(ElementFactory.create(shifted, this.activeLayer.getPane(), this.shapes, this.elements));
+            }
+        }
+        this.placeInLayer(inserted, this.activeLayer);
+        this.performAction(new InsertElements(inserted));
+    }
+
+    /** Method defining a symbol from the picked elements (along with the selected one), called whenever the user
+     * clicks on the "Make Symbol" button. The elements themselves stay as they are - the symbol becomes the one
+     * stamped by the "Stamp" button, starting right where the elements are.
+     */
+    public void makeSymbol() {
+        LinkedHashSet<Savable> items = this.selectedItems();
+        if (items.isEmpty()) {
+            return;
+        }
+        ArrayList<ShapeRecord> records = new ArrayList<>();
+        double[] box = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (Savable element : this.elements) {
+            if (items.contains(this.topLevelOf(element))) {
+                ShapeRecord record = element.toRecord();
+                double[] bounds = RecordBounds.of(record);
+                box[0] = min(box[0], bounds[0]);
+                box[1] = min(box[1], bounds[1]);
+                box[2] = max(box[2], bounds[2]);
+                box[3] = max(box[3], bounds[3]);
+                records.add(record);
+            }
+        }
+        this.symbol = Symbol.define(records);
+        this.symbolOrigin = new Point2D((box[0] + box[2]) / 2, (box[1] + box[3]) / 2);
+        this.stampCount = 0;
+    }
+
+    /** Method placing a given number of instances of the current symbol, called whenever the user clicks on the
+     * "Stamp" button - just like duplicates, the instances are laid out in a diagonal array, each of them a bit
+     * further from where the symbol was made than the previous one, and inserted through a single command.
+     * All of them share one array and one image (see SketchyInstance), however many are stamped.
+     */
+    public void stamp(int copies) {
+        if (this.symbol == null || copies <= 0) {
+            return;
+        }
+        this.deselect();
+        this.clearPicked();
+        ArrayList<Savable> inserted = new ArrayList<>(copies);
+        long id = ElementIds.reserve(copies);
+        for (int copy = 0; copy < copies; copy++) {
+            this.stampCount++;
+            double offset = this.stampCount * Constants.PASTE_OFFSET;
+            ShapeRecord instance = this.symbol.instance(id++, this.symbolOrigin.getX() + offset,
+                    this.symbolOrigin.getY() + offset, 0, 0, 0, false, 0);
+            inserted.add(ElementFactory.create(instance, this.activeLayer.getPane(), this.shapes, this.elements));
+        }
+        this.placeInLayer(inserted, this.activeLayer);
+        this.performAction(new InsertElements(inserted));
+    }
+
+    /** Helper method returning the picked elements and groups, along with the selected one. */
+    private LinkedHashSet<Savable> selectedItems() {
+        LinkedHashSet<Savable> items = new LinkedHashSet<>(this.picked);
+        if (this.isSelected != null) {
+            items.add(this.isSelected);
+        }
+        return items;
+    }
+
+    private void clearPicked() {
+        for (Savable item : this.picked) {
+            if (item instanceof SketchyShape) {
+                ((SketchyShape) item).deselect();
+            }
+        }
+        this.picked.clear();
+    }
+
+    /** Helper method returning the outermost group an element belongs to (or the element itself). */
+    private Savable topLevelOf(Savable element) {
+        ElementGroup group = this.groupOf.get(element.getId());
+        if (group == null) {
+            return element;
+        }
+        while (group.getParent() != null) {
+            group = group.getParent();
+        }
+        return group;
+    }
+
+    /** Helper method returning the elements of a group (or just the element itself), bottom layer first. */
+    private ArrayList<Savable> leavesOf(Savable item) {
+        if (item instanceof ElementGroup) {
+            return ((ElementGroup) item).getLeaves();
+        }
+        ArrayList<Savable> leaves = new ArrayList<>();
+        leaves.add(item);
+        return leaves;
+    }
+
+    public void setSnapToGrid(boolean snapToGrid) {
+        this.snapToGrid = snapToGrid;
+    }
+
+    public void setSmartGuides(boolean smartGuides) {
+        this.smartGuides = smartGuides;
+    }
+
+    /** Helper method preparing the snapping of a shape that's about to be moved or resized - the box of all of its
+     * elements is taken from the edge index (so it's the box they have in the document, before the drag), and their
+     * own edges are excluded from the guides, so that the shape doesn't snap to where it's just been.
+     */
+    private void startSnapping(Savable item) {
+        this.dragBounds = null;
+        if (!this.snapToGrid && !this.smartGuides) {
+            return;
+        }
+        ArrayList<Long> ids = new ArrayList<>();
+        for (Savable leaf : this.leavesOf(item)) {
+            double[] box = this.edges.boundsOf(leaf.getId());
+            if (box == null) {
+                continue;
+            }
+            ids.add(leaf.getId());
+            if (this.dragBounds == null) {
+                this.dragBounds = box.clone();
+            } else {
+                this.dragBounds[0] = min(this.dragBounds[0], box[0]);
+                this.dragBounds[1] = min(this.dragBounds[1], box[1]);
+                this.dragBounds[2] = max(this.dragBounds[2], box[2]);
+                this.dragBounds[3] = max(this.dragBounds[3], box[3]);
+            }
+        }
+        this.edges.exclude(ids);
+    }
+
+    private void stopSnapping() {
+        this.dragBounds = null;
+        this.edges.exclude(new ArrayList<>());
+        this.guideX.setVisible(false);
+        this.guideY.setVisible(false);
+    }
+
+    /** Helper method returning how far a span (the box of a dragged shape along one axis, or a single point) should
+     * be shifted to snap - to the closest edge or center of another element that either of its edges or its center is
+     * near enough to, or otherwise (if snapping to the grid) to put its lower edge on the grid. The guide of that axis
+     * is shown along the edge it snapped to.
+     */
+    private double snap(double from, double to, boolean horizontal) {
+        double shift = Double.NaN;
+        double guide = Double.NaN;
+        if (this.smartGuides) {
+            for (double value : new double[] {from, (from + to) / 2, to}) {
+                double nearest = horizontal ? this.edges.nearestX(value, Constants.SNAP_DISTANCE)
+                        : this.edges.nearestY(value, Constants.SNAP_DISTANCE);
+                if (!Double.isNaN(nearest) && (Double.isNaN(shift) || abs(nearest - value) < abs(shift))) {
+                    shift = nearest - value;
+                    guide = nearest;
+                }
+            }
+        }
+        if (Double.isNaN(shift) && this.snapToGrid) {
+            shift = Math.round(from / Constants.GRID_SIZE) * Constants.GRID_SIZE - from;
+        }
+        this.showGuide(horizontal ? this.guideX : this.guideY, guide, horizontal);
+        return Double.isNaN(shift) ? 0 : shift;
+    }
+
+    /** Helper method showing a guide across the whole sketchPane at a given coordinate (or hiding it, given NaN). */
+    private void showGuide(Line guide, double at, boolean vertical) {
+        guide.setVisible(!Double.isNaN(at));
+        if (Double.isNaN(at)) {
+            return;
+        }
+        if (vertical) {
+            guide.setStartX(at);
+            guide.setEndX(at);
+            guide.setStartY(0);
+            guide.setEndY(this.sketchPane.getHeight());
+        } else {
+            guide.setStartX(0);
+            guide.setEndX(this.sketchPane.getWidth());
+            guide.setStartY(at);
+            guide.setEndY(at);
+        }
+    }
+
+    /** Helper method creating a (hidden) guide line - guides lie on top of all layers, and never get the mouse's events. */
+    private Line createGuide() {
+        Line guide = new Line();
+        guide.setStroke(Color.DEEPSKYBLUE);
+        guide.setMouseTransparent(true);
+        guide.setVisible(false);
+        return guide;
+    }
+
+    /** Method adding a new, empty layer on top of all the others, and making it the active one. Adding a layer
+     * doesn't change the document, so it isn't a step of the history.
+     */
+    public void addLayer() {
+        Layer layer = new Layer("Layer " + (this.layers.size() + 1));
+        this.layers.add(layer);
+        this.showLayers();
+        this.setActiveLayer(layer);
+    }
+
+    /** Method making a layer the active one - new elements are added to it, and only it is rendered live (every
+     * other layer is cached as a bitmap, so they cost nothing while the active one is being edited).
+     */
+    public void setActiveLayer(Layer layer) {
+        if (layer == null || !this.layers.contains(layer)) {
+            return;
+        }
+        this.deselect();
+        this.clearPicked();
+        if (this.activeLayer != null) {
+            this.activeLayer.setActive(false);
+        }
+        this.activeLayer = layer;
+        layer.setActive(true);
+    }
+
+    public void setLayerVisible(Layer layer, boolean visible) {
+        layer.setVisible(visible);
+        this.dropUneditable();
+    }
+
+    public void setLayerLocked(Layer layer, boolean locked) {
+        layer.setLocked(locked);
+        this.dropUneditable();
+    }
+
+    /** Method moving the active layer above (or below) the next one - called whenever the user clicks on the
+     * "Layer Up" or "Layer Down" button. The elements of both layers are reordered (keeping their order within each
+     * layer) and synced through a single command, and the two layers are remembered along with the step, so that
+     * they can be swapped back whenever the step is undone (and swapped again when it's redone).
+     */
+    public void moveLayer(boolean up) {
+        int index = this.layers.indexOf(this.activeLayer);
+        int other = up ? index + 1 : index - 1;
+        if (other < 0 || other >= this.layers.size()) {
+            return;
+        }
+        this.deselect();
+        this.clearPicked();
+        Layer[] swapped = {this.activeLayer, this.layers.get(other)};
+        ArrayList<Savable> moved = new ArrayList<>();
+        for (Savable element : this.elements) {
+            Layer layer = this.layerOf(element);
+            if (layer == swapped[0] || layer == swapped[1]) {
+                moved.add(element);
+            }
+        }
+        Collections.swap(this.layers, index, other);
+        this.elements.sort(Comparator.comparingInt((Savable element) -> this.layers.indexOf(this.layerOf(element))));
+        this.showLayers();
+        this.rebuildScene();
+        this.performAction(new MoveLayer(moved));
+        this.layersSwappedAt.put(this.history.getCurrent(), swapped);
+    }
+
+    public ArrayList<Layer> getLayers() {
+        return this.layers;
+    }
+
+    public Layer getActiveLayer() {
+        return this.activeLayer;
+    }
+
+    /** Method setting what should happen whenever the layers change in a way the user didn't ask for directly
+     * (a drawing has been loaded, or a move of a layer has been undone) - used by Control to refresh its list.
+     */
+    public void setOnLayersChanged(Runnable onLayersChanged) {
+        this.onLayersChanged = onLayersChanged;
+    }
+
+    /** Helper method swapping back (or again) the layers swapped by any of the steps a seek goes through - swaps
+     * are undone in the opposite order they've been done in, so the layers always end up in the order they had
+     * at the target step. Returns whether any layers have been swapped.
+     */
+    private boolean swapLayers(ArrayList<HistoryNode> steps) {
+        boolean swapped = false;
+        for (HistoryNode step : steps) {
+            Layer[] pair = this.layersSwappedAt.get(step);
+            if (pair != null) {
+                Collections.swap(this.layers, this.layers.indexOf(pair[0]), this.layers.indexOf(pair[1]));
+                swapped = true;
+            }
+        }
+        return swapped;
+    }
+
+    /** Helper method stacking the layers' panes on the sketchPane in the order of the layers. */
+    private void showLayers() {
+        ArrayList<Node> panes = new ArrayList<>(this.layers.size());
+        for (Layer layer : this.layers) {
+            panes.add(layer.getPane());
+        }
+        panes.add(this.guideX);
+        panes.add(this.guideY);
+        panes.add(this.penTail);
+        this.sketchPane.getChildren().setAll(panes);
+        if (this.onLayersChanged != null) {
+            this.onLayersChanged.run();
+        }
+    }
+
+    /** Helper method replacing all layers with a single, empty one (before a drawing is loaded or received). */
+    private void resetLayers() {
+        for (Layer layer : this.layers) {
+            layer.getPane().getChildren().clear();
+        }
+        this.layers.clear();
+        this.layerOf.clear();
+        this.layersSwappedAt.clear();
+        this.activeLayer = null;
+        Layer layer = new Layer("Layer 1");
+        this.layers.add(layer);
+        this.setActiveLayer(layer);
+        this.showLayers();
+    }
+
+    /** Helper method returning the layer an element (or a group) has been created on - elements that haven't
+     * been created on a particular layer (e.g. the ones of a loaded drawing) belong to the bottom one.
+     */
+    private Layer layerOf(Savable item) {
+        if (item instanceof ElementGroup) {
+            ArrayList<Savable> leaves = ((ElementGroup) item).getLeaves();
+            return leaves.isEmpty() ? this.layers.get(0) : this.layerOf(leaves.get(0));
+        }
+        return this.layerOf(item.getId());
+    }
+
+    private Layer layerOf(long id) {
+        return this.layerOf.getOrDefault(id, this.layers.get(0));
+    }
+
+    private boolean isEditable(Savable item) {
+        return this.layerOf(item).isEditable();
+    }
+
+    /** Helper method deselecting (and unpicking) whatever can't be edited anymore after a layer has been hidden or locked. */
+    private void dropUneditable() {
+        if (this.isSelected != null && !this.isEditable(this.isSelected)) {
+            this.deselect();
+        }
+        this.picked.removeIf((Savable item) -> {
+            if (!this.isEditable(item) && item instanceof SketchyShape) {
+                ((SketchyShape) item).deselect();
+            }
+            return !this.isEditable(item);
+        });
+    }
+
+    private void placeInLayer(Savable element, Layer layer) {
+        ArrayList<Savable> added = new ArrayList<>(1);
+        added.add(element);
+        this.placeInLayer(added, layer);
+    }
+
+    /** Helper method moving newly created elements of a layer (usually the active one - elements are always created
+     * on top of all elements) right on top of the layer's other elements. Since the elements are sorted by their layers, the
+     * place is found by a binary search, so adding to a layer costs the same no matter how much the other layers hold.
+     */
+    private void placeInLayer(ArrayList<Savable> added, Layer layer) {
+        for (Savable element : added) {
+            this.layerOf.put(element.getId(), layer);
+        }
+        int active = this.layers.indexOf(layer);
+        if (active == this.layers.size() - 1 || added.isEmpty()) {
+            return;
+        }
+        int first = this.elements.size() - added.size();
+        int index = this.firstAbove(this.elements, first, active);
+        if (index == first) {
+            return;
+        }
+        int shapesFirst = this.shapes.size() - added.size();
+        int shapesIndex = this.firstAbove(this.shapes, shapesFirst, active);
+        this.elements.subList(first, this.elements.size()).clear();
+        this.elements.addAll(index, added);
+        ArrayList<SketchyShape> addedShapes = new ArrayList<>(this.shapes.subList(shapesFirst, this.shapes.size()));
+        this.shapes.subList(shapesFirst, this.shapes.size()).clear();
+        this.shapes.addAll(shapesIndex, addedShapes);
+    }
+
+    /** Helper method returning the index of the first of a given number of items (sorted by their layers) that
+     * lies in a layer above a given one.
+     */
+    private int firstAbove(ArrayList<? extends Savable> items, int count, int layer) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (this.layers.indexOf(this.layerOf(items.get(middle))) > layer) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /** Method laying out the whole scene from the elements arraylist (in a single batch) - every element that
+     * belongs to an active group is put into the node of the innermost such group, every group into the node of
+     * the group it's nested in (or onto the pane), and the arraylist of shapes is made up of everything on the
+     * pane that can be selected. Each group's bounds are recomputed on the way, which keeps the hierarchy of
+     * bounding volumes up to date. Every top-level node ends up in the pane of its elements' layer.
+     */
+    private void rebuildScene() {
+        this.groupOf.clear();
+        for (ElementGroup group : this.groups) {
+            group.setParent(null);
+        }
+        for (ElementGroup group : this.groups) {
+            if (group.isActive()) {
+                this.assignMembers(group, group.getMembers());
+            }
+        }
+        this.shapes.clear();
+        HashMap<Layer, ArrayList<Node>> nodes = new HashMap<>();
+        HashMap<ElementGroup, ArrayList<Savable>> layered = new HashMap<>();
+        for (Savable element : this.elements) {
+            ElementGroup group = this.groupOf.get(element.getId());
+            if (group == null) {
+                nodes.computeIfAbsent(this.layerOf(element), (Layer l) -> new ArrayList<>()).add(element.getNode());
+                if (element instanceof SketchyShape) {
+                    this.shapes.add((SketchyShape) element);
+                }
+                continue;
+            }
+            boolean seen = layered.containsKey(group);
+            layered.computeIfAbsent(group, (ElementGroup g) -> new ArrayList<>()).add(element);
+            while (!seen) {
+                ElementGroup parent = group.getParent();
+                if (parent == null) {
+                    nodes.computeIfAbsent(this.layerOf(element), (Layer l) -> new ArrayList<>()).add(group.getNode());
+                    this.shapes.add(group);
+                    break;
+                }
+                seen = layered.containsKey(parent);
+                layered.computeIfAbsent(parent, (ElementGroup g) -> new ArrayList<>()).add(group);
+                group = parent;
+            }
+        }
+        for (ElementGroup group : this.groups) {
+            if (group.isActive()) {
+                group.setLayered(layered.getOrDefault(group, new ArrayList<>()));
+            }
+        }
+        for (Layer layer : this.layers) {
+            layer.getPane().getChildren().setAll(nodes.getOrDefault(layer, new ArrayList<>()));
+        }
+    }
+
+    /** Helper method recording which active group every element (and nested group) belongs to - members of
+     * groups that aren't active anymore belong straight to the enclosing group.
+     */
+    private void assignMembers(ElementGroup group, ArrayList<Savable> members) {
+        for (Savable member : members) {
+            if (member instanceof ElementGroup) {
+                ElementGroup nested = (ElementGroup) member;
+                if (nested.isActive()) {
+                    nested.setParent(group);
+                } else {
+                    this.assignMembers(group, nested.getMembers());
+                }
+            } else {
+                this.groupOf.put(member.getId(), group);
+            }
         }
     }
 
     /** Save method below saves the current state of the sanvas. Whenever a user decided to save a file,
-     * all the elements implementing the Savable elements are being looped through,
-     * and their "save" methods are called so that they can add their parameters to the file.
-     *
+     * a snapshot of the document model is taken (in O(1), without copying anything), and all of its records
+     * are being looped through from the bottom layer to the top one - their "save" methods are called so that
+     * they can add their parameters to the file, in the same format as the elements themselves would.
+     * Before the records, a header summarizing the document (with a small thumbnail of it) is written, so that
+     * the file can later be previewed without being loaded.
      */
     public void save() {
         CS15FileIO io = new CS15FileIO();
         String fileName = io.getFileName(TRUE, this.stage);
         if (fileName != null) {
+            DocumentSnapshot snapshot = this.snapshot();
             io.openWrite(fileName);
-            for (Savable element : this.elements) {
-                element.save(io);
+            SketchHeader.of(snapshot).write(new FileIOTokenWriter(io));
+            Symbol.writeUsed(snapshot, new FileIOTokenWriter(io));
+            for (ShapeRecord record : snapshot) {
+                record.save(io);
             }
             io.closeWrite();
         }
     }
 
+    /** Method exporting the drawing as an SVG image, called whenever the user clicks on the "Export SVG" button.
+     * Since a snapshot of the document never changes, the file is written on a background thread, element by
+     * element from the bottom layer to the top one, while the user can keep drawing.
+     */
+    public void exportSvg() {
+        CS15FileIO io = new CS15FileIO();
+        String fileName = io.getFileName(TRUE, this.stage);
+        if (fileName != null) {
+            DocumentSnapshot snapshot = this.snapshot();
+            double width = this.sketchPane.getWidth();
+            double height = this.sketchPane.getHeight();
+            Thread exporter = new Thread(() -> {
+                try (FileWriter writer = new FileWriter(fileName, StandardCharsets.UTF_8)) {
+                    new SvgExporter(writer).export(snapshot, width, height);
+                } catch (IOException e) {
+                    Platform.runLater(() -> this.showStatus("Couldn't export the drawing: " + e.getMessage()));
+                }
+            }, "sketchy-svg-export");
+            exporter.setDaemon(true);
+            exporter.start();
+        }
+    }
+
+    /** Method exporting the drawing as a print-resolution PNG image (at EXPORT_DPI), called whenever the user clicks
+     * on the "Export PNG" button. The image is rendered by a software rasterizer from a snapshot of the document,
+     * in parallel bands on all cores, and streamed into the file - so, unlike a snapshot of the sketchPane, it isn't
+     * limited by the size of a texture, and doesn't need the whole image in memory.
+     */
+    public void exportPng() {
+        CS15FileIO io = new CS15FileIO();
+        String fileName = io.getFileName(TRUE, this.stage);
+        if (fileName != null) {
+            ArrayList<ShapeRecord> records = new ArrayList<>();
+            for (ShapeRecord record : this.snapshot()) {
+                records.add(record);
+            }
+            double width = this.sketchPane.getWidth();
+            double height = this.sketchPane.getHeight();
+            Thread exporter = new Thread(() -> {
+                RasterExporter rasterExporter = new RasterExporter(Constants.EXPORT_DPI / Constants.SCREEN_DPI,
+                        Runtime.getRuntime().availableProcessors());
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16)) {
+                    rasterExporter.export(records, width, height, out);
+                } catch (IOException e) {
+                    Platform.runLater(() -> this.showStatus("Couldn't export the drawing: " + e.getMessage()));
+                }
+            }, "sketchy-png-export");
+            exporter.setDaemon(true);
+            exporter.start();
+        }
+    }
+
+    /** Method importing an SVG image, called whenever the user clicks on the "Import SVG" button. The image is
+     * read by a streaming parser on the document actor's thread (see DocumentActor), so the user can keep drawing
+     * while it's being read, and the elements are then created straight from its records on top of the active
+     * layer, on the next pulse - all of them are inserted through a single command, so that the whole import can
+     * be undone at once. An image that can't be read fails the edit, which the user is told about on the status line.
+     */
+    public void importSvg() {
+        CS15FileIO io = new CS15FileIO();
+        String fileName = io.getFileName(FALSE, this.stage);
+        if (fileName != null) {
+            this.actor.submit(new DocumentEdit() {
+                @Override
+                public String getName() {
+                    return "Import " + fileName;
+                }
+
+                @Override
+                public void apply(DocumentSnapshot snapshot, ArrayList<ShapeRecord> updated, ArrayList<Long> removed) {
+                    try (InputStream in = new FileInputStream(fileName)) {
+                        new SvgImporter().read(in, updated::add);
+                    } catch (IOException | XMLStreamException e) {
+                        throw new IllegalArgumentException(e.getMessage(), e);
+                    }
+                }
+            });
+        }
+    }
+
+    /** Method recoloring every element of the active layer, called whenever the user clicks on the "Recolor Layer"
+     * button. The new records are made by the document actor, off the JavaFX thread, from the document as it is
+     * upon the click - elements the user changes in the meantime keep the user's changes (see DocumentDiff).
+     */
+    public void recolorLayer(Color color) {
+        if (!this.activeLayer.isEditable()) {
+            return;
+        }
+        HashSet<Long> ids = new HashSet<>();
+        for (Savable element : this.elements) {
+            if (this.layerOf(element.getId()) == this.activeLayer) {
+                ids.add(element.getId());
+            }
+        }
+        this.actor.submit(BulkEdit.recolor((ShapeRecord record) -> ids.contains(record.getId()),
+                color.getRed(), color.getGreen(), color.getBlue()));
+    }
+
+    /** Method running a document-wide edit (see BulkEdit), called from the bulk edit dialog - like every edit run
+     * by the document actor, it's applied on a later pulse, as a single step, and only to elements the user can edit.
+     */
+    public void bulkEdit(BulkEdit edit) {
+        this.actor.submit(edit);
+    }
+
+    /** Method opening the bulk edit dialog, called whenever the user clicks on the "Bulk Edit" button. */
+    public void showBulkEdit(Color color) {
+        if (this.bulkEditDialog == null) {
+            this.bulkEditDialog = new BulkEditDialog(this);
+        }
+        this.bulkEditDialog.show(color);
+    }
+
+    /** Method returning the center of the drawing area (the point bulk scaling happens around). */
+    public Point2D getDrawingCenter() {
+        double width = (this.sketchPane.getWidth() > 0) ? this.sketchPane.getWidth() : Constants.SCENE_WIDTH;
+        double height = (this.sketchPane.getHeight() > 0) ? this.sketchPane.getHeight() : Constants.SCENE_HEIGHT;
+        return new Point2D(width / 2, height / 2);
+    }
+
+    /** Helper method showing the provisional tail of the line being drawn - a segment from the line's last point to
+     * where the pen is predicted to be when the frame reaches the screen (see PenPredictor). It's called on every
+     * drag event (replacing the previous guess with one starting at the new point) and on every pulse (stretching
+     * the guess along, as time goes by without a new event), and hidden if there's nothing to predict. The tail is
+     * only an overlay on the sketchPane - it isn't a part of the line, so it's never saved, synced or undone.
+     */
+    private void showPenTail(long now) {
+        double[] predicted = this.penPredictor.predict(now, Constants.PEN_PREDICTION_MS);
+        if (predicted == null) {
+            this.penTail.setVisible(false);
+            return;
+        }
+        this.penTail.setStartX(this.penPredictor.getLastX());
+        this.penTail.setStartY(this.penPredictor.getLastY());
+        this.penTail.setEndX(predicted[0]);
+        this.penTail.setEndY(predicted[1]);
+        this.penTail.setVisible(true);
+    }
+
+    /** Helper method called once per pulse - every diff the document actor has published since the previous pulse
+     * is applied to the elements (each of them as a single command), and the actor is then told about the document
+     * as it is after them (and after whatever else has changed it since the previous pulse). Edits that have failed
+     * are reported on the status line.
+     */
+    private void applyEdits() {
+        for (DocumentDiff diff : this.actor.drain()) {
+            this.applyDiff(diff);
+            this.appliedEdits = diff.getSequence();
+        }
+        for (String failure : this.actor.drainFailures()) {
+            this.showStatus(failure);
+        }
+        this.actor.sync(this.snapshot(), this.appliedEdits);
+    }
+
+    /** Helper method applying the diff of an edit - an element is only changed (or removed) if its record is still
+     * the one the edit has read, its layer isn't locked or hidden, and it isn't a part of a group (groups are only
+     * ever changed as a whole), and elements the edit adds are created on top of the active layer. Elements are
+     * brought to their new records directly, and removed ones are taken out of the lists in one pass, after which
+     * the layers' panes get their children replaced in a single batch - so applying a diff costs as much as the
+     * number of elements it touches (plus one pass over the elements, if any is removed), and the changes become
+     * a single step of the history. The user is told how many elements have been left alone, if any.
+     */
+    private void applyDiff(DocumentDiff diff) {
+        ArrayList<Savable> changed = new ArrayList<>();
+        ArrayList<Savable> inserted = new ArrayList<>();
+        HashSet<Savable> removed = new HashSet<>();
+        int skipped = 0;
+        Pane layerPane = this.activeLayer.getPane();
+        for (int i = 0; i < diff.size(); i++) {
+            long id = diff.getId(i);
+            ShapeRecord updated = diff.getUpdated(i);
+            ShapeRecord current = this.document.get(id);
+            Savable element = this.elementsById.get(id);
+            if (diff.getBase(i) == null) {
+                if (current == null && element == null) {
+                    inserted.add(ElementFactory.create(updated, layerPane, this.shapes, this.elements));
+                } else {
+                    skipped++;
+                }
+            } else if (element == null || !diff.isCurrent(i, current) || !this.layerOf(id).isEditable()
+                    || this.groupOf.containsKey(id)) {
+                skipped++;
+            } else if (updated == null) {
+                removed.add(element);
+            } else {
+                changed.add(element);
+                element.applyRecord(updated);
+            }
+        }
+        if (skipped > 0) {
+            this.showStatus(diff.getName() + ": " + skipped + " elements were left alone (they were changed in the"
+                    + " meantime, or they're locked, hidden or grouped)");
+        }
+        if (changed.isEmpty() && inserted.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        this.placeInLayer(inserted, this.activeLayer);
+        if (!removed.isEmpty()) {
+            if (removed.contains(this.isSelected)) {
+                this.deselect();
+            }
+            this.picked.removeIf(removed::contains);
+            this.elements.removeIf(removed::contains);
+            this.rebuildScene();
+        }
+        this.performAction(new ApplyEdit(changed, inserted, new ArrayList<>(removed)));
+    }
+
+    /** Method returning a snapshot of the current state of the document - it costs O(1) and shares all of its
+     * memory with the live document, so it can be taken freely for saving, exporting or history checkpoints.
+     */
+    public DocumentSnapshot snapshot() {
+        return this.document.snapshot();
+    }
+
 
     /** Method below is called whenever a user decided to load a previously saved drawing based
      * on a button click. Depending on whether a file was selected, it clears the pane from currently
@@ -499,69 +1940,309 @@ public class Sketchy {
      * In case of the CurvedLine, it loops through all the points saved to a file (knowing their number,
      * as it's stated through the CurvedLine's save method) and adds them to a line firstly instantiated
      * with a starting point (one at the beginning of the point's list). If there's no more data to be read,
-     * the loop is terminated.
-     *
+     * the loop is terminated. Once all elements have been recreated, the document model is rebuilt from them.
+     * The file's header is only needed for previews, so its tokens are skipped.
      */
     public void load() {
         CS15FileIO io = new CS15FileIO();
         String fileName = io.getFileName(FALSE, this.stage);
         if (fileName != null) {
-            this.sketchPane.getChildren().clear();
-            this.shapes.clear();
-            this.elements.clear();
-            io.openRead(fileName);
-            while (io.hasMoreData()) {
-                String s = io.readString();
-                switch (s) {
-                    case "Rectangle":
-                        double locationX = io.readDouble();
-                        double locationY = io.readDouble();
-                        Point2D location = new Point2D(locationX, locationY);
-                        double width = io.readDouble();
-                        double height = io.readDouble();
-                        double angle = io.readDouble();
-                        double colorRed = io.readDouble();
-                        double colorGreen = io.readDouble();
-                        double colorBlue = io.readDouble();
-                        SketchyRectangle rect = new SketchyRectangle(this.sketchPane, location, (new Color(colorRed, colorGreen, colorBlue, 1)), this.shapes, this.elements);
-                        rect.setWidth(width);
-                        rect.setHeight(height);
-                        rect.setAngle(angle);
-                        break;
-                    case "Ellipse":
-                        double centerX2 = io.readDouble();
-                        double centerY2 = io.readDouble();
-                        Point2D center2 = new Point2D(centerX2, centerY2);
-                        double width2 = io.readDouble();
-                        double height2 = io.readDouble();
-                        double angle2 = io.readDouble();
-                        double colorRed2 = io.readDouble();
-                        double colorGreen2 = io.readDouble();
-                        double colorBlue2 = io.readDouble();
-                        SketchyEllipse ellipse = new SketchyEllipse(this.sketchPane, center2, (new Color(colorRed2, colorGreen2, colorBlue2, 1)), this.shapes, this.elements);
-                        ellipse.setWidth(width2);
-                        ellipse.setHeight(height2);
-                        ellipse.setAngle(angle2);
-                        break;
-                    case "CurvedLine":
-                        double colorRed3 = io.readDouble();
-                        double colorGreen3 = io.readDouble();
-                        double colorBlue3 = io.readDouble();
-                        int numberOfPoints = io.readInt();
-                        double startX = io.readDouble();
-                        double startY = io.readDouble();
-                        Point2D startingPoint = new Point2D(startX, startY);
-                        CurvedLine line = new CurvedLine(startingPoint, this.sketchPane, (new Color(colorRed3, colorGreen3, colorBlue3, 1)), this.elements);
-                        for (int i = 0; i < (numberOfPoints-2)/2; i++) {
-                            double point1X = io.readDouble();
-                            double point1Y = io.readDouble();
-                            Point2D newPoint = new Point2D(point1X, point1Y);
-                            line.addPoint(newPoint);
-                        }
-                        break;
-                }
-            } io.closeRead();
+            this.loadFile(fileName);
+        }
+    }
+
+    /** Method loading a given file (in place of the current drawing) - called by the load method once the user
+     * has chosen a file, and whenever a preview of a file is clicked on in the preview browser. Files bigger than
+     * PARALLEL_LOAD_THRESHOLD are handed over to the loadLargeFile method instead.
+     */
+    public void loadFile(String fileName) {
+        if (new File(fileName).length() >= Constants.PARALLEL_LOAD_THRESHOLD) {
+            this.loadLargeFile(fileName);
+            return;
+        }
+        CS15FileIO io = new CS15FileIO();
+        this.shapes.clear();
+        this.elements.clear();
+        this.resetLayers();
+        Pane layerPane = this.activeLayer.getPane();
+        io.openRead(fileName);
+        while (io.hasMoreData()) {
+            String s = io.readString();
+            switch (s) {
+                case SketchHeader.TAG:
+                    for (int i = 0; i < SketchHeader.FIELD_COUNT; i++) {
+                        io.readString();
+                    }
+                    break;
+                case "Rectangle":
+                    double locationX = io.readDouble();
+                    double locationY = io.readDouble();
+                    Point2D location = new Point2D(locationX, locationY);
+                    double width = io.readDouble();
+                    double height = io.readDouble();
+                    double angle = io.readDouble();
+                    double colorRed = io.readDouble();
+                    double colorGreen = io.readDouble();
+                    double colorBlue = io.readDouble();
+                    SketchyRectangle rect = new SketchyRectangle(layerPane, location, (new Color(colorRed, colorGreen, colorBlue, 1)), this.shapes, this.elements);
+                    rect.setWidth(width);
+                    rect.setHeight(height);
+                    rect.setAngle(angle);
+                    break;
+                case "Ellipse":
+                    double centerX2 = io.readDouble();
+                    double centerY2 = io.readDouble();
+                    Point2D center2 = new Point2D(centerX2, centerY2);
+                    double width2 = io.readDouble();
+                    double height2 = io.readDouble();
+                    double angle2 = io.readDouble();
+                    double colorRed2 = io.readDouble();
+                    double colorGreen2 = io.readDouble();
+                    double colorBlue2 = io.readDouble();
+                    SketchyEllipse ellipse = new SketchyEllipse(layerPane, center2, (new Color(colorRed2, colorGreen2, colorBlue2, 1)), this.shapes, this.elements);
+                    ellipse.setWidth(width2);
+                    ellipse.setHeight(height2);
+                    ellipse.setAngle(angle2);
+                    break;
+                case "CurvedLine":
+                    double colorRed3 = io.readDouble();
+                    double colorGreen3 = io.readDouble();
+                    double colorBlue3 = io.readDouble();
+                    int numberOfPoints = io.readInt();
+                    double startX = io.readDouble();
+                    double startY = io.readDouble();
+                    Point2D startingPoint = new Point2D(startX, startY);
+                    CurvedLine line = new CurvedLine(startingPoint, layerPane, (new Color(colorRed3, colorGreen3, colorBlue3, 1)), this.shapes, this.elements);
+                    for (int i = 0; i < (numberOfPoints-2)/2; i++) {
+                        double point1X = io.readDouble();
+                        double point1Y = io.readDouble();
+                        Point2D newPoint = new Point2D(point1X, point1Y);
+                        line.addPoint(newPoint);
+                    }
+                    break;
+                case "Fill":
+                    double centerX4 = io.readDouble();
+                    double centerY4 = io.readDouble();
+                    double width4 = io.readDouble();
+                    double height4 = io.readDouble();
+                    double angle4 = io.readDouble();
+                    double colorRed4 = io.readDouble();
+                    double colorGreen4 = io.readDouble();
+                    double colorBlue4 = io.readDouble();
+                    double[] mask = new double[io.readInt()];
+                    for (int i = 0; i < mask.length; i++) {
+                        mask[i] = io.readDouble();
+                    }
+                    ElementFactory.create(new ShapeRecord(ElementIds.next(), ElementType.FILL, centerX4, centerY4, width4, height4,
+                            angle4, colorRed4, colorGreen4, colorBlue4, mask, 0), layerPane, this.shapes, this.elements);
+                    break;
+                case Symbol.TAG:
+                    Symbol.decode(io.readString());
+                    break;
+                case "Instance":
+                    double centerX5 = io.readDouble();
+                    double centerY5 = io.readDouble();
+                    double width5 = io.readDouble();
+                    double height5 = io.readDouble();
+                    double angle5 = io.readDouble();
+                    double colorRed5 = io.readDouble();
+                    double colorGreen5 = io.readDouble();
+                    double colorBlue5 = io.readDouble();
+                    double[] reference = new double[io.readInt()];
+                    for (int i = 0; i < reference.length; i++) {
+                        reference[i] = io.readDouble();
+                    }
+                    ElementFactory.create(new ShapeRecord(ElementIds.next(), ElementType.INSTANCE, centerX5, centerY5, width5, height5,
+                            angle5, colorRed5, colorGreen5, colorBlue5, reference, 0), layerPane, this.shapes, this.elements);
+                    break;
+            }
+        } io.closeRead();
+        for (Savable element : this.elements) {
+            this.elementsById.put(element.getId(), element);
+        }
+        this.rebuildDocument();
+    }
+
+    /** Method loading a large file - the file is parsed into records on a background thread, on all cores at once
+     * (see ParallelSketchLoader), and only once all of them are ready (in their original order), the elements are
+     * created from them on the JavaFX thread and the document model is rebuilt in a single pass.
+     */
+    private void loadLargeFile(String fileName) {
+        Thread loader = new Thread(() -> {
+            try {
+                ArrayList<ShapeRecord> records = new ParallelSketchLoader(Runtime.getRuntime().availableProcessors())
+                        .load(Paths.get(fileName));
+                Platform.runLater(() -> this.materialize(records));
+            } catch (IOException e) {
+                Platform.runLater(() -> this.showStatus("Couldn't load " + fileName + ": " + e.getMessage()));
+            }
+        }, "sketchy-load");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /** Helper method replacing the current drawing with elements created from records (passed in z-order). */
+    private void materialize(ArrayList<ShapeRecord> records) {
+        this.deselect();
+        this.shapes.clear();
+        this.elements.clear();
+        this.resetLayers();
+        for (ShapeRecord record : records) {
+            Savable element = ElementFactory.create(record, this.activeLayer.getPane(), this.shapes, this.elements);
+            this.elementsById.put(element.getId(), element);
+        }
+        this.rebuildDocument();
+    }
+
+    /** Helper method rebuilding the document model from scratch (after a file has been loaded, or the document
+     * has been cleared) - the history starts anew from the rebuilt document, so the rebuild itself isn't recorded.
+     */
+    private void rebuildDocument() {
+        this.groups.clear();
+        this.groupedAt.clear();
+        this.ungroupedAt.clear();
+        this.groupOf.clear();
+        this.picked.clear();
+        this.layersSwappedAt.clear();
+        this.history.suspend();
+        this.document.rebuild(this.elements);
+        this.history.resume();
+        this.history.reset();
+        // the history has started anew, so the elements that left the document can't ever come back
+        this.releaseDetached();
+        this.refreshTimeline();
+        this.checkMemory();
+    }
+
+    /** Method called whenever the user clicks on the "Previews" button - opens a window with the previews of all
+     * sketches in a folder chosen by the user (read from the files' headers, without loading them).
+     */
+    public void browsePreviews() {
+        new PreviewBrowser(this).show(this.stage);
+    }
+
+    /** Method called whenever the user clicks on the "Open Large" button - opens a sketch chosen by the user in a
+     * window of its own, keeping its elements off the heap (see ArenaView), so that sketches far too big to be
+     * edited can still be looked through. The sketch being edited isn't touched.
+     */
+    public void openLarge() {
+        CS15FileIO io = new CS15FileIO();
+        String fileName = io.getFileName(FALSE, this.stage);
+        if (fileName != null) {
+            new ArenaView().open(fileName);
+        }
+    }
+
+    /** Method called whenever the user clicks on the "Collaborate" button - it starts a collaboration session
+     * on the default port (joining other editors working on the same sketch, or waiting for them to join),
+     * after which every change made by any of the editors is shared with all the other ones.
+     */
+    public void collaborate() {
+        if (this.collabSession == null) {
+            try {
+                this.collabSession = CollabSession.start(this, this.document, Constants.COLLAB_PORT);
+            } catch (IOException e) {
+                this.showStatus("Couldn't start collaborating: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Method applying a change made by another editor - the element with a given ID is brought to the state
+     * described by the record (it's created if it doesn't exist yet, and removed if the record is null).
+     * The element is then placed among the other elements according to the record's z value, both
+     * logically (in the arraylists) and graphically (in its layer's pane), and the record is stored in the document
+     * model - with the history suspended, as undoing is only ever meant to undo the user's own changes.
+     * Where the element was and where it goes are both found through the ranks of its records in the document's
+     * z-order tree (where it goes is then kept within the block of its layer's elements, found by a binary search),
+     * so no arraylist is searched - only once there are groups (whose nodes stand for all of their
+     * members, wherever they are), the scene is rebuilt instead.
+     * Layers are local to every editor - an element another editor has created joins the layer of the element
+     * right under it (or the bottom layer).
+     */
+    @Override
+    public void applyRemoteRecord(long id, ShapeRecord record) {
+        Savable element = this.elementsById.get(id);
+        ShapeRecord old = this.document.get(id);
+        if (element != null && old != null) {
+            if (element == this.isSelected) {
+                this.deselect();
+            }
+            this.removeElement(element, this.document.rank(old));
+        }
+        if (record == null) {
+            this.history.suspend();
+            this.document.remove(id);
+            this.history.resume();
+            return;
         }
+        // the old record is still in the model, so it's left out of the new one's rank
+        int index = this.document.rank(record) - ((old != null && ZOrderTree.compare(old, record) < 0) ? 1 : 0);
+        if (element == null) {
+            Layer layer = (index > 0) ? this.layerOf(this.elements.get(index - 1)) : this.layers.get(0);
+            this.layerOf.put(id, layer);
+            element = ElementFactory.create(record, layer.getPane(), this.shapes, this.elements);
+            this.elementsById.put(id, element);
+            this.removeElement(element, this.elements.size() - 1);
+        } else {
+            element.applyRecord(record);
+        }
+        // the rank counts the elements of all layers, so it's kept within the block of the element's own layer
+        int level = this.layers.indexOf(this.layerOf(id));
+        int start = this.firstAbove(this.elements, this.elements.size(), level - 1);
+        int end = this.firstAbove(this.elements, this.elements.size(), level);
+        index = Math.max(start, Math.min(index, end));
+        this.elements.add(index, element);
+        this.history.suspend();
+        this.document.apply(record);
+        this.history.resume();
+        if (!this.groupOf.isEmpty()) {
+            this.rebuildScene();
+        } else {
+            this.shapes.add(index, (SketchyShape) element);
+            ((SketchyShape) element).addToPane(index - start);
+        }
+        this.checkMemory();
+    }
+
+    /** Helper method removing an element both graphically and logically, given where it's expected to be in the
+     * elements arraylist (and in the shapes arraylist too, which holds the same elements as long as there are no
+     * groups) - the arraylists are only searched if it isn't there.
+     */
+    private void removeElement(Savable element, int index) {
+        if (!this.groupOf.isEmpty() || index < 0 || index >= this.elements.size() || this.elements.get(index) != element
+                || index >= this.shapes.size() || this.shapes.get(index) != element) {
+            this.removeElement(element);
+            return;
+        }
+        ((SketchyShape) element).remove();
+        this.elements.remove(index);
+        this.shapes.remove(index);
+    }
+
+    /** Method called whenever the collaboration session ends on its own - the user is told why, and can start
+     * collaborating again.
+     */
+    @Override
+    public void sessionEnded(String reason) {
+        this.collabSession = null;
+        this.showStatus(reason);
+    }
+
+    /** Method removing all elements from the pane (and the document), before another editor's document is received. */
+    @Override
+    public void clearDocument() {
+        this.deselect();
+        this.shapes.clear();
+        this.elements.clear();
+        this.resetLayers();
+        this.rebuildDocument();
+    }
+
+    /** Helper method removing an element both graphically and logically. */
+    private void removeElement(Savable element) {
+        ((SketchyShape) element).remove();
+        this.shapes.remove(element);
+        this.elements.remove(element);
     }
 }
 
@@ -0,0 +1,88 @@
+package sketchy.main;
+
+import javafx.scene.input.MouseEvent;
+import javafx.scene.paint.Color;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** Recorder of the stream of mouse events the sketchPane receives, so that a session can later be replayed
+ * exactly as it happened (see TraceReplay). The trace is a compact binary file - a header (the MAGIC int and the
+ * format VERSION byte) followed by one entry per event:
+ *
+ *   byte kind | byte modifiers | byte option | float x | float y | varint time | (presses only) 4 doubles color
+ *
+ * where kind is PRESSED, DRAGGED or RELEASED, modifiers are the SHIFT, CONTROL, ALT and META bits, option is the
+ * ordinal of the selected Options value plus one (zero if none is selected), time is the number of microseconds
+ * since the previous event (as an unsigned LEB128 varint, so most drags take a single byte), and the color is
+ * the picker's red, green, blue and opacity at the moment of a press. A drag thus takes 12 bytes or so.
+ */
+public class TraceRecorder implements AutoCloseable {
+    public static final int MAGIC = 0x534B5452;
+    public static final int VERSION = 1;
+    public static final int PRESSED = 0;
+    public static final int DRAGGED = 1;
+    public static final int RELEASED = 2;
+    public static final int SHIFT = 1;
+    public static final int CONTROL = 2;
+    public static final int ALT = 4;
+    public static final int META = 8;
+
+    private DataOutputStream out;
+    private Path file;
+    private long lastEvent;
+    private int events;
+
+    public TraceRecorder(Path file) throws IOException {
+        this.file = file;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+        this.lastEvent = System.nanoTime();
+    }
+
+    /** Method appending an event to the trace - the color is only written for presses (and can be null otherwise). */
+    public void record(int kind, MouseEvent e, Options option, Color color) throws IOException {
+        long now = System.nanoTime();
+        int modifiers = (e.isShiftDown() ? SHIFT : 0) | (e.isControlDown() ? CONTROL : 0)
+                | (e.isAltDown() ? ALT : 0) | (e.isMetaDown() ? META : 0);
+        this.out.writeByte(kind);
+        this.out.writeByte(modifiers);
+        this.out.writeByte((option == null) ? 0 : option.ordinal() + 1);
+        this.out.writeFloat((float) e.getX());
+        this.out.writeFloat((float) e.getY());
+        writeVarint(this.out, Math.max(0, (now - this.lastEvent) / 1000));
+        if (kind == PRESSED) {
+            this.out.writeDouble(color.getRed());
+            this.out.writeDouble(color.getGreen());
+            this.out.writeDouble(color.getBlue());
+            this.out.writeDouble(color.getOpacity());
+        }
+        this.lastEvent = now;
+        this.events++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.out.close();
+    }
+
+    public Path getFile() {
+        return this.file;
+    }
+
+    public int getEvents() {
+        return this.events;
+    }
+
+    private static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
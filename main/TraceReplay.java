@@ -0,0 +1,190 @@
+package sketchy.main;
+
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** Headless replay of a recorded input trace (see TraceRecorder), run from the command line:
+ *   java sketchy.main.TraceReplay file.trace [runs]
+ * Every run creates a fresh Sketchy on a pane that's never shown (no stage, no window), and feeds it all events
+ * of the trace through its onMousePressed, onMouseDragged and onMouseReleased methods, as quickly as possible
+ * and in the recorded order - so a run is exactly the session the user had, minus the rendering (the Sketchy is
+ * shut down once its run is over, so no run leaves threads behind). The first run
+ * warms the JIT up and isn't counted (unless it's the only one). For every kind of event, the replay reports how
+ * long the calls took (percentiles, and a histogram with power-of-two buckets in microseconds) and how much
+ * they allocated, so that a session which felt slow becomes a repeatable performance test.
+ */
+public class TraceReplay {
+    private static final String[] KINDS = {"pressed", "dragged", "released"};
+    private static final int BUCKETS = 24;
+
+    private ArrayList<MouseEvent> events;
+    private int[] kinds;
+    private Options[] options;
+    private Color[] colors;
+    private long recordedMicros;
+
+    public TraceReplay(String fileName) throws IOException {
+        this.events = new ArrayList<>();
+        ArrayList<Integer> kinds = new ArrayList<>();
+        ArrayList<Options> options = new ArrayList<>();
+        ArrayList<Color> colors = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(fileName)), 1 << 16))) {
+            if (in.readInt() != TraceRecorder.MAGIC || in.readByte() != TraceRecorder.VERSION) {
+                throw new IOException(fileName + " isn't an input trace");
+            }
+            int kind;
+            while ((kind = in.read()) >= 0) {
+                int modifiers = in.readUnsignedByte();
+                int option = in.readUnsignedByte();
+                double x = in.readFloat();
+                double y = in.readFloat();
+                this.recordedMicros += readVarint(in);
+                Color color = null;
+                if (kind == TraceRecorder.PRESSED) {
+                    color = new Color(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+                }
+                kinds.add(kind);
+                options.add((option == 0) ? null : Options.values()[option - 1]);
+                colors.add(color);
+                this.events.add(toEvent(kind, modifiers, x, y));
+            }
+        }
+        this.kinds = kinds.stream().mapToInt(Integer::intValue).toArray();
+        this.options = options.toArray(new Options[0]);
+        this.colors = colors.toArray(new Color[0]);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java sketchy.main.TraceReplay <file.trace> [runs]");
+            return;
+        }
+        int runs = (args.length > 1) ? Math.max(1, Integer.parseInt(args[1])) : 5;
+        new TraceReplay(args[0]).run(runs);
+    }
+
+    /** Method replaying the trace a given number of times, and printing the statistics of all runs but the first. */
+    public void run(int runs) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int n = this.events.size();
+        long[][] latencies = new long[KINDS.length][];
+        long[] allocated = new long[KINDS.length];
+        long[] counts = new long[KINDS.length];
+        for (int k = 0; k < KINDS.length; k++) {
+            latencies[k] = new long[n * Math.max(1, runs - 1)];
+        }
+        long replayNanos = 0;
+        for (int run = 0; run < runs; run++) {
+            boolean counted = (run > 0 || runs == 1);
+            Sketchy sketchy = new Sketchy(new Pane(), null);
+            long runStart = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                int kind = this.kinds[i];
+                long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                if (kind == TraceRecorder.PRESSED) {
+                    sketchy.onMousePressed(this.events.get(i), this.options[i], this.colors[i]);
+                } else if (kind == TraceRecorder.DRAGGED) {
+                    sketchy.onMouseDragged(this.events.get(i), this.options[i]);
+                } else {
+                    sketchy.onMouseReleased(this.options[i]);
+                }
+                long elapsed = System.nanoTime() - start;
+                long bytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+                if (counted) {
+                    latencies[kind][(int) counts[kind]++] = elapsed;
+                    allocated[kind] += bytes;
+                }
+            }
+            if (counted) {
+                replayNanos += System.nanoTime() - runStart;
+            }
+            sketchy.shutdown();
+        }
+        int countedRuns = Math.max(1, runs - 1);
+        System.out.println(n + " events, recorded over " + this.recordedMicros / 1000 + " ms, replayed in "
+                + replayNanos / countedRuns / 1000000 + " ms per run (" + countedRuns + " run(s) counted)");
+        long totalAllocated = 0;
+        for (int k = 0; k < KINDS.length; k++) {
+            totalAllocated += allocated[k];
+            if (counts[k] == 0) {
+                continue;
+            }
+            long[] sorted = Arrays.copyOf(latencies[k], (int) counts[k]);
+            Arrays.sort(sorted);
+            System.out.println(KINDS[k] + ": " + counts[k] + " events, p50/p90/p99/max "
+                    + micros(percentile(sorted, 0.5)) + " / " + micros(percentile(sorted, 0.9)) + " / "
+                    + micros(percentile(sorted, 0.99)) + " / " + micros(percentile(sorted, 1.0)) + " us, "
+                    + allocated[k] / counts[k] + " bytes allocated per event");
+            System.out.println("  " + histogram(sorted));
+        }
+        if (replayNanos > 0) {
+            System.out.println("allocation rate: " + String.format("%.1f", totalAllocated / 1e6 / (replayNanos / 1e9)) + " MB/s");
+        }
+    }
+
+    /** Helper method describing how many latencies fall into each power-of-two bucket (in microseconds). */
+    private static String histogram(long[] sorted) {
+        long[] buckets = new long[BUCKETS];
+        for (long latency : sorted) {
+            long micros = latency / 1000;
+            int bucket = (micros == 0) ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            buckets[bucket]++;
+        }
+        StringBuilder text = new StringBuilder();
+        for (int b = 0; b < BUCKETS; b++) {
+            if (buckets[b] > 0) {
+                if (text.length() > 0) {
+                    text.append(", ");
+                }
+                text.append("<").append(1L << b).append("us: ").append(buckets[b]);
+            }
+        }
+        return text.toString();
+    }
+
+    private static MouseEvent toEvent(int kind, int modifiers, double x, double y) {
+        boolean shift = (modifiers & TraceRecorder.SHIFT) != 0;
+        boolean control = (modifiers & TraceRecorder.CONTROL) != 0;
+        boolean alt = (modifiers & TraceRecorder.ALT) != 0;
+        boolean meta = (modifiers & TraceRecorder.META) != 0;
+        boolean down = kind != TraceRecorder.RELEASED;
+        return new MouseEvent((kind == TraceRecorder.PRESSED) ? MouseEvent.MOUSE_PRESSED
+                : (kind == TraceRecorder.DRAGGED) ? MouseEvent.MOUSE_DRAGGED : MouseEvent.MOUSE_RELEASED,
+                x, y, x, y, MouseButton.PRIMARY, 1, shift, control, alt, meta, down, false, false, false, false, false, null);
+    }
+
+    private static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated input trace");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))];
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1f", nanos / 1000.0);
+    }
+}
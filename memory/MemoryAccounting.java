@@ -0,0 +1,284 @@
+package sketchy.memory;
+
+import sketchy.document.DocumentListener;
+import sketchy.history.History;
+import sketchy.history.HistoryStore;
+import sketchy.shapes.ElementType;
+import sketchy.shapes.ShapeRecord;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/** Accounting of the memory a document keeps alive, per type of element and for its history. Measuring the heap
+ * an object graph retains would mean walking it, so the accounting estimates it instead, from what every record
+ * says about its element: each element costs its record (along with its share of the document model's trie and
+ * treap), its scene node, and whatever it keeps per point (a line's points, boxed in its polyline and kept in its
+ * own array) or per cell (a fill's image). The accounting listens to the document model, so the figures follow
+ * every change in O(1) - no matter whether it comes from a command, a seek through the history or another editor.
+ * Elements that leave the document are still kept by Sketchy (so that undoing their removal brings the same
+ * elements back) - those are counted as kept for undo, until they come back or Sketchy lets go of them.
+ * After every change, Sketchy asks for a check, which publishes a snapshot of the figures (see MemoryStats) for
+ * the stats panel and the MBean, and tells whether the document has just gone over one of its soft limits - either
+ * the estimated total, or the share of the maximum heap that's still in use after the last garbage collection.
+ */
+public class MemoryAccounting implements DocumentListener, MemoryAccountingMBean {
+    private static final long RECORD_BYTES = 104;
+    private static final long MODEL_BYTES = 80;
+    private static final long ARRAY_BYTES = 16;
+    private static final long NODE_BYTES = 1400;
+    private static final long BYTES_PER_LINE_COORDINATE = 8 + 20;
+    private static final long BYTES_PER_FILL_CELL = 2 * 4;
+    private static final long STEP_BYTES = 64;
+    private static final AtomicInteger REGISTERED = new AtomicInteger();
+
+    private History history;
+    private long[] counts;
+    private long[] recordBytes;
+    private long[] nodeBytes;
+    private long linePoints;
+    private HashMap<Long, Long> retained;
+    private long retainedBytes;
+    private volatile MemoryStats stats;
+    private volatile long softLimit;
+    private volatile double heapLimit;
+    private volatile boolean autoTrim;
+    private volatile boolean overLimit;
+    private Runnable trimmer;
+
+    /** Constructor taking in the history to account for, and the soft limits (0 turns a limit off). */
+    public MemoryAccounting(History history, long softLimit, double heapLimit) {
+        this.history = history;
+        this.counts = new long[ElementType.values().length];
+        this.recordBytes = new long[ElementType.values().length];
+        this.nodeBytes = new long[ElementType.values().length];
+        this.retained = new HashMap<>();
+        this.softLimit = softLimit;
+        this.heapLimit = heapLimit;
+        this.check();
+    }
+
+    @Override
+    public void recordChanged(ShapeRecord old, ShapeRecord updated) {
+        if (old != null) {
+            this.count(old, -1);
+            if (updated == null) {
+                long bytes = nodeBytesOf(old);
+                Long previous = this.retained.put(old.getId(), bytes);
+                this.retainedBytes += bytes - ((previous == null) ? 0 : previous);
+            }
+        }
+        if (updated != null) {
+            this.count(updated, 1);
+            if (old == null) {
+                this.released(updated.getId());
+            }
+        }
+    }
+
+    /** Method telling the accounting that an element out of the document isn't kept anymore. */
+    public void released(long id) {
+        Long bytes = this.retained.remove(id);
+        if (bytes != null) {
+            this.retainedBytes -= bytes;
+        }
+    }
+
+    /** Method publishing a new snapshot of the figures, and returning whether the document has just gone over one
+     * of its soft limits (it has to get back under them before this is reported again).
+     */
+    public boolean check() {
+        long liveHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage collected = (pool.getType() == MemoryType.HEAP) ? pool.getCollectionUsage() : null;
+            if (collected != null) {
+                liveHeap += collected.getUsed();
+            }
+        }
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        HistoryStore store = this.history.getStore();
+        MemoryStats stats = new MemoryStats(this.counts.clone(), this.recordBytes.clone(), this.nodeBytes.clone(),
+                this.linePoints, this.retained.size(), this.retainedBytes, this.history.getStepCount(),
+                this.history.getStepCount() * STEP_BYTES, store.getRingSize(), store.getSpilledSize(), liveHeap, maxHeap);
+        this.stats = stats;
+        boolean over = (this.softLimit > 0 && stats.getEstimatedBytes() > this.softLimit)
+                || (this.heapLimit > 0 && liveHeap > this.heapLimit * maxHeap);
+        boolean crossed = over && !this.overLimit;
+        this.overLimit = over;
+        return crossed;
+    }
+
+    /** Method setting what the trimHistory operation does - Sketchy passes in a trim run on the JavaFX thread. */
+    public void setTrimmer(Runnable trimmer) {
+        this.trimmer = trimmer;
+    }
+
+    /** Method registering the accounting with the platform's MBean server (each instance under a name of its own). */
+    public void register() {
+        try {
+            ObjectName name = new ObjectName("sketchy:type=MemoryAccounting,name=document" + REGISTERED.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        } catch (JMException e) {
+            System.err.println("Couldn't register the memory accounting: " + e.getMessage());
+        }
+    }
+
+    public MemoryStats getStats() {
+        return this.stats;
+    }
+
+    @Override
+    public long getElementCount() {
+        return this.stats.getElementCount();
+    }
+
+    @Override
+    public long getRectangleBytes() {
+        return this.stats.getBytes(ElementType.RECTANGLE);
+    }
+
+    @Override
+    public long getEllipseBytes() {
+        return this.stats.getBytes(ElementType.ELLIPSE);
+    }
+
+    @Override
+    public long getLineBytes() {
+        return this.stats.getBytes(ElementType.CURVED_LINE);
+    }
+
+    @Override
+    public long getLinePoints() {
+        return this.stats.getLinePoints() / 2;
+    }
+
+    @Override
+    public long getFillBytes() {
+        return this.stats.getBytes(ElementType.FILL);
+    }
+
+    @Override
+    public long getSceneNodeBytes() {
+        return this.stats.getNodeBytes();
+    }
+
+    @Override
+    public long getRecordBytes() {
+        return this.stats.getRecordBytes();
+    }
+
+    @Override
+    public int getHistorySteps() {
+        return this.stats.getHistorySteps();
+    }
+
+    @Override
+    public long getHistoryHeapBytes() {
+        return this.stats.getHistoryHeapBytes();
+    }
+
+    @Override
+    public long getHistoryOffHeapBytes() {
+        return this.stats.getHistoryOffHeapBytes();
+    }
+
+    @Override
+    public long getHistorySpilledBytes() {
+        return this.stats.getHistorySpilledBytes();
+    }
+
+    @Override
+    public int getRetainedForUndoElements() {
+        return this.stats.getRetainedElements();
+    }
+
+    @Override
+    public long getRetainedForUndoBytes() {
+        return this.stats.getRetainedBytes();
+    }
+
+    @Override
+    public long getEstimatedBytes() {
+        return this.stats.getEstimatedBytes();
+    }
+
+    @Override
+    public long getLiveHeapBytes() {
+        return this.stats.getLiveHeapBytes();
+    }
+
+    @Override
+    public long getMaxHeapBytes() {
+        return this.stats.getMaxHeapBytes();
+    }
+
+    @Override
+    public long getSoftLimitBytes() {
+        return this.softLimit;
+    }
+
+    @Override
+    public void setSoftLimitBytes(long softLimit) {
+        this.softLimit = softLimit;
+    }
+
+    @Override
+    public double getHeapLimitRatio() {
+        return this.heapLimit;
+    }
+
+    @Override
+    public void setHeapLimitRatio(double heapLimit) {
+        this.heapLimit = heapLimit;
+    }
+
+    @Override
+    public boolean isAutoTrim() {
+        return this.autoTrim;
+    }
+
+    @Override
+    public void setAutoTrim(boolean autoTrim) {
+        this.autoTrim = autoTrim;
+    }
+
+    @Override
+    public boolean isOverLimit() {
+        return this.overLimit;
+    }
+
+    @Override
+    public void trimHistory() {
+        if (this.trimmer != null) {
+            this.trimmer.run();
+        }
+    }
+
+    /** Helper method adding an element's estimated bytes to its type's figures (or taking them away). */
+    private void count(ShapeRecord record, int sign) {
+        int type = record.getType().ordinal();
+        this.counts[type] += sign;
+        // the instances of a symbol all share one array (see Symbol)
+        long arrayBytes = (record.getType() == ElementType.INSTANCE) ? 0 : ARRAY_BYTES + 8L * record.getPoints().length;
+        this.recordBytes[type] += sign * (RECORD_BYTES + MODEL_BYTES + arrayBytes);
+        this.nodeBytes[type] += sign * nodeBytesOf(record);
+        if (record.getType() == ElementType.CURVED_LINE) {
+            this.linePoints += sign * record.getPoints().length;
+        }
+    }
+
+    /** Helper method estimating the bytes an element keeps besides its record - its node, and its points or image. */
+    private static long nodeBytesOf(ShapeRecord record) {
+        double[] points = record.getPoints();
+        if (record.getType() == ElementType.CURVED_LINE) {
+            return NODE_BYTES + BYTES_PER_LINE_COORDINATE * points.length;
+        } else if (record.getType() == ElementType.FILL && points.length >= 2) {
+            return NODE_BYTES + BYTES_PER_FILL_CELL * (long) points[0] * (long) points[1];
+        }
+        return NODE_BYTES;
+    }
+}
@@ -0,0 +1,58 @@
+package sketchy.memory;
+
+/** Management interface of the memory accounting (see MemoryAccounting), through which the figures of a running
+ * Sketchy can be watched (and its limits changed) from any JMX console. All sizes are in bytes - they're
+ * estimates of what the elements and the history keep alive, as of the last change of the document.
+ */
+public interface MemoryAccountingMBean {
+    long getElementCount();
+
+    long getRectangleBytes();
+
+    long getEllipseBytes();
+
+    long getLineBytes();
+
+    long getLinePoints();
+
+    long getFillBytes();
+
+    long getSceneNodeBytes();
+
+    long getRecordBytes();
+
+    int getHistorySteps();
+
+    long getHistoryHeapBytes();
+
+    long getHistoryOffHeapBytes();
+
+    long getHistorySpilledBytes();
+
+    int getRetainedForUndoElements();
+
+    long getRetainedForUndoBytes();
+
+    long getEstimatedBytes();
+
+    long getLiveHeapBytes();
+
+    long getMaxHeapBytes();
+
+    long getSoftLimitBytes();
+
+    void setSoftLimitBytes(long softLimit);
+
+    double getHeapLimitRatio();
+
+    void setHeapLimitRatio(double heapLimit);
+
+    boolean isAutoTrim();
+
+    void setAutoTrim(boolean autoTrim);
+
+    boolean isOverLimit();
+
+    /** Operation dropping the elements and the old steps only the history keeps (see Sketchy's trimHistory). */
+    void trimHistory();
+}
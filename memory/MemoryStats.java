@@ -0,0 +1,144 @@
+package sketchy.memory;
+
+import sketchy.shapes.ElementType;
+
+/** Immutable snapshot of the figures gathered by the memory accounting - taken on the JavaFX thread after every
+ * change, so that it can be read from anywhere (the stats panel, or a JMX console) without locking anything.
+ * Sizes are estimated bytes, per type of element (indexed by the ordinal of its ElementType).
+ */
+public final class MemoryStats {
+    private final long[] counts;
+    private final long[] recordBytes;
+    private final long[] nodeBytes;
+    private final long linePoints;
+    private final int retainedElements;
+    private final long retainedBytes;
+    private final int historySteps;
+    private final long historyHeapBytes;
+    private final long historyOffHeapBytes;
+    private final long historySpilledBytes;
+    private final long liveHeapBytes;
+    private final long maxHeapBytes;
+
+    public MemoryStats(long[] counts, long[] recordBytes, long[] nodeBytes, long linePoints, int retainedElements,
+                       long retainedBytes, int historySteps, long historyHeapBytes, long historyOffHeapBytes,
+                       long historySpilledBytes, long liveHeapBytes, long maxHeapBytes) {
+        this.counts = counts;
+        this.recordBytes = recordBytes;
+        this.nodeBytes = nodeBytes;
+        this.linePoints = linePoints;
+        this.retainedElements = retainedElements;
+        this.retainedBytes = retainedBytes;
+        this.historySteps = historySteps;
+        this.historyHeapBytes = historyHeapBytes;
+        this.historyOffHeapBytes = historyOffHeapBytes;
+        this.historySpilledBytes = historySpilledBytes;
+        this.liveHeapBytes = liveHeapBytes;
+        this.maxHeapBytes = maxHeapBytes;
+    }
+
+    public long getCount(ElementType type) {
+        return this.counts[type.ordinal()];
+    }
+
+    /** Accessor method returning the bytes taken by the elements of a type - their records and their nodes. */
+    public long getBytes(ElementType type) {
+        return this.recordBytes[type.ordinal()] + this.nodeBytes[type.ordinal()];
+    }
+
+    public long getElementCount() {
+        long count = 0;
+        for (long typeCount : this.counts) {
+            count += typeCount;
+        }
+        return count;
+    }
+
+    public long getRecordBytes() {
+        long bytes = 0;
+        for (long typeBytes : this.recordBytes) {
+            bytes += typeBytes;
+        }
+        return bytes;
+    }
+
+    public long getNodeBytes() {
+        long bytes = 0;
+        for (long typeBytes : this.nodeBytes) {
+            bytes += typeBytes;
+        }
+        return bytes;
+    }
+
+    public long getLinePoints() {
+        return this.linePoints;
+    }
+
+    public int getRetainedElements() {
+        return this.retainedElements;
+    }
+
+    public long getRetainedBytes() {
+        return this.retainedBytes;
+    }
+
+    public int getHistorySteps() {
+        return this.historySteps;
+    }
+
+    public long getHistoryHeapBytes() {
+        return this.historyHeapBytes;
+    }
+
+    /** Accessor method returning the number of bytes of the history's log held in its ring outside of the heap (the
+     * rest of the log is spilled to disk) - both shrink once the history is trimmed.
+     */
+    public long getHistoryOffHeapBytes() {
+        return this.historyOffHeapBytes;
+    }
+
+    public long getHistorySpilledBytes() {
+        return this.historySpilledBytes;
+    }
+
+    /** Accessor method returning the heap in use after the most recent garbage collection (0 if there's been none). */
+    public long getLiveHeapBytes() {
+        return this.liveHeapBytes;
+    }
+
+    public long getMaxHeapBytes() {
+        return this.maxHeapBytes;
+    }
+
+    /** Accessor method returning everything the document and its history are estimated to keep on the heap. */
+    public long getEstimatedBytes() {
+        return this.getRecordBytes() + this.getNodeBytes() + this.historyHeapBytes + this.retainedBytes;
+    }
+
+    /** Method describing the figures in a few lines, as shown by the stats panel. */
+    public String describe() {
+        return "Rectangles: " + this.getCount(ElementType.RECTANGLE) + " (" + format(this.getBytes(ElementType.RECTANGLE)) + ")\n"
+                + "Ellipses: " + this.getCount(ElementType.ELLIPSE) + " (" + format(this.getBytes(ElementType.ELLIPSE)) + ")\n"
+                + "Lines: " + this.getCount(ElementType.CURVED_LINE) + ", " + this.linePoints / 2 + " points ("
+                + format(this.getBytes(ElementType.CURVED_LINE)) + ")\n"
+                + "Fills: " + this.getCount(ElementType.FILL) + " (" + format(this.getBytes(ElementType.FILL)) + ")\n"
+                + "Instances: " + this.getCount(ElementType.INSTANCE) + " (" + format(this.getBytes(ElementType.INSTANCE)) + ")\n"
+                + "Scene nodes: " + format(this.getNodeBytes()) + "\n"
+                + "History: " + this.historySteps + " steps (" + format(this.historyHeapBytes) + ", "
+                + format(this.historyOffHeapBytes) + " off heap, " + format(this.historySpilledBytes) + " on disk)\n"
+                + "Kept for undo: " + this.retainedElements + " elements (" + format(this.retainedBytes) + ")\n"
+                + "Total: " + format(this.getEstimatedBytes()) + " (heap " + format(this.liveHeapBytes) + " of "
+                + format(this.maxHeapBytes) + ")";
+    }
+
+    private static String format(long bytes) {
+        if (bytes < 1 << 10) {
+            return bytes + " B";
+        } else if (bytes < 1 << 20) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        } else if (bytes < 1 << 30) {
+            return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        }
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+}
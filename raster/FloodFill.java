@@ -0,0 +1,179 @@
+package sketchy.raster;
+
+import sketchy.shapes.ElementIds;
+import sketchy.shapes.ElementType;
+import sketchy.shapes.ShapeRecord;
+import java.util.Arrays;
+import java.util.List;
+
+/** Bucket fill working on a raster image of the document - the records are drawn by the TileRasterizer into a
+ * block of pixels (at a given scale), and the region around the clicked pixel is found by a scanline flood fill:
+ * starting from a seed, a whole horizontal span of matching pixels is taken at once, and only one new seed is
+ * pushed per run of matching pixels in the rows right above and below it. A pixel matches when each of its
+ * channels differs from the clicked pixel's by at most the tolerance, so that e.g. the region bounded by
+ * overlapping strokes and shapes is filled, even though none of them encloses it on its own.
+ * The result is a fill record, its mask holding the spans that have been filled. Since an image of the canvas
+ * takes a few megabytes, all the buffers are kept and reused by the next fill (they're only reallocated when
+ * the canvas grows) - filled pixels are marked with the number of the fill rather than a flag, so the marks
+ * never have to be cleared either. Only one fill runs at a time.
+ */
+public class FloodFill {
+    private static final int BACKGROUND = 0xFFFFFFFF;
+
+    private double scale;
+    private int tolerance;
+    private int[] pixels = new int[0];
+    private int[] marks = new int[0];
+    private int generation;
+    private int[] stack = new int[1024];
+    private long[] spans = new long[256];
+
+    public FloodFill(double scale, int tolerance) {
+        this.scale = scale;
+        this.tolerance = tolerance;
+    }
+
+    /** Method filling the region around a point of a document (whose records are passed in z-order) of a given
+     * width and height, with a given color - returns the record of the fill, or null if the point lies outside
+     * of the document.
+     */
+    public synchronized ShapeRecord fill(List<ShapeRecord> records, double documentWidth, double documentHeight,
+                                         double x, double y, double red, double green, double blue) {
+        int width = (int) Math.ceil(documentWidth * this.scale);
+        int height = (int) Math.ceil(documentHeight * this.scale);
+        int seedX = (int) Math.floor(x * this.scale);
+        int seedY = (int) Math.floor(y * this.scale);
+        if (seedX < 0 || seedY < 0 || seedX >= width || seedY >= height) {
+            return null;
+        }
+        this.rasterize(records, width, height);
+        int count = this.flood(width, height, seedX, seedY);
+
+        Arrays.sort(this.spans, 0, count);
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            minY = Math.min(minY, row(this.spans[i]));
+            maxY = Math.max(maxY, row(this.spans[i]));
+            minX = Math.min(minX, from(this.spans[i]));
+            maxX = Math.max(maxX, to(this.spans[i]));
+        }
+        int columns = maxX - minX;
+        int rows = maxY - minY + 1;
+        double[] mask = new double[2 + 3 * count];
+        mask[0] = columns;
+        mask[1] = rows;
+        for (int i = 0; i < count; i++) {
+            mask[2 + 3 * i] = row(this.spans[i]) - minY;
+            mask[3 + 3 * i] = from(this.spans[i]) - minX;
+            mask[4 + 3 * i] = to(this.spans[i]) - minX;
+        }
+        double halfWidth = columns / this.scale / 2;
+        double halfHeight = rows / this.scale / 2;
+        return new ShapeRecord(ElementIds.next(), ElementType.FILL, minX / this.scale + halfWidth, minY / this.scale + halfHeight,
+                halfWidth, halfHeight, 0, red, green, blue, mask, 0);
+    }
+
+    /** Helper method drawing the records into the pixel buffer (over a white background). */
+    private void rasterize(List<ShapeRecord> records, int width, int height) {
+        int size = width * height;
+        if (this.pixels.length < size) {
+            this.pixels = new int[size];
+            this.marks = new int[size];
+            this.generation = 0;
+        }
+        Arrays.fill(this.pixels, 0, size, BACKGROUND);
+        TileRasterizer rasterizer = new TileRasterizer(this.scale);
+        for (ShapeRecord record : records) {
+            rasterizer.draw(record, this.pixels, width, 0, 0, 0, width, height);
+        }
+    }
+
+    /** Helper method marking the region around the seed, and collecting its spans (returns their number). */
+    private int flood(int width, int height, int seedX, int seedY) {
+        if (++this.generation == Integer.MAX_VALUE) {
+            Arrays.fill(this.marks, 0);
+            this.generation = 1;
+        }
+        int seed = this.pixels[seedY * width + seedX];
+        int count = 0;
+        int top = 0;
+        top = this.push(top, seedX, seedY);
+        while (top > 0) {
+            int y = this.stack[--top];
+            int x = this.stack[--top];
+            int rowStart = y * width;
+            if (!this.fillable(rowStart + x, seed)) {
+                continue;
+            }
+            int left = x;
+            while (left > 0 && this.fillable(rowStart + left - 1, seed)) {
+                left--;
+            }
+            int right = x;
+            while (right < width - 1 && this.fillable(rowStart + right + 1, seed)) {
+                right++;
+            }
+            Arrays.fill(this.marks, rowStart + left, rowStart + right + 1, this.generation);
+            if (count == this.spans.length) {
+                this.spans = Arrays.copyOf(this.spans, 2 * count);
+            }
+            this.spans[count++] = span(y, left, right + 1);
+            // one seed per run of fillable pixels right above and right below the span
+            for (int next = y - 1; next <= y + 1; next += 2) {
+                if (next < 0 || next >= height) {
+                    continue;
+                }
+                int nextStart = next * width;
+                boolean inRun = false;
+                for (int column = left; column <= right; column++) {
+                    boolean fillable = this.fillable(nextStart + column, seed);
+                    if (fillable && !inRun) {
+                        top = this.push(top, column, next);
+                    }
+                    inRun = fillable;
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Helper method checking whether a pixel hasn't been filled yet, and is close enough to the seed's color. */
+    private boolean fillable(int index, int seed) {
+        if (this.marks[index] == this.generation) {
+            return false;
+        }
+        int pixel = this.pixels[index];
+        return Math.abs(((pixel >> 16) & 0xFF) - ((seed >> 16) & 0xFF)) <= this.tolerance
+                && Math.abs(((pixel >> 8) & 0xFF) - ((seed >> 8) & 0xFF)) <= this.tolerance
+                && Math.abs((pixel & 0xFF) - (seed & 0xFF)) <= this.tolerance;
+    }
+
+    private int push(int top, int x, int y) {
+        if (top + 2 > this.stack.length) {
+            this.stack = Arrays.copyOf(this.stack, 2 * this.stack.length);
+        }
+        this.stack[top] = x;
+        this.stack[top + 1] = y;
+        return top + 2;
+    }
+
+    /** Helper method packing a span into a long that sorts by row, and then by column (21 bits per number). */
+    private static long span(int row, int from, int to) {
+        return ((long) row << 42) | ((long) from << 21) | to;
+    }
+
+    private static int row(long span) {
+        return (int) (span >>> 42);
+    }
+
+    private static int from(long span) {
+        return (int) ((span >>> 21) & 0x1FFFFF);
+    }
+
+    private static int to(long span) {
+        return (int) (span & 0x1FFFFF);
+    }
+}
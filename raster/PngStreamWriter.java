@@ -0,0 +1,193 @@
+package sketchy.raster;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/** Streaming PNG encoder - the image is written band by band (a band being a number of consecutive rows), so
+ * the whole image never has to be held in memory, no matter how big it is.
+ * Bands can be compressed independently (and so, in parallel) through the compress method: each band's rows are
+ * filtered one by one and fed into a deflater of its own, which is flushed at the end of the band - the compressed
+ * bands can then simply be concatenated (in order) into the image's single zlib stream, whose checksum is combined
+ * out of the bands' checksums. The writer itself only ever holds one IDAT chunk's worth of compressed bytes.
+ * Pixels are passed in as 0xAARRGGBB ints, and written as 8-bit RGB (the alpha channel is dropped).
+ */
+public class PngStreamWriter {
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int ADLER_BASE = 65521;
+
+    private DataOutputStream out;
+    private byte[] chunk;
+    private int chunkLength;
+    private long adler;
+    private boolean started;
+
+    public PngStreamWriter(OutputStream out) {
+        this.out = new DataOutputStream(out);
+        this.chunk = new byte[CHUNK_SIZE];
+        this.adler = 1;
+    }
+
+    /** Method writing the PNG signature and the image header. */
+    public void writeHeader(int width, int height) throws IOException {
+        this.out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;
+        header[9] = 2;
+        this.writeChunk("IHDR", header, header.length);
+    }
+
+    /** Method compressing a band of rows on its own - safe to call on any thread. The last band of the image
+     * has to be marked as such, so that its deflate stream is finished rather than just flushed.
+     */
+    public static CompressedBand compress(int[] pixels, int stride, int width, int rows, boolean last, int level) {
+        Deflater deflater = new Deflater(level, true);
+        Adler32 checksum = new Adler32();
+        byte[] row = new byte[1 + 3 * width];
+        byte[] buffer = new byte[1 << 16];
+        GrowableBytes output = new GrowableBytes();
+        for (int y = 0; y < rows; y++) {
+            filterRow(pixels, y * stride, width, row);
+            checksum.update(row, 0, row.length);
+            deflater.setInput(row);
+            while (!deflater.needsInput()) {
+                output.append(buffer, deflater.deflate(buffer, 0, buffer.length, Deflater.NO_FLUSH));
+            }
+        }
+        if (last) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                output.append(buffer, deflater.deflate(buffer));
+            }
+        } else {
+            int length;
+            do {
+                length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                output.append(buffer, length);
+            } while (length == buffer.length);
+        }
+        deflater.end();
+        return new CompressedBand(output.bytes, output.length, checksum.getValue(), (long) rows * row.length);
+    }
+
+    /** Method appending a compressed band to the image - bands have to be written in order, top to bottom. */
+    public void write(CompressedBand band) throws IOException {
+        if (!this.started) {
+            // zlib header: deflate with a 32K window, no preset dictionary
+            this.append(new byte[] {0x78, 0x01}, 2);
+            this.started = true;
+        }
+        this.append(band.data, band.length);
+        this.adler = combineAdler(this.adler, band.checksum, band.rawLength);
+    }
+
+    /** Method finishing the image - the zlib checksum and the end of the image are written, and the stream is flushed. */
+    public void finish() throws IOException {
+        byte[] trailer = new byte[4];
+        putInt(trailer, 0, (int) this.adler);
+        this.append(trailer, 4);
+        if (this.chunkLength > 0) {
+            this.writeChunk("IDAT", this.chunk, this.chunkLength);
+        }
+        this.writeChunk("IEND", new byte[0], 0);
+        this.out.flush();
+    }
+
+    /** Helper method adding compressed bytes to the current IDAT chunk, writing it out whenever it's full. */
+    private void append(byte[] data, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int count = Math.min(length - offset, CHUNK_SIZE - this.chunkLength);
+            System.arraycopy(data, offset, this.chunk, this.chunkLength, count);
+            this.chunkLength += count;
+            offset += count;
+            if (this.chunkLength == CHUNK_SIZE) {
+                this.writeChunk("IDAT", this.chunk, this.chunkLength);
+                this.chunkLength = 0;
+            }
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        this.out.writeInt(length);
+        this.out.write(typeBytes);
+        this.out.write(data, 0, length);
+        this.out.writeInt((int) crc.getValue());
+    }
+
+    /** Helper method writing a row with PNG's "Sub" filter (every byte minus the same channel of the pixel to
+     * its left), which turns the long runs of equal pixels in drawings into runs of zeros that compress very well.
+     */
+    private static void filterRow(int[] pixels, int offset, int width, byte[] row) {
+        row[0] = 1;
+        int previous = 0;
+        for (int x = 0; x < width; x++) {
+            int pixel = pixels[offset + x];
+            int i = 1 + 3 * x;
+            row[i] = (byte) ((pixel >> 16) - (previous >> 16));
+            row[i + 1] = (byte) ((pixel >> 8) - (previous >> 8));
+            row[i + 2] = (byte) (pixel - previous);
+            previous = pixel;
+        }
+    }
+
+    /** Helper method combining the Adler-32 checksums of two consecutive pieces of data (as zlib's adler32_combine does). */
+    private static long combineAdler(long first, long second, long secondLength) {
+        long remainder = secondLength % ADLER_BASE;
+        long sum1 = first & 0xFFFF;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (second & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((first >> 16) & 0xFFFF) + ((second >> 16) & 0xFFFF) + ADLER_BASE - remainder;
+        sum1 %= ADLER_BASE;
+        sum2 %= ADLER_BASE;
+        return sum1 | (sum2 << 16);
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /** A compressed band - its deflate data, along with the checksum and length of the filtered rows it holds. */
+    public static final class CompressedBand {
+        private final byte[] data;
+        private final int length;
+        private final long checksum;
+        private final long rawLength;
+
+        private CompressedBand(byte[] data, int length, long checksum, long rawLength) {
+            this.data = data;
+            this.length = length;
+            this.checksum = checksum;
+            this.rawLength = rawLength;
+        }
+    }
+
+    /** Minimal growable byte buffer (unlike ByteArrayOutputStream, it lets its array be handed over without a copy). */
+    private static final class GrowableBytes {
+        private byte[] bytes = new byte[1 << 12];
+        private int length;
+
+        private void append(byte[] data, int count) {
+            if (this.length + count > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.length + count));
+            }
+            System.arraycopy(data, 0, this.bytes, this.length, count);
+            this.length += count;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package sketchy.raster;
+
+import sketchy.io.SketchFileReader;
+import sketchy.shapes.RecordBounds;
+import sketchy.shapes.ShapeRecord;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/** Command-line exporter of sketch files into PNG images (no JavaFX needed):
+ *   java sketchy.raster.RasterConverter input.sketch output.png [dpi] [threads]
+ * The image covers the whole drawing (starting at the top-left corner of the canvas) at the given DPI
+ * (96 by default, which is the canvas' own resolution) - e.g. an 800 x 600 drawing exported at 3600 DPI becomes
+ * a 30000 x 22500 image. Once the image has been written, the time it took and the peak heap usage are reported.
+ */
+public class RasterConverter {
+    private static final double SCREEN_DPI = 96;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java sketchy.raster.RasterConverter <input.sketch> <output.png> [dpi] [threads]");
+            return;
+        }
+        double dpi = (args.length > 2) ? Double.parseDouble(args[2]) : SCREEN_DPI;
+        int threads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        ArrayList<ShapeRecord> records = new ArrayList<>();
+        double width = 0;
+        double height = 0;
+        try (SketchFileReader reader = new SketchFileReader(new FileReader(args[0], StandardCharsets.UTF_8))) {
+            ShapeRecord record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+                double[] bounds = RecordBounds.of(record);
+                width = Math.max(width, bounds[2]);
+                height = Math.max(height, bounds[3]);
+            }
+        }
+        long start = System.nanoTime();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(args[1]), 1 << 16)) {
+            new RasterExporter(dpi / SCREEN_DPI, threads).export(records, width, height, out);
+        }
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.out.println("Exported " + records.size() + " elements at " + dpi + " DPI on " + threads + " threads in "
+                + (System.nanoTime() - start) / 1000000 + " ms (peak heap usage " + peak / (1 << 20) + " MB)");
+    }
+}
@@ -0,0 +1,139 @@
+package sketchy.raster;
+
+import sketchy.shapes.RecordBounds;
+import sketchy.shapes.ShapeRecord;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/** Exporter rendering a document into a PNG image of any resolution, without going through JavaFX's snapshot
+ * (which is limited by the size of a texture and needs the whole image in memory).
+ * The image is split into bands of BAND_HEIGHT rows, and every band into tiles of TILE_WIDTH columns. Bands are
+ * rendered and compressed in parallel on a pool of worker threads - each worker draws the records overlapping
+ * the band tile by tile (so that the pixels it's working on stay in the cache), and then streams the band's rows
+ * into a deflater of its own. The calling thread writes the compressed bands into the PNG in order. Only a fixed
+ * number of bands is ever in flight, so the memory needed depends on the width of the image and the number of
+ * threads, but not on its height - a 30000 x 30000 image needs a few dozen megabytes at most.
+ * To find the records overlapping a band quickly, the records (in z-order) are first sorted into per-band lists.
+ */
+public class RasterExporter {
+    public static final int BAND_HEIGHT = 32;
+    public static final int TILE_WIDTH = 256;
+    private static final int BACKGROUND = 0xFFFFFFFF;
+
+    private double scale;
+    private int threads;
+    private int level;
+
+    /** The scale is the number of image pixels per document pixel (e.g. DPI / 96). */
+    public RasterExporter(double scale, int threads) {
+        this.scale = scale;
+        this.threads = Math.max(1, threads);
+        this.level = Deflater.BEST_SPEED;
+    }
+
+    /** Method rendering the records (passed in z-order, bottom layer first) of a document of a given size
+     * (in document pixels) into a PNG image written to the output stream.
+     */
+    public void export(ArrayList<ShapeRecord> records, double documentWidth, double documentHeight, OutputStream out)
+            throws IOException {
+        int width = Math.max(1, (int) Math.ceil(documentWidth * this.scale));
+        int height = Math.max(1, (int) Math.ceil(documentHeight * this.scale));
+        int bandCount = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        double[] bounds = new double[4 * records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            System.arraycopy(RecordBounds.of(records.get(i)), 0, bounds, 4 * i, 4);
+        }
+        int[][] bands = this.sortIntoBands(bounds, records.size(), bandCount);
+
+        PngStreamWriter png = new PngStreamWriter(out);
+        png.writeHeader(width, height);
+        ExecutorService workers = Executors.newFixedThreadPool(this.threads, (Runnable r) -> {
+            Thread thread = new Thread(r, "sketchy-raster");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ThreadLocal<int[]> buffers = ThreadLocal.withInitial(() -> new int[width * BAND_HEIGHT]);
+        ArrayDeque<Future<PngStreamWriter.CompressedBand>> inFlight = new ArrayDeque<>();
+        try {
+            int next = 0;
+            for (int written = 0; written < bandCount; written++) {
+                while (next < bandCount && inFlight.size() < 2 * this.threads) {
+                    int band = next++;
+                    inFlight.add(workers.submit(() -> this.renderBand(records, bounds, bands[band], band, bandCount,
+                            width, height, buffers.get())));
+                }
+                png.write(inFlight.poll().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Raster export was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Raster export failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+        png.finish();
+    }
+
+    /** Helper method rendering and compressing a single band - run on a worker thread. */
+    private PngStreamWriter.CompressedBand renderBand(ArrayList<ShapeRecord> records, double[] bounds, int[] candidates, int band,
+                                                      int bandCount, int width, int height, int[] pixels) {
+        int top = band * BAND_HEIGHT;
+        int rows = Math.min(BAND_HEIGHT, height - top);
+        Arrays.fill(pixels, 0, rows * width, BACKGROUND);
+        TileRasterizer rasterizer = new TileRasterizer(this.scale);
+        double slack = this.slack();
+        for (int tileX = 0; tileX < width; tileX += TILE_WIDTH) {
+            int tileWidth = Math.min(TILE_WIDTH, width - tileX);
+            for (int index : candidates) {
+                if (bounds[4 * index + 2] * this.scale + slack >= tileX && bounds[4 * index] * this.scale - slack <= tileX + tileWidth) {
+                    rasterizer.draw(records.get(index), pixels, width, top, tileX, top, tileWidth, rows);
+                }
+            }
+        }
+        return PngStreamWriter.compress(pixels, width, width, rows, band == bandCount - 1, this.level);
+    }
+
+    /** Helper method listing, for every band, the indexes of the records overlapping it (in z-order), given the
+     * records' bounds (four numbers per record, as returned by RecordBounds).
+     */
+    private int[][] sortIntoBands(double[] bounds, int count, int bandCount) {
+        int[] counts = new int[bandCount];
+        int[] first = new int[count];
+        int[] last = new int[count];
+        double slack = this.slack();
+        for (int i = 0; i < count; i++) {
+            first[i] = Math.max(0, (int) Math.floor((bounds[4 * i + 1] * this.scale - slack) / BAND_HEIGHT));
+            last[i] = Math.min(bandCount - 1, (int) Math.floor((bounds[4 * i + 3] * this.scale + slack) / BAND_HEIGHT));
+            for (int band = first[i]; band <= last[i]; band++) {
+                counts[band]++;
+            }
+        }
+        int[][] bands = new int[bandCount][];
+        for (int band = 0; band < bandCount; band++) {
+            bands[band] = new int[counts[band]];
+            counts[band] = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            for (int band = first[i]; band <= last[i]; band++) {
+                bands[band][counts[band]++] = i;
+            }
+        }
+        return bands;
+    }
+
+    /** Helper method returning how far (in image pixels) an element can be drawn outside of its bounds - the
+     * bounds of curved lines don't include their stroke, which is at least a pixel thick.
+     */
+    private double slack() {
+        return Math.max(1, this.scale * TileRasterizer.STROKE_WIDTH / 2) + 1;
+    }
+}
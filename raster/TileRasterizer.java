@@ -0,0 +1,237 @@
+package sketchy.raster;
+
+import sketchy.shapes.ElementType;
+import sketchy.shapes.RecordBounds;
+import sketchy.shapes.ShapeRecord;
+import sketchy.shapes.Symbol;
+import java.util.Arrays;
+
+/** Software rasterizer drawing records into a block of pixels, without any JavaFX node being involved - this way,
+ * images of any size can be rendered on any thread (JavaFX can only render on its own thread, and only up to the
+ * size of a texture). The document is scaled by a given factor (e.g. 300 / 96 to get 300 DPI out of JavaFX's
+ * 96 pixels per inch), and every pixel is either completely covered by an element or not at all.
+ * Shapes are drawn span by span - for every row of pixels, the range of columns covered by a (rotated) rectangle
+ * or ellipse is calculated directly by solving the inequalities describing the shape, and filled at once. Curved
+ * lines are drawn the same way, as a chain of capsules (segments thickened by half of the stroke width on each side),
+ * and fills as one (rotated) rectangle per run of their masks. An instance of a symbol is drawn as the elements of
+ * its symbol, placed over the instance's box.
+ */
+public class TileRasterizer {
+    public static final double STROKE_WIDTH = 1;
+
+    private double scale;
+
+    public TileRasterizer(double scale) {
+        this.scale = scale;
+    }
+
+    /** Method drawing a record into the part of a pixel buffer covering the tile starting at (tileX, tileY) of
+     * the image - the buffer holds rows of a given stride, its first row being row bufferY of the image.
+     */
+    public void draw(ShapeRecord record, int[] pixels, int stride, int bufferY,
+                     int tileX, int tileY, int tileWidth, int tileHeight) {
+        if (record.getType() == ElementType.INSTANCE) {
+            Symbol symbol = Symbol.of(record);
+            if (symbol != null) {
+                for (ShapeRecord member : symbol.place(record)) {
+                    this.draw(member, pixels, stride, bufferY, tileX, tileY, tileWidth, tileHeight);
+                }
+            }
+            return;
+        }
+        int color = argb(record);
+        if (record.getType() == ElementType.CURVED_LINE) {
+            this.drawLine(record.getPoints(), record.getCenterX(), record.getCenterY(), color, pixels, stride, bufferY, tileX, tileY, tileWidth, tileHeight);
+            return;
+        }
+        double width = record.getWidth();
+        double height = record.getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        double radians = Math.toRadians(record.getAngle());
+        double cosine = Math.cos(radians);
+        double sine = Math.sin(radians);
+        if (record.getType() == ElementType.FILL) {
+            this.drawFill(record, cosine, sine, color, pixels, stride, bufferY, tileX, tileY, tileWidth, tileHeight);
+            return;
+        }
+        double[] bounds = RecordBounds.of(record);
+        this.drawBox(record.getCenterX(), record.getCenterY(), width, height, cosine, sine,
+                record.getType() == ElementType.ELLIPSE, bounds[1], bounds[3], color, pixels, stride, bufferY, tileX, tileY, tileWidth, tileHeight);
+    }
+
+    /** Helper method drawing a rectangle or an ellipse with a given center, half-size and rotation, whose
+     * vertical extent (in document coordinates) is known to lie between minY and maxY.
+     */
+    private void drawBox(double centerX, double centerY, double width, double height, double cosine, double sine,
+                         boolean ellipse, double minY, double maxY, int color, int[] pixels, int stride, int bufferY,
+                         int tileX, int tileY, int tileWidth, int tileHeight) {
+        int top = Math.max(tileY, (int) Math.floor(minY * this.scale));
+        int bottom = Math.min(tileY + tileHeight - 1, (int) Math.ceil(maxY * this.scale));
+        for (int row = top; row <= bottom; row++) {
+            double y = (row + 0.5) / this.scale - centerY;
+            // the point (u, y) of the document lies at (a1 * u + b1, a2 * u + b2) in the shape's unrotated frame
+            double a1 = cosine;
+            double b1 = sine * y - cosine * centerX;
+            double a2 = -sine;
+            double b2 = cosine * y + sine * centerX;
+            double[] span = ellipse ? ellipseSpan(a1, b1, a2, b2, width, height)
+                    : intersect(slab(a1, b1, width), slab(a2, b2, height));
+            if (span != null) {
+                this.fillSpan(span, row, color, pixels, stride, bufferY, tileX, tileWidth);
+            }
+        }
+    }
+
+    /** Helper method drawing a fill - every run of its mask is a rectangle within the fill's box, rotated around
+     * the box's center along with it.
+     */
+    private void drawFill(ShapeRecord record, double cosine, double sine, int color, int[] pixels, int stride, int bufferY,
+                          int tileX, int tileY, int tileWidth, int tileHeight) {
+        double[] mask = record.getPoints();
+        if (mask.length < 2 || mask[0] <= 0 || mask[1] <= 0) {
+            return;
+        }
+        double cellWidth = 2 * record.getWidth() / mask[0];
+        double cellHeight = 2 * record.getHeight() / mask[1];
+        double halfHeight = cellHeight / 2;
+        for (int i = 2; i + 2 < mask.length; i += 3) {
+            double halfWidth = (mask[i + 2] - mask[i + 1]) * cellWidth / 2;
+            // the run's center in the box's unrotated frame, and then in the document
+            double u = mask[i + 1] * cellWidth + halfWidth - record.getWidth();
+            double v = mask[i] * cellHeight + halfHeight - record.getHeight();
+            double centerX = record.getCenterX() + u * cosine - v * sine;
+            double centerY = record.getCenterY() + u * sine + v * cosine;
+            double extent = halfWidth * Math.abs(sine) + halfHeight * Math.abs(cosine);
+            this.drawBox(centerX, centerY, halfWidth, halfHeight, cosine, sine, false, centerY - extent, centerY + extent,
+                    color, pixels, stride, bufferY, tileX, tileY, tileWidth, tileHeight);
+        }
+    }
+
+    /** Helper method drawing a polyline as capsules around each of its segments (or a dot if it has a single point). */
+    private void drawLine(double[] points, double offsetX, double offsetY, int color, int[] pixels, int stride, int bufferY,
+                          int tileX, int tileY, int tileWidth, int tileHeight) {
+        double radius = Math.max(0.5, STROKE_WIDTH * this.scale / 2);
+        int count = points.length / 2;
+        if (count == 0) {
+            return;
+        }
+        for (int i = 0; i < Math.max(1, count - 1); i++) {
+            double x0 = (points[2 * i] + offsetX) * this.scale;
+            double y0 = (points[2 * i + 1] + offsetY) * this.scale;
+            double x1 = (count > 1) ? (points[2 * i + 2] + offsetX) * this.scale : x0;
+            double y1 = (count > 1) ? (points[2 * i + 3] + offsetY) * this.scale : y0;
+            int top = Math.max(tileY, (int) Math.floor(Math.min(y0, y1) - radius));
+            int bottom = Math.min(tileY + tileHeight - 1, (int) Math.ceil(Math.max(y0, y1) + radius));
+            if (Math.max(x0, x1) + radius < tileX || Math.min(x0, x1) - radius > tileX + tileWidth) {
+                continue;
+            }
+            for (int row = top; row <= bottom; row++) {
+                double[] span = capsuleSpan(x0, y0, x1, y1, radius, row + 0.5);
+                if (span != null) {
+                    // capsule spans are already in pixels, so they're filled without scaling
+                    int from = Math.max(tileX, (int) Math.ceil(span[0] - 0.5));
+                    int to = Math.min(tileX + tileWidth - 1, (int) Math.floor(span[1] - 0.5));
+                    if (from <= to) {
+                        int offset = (row - bufferY) * stride;
+                        Arrays.fill(pixels, offset + from, offset + to + 1, color);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Helper method filling the pixels of a row whose centers lie within a span of document x coordinates. */
+    private void fillSpan(double[] span, int row, int color, int[] pixels, int stride, int bufferY, int tileX, int tileWidth) {
+        int from = Math.max(tileX, (int) Math.ceil(span[0] * this.scale - 0.5));
+        int to = Math.min(tileX + tileWidth - 1, (int) Math.floor(span[1] * this.scale - 0.5));
+        if (from <= to) {
+            int offset = (row - bufferY) * stride;
+            Arrays.fill(pixels, offset + from, offset + to + 1, color);
+        }
+    }
+
+    /** Helper method returning the range of u for which |a * u + b| <= extent (or null if there's none). */
+    private static double[] slab(double a, double b, double extent) {
+        if (Math.abs(a) < 1e-12) {
+            return (Math.abs(b) <= extent) ? new double[] {Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY} : null;
+        }
+        double first = (-extent - b) / a;
+        double second = (extent - b) / a;
+        return new double[] {Math.min(first, second), Math.max(first, second)};
+    }
+
+    private static double[] intersect(double[] first, double[] second) {
+        if (first == null || second == null) {
+            return null;
+        }
+        double from = Math.max(first[0], second[0]);
+        double to = Math.min(first[1], second[1]);
+        return (from <= to) ? new double[] {from, to} : null;
+    }
+
+    /** Helper method returning the range of u for which ((a1 * u + b1) / width)^2 + ((a2 * u + b2) / height)^2 <= 1. */
+    private static double[] ellipseSpan(double a1, double b1, double a2, double b2, double width, double height) {
+        double w2 = width * width;
+        double h2 = height * height;
+        double a = a1 * a1 / w2 + a2 * a2 / h2;
+        double b = 2 * (a1 * b1 / w2 + a2 * b2 / h2);
+        double c = b1 * b1 / w2 + b2 * b2 / h2 - 1;
+        double discriminant = b * b - 4 * a * c;
+        if (discriminant < 0) {
+            return null;
+        }
+        double root = Math.sqrt(discriminant);
+        return new double[] {(-b - root) / (2 * a), (-b + root) / (2 * a)};
+    }
+
+    /** Helper method returning the range of x at height y that lies within a given distance of a segment. Since
+     * a capsule is convex, that's the union of the ranges covered by its two end disks and by the band in between.
+     */
+    private static double[] capsuleSpan(double x0, double y0, double x1, double y1, double radius, double y) {
+        double[] span = union(diskSpan(x0, y0, radius, y), diskSpan(x1, y1, radius, y));
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double length = Math.hypot(dx, dy);
+        if (length > 1e-12) {
+            double nx = dx / length;
+            double ny = dy / length;
+            // projection onto the segment: t = nx * (x - x0) + ny * (y - y0), within [0, length]
+            double[] along = slab(nx, ny * (y - y0) - nx * x0 - length / 2, length / 2);
+            // distance from the segment's line: -ny * (x - x0) + nx * (y - y0), within [-radius, radius]
+            double[] across = slab(-ny, nx * (y - y0) + ny * x0, radius);
+            span = union(span, intersect(along, across));
+        }
+        return span;
+    }
+
+    private static double[] diskSpan(double centerX, double centerY, double radius, double y) {
+        double dy = y - centerY;
+        double squared = radius * radius - dy * dy;
+        if (squared < 0) {
+            return null;
+        }
+        double half = Math.sqrt(squared);
+        return new double[] {centerX - half, centerX + half};
+    }
+
+    private static double[] union(double[] first, double[] second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        return new double[] {Math.min(first[0], second[0]), Math.max(first[1], second[1])};
+    }
+
+    /** Helper method returning the opaque color of a record packed into an int (as 0xAARRGGBB). */
+    private static int argb(ShapeRecord record) {
+        return 0xFF000000 | (channel(record.getRed()) << 16) | (channel(record.getGreen()) << 8) | channel(record.getBlue());
+    }
+
+    private static int channel(double value) {
+        return (int) Math.round(Math.max(0, Math.min(1, value)) * 255);
+    }
+}
@@ -2,15 +2,24 @@ package sketchy.shapes;
 
 import cs15.fnl.sketchySupport.CS15FileIO;
 import javafx.geometry.Point2D;
+import javafx.scene.Node;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Polyline;
+import javafx.scene.transform.Rotate;
+import javafx.scene.transform.Scale;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * This class contained by the top-level sketchy class is a wrapper for Java's polyline. It implements the
- * saveable interfaces, so that it can be "exported"
- * (saved), as the save method iterates through an arraylist of saveables.
+ * SketchyShape interface (and thus the saveable one, so that it can be "exported"
+ * (saved), as the save method iterates through an arraylist of saveables), so lines can be selected, moved,
+ * rotated, resized, recolored, raised, lowered and deleted just like rectangles and ellipses.
  * The class contains a constructor in which the line's appearance is set up - firstly, an initial point
  * (where the mouse was firstly pressed) is passed in as a "starting points" of the line, and upon the drag
  * of the mouse, additional points are continuously added whenever user interacts with the pane. The color
@@ -18,23 +27,74 @@ import java.util.ArrayList;
  * a parameter into the line's constructor. The line is later added to the "elements" arraylist
  * (an arraylist of all elements visible on the sketchy pane), and to the pane - this way, the amount
  * of methods required to be called from the sketchy class is limited.
+ * The line's points are kept in a plain array, which is handed over to the line's records without being copied -
+ * once that happens, the array is never modified again, and it's copied only when a point is added afterwards.
+ * Thanks to that, copies of a line (which are created from its record) all share a single array of points
+ * (as well as a single list of boxed points for their polylines), each of them drawn at its own offset
+ * (the record's center), until one of them is changed.
+ * Moving a line only changes its offset (the polyline's translation), so it costs the same no matter how many
+ * points the line has. Rotating and resizing it are shown through the polyline's transforms (around the center
+ * of its bounding box, which is kept up to date as points are added), and they're baked into a new array of
+ * points only once the line's record is taken (i.e. once the change is performed as a command). Lines are
+ * selected by their distance from the mouse, found through the line's SegmentIndex.
  */
-public class CurvedLine implements Savable {
+public class CurvedLine implements SketchyShape {
+    private static final double HIT_TOLERANCE = 4;
+
     private Polyline line;
     private Point2D point;
     private Pane pane;
+    private ArrayList<SketchyShape> shapes;
     private ArrayList<Savable> elements;
     private Color color;
+    private long id;
+    private double[] points;
+    private int size;
+    private boolean shared;
+    private double offsetX;
+    private double offsetY;
+    private double minX;
+    private double minY;
+    private double maxX;
+    private double maxY;
+    private Rotate rotation;
+    private Scale scaling;
+
+    /** Boxed points of the arrays applied to lines so far, so that copies of a line don't box them again. The
+     * arrays are compared by identity, and an entry goes away once no record holds on to its array.
+     */
+    private static final Map<double[], List<Double>> BOXED = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public CurvedLine(Point2D point, Pane pane, Color color, ArrayList<SketchyShape> shapes, ArrayList<Savable> elements) {
+        this(point, pane, color, shapes, elements, ElementIds.next());
+    }
 
-    public CurvedLine(Point2D point, Pane pane, Color color, ArrayList<Savable> elements) {
+    /** Second constructor taking in the ID the line should have - used whenever an element that already
+     * has an ID somewhere else (e.g. in another editor's document) is recreated.
+     */
+    public CurvedLine(Point2D point, Pane pane, Color color, ArrayList<SketchyShape> shapes, ArrayList<Savable> elements, long id) {
         this.point = point;
         this.pane = pane;
+        this.shapes = shapes;
         this.elements = elements;
         this.color = color;
+        this.id = id;
+        this.points = new double[16];
+        this.points[0] = point.getX();
+        this.points[1] = point.getY();
+        this.size = 2;
+        this.minX = point.getX();
+        this.minY = point.getY();
+        this.maxX = point.getX();
+        this.maxY = point.getY();
 
         this.line = new Polyline(point.getX(), point.getY());
         this.line.setStroke(color);
+        this.rotation = new Rotate(0, point.getX(), point.getY());
+        this.scaling = new Scale(1, 1, point.getX(), point.getY());
+        this.line.getTransforms().addAll(this.rotation, this.scaling);
         this.pane.getChildren().add(this.line);
+        this.shapes.add(this);
         this.elements.add(this);
     }
 
@@ -43,15 +103,400 @@ public class CurvedLine implements Savable {
         this.pane.getChildren().remove(this.line);
     }
 
+    @Override
+    public void remove() {
+        this.removeFromPane();
+    }
+
     /** Method adding Java's Polyline (node that can be added to a pane) to the main sketchPane */
+    @Override
     public void addToPane() {
         this.pane.getChildren().add(this.line);
     }
 
+    /** Method adding Java's Polyline to the main sketchPane at a specified index (layer) */
+    @Override
+    public void addToPane(int index) {
+        this.pane.getChildren().add(index, this.line);
+    }
+
+    /** Method checking whether a point (already rotated back by Sketchy, just like for the other shapes) is
+     * within a few pixels of the line. The point is brought into the line's own coordinates, checked against the
+     * line's bounding box first, and only then measured against the segments the SegmentIndex finds near it.
+     */
+    @Override
+    public boolean contains(Point2D point) {
+        double scale = Math.max(1e-9, Math.min(Math.abs(this.scaling.getX()), Math.abs(this.scaling.getY())));
+        double tolerance = HIT_TOLERANCE / scale;
+        double centerX = (this.minX + this.maxX) / 2;
+        double centerY = (this.minY + this.maxY) / 2;
+        double x = centerX + (point.getX() - this.offsetX - centerX) / nonZero(this.scaling.getX());
+        double y = centerY + (point.getY() - this.offsetY - centerY) / nonZero(this.scaling.getY());
+        if (x < this.minX - tolerance || x > this.maxX + tolerance || y < this.minY - tolerance || y > this.maxY + tolerance) {
+            return false;
+        }
+        double[] points = this.frozenPoints();
+        if (points.length == 2) {
+            return Math.hypot(points[0] - x, points[1] - y) <= tolerance;
+        }
+        for (int segment : SegmentIndex.of(points).query(x - tolerance, y - tolerance, x + tolerance, y + tolerance)) {
+            if (crossing(points, segment, x, y, tolerance) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Selecting a line dashes its stroke (its color stays the same, as it's the line's only fill). */
+    @Override
+    public void select() {
+        this.line.getStrokeDashArray().setAll(6.0, 4.0);
+    }
+
+    @Override
+    public void deselect() {
+        this.line.getStrokeDashArray().clear();
+    }
+
+    @Override
+    public void setColor(Color color) {
+        this.color = color;
+        this.line.setStroke(color);
+    }
+
+    @Override
+    public Color getColor() {
+        return this.color;
+    }
+
+    /** Just like for ellipses, the width and height of a line are half of its actual size (of its bounding box) -
+     * resizing a line scales it around its center.
+     */
+    @Override
+    public void setWidth(double width) {
+        double half = (this.maxX - this.minX) / 2;
+        if (half > 0) {
+            this.pivotTransforms();
+            this.scaling.setX(width / half);
+        }
+    }
+
+    @Override
+    public void setHeight(double height) {
+        double half = (this.maxY - this.minY) / 2;
+        if (half > 0) {
+            this.pivotTransforms();
+            this.scaling.setY(height / half);
+        }
+    }
+
+    @Override
+    public double getWidth() {
+        return Math.abs(this.scaling.getX()) * (this.maxX - this.minX) / 2;
+    }
+
+    @Override
+    public double getHeight() {
+        return Math.abs(this.scaling.getY()) * (this.maxY - this.minY) / 2;
+    }
+
+    /** Moving a line only changes its offset - none of its points are touched. */
+    @Override
+    public void setCenter(Point2D center) {
+        this.offsetX = center.getX() - (this.minX + this.maxX) / 2;
+        this.offsetY = center.getY() - (this.minY + this.maxY) / 2;
+        this.line.setTranslateX(this.offsetX);
+        this.line.setTranslateY(this.offsetY);
+    }
+
+    @Override
+    public Point2D getCenter() {
+        return new Point2D(this.offsetX + (this.minX + this.maxX) / 2, this.offsetY + (this.minY + this.maxY) / 2);
+    }
+
+    @Override
+    public void setAngle(double angle) {
+        this.pivotTransforms();
+        this.rotation.setAngle(angle);
+    }
+
+    @Override
+    public double getAngle() {
+        return this.rotation.getAngle();
+    }
+
+    @Override
+    public int getIndex() {
+        return this.pane.getChildren().indexOf(this.line);
+    }
+
+    /** Helper method moving the pivots of the line's rotation and scaling to the center of its bounding box. */
+    private void pivotTransforms() {
+        double centerX = (this.minX + this.maxX) / 2;
+        double centerY = (this.minY + this.maxY) / 2;
+        this.rotation.setPivotX(centerX);
+        this.rotation.setPivotY(centerY);
+        this.scaling.setPivotX(centerX);
+        this.scaling.setPivotY(centerY);
+    }
+
+    private static double nonZero(double value) {
+        return (value == 0) ? 1e-9 : value;
+    }
+
     /** Method continuously adding points to the line (thus, to the pane), whenever a mouse is dragged.
      * Line is updated both logically and graphically */
     public void addPoint(Point2D point) {
-        this.line.getPoints().addAll(point.getX(), point.getY());
+        if (this.shared || this.size + 2 > this.points.length) {
+            this.points = Arrays.copyOf(this.points, Math.max(16, 2 * this.size));
+            this.shared = false;
+        }
+        double x = point.getX() - this.offsetX;
+        double y = point.getY() - this.offsetY;
+        this.points[this.size++] = x;
+        this.points[this.size++] = y;
+        this.minX = Math.min(this.minX, x);
+        this.minY = Math.min(this.minY, y);
+        this.maxX = Math.max(this.maxX, x);
+        this.maxY = Math.max(this.maxY, y);
+        this.line.getPoints().addAll(x, y);
+    }
+
+    /** Method finding what would be left of the line after erasing everything within a given distance of a point
+     * - returns the remaining runs of points (each of them at least two points long), or null if nothing would be
+     * erased. Only the segments the line's SegmentIndex finds near the point are cut (a segment crossing the
+     * eraser's circle is cut right where it crosses it), and the runs between them are copied as they are.
+     */
+    public ArrayList<double[]> cut(Point2D center, double radius) {
+        this.bake();
+        double[] points = this.frozenPoints();
+        double x = center.getX() - this.offsetX;
+        double y = center.getY() - this.offsetY;
+        SegmentIndex index = SegmentIndex.of(points);
+        if (!index.intersects(x - radius, y - radius, x + radius, y + radius)) {
+            return null;
+        }
+        ArrayList<double[]> runs = new ArrayList<>();
+        if (points.length < 4) {
+            return (points.length == 2 && Math.hypot(points[0] - x, points[1] - y) <= radius) ? runs : null;
+        }
+        boolean erased = false;
+        boolean open = true;
+        int from = 0;
+        double[] lead = null;
+        for (int segment : index.query(x - radius, y - radius, x + radius, y + radius)) {
+            double[] span = crossing(points, segment, x, y, radius);
+            if (span == null) {
+                continue;
+            }
+            erased = true;
+            if (open) {
+                // the run ends where the segment enters the circle (or at the segment's start, if it starts in it)
+                double[] tail = (span[0] > 0) ? pointAt(points, segment, span[0]) : null;
+                int to = (span[0] > 0) ? segment : segment - 1;
+                addRun(runs, lead, points, from, to, tail);
+            }
+            open = span[1] < 1;
+            if (open) {
+                lead = pointAt(points, segment, span[1]);
+                from = segment + 1;
+            }
+        }
+        if (!erased) {
+            return null;
+        }
+        if (open) {
+            addRun(runs, lead, points, from, points.length / 2 - 1, null);
+        }
+        return runs;
+    }
+
+    /** Method replacing the line with lines made of given runs of its points (e.g. the ones cut returns) - the new
+     * lines have the line's color and offset, and take its place on the pane and in the arraylists of shapes and
+     * elements (in the order of the runs). The line itself is removed from both, and the new lines are returned.
+     */
+    public ArrayList<CurvedLine> split(ArrayList<double[]> runs) {
+        int elementsIndex = this.elements.indexOf(this);
+        int paneIndex = this.pane.getChildren().indexOf(this.line);
+        int shapesIndex = this.shapes.indexOf(this);
+        this.removeFromPane();
+        this.elements.remove(elementsIndex);
+        this.shapes.remove(shapesIndex);
+        ArrayList<CurvedLine> pieces = new ArrayList<>(runs.size());
+        for (double[] run : runs) {
+            CurvedLine piece = new CurvedLine(new Point2D(run[0], run[1]), this.pane, this.color, this.shapes, this.elements);
+            piece.applyRecord(new ShapeRecord(piece.getId(), ElementType.CURVED_LINE, this.offsetX, this.offsetY,
+                    0, 0, 0, this.color.getRed(), this.color.getGreen(), this.color.getBlue(), run, 0));
+            this.elements.remove(this.elements.size() - 1);
+            this.elements.add(elementsIndex + pieces.size(), piece);
+            this.shapes.remove(this.shapes.size() - 1);
+            this.shapes.add(shapesIndex + pieces.size(), piece);
+            piece.removeFromPane();
+            piece.addToPane(paneIndex + pieces.size());
+            pieces.add(piece);
+        }
+        return pieces;
+    }
+
+    /** Helper method returning the part [t0, t1] of a segment (t going from 0 at its start to 1 at its end) that's
+     * within a given distance of a point, or null if no part of it is.
+     */
+    private static double[] crossing(double[] points, int segment, double x, double y, double radius) {
+        double startX = points[2 * segment] - x;
+        double startY = points[2 * segment + 1] - y;
+        double dx = points[2 * segment + 2] - points[2 * segment];
+        double dy = points[2 * segment + 3] - points[2 * segment + 1];
+        double a = dx * dx + dy * dy;
+        double c = startX * startX + startY * startY - radius * radius;
+        if (a == 0) {
+            return (c <= 0) ? new double[] {0, 1} : null;
+        }
+        double b = 2 * (startX * dx + startY * dy);
+        double discriminant = b * b - 4 * a * c;
+        if (discriminant < 0) {
+            return null;
+        }
+        double root = Math.sqrt(discriminant);
+        double t0 = (-b - root) / (2 * a);
+        double t1 = (-b + root) / (2 * a);
+        if (t1 < 0 || t0 > 1) {
+            return null;
+        }
+        return new double[] {Math.max(0, t0), Math.min(1, t1)};
+    }
+
+    private static double[] pointAt(double[] points, int segment, double t) {
+        return new double[] {points[2 * segment] + t * (points[2 * segment + 2] - points[2 * segment]),
+                points[2 * segment + 1] + t * (points[2 * segment + 3] - points[2 * segment + 1])};
+    }
+
+    /** Helper method adding a run made of an optional leading point, the points from..to, and an optional
+     * trailing point - unless it'd be shorter than two points.
+     */
+    private static void addRun(ArrayList<double[]> runs, double[] lead, double[] points, int from, int to, double[] tail) {
+        int count = Math.max(0, to - from + 1) + ((lead != null) ? 1 : 0) + ((tail != null) ? 1 : 0);
+        if (count < 2) {
+            return;
+        }
+        double[] run = new double[2 * count];
+        int at = 0;
+        if (lead != null) {
+            run[at++] = lead[0];
+            run[at++] = lead[1];
+        }
+        if (to >= from) {
+            System.arraycopy(points, 2 * from, run, at, 2 * (to - from + 1));
+            at += 2 * (to - from + 1);
+        }
+        if (tail != null) {
+            run[at++] = tail[0];
+            run[at] = tail[1];
+        }
+        runs.add(run);
+    }
+
+    /** Accessor method returning the JavaFX node representing the line on the pane. */
+    @Override
+    public Node getNode() {
+        return this.line;
+    }
+
+    /** Accessor method returning the line's stable ID (given to it once, upon creation). */
+    @Override
+    public long getId() {
+        return this.id;
+    }
+
+    /** Method describing the current state of the line as an immutable ShapeRecord - its color, its offset (as
+     * the record's center) and its points. The array of points is passed into the record as it is (trimmed first,
+     * if needed), so from then on it's shared, and adding another point copies it. A rotation or resizing that's
+     * only been shown through the polyline's transforms so far is baked into the points first.
+     */
+    @Override
+    public ShapeRecord toRecord() {
+        this.bake();
+        return new ShapeRecord(this.id, ElementType.CURVED_LINE, this.offsetX, this.offsetY, 0, 0, 0,
+                this.color.getRed(), this.color.getGreen(), this.color.getBlue(), this.frozenPoints(), 0);
+    }
+
+    /** Helper method baking the line's rotation and scaling into a new array of points (which the polyline gets
+     * too), after which its transforms are reset - the offset stays as it is.
+     */
+    private void bake() {
+        if (this.rotation.getAngle() == 0 && this.scaling.getX() == 1 && this.scaling.getY() == 1) {
+            return;
+        }
+        double pivotX = this.rotation.getPivotX();
+        double pivotY = this.rotation.getPivotY();
+        double cosine = Math.cos(Math.toRadians(this.rotation.getAngle()));
+        double sine = Math.sin(Math.toRadians(this.rotation.getAngle()));
+        double[] baked = new double[this.size];
+        for (int i = 0; i + 1 < this.size; i += 2) {
+            double x = this.scaling.getX() * (this.points[i] - pivotX);
+            double y = this.scaling.getY() * (this.points[i + 1] - pivotY);
+            baked[i] = pivotX + x * cosine - y * sine;
+            baked[i + 1] = pivotY + x * sine + y * cosine;
+        }
+        this.rotation.setAngle(0);
+        this.scaling.setX(1);
+        this.scaling.setY(1);
+        this.setPoints(baked);
+    }
+
+    /** Helper method giving the line a new (immutable) array of points, and the bounding box of that array. */
+    private void setPoints(double[] points) {
+        this.points = points;
+        this.size = points.length;
+        this.shared = true;
+        double[] bounds = SegmentIndex.of(points).getBounds();
+        this.minX = bounds[0];
+        this.minY = bounds[1];
+        this.maxX = bounds[2];
+        this.maxY = bounds[3];
+        this.line.getPoints().setAll(boxed(points));
+    }
+
+    /** Helper method returning the line's array of points trimmed to its size - from then on, the array is shared
+     * (and adding another point copies it).
+     */
+    private double[] frozenPoints() {
+        if (this.points.length != this.size) {
+            this.points = Arrays.copyOf(this.points, this.size);
+        }
+        this.shared = true;
+        return this.points;
+    }
+
+    /** Method bringing the line to the state described by a record - its color, offset and points. The record's
+     * array of points is shared rather than copied, and if it's the array the line already has (e.g. when only
+     * the line's color or offset changes), the polyline's points are left alone. Records never describe any
+     * rotation or resizing that hasn't been baked into the points, so the transforms are reset.
+     */
+    @Override
+    public void applyRecord(ShapeRecord record) {
+        this.rotation.setAngle(0);
+        this.scaling.setX(1);
+        this.scaling.setY(1);
+        this.color = new Color(record.getRed(), record.getGreen(), record.getBlue(), 1);
+        this.line.setStroke(this.color);
+        this.offsetX = record.getCenterX();
+        this.offsetY = record.getCenterY();
+        this.line.setTranslateX(this.offsetX);
+        this.line.setTranslateY(this.offsetY);
+        if (record.getPoints() != this.points) {
+            this.setPoints(record.getPoints());
+        }
+    }
+
+    /** Helper method returning the points of an array as a list of Doubles, boxing them only once per array. */
+    private static List<Double> boxed(double[] points) {
+        return BOXED.computeIfAbsent(points, (double[] array) -> {
+            Double[] boxed = new Double[array.length];
+            for (int i = 0; i < array.length; i++) {
+                boxed[i] = array[i];
+            }
+            return Arrays.asList(boxed);
+        });
     }
 
     /** Save method - a CS15FileIO is passed into its constructor, so that whenever the sketchy class
@@ -66,13 +511,14 @@ public class CurvedLine implements Savable {
      */
     @Override
     public void save(CS15FileIO io){
+        this.bake();
         io.writeString("CurvedLine");
         io.writeDouble(this.color.getRed());
         io.writeDouble(this.color.getGreen());
         io.writeDouble(this.color.getBlue());
-        io.writeInt(this.line.getPoints().size());
-        for (double points: this.line.getPoints()){
-            io.writeDouble(points);
+        io.writeInt(this.size);
+        for (int i = 0; i < this.size; i++){
+            io.writeDouble(this.points[i] + ((i % 2 == 0) ? this.offsetX : this.offsetY));
         }
     }
 }
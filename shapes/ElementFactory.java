@@ -0,0 +1,41 @@
+package sketchy.shapes;
+
+import javafx.geometry.Point2D;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import java.util.ArrayList;
+
+/** Helper class recreating elements from their ShapeRecords. Just like when they're drawn by the user,
+ * the newly created elements add themselves to the pane and to the arraylists passed in as parameters
+ * (on top of all the other elements), and keep the ID stored in the record.
+ */
+public class ElementFactory {
+
+    /** Method creating an element of the type described by a record, and bringing it to the record's state. */
+    public static Savable create(ShapeRecord record, Pane pane, ArrayList<SketchyShape> shapes, ArrayList<Savable> elements) {
+        Color color = new Color(record.getRed(), record.getGreen(), record.getBlue(), 1);
+        Point2D center = new Point2D(record.getCenterX(), record.getCenterY());
+        Savable element = null;
+        switch (record.getType()) {
+            case RECTANGLE:
+                element = new SketchyRectangle(pane, center, color, shapes, elements, record.getId());
+                break;
+            case ELLIPSE:
+                element = new SketchyEllipse(pane, center, color, shapes, elements, record.getId());
+                break;
+            case CURVED_LINE:
+                double[] points = record.getPoints();
+                Point2D start = (points.length >= 2) ? new Point2D(points[0], points[1]) : center;
+                element = new CurvedLine(start, pane, color, shapes, elements, record.getId());
+                break;
+            case FILL:
+                element = new SketchyFill(pane, shapes, elements, record.getId());
+                break;
+            case INSTANCE:
+                element = new SketchyInstance(pane, shapes, elements, record.getId());
+                break;
+        }
+        element.applyRecord(record);
+        return element;
+    }
+}
@@ -0,0 +1,434 @@
+package sketchy.shapes;
+
+import cs15.fnl.sketchySupport.CS15FileIO;
+import javafx.geometry.Point2D;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.transform.Rotate;
+import javafx.scene.transform.Scale;
+import javafx.scene.transform.Translate;
+import java.util.ArrayList;
+
+/** Group of elements (shapes, lines and other groups) that can be selected, moved, rotated, resized, recolored
+ * and deleted as a whole - it implements the SketchyShape interface, so all of these work exactly like they do
+ * for a single shape. The members' nodes are children of a JavaFX Group, so moving, rotating or resizing the group
+ * only changes the three transforms of that Group (a single update, no matter how many elements it has);
+ * the transforms are only baked into the members' own coordinates once the change is committed (see bake).
+ * Every group is also a node of a bounding-volume hierarchy - it keeps the bounds of all of its members (in its
+ * own, untransformed coordinates), so hit-testing only descends into groups whose bounds contain the point.
+ * A group's membership is fixed when it's formed; which of its members are currently on the pane (and in what
+ * order) is decided by Sketchy, which lays out the whole scene from the elements arraylist. Groups aren't part
+ * of the document model - it only knows the records of their members.
+ */
+public class ElementGroup implements SketchyShape {
+    private Group group;
+    private Pane pane;
+    private ArrayList<Savable> members;
+    private ArrayList<Savable> layered;
+    private ElementGroup parent;
+    private boolean active;
+    private boolean selected;
+    private Rectangle outline;
+    private double[] bounds;
+    private Translate translate;
+    private Rotate rotate;
+    private Scale scale;
+    private double translateX;
+    private double translateY;
+    private double angle;
+    private double scaleX;
+    private double scaleY;
+    private long id;
+
+    /** The members are passed in bottom layer first - they can be elements and other (nested) groups. */
+    public ElementGroup(Pane pane, ArrayList<Savable> members) {
+        this.pane = pane;
+        this.members = new ArrayList<>(members);
+        this.layered = new ArrayList<>(members);
+        this.id = ElementIds.next();
+        this.group = new Group();
+        this.translate = new Translate();
+        this.rotate = new Rotate();
+        this.scale = new Scale();
+        this.group.getTransforms().setAll(this.translate, this.rotate, this.scale);
+        this.outline = new Rectangle();
+        this.outline.setFill(Color.TRANSPARENT);
+        this.outline.setStroke(Color.LIGHTPINK);
+        this.outline.setStrokeWidth(2);
+        this.outline.setMouseTransparent(true);
+        this.scaleX = 1;
+        this.scaleY = 1;
+        this.active = true;
+        this.refit();
+    }
+
+    /** Method setting the members that are currently on the pane, in the order of their layers (bottom first) -
+     * their nodes become the Group's children, and the bounds are recomputed. Called by Sketchy whenever it lays
+     * out the scene.
+     */
+    public void setLayered(ArrayList<Savable> layered) {
+        this.layered = layered;
+        ArrayList<Node> nodes = new ArrayList<>(layered.size() + 1);
+        for (Savable member : layered) {
+            nodes.add(member.getNode());
+        }
+        if (this.selected) {
+            nodes.add(this.outline);
+        }
+        this.group.getChildren().setAll(nodes);
+        this.refit();
+    }
+
+    /** Method returning all elements (not groups) of the group that are currently on the pane, including those of
+     * nested groups, bottom layer first.
+     */
+    public ArrayList<Savable> getLeaves() {
+        ArrayList<Savable> leaves = new ArrayList<>();
+        this.collectLeaves(leaves);
+        return leaves;
+    }
+
+    private void collectLeaves(ArrayList<Savable> leaves) {
+        for (Savable member : this.layered) {
+            if (member instanceof ElementGroup) {
+                ((ElementGroup) member).collectLeaves(leaves);
+            } else {
+                leaves.add(member);
+            }
+        }
+    }
+
+    /** Method baking the group's transforms into its members - every member is brought to the state the
+     * transforms show it in (nested groups' own transforms are baked first), after which the transforms are
+     * reset. Called once a move, rotation or resize of the group is committed, so that the members' records
+     * can be stored in the document model.
+     */
+    public void bake() {
+        for (Savable member : this.layered) {
+            if (member instanceof ElementGroup) {
+                ((ElementGroup) member).bake();
+            }
+        }
+        if (this.translateX == 0 && this.translateY == 0 && this.angle == 0 && this.scaleX == 1 && this.scaleY == 1) {
+            return;
+        }
+        double pivotX = (this.bounds[0] + this.bounds[2]) / 2;
+        double pivotY = (this.bounds[1] + this.bounds[3]) / 2;
+        double cos = Math.cos(Math.toRadians(this.angle));
+        double sin = Math.sin(Math.toRadians(this.angle));
+        for (Savable leaf : this.getLeaves()) {
+            ShapeRecord record = leaf.toRecord();
+            boolean line = record.getType() == ElementType.CURVED_LINE;
+            // only a line's points are coordinates - a fill's mask stays as it is, stretched over its new box
+            double[] points = line ? record.getPoints().clone() : record.getPoints();
+            for (int i = 0; line && i + 1 < points.length; i += 2) {
+                // a line's offset (its center) is baked into its points along with the group's transform
+                double x = this.scaleX * (points[i] + record.getCenterX() - pivotX);
+                double y = this.scaleY * (points[i + 1] + record.getCenterY() - pivotY);
+                points[i] = pivotX + this.translateX + x * cos - y * sin;
+                points[i + 1] = pivotY + this.translateY + x * sin + y * cos;
+            }
+            double x = this.scaleX * (record.getCenterX() - pivotX);
+            double y = this.scaleY * (record.getCenterY() - pivotY);
+            // the member's own axes are scaled (and turned) by the group's scale, then rotated with the group
+            double memberCos = Math.cos(Math.toRadians(record.getAngle()));
+            double memberSin = Math.sin(Math.toRadians(record.getAngle()));
+            double widthFactor = Math.hypot(this.scaleX * memberCos, this.scaleY * memberSin);
+            double heightFactor = Math.hypot(this.scaleX * memberSin, this.scaleY * memberCos);
+            double memberAngle = Math.toDegrees(Math.atan2(this.scaleY * memberSin, this.scaleX * memberCos));
+            leaf.applyRecord(new ShapeRecord(record.getId(), record.getType(),
+                    line ? 0 : pivotX + this.translateX + x * cos - y * sin,
+                    line ? 0 : pivotY + this.translateY + x * sin + y * cos,
+                    record.getWidth() * widthFactor, record.getHeight() * heightFactor, this.angle + memberAngle,
+                    record.getRed(), record.getGreen(), record.getBlue(), points, record.getZ()));
+        }
+        this.translateX = 0;
+        this.translateY = 0;
+        this.angle = 0;
+        this.scaleX = 1;
+        this.scaleY = 1;
+        this.refit();
+    }
+
+    /** Method recomputing the bounds of the group (and of all groups it's nested in) from its members. */
+    public void refit() {
+        double[] newBounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (Savable member : this.layered) {
+            double[] memberBounds = (member instanceof ElementGroup) ? ((ElementGroup) member).getParentBounds()
+                    : RecordBounds.of(member.toRecord());
+            newBounds[0] = Math.min(newBounds[0], memberBounds[0]);
+            newBounds[1] = Math.min(newBounds[1], memberBounds[1]);
+            newBounds[2] = Math.max(newBounds[2], memberBounds[2]);
+            newBounds[3] = Math.max(newBounds[3], memberBounds[3]);
+        }
+        if (newBounds[0] > newBounds[2]) {
+            newBounds = new double[4];
+        }
+        this.bounds = newBounds;
+        this.updateTransforms();
+        if (this.parent != null) {
+            this.parent.refit();
+        }
+    }
+
+    /** Helper method returning the bounds of the group as its parent sees them (i.e. with its transforms applied). */
+    private double[] getParentBounds() {
+        double[] result = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int corner = 0; corner < 4; corner++) {
+            Point2D point = this.toParent(this.bounds[(corner & 1) * 2], this.bounds[1 + (corner >> 1) * 2]);
+            result[0] = Math.min(result[0], point.getX());
+            result[1] = Math.min(result[1], point.getY());
+            result[2] = Math.max(result[2], point.getX());
+            result[3] = Math.max(result[3], point.getY());
+        }
+        return result;
+    }
+
+    /** Helper method mapping a point from the group's own coordinates to its parent's. */
+    private Point2D toParent(double x, double y) {
+        double pivotX = (this.bounds[0] + this.bounds[2]) / 2;
+        double pivotY = (this.bounds[1] + this.bounds[3]) / 2;
+        double cos = Math.cos(Math.toRadians(this.angle));
+        double sin = Math.sin(Math.toRadians(this.angle));
+        double scaledX = this.scaleX * (x - pivotX);
+        double scaledY = this.scaleY * (y - pivotY);
+        return new Point2D(pivotX + this.translateX + scaledX * cos - scaledY * sin,
+                pivotY + this.translateY + scaledX * sin + scaledY * cos);
+    }
+
+    /** Helper method bringing the Group's transforms (and the selection outline) up to date with the group's
+     * state - all of them rotate and scale around the center of the group's bounds.
+     */
+    private void updateTransforms() {
+        double pivotX = (this.bounds[0] + this.bounds[2]) / 2;
+        double pivotY = (this.bounds[1] + this.bounds[3]) / 2;
+        this.translate.setX(this.translateX);
+        this.translate.setY(this.translateY);
+        this.rotate.setPivotX(pivotX);
+        this.rotate.setPivotY(pivotY);
+        this.rotate.setAngle(this.angle);
+        this.scale.setPivotX(pivotX);
+        this.scale.setPivotY(pivotY);
+        this.scale.setX(this.scaleX);
+        this.scale.setY(this.scaleY);
+        this.outline.setX(this.bounds[0]);
+        this.outline.setY(this.bounds[1]);
+        this.outline.setWidth(this.bounds[2] - this.bounds[0]);
+        this.outline.setHeight(this.bounds[3] - this.bounds[1]);
+    }
+
+    /** Method checking whether a point (already rotated back around the group's center by Sketchy, like for any
+     * other shape) hits any of the group's members. The point is first brought into the group's own coordinates -
+     * if it's outside of the group's bounds, none of the members is looked at; otherwise, they're checked from the
+     * top layer down, each in its own coordinates (nested groups doing the same for their members).
+     */
+    @Override
+    public boolean contains(Point2D point) {
+        double pivotX = (this.bounds[0] + this.bounds[2]) / 2;
+        double pivotY = (this.bounds[1] + this.bounds[3]) / 2;
+        double x = pivotX + (point.getX() - pivotX - this.translateX) / ((this.scaleX == 0) ? 1 : this.scaleX);
+        double y = pivotY + (point.getY() - pivotY - this.translateY) / ((this.scaleY == 0) ? 1 : this.scaleY);
+        if (x < this.bounds[0] || x > this.bounds[2] || y < this.bounds[1] || y > this.bounds[3]) {
+            return false;
+        }
+        Point2D local = new Point2D(x, y);
+        for (int i = this.layered.size() - 1; i >= 0; i--) {
+            Savable member = this.layered.get(i);
+            if (member instanceof SketchyShape) {
+                SketchyShape shape = (SketchyShape) member;
+                if (shape.contains(unrotate(local, shape.getCenter(), shape.getAngle()))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Helper method rotating a point back around a center (the same way Sketchy's rotatePoint does). */
+    private static Point2D unrotate(Point2D point, Point2D center, double angle) {
+        double sine = Math.sin(Math.toRadians(angle));
+        double cosine = Math.cos(Math.toRadians(angle));
+        double x = point.getX() - center.getX();
+        double y = point.getY() - center.getY();
+        return new Point2D(x * cosine + y * sine + center.getX(), -x * sine + y * cosine + center.getY());
+    }
+
+    /** Selecting a group shows an outline around its bounds (rather than a stroke around every member). */
+    @Override
+    public void select() {
+        if (!this.selected) {
+            this.selected = true;
+            this.group.getChildren().add(this.outline);
+        }
+    }
+
+    @Override
+    public void deselect() {
+        if (this.selected) {
+            this.selected = false;
+            this.group.getChildren().remove(this.outline);
+        }
+    }
+
+    /** Methods below remove the Group from (or add it to) whatever it's in - the pane, or the Group of the group
+     * it's nested in.
+     */
+    @Override
+    public void remove() {
+        this.container().remove(this.group);
+    }
+
+    @Override
+    public void addToPane() {
+        this.container().add(this.group);
+    }
+
+    @Override
+    public void addToPane(int index) {
+        this.container().add(index, this.group);
+    }
+
+    private javafx.collections.ObservableList<Node> container() {
+        return (this.parent != null) ? this.parent.group.getChildren() : this.pane.getChildren();
+    }
+
+    /** Setting a group's color recolors all of its members (the group's color is the one of its top member). */
+    @Override
+    public void setColor(Color color) {
+        for (Savable leaf : this.getLeaves()) {
+            ShapeRecord record = leaf.toRecord();
+            leaf.applyRecord(new ShapeRecord(record.getId(), record.getType(), record.getCenterX(), record.getCenterY(),
+                    record.getWidth(), record.getHeight(), record.getAngle(), color.getRed(), color.getGreen(),
+                    color.getBlue(), record.getPoints(), record.getZ()));
+        }
+    }
+
+    @Override
+    public Color getColor() {
+        ArrayList<Savable> leaves = this.getLeaves();
+        if (leaves.isEmpty()) {
+            return Color.BLACK;
+        }
+        ShapeRecord record = leaves.get(leaves.size() - 1).toRecord();
+        return new Color(record.getRed(), record.getGreen(), record.getBlue(), 1);
+    }
+
+    /** Just like for ellipses, the width and height of a group are half of its actual size - resizing a group
+     * scales it around its center.
+     */
+    @Override
+    public void setWidth(double x) {
+        double base = (this.bounds[2] - this.bounds[0]) / 2;
+        this.scaleX = (base > 0) ? x / base : 1;
+        this.updateTransforms();
+    }
+
+    @Override
+    public void setHeight(double y) {
+        double base = (this.bounds[3] - this.bounds[1]) / 2;
+        this.scaleY = (base > 0) ? y / base : 1;
+        this.updateTransforms();
+    }
+
+    @Override
+    public double getWidth() {
+        return Math.abs(this.scaleX) * (this.bounds[2] - this.bounds[0]) / 2;
+    }
+
+    @Override
+    public double getHeight() {
+        return Math.abs(this.scaleY) * (this.bounds[3] - this.bounds[1]) / 2;
+    }
+
+    /** Moving a group only changes its translation. */
+    @Override
+    public void setCenter(Point2D center) {
+        this.translateX = center.getX() - (this.bounds[0] + this.bounds[2]) / 2;
+        this.translateY = center.getY() - (this.bounds[1] + this.bounds[3]) / 2;
+        this.updateTransforms();
+    }
+
+    @Override
+    public Point2D getCenter() {
+        return new Point2D((this.bounds[0] + this.bounds[2]) / 2 + this.translateX,
+                (this.bounds[1] + this.bounds[3]) / 2 + this.translateY);
+    }
+
+    @Override
+    public void setAngle(double angle) {
+        this.angle = angle;
+        this.updateTransforms();
+    }
+
+    @Override
+    public double getAngle() {
+        return this.angle;
+    }
+
+    @Override
+    public int getIndex() {
+        return this.container().indexOf(this.group);
+    }
+
+    @Override
+    public Node getNode() {
+        return this.group;
+    }
+
+    @Override
+    public long getId() {
+        return this.id;
+    }
+
+    /** A group has no record of its own - the document model only stores the records of its members. */
+    @Override
+    public ShapeRecord toRecord() {
+        return null;
+    }
+
+    @Override
+    public void applyRecord(ShapeRecord record) {
+    }
+
+    /** Saving a group saves its members (files don't keep track of groups). */
+    @Override
+    public void save(CS15FileIO io) {
+        for (Savable leaf : this.getLeaves()) {
+            leaf.save(io);
+        }
+    }
+
+    /** Accessor method returning the group's members as they were when it was formed - the list mustn't be modified. */
+    public ArrayList<Savable> getMembers() {
+        return this.members;
+    }
+
+    public ElementGroup getParent() {
+        return this.parent;
+    }
+
+    public void setParent(ElementGroup parent) {
+        this.parent = parent;
+    }
+
+    /** Accessor methods telling whether the group currently exists (it doesn't once it's ungrouped, or once
+     * its grouping has been undone).
+     */
+    public boolean isActive() {
+        return this.active;
+    }
+
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
+    /** Accessor method returning the group's bounds as {minX, minY, maxX, maxY} - the array mustn't be modified. */
+    public double[] getBounds() {
+        return this.bounds;
+    }
+}
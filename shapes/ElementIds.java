@@ -0,0 +1,35 @@
+package sketchy.shapes;
+
+/** Small helper class handing out stable IDs to all elements that are added to the sketchy pane.
+ * An element gets its ID once (upon creation) and keeps it for its whole life - no matter how many times
+ * it's moved, recolored, raised or deleted and brought back by undo - so that the immutable ShapeRecords of
+ * the document model (and everything built on top of them) can refer to elements without holding on
+ * to the JavaFX nodes themselves.
+ */
+public class ElementIds {
+    private static final int CLIENT_SHIFT = 40;
+    private static long nextId = 1;
+    private static long clientPrefix = 0;
+
+    /** Method returning a new ID that hasn't been given to any other element yet. */
+    public static synchronized long next() {
+        return clientPrefix | nextId++;
+    }
+
+    /** Method reserving a block of consecutive IDs at once, returning the first of them - lets code that creates
+     * many records on several threads (e.g. parsing a large file) hand out IDs without synchronizing on every one.
+     */
+    public static synchronized long reserve(int count) {
+        long first = clientPrefix | nextId;
+        nextId += count;
+        return first;
+    }
+
+    /** Method setting the number of the editor this instance of Sketchy is - when several editors work on
+     * the same sketch, the number is stored in the upper bits of every new ID, so that elements created
+     * concurrently by different editors never get the same ID.
+     */
+    public static synchronized void setClient(int client) {
+        clientPrefix = ((long) client) << CLIENT_SHIFT;
+    }
+}
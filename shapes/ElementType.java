@@ -0,0 +1,25 @@
+package sketchy.shapes;
+
+/** Enum of all types of elements that can be added by the user to the sketchy pane. Each value stores
+ * the string that precedes an element's parameters in the saved file (the same one that's written
+ * in the elements' save methods), so that the immutable ShapeRecords describing the elements can be
+ * written to (and recognized in) a file without having to know what class they have been created from.
+ */
+public enum ElementType {
+    RECTANGLE("Rectangle"),
+    ELLIPSE("Ellipse"),
+    CURVED_LINE("CurvedLine"),
+    FILL("Fill"),
+    INSTANCE("Instance");
+
+    private String tag;
+
+    ElementType(String tag) {
+        this.tag = tag;
+    }
+
+    /** Accessor method returning the string under which an element of this type is saved to a file. */
+    public String getTag() {
+        return this.tag;
+    }
+}
@@ -0,0 +1,29 @@
+package sketchy.shapes;
+
+import cs15.fnl.sketchySupport.CS15FileIO;
+
+/** Adapter passing tokens into a CS15FileIO that's open for writing - lets everything that writes itself through
+ * a TokenWriter (records, file headers) be saved through Sketchy's regular save method.
+ */
+public class FileIOTokenWriter implements TokenWriter {
+    private CS15FileIO io;
+
+    public FileIOTokenWriter(CS15FileIO io) {
+        this.io = io;
+    }
+
+    @Override
+    public void writeString(String s) {
+        this.io.writeString(s);
+    }
+
+    @Override
+    public void writeDouble(double d) {
+        this.io.writeDouble(d);
+    }
+
+    @Override
+    public void writeInt(int i) {
+        this.io.writeInt(i);
+    }
+}
@@ -0,0 +1,41 @@
+package sketchy.shapes;
+
+/** Helper class calculating the axis-aligned bounding box of a record - the smallest unrotated rectangle
+ * containing the whole element (taking its rotation into account), returned as {minX, minY, maxX, maxY}.
+ * Useful whenever the records' geometry has to be known without their JavaFX nodes (e.g. when exporting).
+ */
+public class RecordBounds {
+
+    public static double[] of(ShapeRecord record) {
+        if (record.getType() == ElementType.CURVED_LINE) {
+            double[] points = record.getPoints();
+            if (points.length < 2) {
+                return new double[] {0, 0, 0, 0};
+            }
+            // the box of the points is kept by the line's segment index, which is built only once per array
+            double[] bounds = SegmentIndex.of(points).getBounds();
+            // a line's points are drawn at its offset (its record's center)
+            bounds[0] += record.getCenterX();
+            bounds[1] += record.getCenterY();
+            bounds[2] += record.getCenterX();
+            bounds[3] += record.getCenterY();
+            return bounds;
+        }
+        double radians = Math.toRadians(record.getAngle());
+        double cosine = Math.abs(Math.cos(radians));
+        double sine = Math.abs(Math.sin(radians));
+        double halfWidth;
+        double halfHeight;
+        if (record.getType() == ElementType.ELLIPSE) {
+            double a = record.getWidth();
+            double b = record.getHeight();
+            halfWidth = Math.sqrt(a * a * cosine * cosine + b * b * sine * sine);
+            halfHeight = Math.sqrt(a * a * sine * sine + b * b * cosine * cosine);
+        } else {
+            halfWidth = record.getWidth() * cosine + record.getHeight() * sine;
+            halfHeight = record.getWidth() * sine + record.getHeight() * cosine;
+        }
+        return new double[] {record.getCenterX() - halfWidth, record.getCenterY() - halfHeight,
+                record.getCenterX() + halfWidth, record.getCenterY() + halfHeight};
+    }
+}
@@ -1,12 +1,21 @@
 package sketchy.shapes;
 
 import cs15.fnl.sketchySupport.CS15FileIO;
+import javafx.scene.Node;
 
 /** Savable interface implemented by all visual elements that can be added by the user to the sketchy pane
  * (lines, rectangles, ellipses) - particularly helpful for the save method, where sketchy iterates through all the
  * "savable" elements (polymorphism!) and calls the save methods from within their
  * classes so that they can add themselves to the file (write down their properties upon saving).
+ * Every savable element also has a stable ID, and can describe its current state as an immutable
+ * ShapeRecord, so that the document model can keep track of it without holding on to its JavaFX node
+ * (and be brought back to the state a record describes). The element's JavaFX node can be accessed too, so that
+ * the whole pane can be reordered at once.
  */
 public interface Savable {
     void save(CS15FileIO io);
+    long getId();
+    ShapeRecord toRecord();
+    void applyRecord(ShapeRecord record);
+    Node getNode();
 }
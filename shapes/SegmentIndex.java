@@ -0,0 +1,128 @@
+package sketchy.shapes;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/** Bounding-box tree over the segments of a line, so that the segments near a point can be found without going
+ * through every point of the line. Segments are taken in runs of RUN consecutive segments, every run gets the
+ * box of its points, and the runs are the leaves of a complete binary tree (stored in an array - the children of
+ * node i are nodes 2i and 2i + 1), each node holding the box of its children's boxes.
+ * Since an array of points is never modified once it's in a record, an index is built only once per array, and
+ * shared by every line using the array (e.g. copies of a line) - it goes away along with the array.
+ */
+public class SegmentIndex {
+    private static final int RUN = 16;
+    private static final Map<double[], SegmentIndex> INDEXES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private double[] points;
+    private int segments;
+    private int firstLeaf;
+    private double[] boxes;
+
+    private SegmentIndex(double[] points) {
+        this.points = points;
+        this.segments = Math.max(0, points.length / 2 - 1);
+        int runs = Math.max(1, (this.segments + RUN - 1) / RUN);
+        this.firstLeaf = 1;
+        while (this.firstLeaf < runs) {
+            this.firstLeaf <<= 1;
+        }
+        this.boxes = new double[8 * this.firstLeaf];
+        for (int node = 0; node < 2 * this.firstLeaf; node++) {
+            this.boxes[4 * node] = Double.POSITIVE_INFINITY;
+            this.boxes[4 * node + 1] = Double.POSITIVE_INFINITY;
+            this.boxes[4 * node + 2] = Double.NEGATIVE_INFINITY;
+            this.boxes[4 * node + 3] = Double.NEGATIVE_INFINITY;
+        }
+        int count = points.length / 2;
+        for (int i = 0; i < count; i++) {
+            // a point belongs to the runs of both the segment it starts and the segment it ends
+            if (i < this.segments || this.segments == 0) {
+                this.include(this.firstLeaf + i / RUN, points[2 * i], points[2 * i + 1]);
+            }
+            if (i > 0) {
+                this.include(this.firstLeaf + (i - 1) / RUN, points[2 * i], points[2 * i + 1]);
+            }
+        }
+        for (int node = this.firstLeaf - 1; node >= 1; node--) {
+            for (int k = 0; k < 2; k++) {
+                this.boxes[4 * node + k] = Math.min(this.boxes[8 * node + k], this.boxes[8 * node + 4 + k]);
+                this.boxes[4 * node + 2 + k] = Math.max(this.boxes[8 * node + 2 + k], this.boxes[8 * node + 6 + k]);
+            }
+        }
+    }
+
+    /** Method returning the index of an array of points (building it, if it hasn't been built yet). The array
+     * mustn't be modified afterwards.
+     */
+    public static SegmentIndex of(double[] points) {
+        return INDEXES.computeIfAbsent(points, SegmentIndex::new);
+    }
+
+    /** Method returning the box of the whole line as {minX, minY, maxX, maxY} (all zeros if it has no points). */
+    public double[] getBounds() {
+        if (this.points.length < 2) {
+            return new double[4];
+        }
+        return Arrays.copyOfRange(this.boxes, 4, 8);
+    }
+
+    /** Method checking whether the box of the whole line overlaps a given box. */
+    public boolean intersects(double minX, double minY, double maxX, double maxY) {
+        return this.overlaps(1, minX, minY, maxX, maxY);
+    }
+
+    /** Method returning the segments (the index of a segment being the index of its first point) whose boxes
+     * overlap a given box, in the order in which they are along the line. Only the nodes of the tree overlapping
+     * the box are visited.
+     */
+    public int[] query(double minX, double minY, double maxX, double maxY) {
+        int[] found = new int[RUN];
+        int count = 0;
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 1;
+        while (top > 0) {
+            int node = stack[--top];
+            if (!this.overlaps(node, minX, minY, maxX, maxY)) {
+                continue;
+            }
+            if (node < this.firstLeaf) {
+                // the right child is pushed first, so that segments are found from the start of the line
+                stack[top++] = 2 * node + 1;
+                stack[top++] = 2 * node;
+                continue;
+            }
+            int first = (node - this.firstLeaf) * RUN;
+            int last = Math.min(first + RUN, this.segments);
+            for (int segment = first; segment < last; segment++) {
+                double x0 = this.points[2 * segment];
+                double y0 = this.points[2 * segment + 1];
+                double x1 = this.points[2 * segment + 2];
+                double y1 = this.points[2 * segment + 3];
+                if (Math.max(x0, x1) >= minX && Math.min(x0, x1) <= maxX
+                        && Math.max(y0, y1) >= minY && Math.min(y0, y1) <= maxY) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, 2 * count);
+                    }
+                    found[count++] = segment;
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    private boolean overlaps(int node, double minX, double minY, double maxX, double maxY) {
+        return this.boxes[4 * node] <= maxX && this.boxes[4 * node + 2] >= minX
+                && this.boxes[4 * node + 1] <= maxY && this.boxes[4 * node + 3] >= minY;
+    }
+
+    private void include(int node, double x, double y) {
+        this.boxes[4 * node] = Math.min(this.boxes[4 * node], x);
+        this.boxes[4 * node + 1] = Math.min(this.boxes[4 * node + 1], y);
+        this.boxes[4 * node + 2] = Math.max(this.boxes[4 * node + 2], x);
+        this.boxes[4 * node + 3] = Math.max(this.boxes[4 * node + 3], y);
+    }
+}
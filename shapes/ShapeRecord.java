@@ -0,0 +1,175 @@
+package sketchy.shapes;
+
+import cs15.fnl.sketchySupport.CS15FileIO;
+import java.util.Arrays;
+
+/** Immutable description of a single element of the sketchy pane (a rectangle, an ellipse, a curved line or a fill).
+ * Unlike the SketchyShapes and CurvedLines themselves, which wrap JavaFX nodes that keep changing
+ * as the user interacts with the canvas, a ShapeRecord never changes after being created - whenever an
+ * element changes, a new record is created through its toRecord method. Because of that, records can be
+ * shared freely between the live document and any number of its snapshots (as well as between threads).
+ * Width and height follow the SketchyShape convention (half of the shape's actual size), the center is the
+ * center of the shape, and in case of curved lines, the points array holds the line's coordinates
+ * (x and y alternately), drawn at an offset given by the record's center (which is zero for lines drawn by hand,
+ * and lets copies of a line share one array) - the array is never modified once it's passed into a record.
+ * A fill is placed just like a rectangle, and its array holds the region it covers as a mask of columns by rows
+ * cells stretched over the fill's box: the number of columns and rows, followed by one (row, first column,
+ * column past the last) triple per run of covered cells, sorted by row and column.
+ * An instance of a symbol is placed like a rectangle too, and its array refers to its symbol (see Symbol).
+ * The z value is the element's position in the document's layering - records with greater z values
+ * are drawn on top of the ones with smaller values.
+ */
+public final class ShapeRecord {
+    private static final double[] NO_POINTS = new double[0];
+
+    private final long id;
+    private final ElementType type;
+    private final double centerX;
+    private final double centerY;
+    private final double width;
+    private final double height;
+    private final double angle;
+    private final double red;
+    private final double green;
+    private final double blue;
+    private final double[] points;
+    private final double z;
+
+    public ShapeRecord(long id, ElementType type, double centerX, double centerY, double width, double height,
+                       double angle, double red, double green, double blue, double[] points, double z) {
+        this.id = id;
+        this.type = type;
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.width = width;
+        this.height = height;
+        this.angle = angle;
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+        this.points = (points == null) ? NO_POINTS : points;
+        this.z = z;
+    }
+
+    /** Method returning a copy of this record placed at a different position in the document's layering.
+     * The points array is shared rather than copied, as it's never modified.
+     */
+    public ShapeRecord withZ(double newZ) {
+        return new ShapeRecord(this.id, this.type, this.centerX, this.centerY, this.width, this.height, this.angle,
+                this.red, this.green, this.blue, this.points, newZ);
+    }
+
+    /** Method checking whether another record describes the same element in the same way - all of their values but
+     * the z value have to be the same (points are compared by their values, unless the array is shared).
+     */
+    public boolean hasSameShape(ShapeRecord other) {
+        return this.id == other.id && this.type == other.type && this.centerX == other.centerX
+                && this.centerY == other.centerY && this.width == other.width && this.height == other.height
+                && this.angle == other.angle && this.red == other.red && this.green == other.green
+                && this.blue == other.blue && (this.points == other.points || Arrays.equals(this.points, other.points));
+    }
+
+    public long getId() {
+        return this.id;
+    }
+
+    public ElementType getType() {
+        return this.type;
+    }
+
+    public double getCenterX() {
+        return this.centerX;
+    }
+
+    public double getCenterY() {
+        return this.centerY;
+    }
+
+    public double getWidth() {
+        return this.width;
+    }
+
+    public double getHeight() {
+        return this.height;
+    }
+
+    public double getAngle() {
+        return this.angle;
+    }
+
+    public double getRed() {
+        return this.red;
+    }
+
+    public double getGreen() {
+        return this.green;
+    }
+
+    public double getBlue() {
+        return this.blue;
+    }
+
+    /** Accessor method returning the line's coordinates - the returned array mustn't be modified. */
+    public double[] getPoints() {
+        return this.points;
+    }
+
+    public double getZ() {
+        return this.z;
+    }
+
+    /** Save method writing the record to a file in exactly the same format as the save methods of the
+     * element it describes - this way, a document can be saved from a snapshot of its records (even
+     * when the JavaFX nodes have changed in the meantime), and loaded through Sketchy's regular load method.
+     * In case of rectangles, the location is written as the top-left corner, just as SketchyRectangle does, and
+     * in case of lines, the points are written at the line's offset. A fill is written like an ellipse, followed by
+     * the length and the values of its mask, and so is an instance (followed by its reference to its symbol).
+     */
+    public void save(CS15FileIO io) {
+        this.write(new FileIOTokenWriter(io));
+    }
+
+    /** Method writing the record token by token (the save method above just passes the CS15FileIO in through an adapter). */
+    public void write(TokenWriter io) {
+        io.writeString(this.type.getTag());
+        switch (this.type) {
+            case RECTANGLE:
+                io.writeDouble(this.centerX - this.width);
+                io.writeDouble(this.centerY - this.height);
+                this.saveShapeParameters(io);
+                break;
+            case ELLIPSE:
+            case FILL:
+            case INSTANCE:
+                io.writeDouble(this.centerX);
+                io.writeDouble(this.centerY);
+                this.saveShapeParameters(io);
+                if (this.type != ElementType.ELLIPSE) {
+                    io.writeInt(this.points.length);
+                    for (double value : this.points) {
+                        io.writeDouble(value);
+                    }
+                }
+                break;
+            case CURVED_LINE:
+                io.writeDouble(this.red);
+                io.writeDouble(this.green);
+                io.writeDouble(this.blue);
+                io.writeInt(this.points.length);
+                for (int i = 0; i < this.points.length; i++) {
+                    io.writeDouble(this.points[i] + ((i % 2 == 0) ? this.centerX : this.centerY));
+                }
+                break;
+        }
+    }
+
+    /** Helper method writing the parameters shared by rectangles and ellipses (everything that follows their location). */
+    private void saveShapeParameters(TokenWriter io) {
+        io.writeDouble(this.width);
+        io.writeDouble(this.height);
+        io.writeDouble(this.angle);
+        io.writeDouble(this.red);
+        io.writeDouble(this.green);
+        io.writeDouble(this.blue);
+    }
+}
@@ -0,0 +1,234 @@
+package sketchy.shapes;
+import cs15.fnl.sketchySupport.CS15FileIO;
+import javafx.geometry.Point2D;
+import javafx.scene.Node;
+import javafx.scene.effect.DropShadow;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** Image element created by the bucket fill - a region of a single color, described by a mask (see ShapeRecord)
+ * and shown on the pane as an image with one pixel per cell of the mask, stretched over the fill's box. Apart
+ * from its content, a fill behaves just like a rectangle - it can be selected, moved, resized (the mask is
+ * stretched along with the box), rotated, recolored and layered. The image is only repainted when the mask or
+ * the color change, and it's created without smoothing, so that the fill's edges stay sharp.
+ */
+public class SketchyFill implements SketchyShape {
+    private ImageView view;
+    private Pane sketchPane;
+    private ArrayList<SketchyShape> shapes;
+    private ArrayList<Savable> elements;
+    private long id;
+    private double[] mask = new double[0];
+    private Color color = Color.BLACK;
+    private double width;
+    private double height;
+
+    /** Constructor taking in the ID the fill should have - the fill is created from a record (see
+     * ElementFactory), so it always has an ID already. It's empty until a record is applied to it.
+     */
+    public SketchyFill(Pane sketchyPane, ArrayList<SketchyShape> shapes, ArrayList<Savable> elements, long id) {
+        this.sketchPane = sketchyPane;
+        this.shapes = shapes;
+        this.elements = elements;
+        this.id = id;
+
+        this.view = new ImageView();
+        this.view.setSmooth(false);
+        this.view.setPreserveRatio(false);
+        this.shapes.add(this);
+        this.elements.add(this);
+        this.sketchPane.getChildren().add(this.view);
+    }
+
+    /** A point is contained in the fill if it's covered by one of the runs of its mask - the point (which Sketchy
+     * passes in already turned into the fill's unrotated frame, just like for other shapes) is found a cell of the
+     * mask, and the runs of that cell's row are found by a binary search (as they're sorted by row and column).
+     */
+    @Override
+    public boolean contains(Point2D point) {
+        if (this.mask.length < 2 || this.width <= 0 || this.height <= 0) {
+            return false;
+        }
+        double u = point.getX() - this.getCenter().getX();
+        double v = point.getY() - this.getCenter().getY();
+        int column = (int) Math.floor((u + this.width) / (2 * this.width) * this.mask[0]);
+        int row = (int) Math.floor((v + this.height) / (2 * this.height) * this.mask[1]);
+        if (column < 0 || row < 0 || column >= this.mask[0] || row >= this.mask[1]) {
+            return false;
+        }
+        // the last run starting at or before the cell
+        int low = 0;
+        int high = (this.mask.length - 2) / 3 - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            double runRow = this.mask[2 + 3 * middle];
+            double runFrom = this.mask[3 + 3 * middle];
+            if (runRow < row || (runRow == row && runFrom <= column)) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found >= 0 && this.mask[2 + 3 * found] == row && column < this.mask[4 + 3 * found];
+    }
+
+    /** Since an image has no stroke, a selected fill is outlined by a pink glow instead. */
+    @Override
+    public void select() {
+        this.view.setEffect(new DropShadow(4, Color.LIGHTPINK));
+    }
+
+    @Override
+    public void deselect() {
+        this.view.setEffect(null);
+    }
+
+    @Override
+    public void remove() {
+        this.sketchPane.getChildren().remove(this.view);
+    }
+
+    @Override
+    public void addToPane() {
+        this.sketchPane.getChildren().add(this.view);
+    }
+
+    @Override
+    public void addToPane(int index) {
+        this.sketchPane.getChildren().add(index, this.view);
+    }
+
+    @Override
+    public void setColor(Color color) {
+        if (!color.equals(this.color)) {
+            this.color = color;
+            this.paint();
+        }
+    }
+
+    @Override
+    public Color getColor() {
+        return this.color;
+    }
+
+    /** Width and height follow the SketchyShape convention (half of the fill's actual size). */
+    @Override
+    public void setWidth(double x) {
+        Point2D center = this.getCenter();
+        this.width = x;
+        this.view.setFitWidth(2 * x);
+        this.setCenter(center);
+    }
+
+    @Override
+    public void setHeight(double y) {
+        Point2D center = this.getCenter();
+        this.height = y;
+        this.view.setFitHeight(2 * y);
+        this.setCenter(center);
+    }
+
+    @Override
+    public double getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public double getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public void setCenter(Point2D center) {
+        this.view.setX(center.getX() - this.width);
+        this.view.setY(center.getY() - this.height);
+    }
+
+    @Override
+    public Point2D getCenter() {
+        return new Point2D(this.view.getX() + this.width, this.view.getY() + this.height);
+    }
+
+    @Override
+    public void setAngle(double angle) {
+        this.view.setRotate(angle);
+    }
+
+    @Override
+    public double getAngle() {
+        return this.view.getRotate();
+    }
+
+    @Override
+    public int getIndex() {
+        return this.sketchPane.getChildren().indexOf(this.view);
+    }
+
+    @Override
+    public Node getNode() {
+        return this.view;
+    }
+
+    @Override
+    public long getId() {
+        return this.id;
+    }
+
+    /** The record shares the fill's mask, which is never modified (a fill gets a new mask only through a record). */
+    @Override
+    public ShapeRecord toRecord() {
+        Point2D center = this.getCenter();
+        return new ShapeRecord(this.id, ElementType.FILL, center.getX(), center.getY(), this.width, this.height,
+                this.getAngle(), this.color.getRed(), this.color.getGreen(), this.color.getBlue(), this.mask, 0);
+    }
+
+    @Override
+    public void applyRecord(ShapeRecord record) {
+        Color color = new Color(record.getRed(), record.getGreen(), record.getBlue(), 1);
+        boolean repaint = record.getPoints() != this.mask || !color.equals(this.color);
+        this.mask = record.getPoints();
+        this.color = color;
+        this.width = record.getWidth();
+        this.height = record.getHeight();
+        this.view.setFitWidth(2 * this.width);
+        this.view.setFitHeight(2 * this.height);
+        this.setCenter(new Point2D(record.getCenterX(), record.getCenterY()));
+        this.setAngle(record.getAngle());
+        if (repaint) {
+            this.paint();
+        }
+    }
+
+    /** The fill is saved from its record, in the same format the record writes it. */
+    @Override
+    public void save(CS15FileIO io) {
+        this.toRecord().save(io);
+    }
+
+    /** Helper method painting the mask's runs in the fill's color into a new image (the rest stays transparent). */
+    private void paint() {
+        if (this.mask.length < 2 || this.mask[0] <= 0 || this.mask[1] <= 0) {
+            this.view.setImage(null);
+            return;
+        }
+        int columns = (int) this.mask[0];
+        int rows = (int) this.mask[1];
+        int argb = 0xFF000000 | ((int) Math.round(this.color.getRed() * 255) << 16)
+                | ((int) Math.round(this.color.getGreen() * 255) << 8) | (int) Math.round(this.color.getBlue() * 255);
+        int[] pixels = new int[columns * rows];
+        for (int i = 2; i + 2 < this.mask.length; i += 3) {
+            int offset = (int) this.mask[i] * columns;
+            Arrays.fill(pixels, offset + (int) this.mask[i + 1], offset + (int) this.mask[i + 2], argb);
+        }
+        WritableImage image = new WritableImage(columns, rows);
+        image.getPixelWriter().setPixels(0, 0, columns, rows, PixelFormat.getIntArgbInstance(), pixels, 0, columns);
+        this.view.setImage(image);
+    }
+}
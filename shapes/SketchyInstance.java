@@ -0,0 +1,245 @@
+package sketchy.shapes;
+import cs15.fnl.sketchySupport.CS15FileIO;
+import javafx.geometry.Point2D;
+import javafx.scene.Node;
+import javafx.scene.effect.DropShadow;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import sketchy.raster.TileRasterizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/** Element placing a symbol (see Symbol) - shown on the pane as an image of the symbol's drawing, stretched over
+ * the instance's box. The image of a symbol is rendered once (by the software rasterizer, at twice its natural
+ * size) and shared by all of its instances, so placing a symbol a thousand times costs a thousand image views and
+ * records, but only one image (or one per color, for instances overriding the colors of the symbol's elements).
+ * Apart from its content, an instance behaves just like a rectangle - it can be selected, moved, resized, rotated,
+ * recolored (which makes it override the colors of its symbol's elements) and layered.
+ */
+public class SketchyInstance implements SketchyShape {
+    private static final double IMAGE_SCALE = 2;
+    private static final int MAX_IMAGE_SIZE = 2048;
+    private static final HashMap<String, WritableImage> IMAGES = new HashMap<>();
+
+    private ImageView view;
+    private Pane sketchPane;
+    private ArrayList<SketchyShape> shapes;
+    private ArrayList<Savable> elements;
+    private long id;
+    private Symbol symbol;
+    private boolean overrideColor;
+    private double[] unknownReference = new double[0];
+    private Color color = Color.BLACK;
+    private double width;
+    private double height;
+
+    /** Constructor taking in the ID the instance should have - the instance is created from a record (see
+     * ElementFactory), so it always has an ID already. It's empty until a record is applied to it.
+     */
+    public SketchyInstance(Pane sketchyPane, ArrayList<SketchyShape> shapes, ArrayList<Savable> elements, long id) {
+        this.sketchPane = sketchyPane;
+        this.shapes = shapes;
+        this.elements = elements;
+        this.id = id;
+
+        this.view = new ImageView();
+        this.view.setSmooth(false);
+        this.view.setPreserveRatio(false);
+        this.shapes.add(this);
+        this.elements.add(this);
+        this.sketchPane.getChildren().add(this.view);
+    }
+
+    /** A point is contained in the instance if it's within its box (Sketchy passes the point in already turned
+     * into the instance's unrotated frame).
+     */
+    @Override
+    public boolean contains(Point2D point) {
+        Point2D center = this.getCenter();
+        return Math.abs(point.getX() - center.getX()) <= this.width && Math.abs(point.getY() - center.getY()) <= this.height;
+    }
+
+    /** Since an image has no stroke, a selected instance is outlined by a pink glow instead. */
+    @Override
+    public void select() {
+        this.view.setEffect(new DropShadow(4, Color.LIGHTPINK));
+    }
+
+    @Override
+    public void deselect() {
+        this.view.setEffect(null);
+    }
+
+    @Override
+    public void remove() {
+        this.sketchPane.getChildren().remove(this.view);
+    }
+
+    @Override
+    public void addToPane() {
+        this.sketchPane.getChildren().add(this.view);
+    }
+
+    @Override
+    public void addToPane(int index) {
+        this.sketchPane.getChildren().add(index, this.view);
+    }
+
+    /** Recoloring an instance makes its color override the colors of its symbol's elements. */
+    @Override
+    public void setColor(Color color) {
+        if (!color.equals(this.color) || !this.overrideColor) {
+            this.color = color;
+            this.overrideColor = true;
+            this.paint();
+        }
+    }
+
+    @Override
+    public Color getColor() {
+        return this.color;
+    }
+
+    /** Width and height follow the SketchyShape convention (half of the instance's actual size). */
+    @Override
+    public void setWidth(double x) {
+        Point2D center = this.getCenter();
+        this.width = x;
+        this.view.setFitWidth(2 * x);
+        this.setCenter(center);
+    }
+
+    @Override
+    public void setHeight(double y) {
+        Point2D center = this.getCenter();
+        this.height = y;
+        this.view.setFitHeight(2 * y);
+        this.setCenter(center);
+    }
+
+    @Override
+    public double getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public double getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public void setCenter(Point2D center) {
+        this.view.setX(center.getX() - this.width);
+        this.view.setY(center.getY() - this.height);
+    }
+
+    @Override
+    public Point2D getCenter() {
+        return new Point2D(this.view.getX() + this.width, this.view.getY() + this.height);
+    }
+
+    @Override
+    public void setAngle(double angle) {
+        this.view.setRotate(angle);
+    }
+
+    @Override
+    public double getAngle() {
+        return this.view.getRotate();
+    }
+
+    @Override
+    public int getIndex() {
+        return this.sketchPane.getChildren().indexOf(this.view);
+    }
+
+    @Override
+    public Node getNode() {
+        return this.view;
+    }
+
+    @Override
+    public long getId() {
+        return this.id;
+    }
+
+    public Symbol getSymbol() {
+        return this.symbol;
+    }
+
+    /** The record holds the array shared by all instances of the symbol (see Symbol). An instance whose symbol
+     * isn't known keeps the array it was created with, so that it's saved unchanged.
+     */
+    @Override
+    public ShapeRecord toRecord() {
+        Point2D center = this.getCenter();
+        double[] reference = (this.symbol != null) ? this.symbol.reference(this.overrideColor) : this.unknownReference;
+        return new ShapeRecord(this.id, ElementType.INSTANCE, center.getX(), center.getY(), this.width, this.height,
+                this.getAngle(), this.color.getRed(), this.color.getGreen(), this.color.getBlue(), reference, 0);
+    }
+
+    @Override
+    public void applyRecord(ShapeRecord record) {
+        Color color = new Color(record.getRed(), record.getGreen(), record.getBlue(), 1);
+        Symbol symbol = Symbol.of(record);
+        boolean overrideColor = Symbol.overridesColor(record);
+        boolean repaint = symbol != this.symbol || overrideColor != this.overrideColor
+                || (overrideColor && !color.equals(this.color)) || this.view.getImage() == null;
+        this.symbol = symbol;
+        this.unknownReference = record.getPoints();
+        this.overrideColor = overrideColor;
+        this.color = color;
+        this.width = record.getWidth();
+        this.height = record.getHeight();
+        this.view.setFitWidth(2 * this.width);
+        this.view.setFitHeight(2 * this.height);
+        this.setCenter(new Point2D(record.getCenterX(), record.getCenterY()));
+        this.setAngle(record.getAngle());
+        if (repaint) {
+            this.paint();
+        }
+    }
+
+    /** The instance is saved from its record, in the same format the record writes it. */
+    @Override
+    public void save(CS15FileIO io) {
+        this.toRecord().save(io);
+    }
+
+    /** Helper method showing the image of the instance's symbol (in the instance's color, if it overrides the colors
+     * of the symbol's elements), rendering it first if no instance has shown it yet.
+     */
+    private void paint() {
+        if (this.symbol == null) {
+            this.view.setImage(null);
+            return;
+        }
+        String key = this.symbol.getId() + (this.overrideColor ? ":" + this.color : "");
+        WritableImage image = IMAGES.get(key);
+        if (image == null) {
+            image = render(this.symbol, this.overrideColor, this.color);
+            IMAGES.put(key, image);
+        }
+        this.view.setImage(image);
+    }
+
+    /** Helper method rendering a symbol's drawing into a new image, by drawing an unrotated instance of it that
+     * exactly covers the image (anything the drawing doesn't cover stays transparent).
+     */
+    private static WritableImage render(Symbol symbol, boolean overrideColor, Color color) {
+        double scale = Math.min(IMAGE_SCALE, MAX_IMAGE_SIZE / (2 * Math.max(1, Math.max(symbol.getWidth(), symbol.getHeight()))));
+        int columns = Math.max(1, (int) Math.ceil(2 * symbol.getWidth() * scale));
+        int rows = Math.max(1, (int) Math.ceil(2 * symbol.getHeight() * scale));
+        ShapeRecord instance = symbol.instance(0, columns / (2 * scale), rows / (2 * scale), color.getRed(),
+                color.getGreen(), color.getBlue(), overrideColor, 0);
+        int[] pixels = new int[columns * rows];
+        TileRasterizer rasterizer = new TileRasterizer(scale);
+        rasterizer.draw(instance, pixels, columns, 0, 0, 0, columns, rows);
+        WritableImage image = new WritableImage(columns, rows);
+        image.getPixelWriter().setPixels(0, 0, columns, rows, PixelFormat.getIntArgbInstance(), pixels, 0, columns);
+        return image;
+    }
+}
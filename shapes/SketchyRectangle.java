@@ -21,12 +21,21 @@ public class SketchyRectangle implements SketchyShape {
     private Point2D clickPoint;
     private ArrayList<SketchyShape> shapes;
     private ArrayList<Savable> elements;
+    private long id;
 
 
     public SketchyRectangle(Pane sketchyPane, Point2D point, Color color, ArrayList<SketchyShape> shapes, ArrayList<Savable> elements) {
+        this(sketchyPane, point, color, shapes, elements, ElementIds.next());
+    }
+
+    /** Second constructor taking in the ID the rectangle should have - used whenever an element that already
+     * has an ID somewhere else (e.g. in another editor's document) is recreated.
+     */
+    public SketchyRectangle(Pane sketchyPane, Point2D point, Color color, ArrayList<SketchyShape> shapes, ArrayList<Savable> elements, long id) {
         this.sketchPane = sketchyPane;
         this.shapes = shapes;
         this.elements = elements;
+        this.id = id;
         this.clickPoint = point;
 
         this.currRectangle = new Rectangle(this.clickPoint.getX(), this.clickPoint.getY(), 0, 0);
@@ -189,6 +198,39 @@ public class SketchyRectangle implements SketchyShape {
         return this.sketchPane.getChildren().indexOf(this.currRectangle);
     }
 
+    /** Accessor method returning the JavaFX node representing the shape on the pane. */
+    @Override
+    public Node getNode() {
+        return this.currRectangle;
+    }
+
+    /** Accessor method returning the shape's stable ID (given to it once, upon creation). */
+    @Override
+    public long getId() {
+        return this.id;
+    }
+
+    /** Method describing the current state of the shape as an immutable ShapeRecord, so that it can be
+     * stored in the document model. The record's z value is assigned by the document model itself.
+     */
+    @Override
+    public ShapeRecord toRecord() {
+        Point2D center = this.getCenter();
+        Color color = this.getColor();
+        return new ShapeRecord(this.id, ElementType.RECTANGLE, center.getX(), center.getY(), this.getWidth(),
+                this.getHeight(), this.getAngle(), color.getRed(), color.getGreen(), color.getBlue(), null, 0);
+    }
+
+    /** Method bringing the rectangle to the state described by a record (everything but its ID and layering). */
+    @Override
+    public void applyRecord(ShapeRecord record) {
+        this.setWidth(record.getWidth());
+        this.setHeight(record.getHeight());
+        this.setCenter(new Point2D(record.getCenterX(), record.getCenterY()));
+        this.setAngle(record.getAngle());
+        this.setColor(new Color(record.getRed(), record.getGreen(), record.getBlue(), 1));
+    }
+
     /** Save method - a CS15FileIO is passed into the constructor, so that whenever the sketchy class
      * iterates through an arraylist of saveables, a particular element can "add itself" and its
      * parameters to the file. After stating its type, it lists its location, radius,
@@ -2,8 +2,8 @@ package sketchy.shapes;
 import javafx.geometry.Point2D;
 import javafx.scene.paint.Color;
 
-/** SketchyShape interface implemented by Ellipses and Rectangles - allows the methods of command classes
- * (resize, reshape, lower, etc.) to be called on the shapes polymorphically
+/** SketchyShape interface implemented by Ellipses, Rectangles, CurvedLines and groups of elements - allows the
+ * methods of command classes (resize, reshape, lower, etc.) to be called on the shapes polymorphically
  * without having to state the node's type, as classes override
  * these methods accordingly to their own parameters. It also allows the classes to be stored in an
  * arraylist of SketchyShapes which is particularly useful for lowering/raising them visually
@@ -0,0 +1,236 @@
+package sketchy.shapes;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A symbol - a drawing (a few elements) defined once, and placed any number of times as instances. An instance
+ * is a record of type INSTANCE, placed just like a rectangle (its center, half-size and angle make up the box the
+ * symbol's drawing is stretched over), whose array doesn't hold any geometry - only the ID of its symbol (split
+ * into two exact halves), and optionally a third value, 1, when the instance's color overrides the colors of the
+ * symbol's elements. The instances of a symbol share a single such array, so each of them costs one record.
+ * The symbol's elements are kept as records around the center of their bounding box, and its ID is a hash of their
+ * encoded form - so a symbol is the same in every document and every session, and defining (or loading) the same
+ * drawing twice gives the same symbol. Symbols are immutable, and all of them are kept in a library shared by
+ * all threads (loaders and rasterizers look instances' symbols up on their own threads).
+ * In a sketch file, every symbol used by the document is saved once, before the elements, as the TAG token
+ * followed by a single Base64 token holding its encoded elements - so no token of a symbol can ever be taken
+ * for an element type name by readers resyncing on them.
+ */
+public final class Symbol {
+    public static final String TAG = "Symbol";
+    private static final Map<Long, Symbol> LIBRARY = new ConcurrentHashMap<>();
+
+    private final long id;
+    private final double width;
+    private final double height;
+    private final ShapeRecord[] members;
+    private final String encoded;
+    private final double[] reference;
+    private final double[] overriddenReference;
+
+    private Symbol(double width, double height, ShapeRecord[] members, String encoded) {
+        this.width = width;
+        this.height = height;
+        this.members = members;
+        this.encoded = encoded;
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < encoded.length(); i++) {
+            hash = (hash ^ encoded.charAt(i)) * 0x100000001B3L;
+        }
+        this.id = hash;
+        this.reference = new double[] {(int) (hash >>> 32), (int) hash};
+        this.overriddenReference = new double[] {(int) (hash >>> 32), (int) hash, 1};
+    }
+
+    /** Method defining a symbol from the records of a few elements (in z-order), and adding it to the library -
+     * returns the symbol already in the library if the same drawing has been defined before.
+     */
+    public static Symbol define(List<ShapeRecord> records) {
+        double[] box = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (ShapeRecord record : records) {
+            double[] bounds = RecordBounds.of(record);
+            box[0] = Math.min(box[0], bounds[0]);
+            box[1] = Math.min(box[1], bounds[1]);
+            box[2] = Math.max(box[2], bounds[2]);
+            box[3] = Math.max(box[3], bounds[3]);
+        }
+        double centerX = (box[0] + box[2]) / 2;
+        double centerY = (box[1] + box[3]) / 2;
+        ShapeRecord[] members = new ShapeRecord[records.size()];
+        for (int i = 0; i < members.length; i++) {
+            ShapeRecord record = records.get(i);
+            // a line's center is the offset its points are drawn at, so every element moves by moving its center
+            members[i] = new ShapeRecord(0, record.getType(), record.getCenterX() - centerX, record.getCenterY() - centerY,
+                    record.getWidth(), record.getHeight(), record.getAngle(), record.getRed(), record.getGreen(),
+                    record.getBlue(), record.getPoints(), i);
+        }
+        double width = Math.max(0, (box[2] - box[0]) / 2);
+        double height = Math.max(0, (box[3] - box[1]) / 2);
+        return register(new Symbol(width, height, members, encode(width, height, members)));
+    }
+
+    /** Method decoding a symbol saved in a file (from the token following its tag), and adding it to the library. */
+    public static Symbol decode(String token) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(token));
+        double width = buffer.getDouble();
+        double height = buffer.getDouble();
+        ShapeRecord[] members = new ShapeRecord[buffer.getInt()];
+        for (int i = 0; i < members.length; i++) {
+            ElementType type = ElementType.values()[buffer.get()];
+            double centerX = buffer.getDouble();
+            double centerY = buffer.getDouble();
+            double memberWidth = buffer.getDouble();
+            double memberHeight = buffer.getDouble();
+            double angle = buffer.getDouble();
+            double red = buffer.getDouble();
+            double green = buffer.getDouble();
+            double blue = buffer.getDouble();
+            double[] points = new double[buffer.getInt()];
+            buffer.asDoubleBuffer().get(points);
+            buffer.position(buffer.position() + 8 * points.length);
+            members[i] = new ShapeRecord(0, type, centerX, centerY, memberWidth, memberHeight, angle, red, green, blue, points, i);
+        }
+        return register(new Symbol(width, height, members, token));
+    }
+
+    private static Symbol register(Symbol symbol) {
+        Symbol known = LIBRARY.putIfAbsent(symbol.id, symbol);
+        return (known != null) ? known : symbol;
+    }
+
+    /** Method returning the symbol with a given ID (or null if it isn't in the library). */
+    public static Symbol get(long id) {
+        return LIBRARY.get(id);
+    }
+
+    /** Method returning the symbol an instance record places (or null if it isn't in the library). */
+    public static Symbol of(ShapeRecord instance) {
+        double[] reference = instance.getPoints();
+        if (reference.length < 2) {
+            return null;
+        }
+        return LIBRARY.get(((long) reference[0] << 32) | ((long) reference[1] & 0xFFFFFFFFL));
+    }
+
+    /** Method checking whether an instance record's color overrides the colors of its symbol's elements. */
+    public static boolean overridesColor(ShapeRecord instance) {
+        return instance.getPoints().length > 2 && instance.getPoints()[2] != 0;
+    }
+
+    /** Method returning the array instance records of this symbol hold (one shared by all of them). */
+    public double[] reference(boolean overrideColor) {
+        return overrideColor ? this.overriddenReference : this.reference;
+    }
+
+    /** Method creating the record of a new instance at its symbol's natural size, centered at a given point. */
+    public ShapeRecord instance(long id, double centerX, double centerY, double red, double green, double blue,
+                                boolean overrideColor, double z) {
+        return new ShapeRecord(id, ElementType.INSTANCE, centerX, centerY, this.width, this.height, 0, red, green, blue,
+                this.reference(overrideColor), z);
+    }
+
+    /** Method returning the records of the symbol's elements as an instance places them - stretched over the
+     * instance's box, rotated along with it, and recolored if the instance overrides their colors. A shape rotated
+     * within a symbol that's stretched unevenly is only approximated (it stays a rotated rectangle or ellipse).
+     */
+    public ArrayList<ShapeRecord> place(ShapeRecord instance) {
+        double scaleX = (this.width > 0) ? instance.getWidth() / this.width : 1;
+        double scaleY = (this.height > 0) ? instance.getHeight() / this.height : 1;
+        double radians = Math.toRadians(instance.getAngle());
+        double cosine = Math.cos(radians);
+        double sine = Math.sin(radians);
+        boolean override = overridesColor(instance);
+        ArrayList<ShapeRecord> placed = new ArrayList<>(this.members.length);
+        for (ShapeRecord member : this.members) {
+            double red = override ? instance.getRed() : member.getRed();
+            double green = override ? instance.getGreen() : member.getGreen();
+            double blue = override ? instance.getBlue() : member.getBlue();
+            if (member.getType() == ElementType.CURVED_LINE) {
+                double[] points = member.getPoints();
+                double[] moved = new double[points.length];
+                for (int i = 0; i + 1 < points.length; i += 2) {
+                    double x = (points[i] + member.getCenterX()) * scaleX;
+                    double y = (points[i + 1] + member.getCenterY()) * scaleY;
+                    moved[i] = instance.getCenterX() + x * cosine - y * sine;
+                    moved[i + 1] = instance.getCenterY() + x * sine + y * cosine;
+                }
+                placed.add(new ShapeRecord(instance.getId(), member.getType(), 0, 0, 0, 0, 0, red, green, blue, moved, instance.getZ()));
+            } else {
+                double x = member.getCenterX() * scaleX;
+                double y = member.getCenterY() * scaleY;
+                placed.add(new ShapeRecord(instance.getId(), member.getType(), instance.getCenterX() + x * cosine - y * sine,
+                        instance.getCenterY() + x * sine + y * cosine, member.getWidth() * scaleX, member.getHeight() * scaleY,
+                        member.getAngle() + instance.getAngle(), red, green, blue, member.getPoints(), instance.getZ()));
+            }
+        }
+        return placed;
+    }
+
+    /** Method saving every symbol the given records place (along with the symbols those place in turn), each once. */
+    public static void writeUsed(Iterable<ShapeRecord> records, TokenWriter io) {
+        LinkedHashMap<Long, Symbol> used = new LinkedHashMap<>();
+        for (ShapeRecord record : records) {
+            collect(record, used);
+        }
+        for (Symbol symbol : used.values()) {
+            symbol.write(io);
+        }
+    }
+
+    private static void collect(ShapeRecord record, LinkedHashMap<Long, Symbol> used) {
+        if (record.getType() != ElementType.INSTANCE) {
+            return;
+        }
+        Symbol symbol = of(record);
+        if (symbol != null && !used.containsKey(symbol.id)) {
+            used.put(symbol.id, symbol);
+            for (ShapeRecord member : symbol.members) {
+                collect(member, used);
+            }
+        }
+    }
+
+    public long getId() {
+        return this.id;
+    }
+
+    /** Accessor method returning the half-width of the symbol's drawing (an instance's width at its natural size). */
+    public double getWidth() {
+        return this.width;
+    }
+
+    public double getHeight() {
+        return this.height;
+    }
+
+    /** Method saving the symbol (see the class's description). */
+    public void write(TokenWriter io) {
+        io.writeString(TAG);
+        io.writeString(this.encoded);
+    }
+
+    private static String encode(double width, double height, ShapeRecord[] members) {
+        int size = 8 + 8 + 4;
+        for (ShapeRecord member : members) {
+            size += 1 + 8 * 8 + 4 + 8 * member.getPoints().length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putDouble(width).putDouble(height).putInt(members.length);
+        for (ShapeRecord member : members) {
+            buffer.put((byte) member.getType().ordinal());
+            buffer.putDouble(member.getCenterX()).putDouble(member.getCenterY());
+            buffer.putDouble(member.getWidth()).putDouble(member.getHeight()).putDouble(member.getAngle());
+            buffer.putDouble(member.getRed()).putDouble(member.getGreen()).putDouble(member.getBlue());
+            buffer.putInt(member.getPoints().length);
+            for (double point : member.getPoints()) {
+                buffer.putDouble(point);
+            }
+        }
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+}
@@ -0,0 +1,11 @@
+package sketchy.shapes;
+
+/** Interface of everything ShapeRecords can be written to, token by token - it mirrors the writing methods of
+ * CS15FileIO, so that records are always written in the same format, whether they're saved through CS15FileIO
+ * (from the app) or through a plain file writer (e.g. when converting or generating files without the GUI).
+ */
+public interface TokenWriter {
+    void writeString(String s);
+    void writeDouble(double d);
+    void writeInt(int i);
+}